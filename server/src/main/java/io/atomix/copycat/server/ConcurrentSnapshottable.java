@@ -0,0 +1,106 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server;
+
+import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
+
+/**
+ * Support for writing {@link StateMachine} snapshots concurrently with the application of commands.
+ * <p>
+ * {@link Snapshottable} state machines write snapshots in the state machine thread, and no commands can be applied
+ * to the state machine while a snapshot is being written. State machines that implement this interface take
+ * snapshots in two phases instead. First, {@link #captureSnapshot()} is called in the state machine thread to capture
+ * a consistent view of the state machine state, e.g. a copy-on-write handle or an immutable copy of the state.
+ * Then, the returned {@link Capture} is {@link Capture#write(SnapshotWriter) written} to the snapshot in a separate
+ * snapshot thread while commands continue to be applied, and the capture is {@link Capture#close() closed} once the
+ * snapshot has been written.
+ * <p>
+ * <pre>
+ *   {@code
+ *   public class MyStateMachine extends StateMachine implements ConcurrentSnapshottable {
+ *     private PersistentMap<String, String> map = PersistentMap.empty();
+ *
+ *     public Capture captureSnapshot() {
+ *       PersistentMap<String, String> snapshot = map;
+ *       return writer -> writer.writeObject(snapshot);
+ *     }
+ *
+ *     public void install(SnapshotReader reader) {
+ *       map = reader.readObject();
+ *     }
+ *   }
+ *   }
+ * </pre>
+ * The capture must not be affected by commands applied after {@link #captureSnapshot()} returns, and must not
+ * access state machine state that is not safe to read concurrently with the state machine thread.
+ * <p>
+ * If the state machine is also {@link IncrementalSnapshottable}, only full snapshots are written concurrently.
+ * Delta snapshots are written in the state machine thread.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface ConcurrentSnapshottable extends Snapshottable {
+
+  /**
+   * Captures a consistent view of the state machine state to be written to a snapshot.
+   * <p>
+   * This method is called in the state machine thread and should return quickly. The returned capture will be
+   * written to the snapshot in a separate thread.
+   *
+   * @return The captured state machine state.
+   */
+  Capture captureSnapshot();
+
+  /**
+   * Takes a snapshot of the state machine state by capturing and writing the state in the calling thread.
+   *
+   * @param writer The snapshot writer.
+   */
+  @Override
+  default void snapshot(SnapshotWriter writer) {
+    try (Capture capture = captureSnapshot()) {
+      capture.write(writer);
+    }
+  }
+
+  /**
+   * Captured state machine state.
+   */
+  @FunctionalInterface
+  interface Capture extends AutoCloseable {
+
+    /**
+     * Writes the captured state to the snapshot.
+     * <p>
+     * This method is called in the snapshot thread, concurrently with the application of commands to
+     * the state machine.
+     *
+     * @param writer The snapshot writer.
+     */
+    void write(SnapshotWriter writer);
+
+    /**
+     * Releases the captured state.
+     * <p>
+     * This method is called once the captured state has been written, or if writing the state failed.
+     */
+    @Override
+    default void close() {
+    }
+
+  }
+
+}
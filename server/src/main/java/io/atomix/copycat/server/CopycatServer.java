@@ -857,6 +857,13 @@ public class CopycatServer {
     private static final Duration DEFAULT_HEARTBEAT_INTERVAL = Duration.ofMillis(250);
     private static final Duration DEFAULT_SESSION_TIMEOUT = Duration.ofMillis(5000);
     private static final Duration DEFAULT_GLOBAL_SUSPEND_TIMEOUT = Duration.ofHours(1);
+    private static final int DEFAULT_SNAPSHOT_CHUNK_SIZE = 1024 * 32;
+    private static final int DEFAULT_SNAPSHOT_INSTALL_WINDOW = 4;
+    private static final long DEFAULT_SNAPSHOT_INSTALL_RATE = 0;
+    private static final int DEFAULT_APPEND_WINDOW = 8;
+    private static final int DEFAULT_APPEND_WINDOW_SIZE = 1024 * 1024;
+    private static final int DEFAULT_MAX_APPEND_BATCH_SIZE = 1024 * 512;
+    private static final int DEFAULT_MAX_APPEND_BATCH_ENTRIES = 1024 * 8;
 
     private String name = DEFAULT_NAME;
     private Member.Type type = Member.Type.ACTIVE;
@@ -871,6 +878,15 @@ public class CopycatServer {
     private Duration heartbeatInterval = DEFAULT_HEARTBEAT_INTERVAL;
     private Duration sessionTimeout = DEFAULT_SESSION_TIMEOUT;
     private Duration globalSuspendTimeout = DEFAULT_GLOBAL_SUSPEND_TIMEOUT;
+    private int snapshotChunkSize = DEFAULT_SNAPSHOT_CHUNK_SIZE;
+    private int snapshotInstallWindow = DEFAULT_SNAPSHOT_INSTALL_WINDOW;
+    private long snapshotInstallRate = DEFAULT_SNAPSHOT_INSTALL_RATE;
+    private int appendWindow = DEFAULT_APPEND_WINDOW;
+    private int appendWindowSize = DEFAULT_APPEND_WINDOW_SIZE;
+    private int maxAppendBatchSize = DEFAULT_MAX_APPEND_BATCH_SIZE;
+    private int maxAppendBatchEntries = DEFAULT_MAX_APPEND_BATCH_ENTRIES;
+    private boolean rawAppendEntries;
+    private ServerMetrics metrics = ServerMetrics.NONE;
 
     private Builder(Address clientAddress, Address serverAddress) {
       this.clientAddress = Assert.notNull(clientAddress, "clientAddress");
@@ -1033,6 +1049,168 @@ public class CopycatServer {
       return this;
     }
 
+    /**
+     * Sets the size of snapshot chunks sent to members that are catching up, returning the server builder for
+     * method chaining.
+     * <p>
+     * When a member falls behind the leader's snapshot, the snapshot is streamed to the member in a series of
+     * {@link io.atomix.copycat.server.protocol.InstallRequest}s, each containing at most {@code chunkSize} bytes.
+     * By default, the chunk size is {@code 32KB}.
+     *
+     * @param chunkSize The maximum number of snapshot bytes to send in a single request.
+     * @return The server builder.
+     * @throws IllegalArgumentException if the chunk size is not positive
+     */
+    public Builder withSnapshotChunkSize(int chunkSize) {
+      this.snapshotChunkSize = Assert.arg(chunkSize, chunkSize > 0, "chunkSize must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of snapshot chunks in flight to each member, returning the server builder for
+     * method chaining.
+     * <p>
+     * Snapshot chunks are pipelined to members that are catching up. The install window dictates the number of
+     * {@link io.atomix.copycat.server.protocol.InstallRequest}s that may be awaiting a response from a single member
+     * at any given time. By default, the install window is {@code 4}.
+     *
+     * @param window The maximum number of snapshot chunks in flight to each member.
+     * @return The server builder.
+     * @throws IllegalArgumentException if the window is not positive
+     */
+    public Builder withSnapshotInstallWindow(int window) {
+      this.snapshotInstallWindow = Assert.arg(window, window > 0, "window must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum rate at which snapshots are sent to each member, returning the server builder for method
+     * chaining.
+     * <p>
+     * The install rate limits the number of snapshot bytes per second sent to any single member that is catching
+     * up, preventing snapshot transfers from saturating the leader's disk or network. By default, the install
+     * rate is unlimited.
+     *
+     * @param bytesPerSecond The maximum number of snapshot bytes per second to send to each member, or {@code 0}
+     *                       for no limit.
+     * @return The server builder.
+     * @throws IllegalArgumentException if the rate is negative
+     */
+    public Builder withSnapshotInstallRate(long bytesPerSecond) {
+      this.snapshotInstallRate = Assert.argNot(bytesPerSecond, bytesPerSecond < 0, "bytesPerSecond cannot be negative");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of append requests in flight to each member, returning the server builder for
+     * method chaining.
+     * <p>
+     * The leader pipelines {@link io.atomix.copycat.server.protocol.AppendRequest}s to each follower, advancing the
+     * follower's {@code nextIndex} optimistically as requests are sent rather than waiting for each response. The
+     * append window dictates the number of requests that may be awaiting a response from a single member at any
+     * given time. Larger windows improve replication throughput to followers on high latency links. By default,
+     * the append window is {@code 8}.
+     *
+     * @param window The maximum number of append requests in flight to each member.
+     * @return The server builder.
+     * @throws IllegalArgumentException if the window is not positive
+     */
+    public Builder withAppendWindow(int window) {
+      this.appendWindow = Assert.arg(window, window > 0, "window must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of entry bytes in flight to each member, returning the server builder for method
+     * chaining.
+     * <p>
+     * In addition to the {@link #withAppendWindow(int) append window}, pipelined append requests are bounded by the
+     * number of entry bytes awaiting a response from a single member. By default, the append window size is
+     * {@code 1MB}.
+     *
+     * @param windowSize The maximum number of entry bytes in flight to each member.
+     * @return The server builder.
+     * @throws IllegalArgumentException if the window size is not positive
+     */
+    public Builder withAppendWindowSize(int windowSize) {
+      this.appendWindowSize = Assert.arg(windowSize, windowSize > 0, "windowSize must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of entry bytes to send in a single append request, returning the server builder for
+     * method chaining.
+     * <p>
+     * The leader adapts the size of {@link io.atomix.copycat.server.protocol.AppendRequest}s to each follower.
+     * Batches start at {@code 32KB} and grow for followers that are behind the leader and responding quickly,
+     * up to the maximum batch size. Batches shrink again when responses slow. By default, the maximum batch size
+     * is {@code 512KB}.
+     *
+     * @param maxBatchSize The maximum number of entry bytes to send in a single append request.
+     * @return The server builder.
+     * @throws IllegalArgumentException if the batch size is not positive
+     */
+    public Builder withMaxAppendBatchSize(int maxBatchSize) {
+      this.maxAppendBatchSize = Assert.arg(maxBatchSize, maxBatchSize > 0, "maxBatchSize must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of entries to send in a single append request, returning the server builder for
+     * method chaining.
+     * <p>
+     * The entry limit bounds the number of entries a follower must process for a single
+     * {@link io.atomix.copycat.server.protocol.AppendRequest} regardless of the size of the entries. By default,
+     * the maximum number of entries is {@code 8192}.
+     *
+     * @param maxBatchEntries The maximum number of entries to send in a single append request.
+     * @return The server builder.
+     * @throws IllegalArgumentException if the number of entries is not positive
+     */
+    public Builder withMaxAppendBatchEntries(int maxBatchEntries) {
+      this.maxAppendBatchEntries = Assert.arg(maxBatchEntries, maxBatchEntries > 0, "maxBatchEntries must be positive");
+      return this;
+    }
+
+    /**
+     * Enables replication of entries in their serialized form, returning the server builder for method chaining.
+     *
+     * @return The server builder.
+     */
+    public Builder withRawAppendEntries() {
+      return withRawAppendEntries(true);
+    }
+
+    /**
+     * Sets whether to replicate entries in their serialized form, returning the server builder for method chaining.
+     * <p>
+     * When enabled, leaders send entries to followers as the serialized records read from the log rather than
+     * deserializing and reserializing each entry. Servers that predate raw entry replication reject such
+     * {@link io.atomix.copycat.server.protocol.AppendRequest}s, so raw replication must only be enabled once all
+     * servers in the cluster have been upgraded. By default, raw replication is disabled.
+     *
+     * @param rawAppendEntries Whether to replicate entries in their serialized form.
+     * @return The server builder.
+     */
+    public Builder withRawAppendEntries(boolean rawAppendEntries) {
+      this.rawAppendEntries = rawAppendEntries;
+      return this;
+    }
+
+    /**
+     * Sets the server metrics, returning the server builder for method chaining.
+     * <p>
+     * The server reports per-member replication information to the provided {@link ServerMetrics}.
+     *
+     * @param metrics The server metrics.
+     * @return The server builder.
+     * @throws NullPointerException if {@code metrics} is null
+     */
+    public Builder withMetrics(ServerMetrics metrics) {
+      this.metrics = Assert.notNull(metrics, "metrics");
+      return this;
+    }
+
     /**
      * @throws ConfigurationException if a state machine, members or transport are not configured
      */
@@ -1079,7 +1257,16 @@ public class CopycatServer {
       context.setElectionTimeout(electionTimeout)
         .setHeartbeatInterval(heartbeatInterval)
         .setSessionTimeout(sessionTimeout)
-        .setGlobalSuspendTimeout(globalSuspendTimeout);
+        .setGlobalSuspendTimeout(globalSuspendTimeout)
+        .setSnapshotChunkSize(snapshotChunkSize)
+        .setSnapshotInstallWindow(snapshotInstallWindow)
+        .setSnapshotInstallRate(snapshotInstallRate)
+        .setAppendWindow(appendWindow)
+        .setAppendWindowSize(appendWindowSize)
+        .setMaxAppendBatchSize(maxAppendBatchSize)
+        .setMaxAppendBatchEntries(maxAppendBatchEntries)
+        .setRawAppendEntries(rawAppendEntries)
+        .setMetrics(metrics);
 
       return new CopycatServer(name, clientTransport, serverTransport, context);
     }
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server;
+
+import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
+
+/**
+ * Support for persisting {@link StateMachine} snapshots as deltas of prior snapshots.
+ * <p>
+ * State machines with large state can implement this interface to avoid writing the complete state machine state
+ * each time a snapshot is taken. Once a full snapshot has been taken via {@link #snapshot(SnapshotWriter)}, subsequent
+ * snapshots are taken via {@link #snapshotDelta(SnapshotWriter, long)}, and the state machine writes only the state
+ * that changed since the prior snapshot. The {@link io.atomix.copycat.server.storage.snapshot.SnapshotStore} keeps
+ * the full snapshot and the chain of deltas taken on top of it. Once the chain reaches the configured
+ * {@link io.atomix.copycat.server.storage.Storage#maxSnapshotDeltas() maximum number of deltas}, a full snapshot is
+ * taken again to consolidate the chain, and the prior snapshots are removed.
+ * <p>
+ * <pre>
+ *   {@code
+ *   public class MyStateMachine extends StateMachine implements IncrementalSnapshottable {
+ *     private final Map<String, String> map = new HashMap<>();
+ *     private final Map<String, String> changes = new HashMap<>();
+ *
+ *     public void snapshot(SnapshotWriter writer) {
+ *       writer.writeObject(map);
+ *       changes.clear();
+ *     }
+ *
+ *     public void snapshotDelta(SnapshotWriter writer, long baseIndex) {
+ *       writer.writeObject(changes);
+ *       changes.clear();
+ *     }
+ *
+ *     public void install(SnapshotReader reader) {
+ *       map.clear();
+ *       map.putAll(reader.readObject());
+ *     }
+ *
+ *     public void installDelta(SnapshotReader reader, long baseIndex) {
+ *       Map<String, String> changes = reader.readObject();
+ *       changes.forEach((key, value) -> {
+ *         if (value != null) {
+ *           map.put(key, value);
+ *         } else {
+ *           map.remove(key);
+ *         }
+ *       });
+ *     }
+ *   }
+ *   }
+ * </pre>
+ * When a snapshot is installed, the full snapshot at the base of the chain is installed via
+ * {@link #install(SnapshotReader)}, and each delta is then installed in order via
+ * {@link #installDelta(SnapshotReader, long)}.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface IncrementalSnapshottable extends Snapshottable {
+
+  /**
+   * Takes a delta snapshot of the state machine state.
+   * <p>
+   * The delta must contain all snapshottable state changed by commands applied after the {@code baseIndex}.
+   * The base snapshot is the most recent snapshot of the state machine state, which may have been taken by a
+   * prior call to either {@link #snapshot(SnapshotWriter)} or this method, or installed via
+   * {@link #install(SnapshotReader)} or {@link #installDelta(SnapshotReader, long)}.
+   *
+   * @param writer The snapshot writer.
+   * @param baseIndex The index of the snapshot on which the delta is based.
+   */
+  void snapshotDelta(SnapshotWriter writer, long baseIndex);
+
+  /**
+   * Installs a delta snapshot of the state machine state.
+   * <p>
+   * Deltas are installed in order after the full snapshot at the base of the snapshot chain has been
+   * {@link #install(SnapshotReader) installed}. Implementations should read precisely what implementations
+   * of {@link #snapshotDelta(SnapshotWriter, long)} write.
+   *
+   * @param reader The snapshot reader.
+   * @param baseIndex The index of the snapshot on which the delta is based.
+   */
+  void installDelta(SnapshotReader reader, long baseIndex);
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server;
+
+import io.atomix.copycat.server.cluster.Member;
+
+import java.time.Duration;
+
+/**
+ * Receives replication metrics from a {@link CopycatServer}.
+ * <p>
+ * Server metrics can be provided to the {@link CopycatServer.Builder#withMetrics(ServerMetrics) server builder} to
+ * export per-member replication information to an external metrics system. All methods have empty default
+ * implementations, so implementations need only override the methods for the metrics they're interested in.
+ * <p>
+ * Metrics methods are called on the server's thread and should not block.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface ServerMetrics {
+
+  /**
+   * Server metrics that ignore all metrics.
+   */
+  ServerMetrics NONE = new ServerMetrics() {
+  };
+
+  /**
+   * Called each time an append request is sent to a member.
+   *
+   * @param member The member to which the request was sent.
+   * @param bytes The number of entry bytes in the request.
+   * @param appending The number of append requests in flight to the member, including this request.
+   * @param appendingBytes The number of entry bytes in flight to the member, including this request.
+   */
+  default void appendSent(Member member, int bytes, int appending, long appendingBytes) {
+  }
+
+  /**
+   * Called each time a member responds to an append request containing entries.
+   *
+   * @param member The member that responded to the request.
+   * @param bytes The number of entry bytes in the request.
+   * @param time The round trip time of the request.
+   */
+  default void appendCompleted(Member member, int bytes, Duration time) {
+  }
+
+  /**
+   * Called each time the next index of a member is rewound after a failed or rejected append request.
+   *
+   * @param member The member whose next index was rewound.
+   * @param nextIndex The member's new next index.
+   */
+  default void nextIndexRewound(Member member, long nextIndex) {
+  }
+
+}
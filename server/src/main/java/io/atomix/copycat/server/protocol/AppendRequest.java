@@ -21,9 +21,12 @@ import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.protocol.AbstractRequest;
 import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.entry.RawEntry;
+import io.atomix.copycat.server.storage.util.ChecksumType;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -33,6 +36,14 @@ import java.util.Objects;
  * Append entries requests are at the core of the replication protocol. Leaders send append requests
  * to followers to replicate and commit log entries, and followers sent append requests to passive members
  * to replicate committed log entries.
+ * <p>
+ * Entries may be sent either as {@link #entries() entry objects} or as {@link #rawEntries() raw entries}. Raw entries
+ * carry the checksummed entry bytes as stored in the sender's log and can be copied into the receiver's log without
+ * being deserialized. A request contains entries in only one of the two forms.
+ * <p>
+ * Requests with entry objects are serialized in the same format as by prior versions. Requests with raw entries are
+ * flagged by a negative entry count followed by the raw entries, so they can only be read by receivers that support
+ * raw entries. Older receivers reject such requests rather than misreading them.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
@@ -62,6 +73,7 @@ public class AppendRequest extends AbstractRequest {
   private long logIndex;
   private long logTerm;
   private List<Entry> entries;
+  private List<RawEntry> rawEntries = Collections.emptyList();
   private long commitIndex = -1;
   private long globalIndex = -1;
 
@@ -110,6 +122,38 @@ public class AppendRequest extends AbstractRequest {
     return entries;
   }
 
+  /**
+   * Returns the raw log entries to append.
+   *
+   * @return A list of raw log entries.
+   */
+  public List<RawEntry> rawEntries() {
+    return rawEntries;
+  }
+
+  /**
+   * Returns a boolean indicating whether the request contains any entries.
+   *
+   * @return Indicates whether the request contains any entries.
+   */
+  public boolean hasEntries() {
+    return !entries.isEmpty() || !rawEntries.isEmpty();
+  }
+
+  /**
+   * Returns the index of the last entry in the request.
+   *
+   * @return The index of the last entry in the request or the {@link #logIndex()} if the request contains no entries.
+   */
+  public long lastEntryIndex() {
+    if (!rawEntries.isEmpty()) {
+      return rawEntries.get(rawEntries.size() - 1).index();
+    } else if (!entries.isEmpty()) {
+      return entries.get(entries.size() - 1).getIndex();
+    }
+    return logIndex;
+  }
+
   /**
    * Returns the leader's commit index.
    *
@@ -137,10 +181,24 @@ public class AppendRequest extends AbstractRequest {
       .writeLong(commitIndex)
       .writeLong(globalIndex);
 
-    buffer.writeInt(entries.size());
-    for (Entry entry : entries) {
-      buffer.writeLong(entry.getIndex()).writeLong(entry.getTerm());
-      serializer.writeObject(entry, buffer);
+    // Raw entries are flagged by a negative count in place of the entry count.
+    if (rawEntries.isEmpty()) {
+      buffer.writeInt(entries.size());
+      for (Entry entry : entries) {
+        buffer.writeLong(entry.getIndex()).writeLong(entry.getTerm());
+        serializer.writeObject(entry, buffer);
+      }
+      return;
+    }
+
+    buffer.writeInt(-rawEntries.size());
+    for (RawEntry entry : rawEntries) {
+      buffer.writeLong(entry.index())
+        .writeLong(entry.term())
+        .writeUnsignedInt(entry.checksum())
+        .writeByte(entry.checksumType().id())
+        .writeInt(entry.bytes().length)
+        .write(entry.bytes());
     }
   }
 
@@ -154,19 +212,36 @@ public class AppendRequest extends AbstractRequest {
     globalIndex = buffer.readLong();
 
     int numEntries = buffer.readInt();
-    entries = new ArrayList<>(numEntries);
-    for (int i = 0; i < numEntries; i++) {
+    if (numEntries >= 0) {
+      entries = new ArrayList<>(numEntries);
+      for (int i = 0; i < numEntries; i++) {
+        long index = buffer.readLong();
+        long term = buffer.readLong();
+        Entry entry = serializer.readObject(buffer);
+        entry.setIndex(index).setTerm(term);
+        entries.add(entry);
+      }
+      rawEntries = Collections.emptyList();
+      return;
+    }
+
+    int numRawEntries = -numEntries;
+    entries = Collections.emptyList();
+    rawEntries = new ArrayList<>(numRawEntries);
+    for (int i = 0; i < numRawEntries; i++) {
       long index = buffer.readLong();
       long term = buffer.readLong();
-      Entry entry = serializer.readObject(buffer);
-      entry.setIndex(index).setTerm(term);
-      entries.add(entry);
+      long checksum = buffer.readUnsignedInt();
+      ChecksumType checksumType = ChecksumType.forId(buffer.readByte());
+      byte[] bytes = new byte[buffer.readInt()];
+      buffer.read(bytes);
+      rawEntries.add(new RawEntry(index, term, checksum, checksumType, bytes));
     }
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(getClass(), term, leader, logIndex, logTerm, entries, commitIndex, globalIndex);
+    return Objects.hash(getClass(), term, leader, logIndex, logTerm, entries, rawEntries, commitIndex, globalIndex);
   }
 
   @Override
@@ -178,6 +253,7 @@ public class AppendRequest extends AbstractRequest {
         && request.logIndex == logIndex
         && request.logTerm == logTerm
         && request.entries.equals(entries)
+        && request.rawEntries.equals(rawEntries)
         && request.commitIndex == commitIndex
         && request.globalIndex == globalIndex;
     }
@@ -186,7 +262,7 @@ public class AppendRequest extends AbstractRequest {
 
   @Override
   public String toString() {
-    return String.format("%s[term=%d, leader=%s, logIndex=%d, logTerm=%d, entries=[%d], commitIndex=%d, globalIndex=%d]", getClass().getSimpleName(), term, leader, logIndex, logTerm, entries.size(), commitIndex, globalIndex);
+    return String.format("%s[term=%d, leader=%s, logIndex=%d, logTerm=%d, entries=[%d], rawEntries=[%d], commitIndex=%d, globalIndex=%d]", getClass().getSimpleName(), term, leader, logIndex, logTerm, entries.size(), rawEntries.size(), commitIndex, globalIndex);
   }
 
   /**
@@ -281,6 +357,21 @@ public class AppendRequest extends AbstractRequest {
       return this;
     }
 
+    /**
+     * Sets the request raw entries.
+     * <p>
+     * Raw entries are sent in place of entry objects, so requests with raw entries must not contain any
+     * {@link #withEntries(List) entries}.
+     *
+     * @param entries The request raw entries.
+     * @return The append request builder.
+     * @throws NullPointerException if {@code entries} is null
+     */
+    public Builder withRawEntries(List<RawEntry> entries) {
+      request.rawEntries = Assert.notNull(entries, "entries");
+      return this;
+    }
+
     /**
      * Sets the request commit index.
      *
@@ -320,6 +411,7 @@ public class AppendRequest extends AbstractRequest {
         Assert.stateNot(request.logTerm < 0, "log term must not be negative");
       }
       Assert.stateNot(request.entries == null, "entries cannot be null");
+      Assert.stateNot(!request.entries.isEmpty() && !request.rawEntries.isEmpty(), "cannot send both entries and raw entries");
       Assert.stateNot(request.commitIndex < 0, "commit index must not be negative");
       Assert.stateNot(request.globalIndex < 0, "global index must not be negative");
       return request;
@@ -33,6 +33,12 @@ import java.util.Objects;
  * the follower, the snapshot is reconstructed based on the provided {@link #offset()} and other
  * metadata. The last install request will be sent with {@link #complete()} being {@code true} to
  * indicate that all chunks of the snapshot have been sent.
+ * <p>
+ * If the snapshot is a delta of a prior snapshot, the {@link #baseIndex()} is the index of the snapshot
+ * on which it's based. Snapshot chains are sent one snapshot at a time, starting with the full snapshot.
+ * Requests for full snapshots are serialized in the same format as by prior versions. The base index of a delta is
+ * flagged in the byte that indicates whether the request is {@link #complete() complete}, so delta snapshots can
+ * only be sent to members that support them.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
@@ -57,9 +63,13 @@ public class InstallRequest extends AbstractRequest {
     return new Builder(request);
   }
 
+  private static final int COMPLETE_FLAG = 0x01;
+  private static final int DELTA_FLAG = 0x02;
+
   private long term;
   private int leader;
   protected long index;
+  protected long baseIndex;
   protected int offset;
   protected byte[] data;
   protected boolean complete;
@@ -91,6 +101,15 @@ public class InstallRequest extends AbstractRequest {
     return index;
   }
 
+  /**
+   * Returns the index of the snapshot on which the snapshot is based.
+   *
+   * @return The base snapshot index, or {@code 0} if the snapshot is a full snapshot.
+   */
+  public long baseIndex() {
+    return baseIndex;
+  }
+
   /**
    * Returns the offset of the snapshot chunk.
    *
@@ -124,7 +143,10 @@ public class InstallRequest extends AbstractRequest {
       .writeInt(leader)
       .writeLong(index)
       .writeInt(offset)
-      .writeBoolean(complete);
+      .writeByte((complete ? COMPLETE_FLAG : 0) | (baseIndex > 0 ? DELTA_FLAG : 0));
+    if (baseIndex > 0) {
+      buffer.writeLong(baseIndex);
+    }
     serializer.writeObject(data, buffer);
   }
 
@@ -134,13 +156,15 @@ public class InstallRequest extends AbstractRequest {
     leader = buffer.readInt();
     index = buffer.readLong();
     offset = buffer.readInt();
-    complete = buffer.readBoolean();
+    int flags = buffer.readByte();
+    complete = (flags & COMPLETE_FLAG) != 0;
+    baseIndex = (flags & DELTA_FLAG) != 0 ? buffer.readLong() : 0;
     data = serializer.<byte[]>readObject(buffer);
   }
 
   @Override
   public int hashCode() {
-    return Objects.hash(getClass(), term, leader, index, offset, complete, data);
+    return Objects.hash(getClass(), term, leader, index, baseIndex, offset, complete, data);
   }
 
   @Override
@@ -150,6 +174,7 @@ public class InstallRequest extends AbstractRequest {
       return request.term == term
         && request.leader == leader
         && request.index == index
+        && request.baseIndex == baseIndex
         && request.offset == offset
         && request.complete == complete
         && Arrays.equals(request.data, data);
@@ -159,7 +184,7 @@ public class InstallRequest extends AbstractRequest {
 
   @Override
   public String toString() {
-    return String.format("%s[term=%d, leader=%d, index=%d, offset=%d, data=%s, complete=%b]", getClass().getSimpleName(), term, leader, index, offset, data, complete);
+    return String.format("%s[term=%d, leader=%d, index=%d, baseIndex=%d, offset=%d, data=%s, complete=%b]", getClass().getSimpleName(), term, leader, index, baseIndex, offset, data, complete);
   }
 
   /**
@@ -205,6 +230,17 @@ public class InstallRequest extends AbstractRequest {
       return this;
     }
 
+    /**
+     * Sets the request base snapshot index.
+     *
+     * @param baseIndex The index of the snapshot on which the snapshot is based, or {@code 0} for a full snapshot.
+     * @return The request builder.
+     */
+    public Builder withBaseIndex(long baseIndex) {
+      request.baseIndex = Assert.argNot(baseIndex, baseIndex < 0, "baseIndex cannot be negative");
+      return this;
+    }
+
     /**
      * Sets the request offset.
      *
@@ -20,12 +20,15 @@ import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.protocol.Response;
 import io.atomix.copycat.server.CopycatServer;
 import io.atomix.copycat.server.protocol.*;
+import io.atomix.copycat.server.storage.LogReader;
 import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.entry.RawEntry;
 import io.atomix.copycat.server.storage.snapshot.Snapshot;
 import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -36,7 +39,7 @@ import java.util.List;
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 abstract class AbstractAppender implements AutoCloseable {
-  private static final int MAX_BATCH_SIZE = 1024 * 32;
+  private static final int MIN_BATCH_SIZE = 1024 * 32;
   protected final Logger logger = LoggerFactory.getLogger(getClass());
   protected final ServerContext context;
   protected boolean open = true;
@@ -52,6 +55,16 @@ abstract class AbstractAppender implements AutoCloseable {
    */
   protected abstract void appendEntries(MemberState member);
 
+  /**
+   * Returns a boolean indicating whether an append request can be sent to the member.
+   * <p>
+   * Append requests are pipelined to the member up to the configured {@link ServerContext#getAppendWindow() window}
+   * and {@link ServerContext#getAppendWindowSize() window size}.
+   */
+  protected boolean canAppend(MemberState member) {
+    return member.canAppend(context.getAppendWindow(), context.getAppendWindowSize());
+  }
+
   /**
    * Builds an append request.
    *
@@ -111,29 +124,47 @@ abstract class AbstractAppender implements AutoCloseable {
     // Calculate the starting index of the list of entries.
     final long index = prevEntry != null ? prevEntry.getIndex() + 1 : context.getLog().firstIndex();
 
+    // Determine the maximum size of the batch for the member.
+    final int batchSize = getBatchSize(member);
+    final int batchEntries = context.getMaxAppendBatchEntries();
+
+    // If raw replication is enabled and the entries can be read in raw form, send the serialized entries
+    // from the log rather than deserializing and reserializing each entry.
+    if (context.isRawAppendEntries() && context.getLog().canReadRaw(index)) {
+      if (prevEntry != null) {
+        prevEntry.release();
+      }
+      return builder.withEntries(Collections.EMPTY_LIST)
+        .withRawEntries(getRawEntries(index, lastIndex, batchSize, batchEntries))
+        .build();
+    }
+
     // Build a list of entries to send to the member.
     List<Entry> entries = new ArrayList<>((int) Math.min(8, lastIndex - index + 1));
 
-    // Build a list of entries up to the MAX_BATCH_SIZE. Note that entries in the log may
+    // Build a list of entries up to the member's batch size. Note that entries in the log may
     // be null if they've been compacted and the member to which we're sending entries is just
     // joining the cluster or is otherwise far behind. Null entries are simply skipped and not
     // counted towards the size of the batch.
-    // If there exists an entry in the log with size >= MAX_BATCH_SIZE the logic ensures that
+    // If there exists an entry in the log with size >= the batch size the logic ensures that
     // entry will be sent in a batch of size one
     int size = 0;
 
     // Iterate through remaining entries in the log up to the last index.
-    for (long i = index; i <= lastIndex; i++) {
-      // Get the entry from the log and append it if it's not null. Entries in the log can be null
-      // if they've been cleaned or compacted from the log. Each entry sent in the append request
-      // has a unique index to handle gaps in the log.
-      Entry entry = context.getLog().get(i);
-      if (entry != null) {
-        if (!entries.isEmpty() && size + entry.size() > MAX_BATCH_SIZE) {
-          break;
+    try (LogReader reader = context.getLog().reader(index)) {
+      for (long i = index; i <= lastIndex && entries.size() < batchEntries; i++) {
+        // Get the entry from the log and append it if it's not null. Entries in the log can be null
+        // if they've been cleaned or compacted from the log. Each entry sent in the append request
+        // has a unique index to handle gaps in the log.
+        Entry entry = reader.next();
+        if (entry != null) {
+          if (!entries.isEmpty() && size + entry.size() > batchSize) {
+            entry.release();
+            break;
+          }
+          size += entry.size();
+          entries.add(entry);
         }
-        size += entry.size();
-        entries.add(entry);
       }
     }
 
@@ -146,6 +177,71 @@ abstract class AbstractAppender implements AutoCloseable {
     return builder.withEntries(entries).build();
   }
 
+  /**
+   * Reads a batch of raw entries from the log, starting at the given index.
+   */
+  protected List<RawEntry> getRawEntries(long index, long lastIndex, int batchSize, int batchEntries) {
+    List<RawEntry> entries = new ArrayList<>((int) Math.min(8, lastIndex - index + 1));
+
+    // Build a list of entries up to the batch size. As with entry objects, entries that are missing from
+    // the log are skipped. If the compactor progresses past the next entry while the batch is being built,
+    // the batch is ended and the remaining entries are sent as entry objects in a later request.
+    int size = 0;
+    try (LogReader reader = context.getLog().reader(index)) {
+      for (long i = index; i <= lastIndex && entries.size() < batchEntries && context.getLog().canReadRaw(i); i++) {
+        RawEntry entry = reader.nextRaw();
+        if (entry != null) {
+          if (!entries.isEmpty() && size + entry.bytes().length > batchSize) {
+            break;
+          }
+          size += entry.bytes().length;
+          entries.add(entry);
+        }
+      }
+    }
+    return entries;
+  }
+
+  /**
+   * Returns the maximum number of entry bytes to send to the member in a single request.
+   */
+  protected int getBatchSize(MemberState member) {
+    int batchSize = member.getAppendBatchSize();
+    return batchSize > 0 ? batchSize : Math.min(MIN_BATCH_SIZE, context.getMaxAppendBatchSize());
+  }
+
+  /**
+   * Adapts the member's batch size to the round trip time of a completed append request.
+   * <p>
+   * If the request was limited by the batch size, more entries remain to be sent, and the member responded within
+   * half a heartbeat interval, the batch size is doubled up to the configured maximum. This allows members that are
+   * far behind the leader to catch up with fewer, larger requests. Conversely, if the member took longer than a
+   * heartbeat interval to respond, the batch size is halved so large batches don't delay commits and heartbeats.
+   */
+  protected void updateBatchSize(MemberState member, int size, long time) {
+    int batchSize = getBatchSize(member);
+    long heartbeatInterval = context.getHeartbeatInterval().toNanos();
+    if (time > heartbeatInterval) {
+      member.setAppendBatchSize(Math.max(batchSize / 2, Math.min(MIN_BATCH_SIZE, context.getMaxAppendBatchSize())));
+    } else if (time < heartbeatInterval / 2 && size * 2 >= batchSize && hasMoreEntries(member)) {
+      member.setAppendBatchSize((int) Math.min((long) batchSize * 2, context.getMaxAppendBatchSize()));
+    }
+  }
+
+  /**
+   * Returns the number of entry bytes in the given request.
+   */
+  protected static int sizeOf(AppendRequest request) {
+    int size = 0;
+    for (Entry entry : request.entries()) {
+      size += entry.size();
+    }
+    for (RawEntry entry : request.rawEntries()) {
+      size += entry.bytes().length;
+    }
+    return size;
+  }
+
   /**
    * Gets the previous entry.
    */
@@ -167,7 +263,9 @@ abstract class AbstractAppender implements AutoCloseable {
    */
   protected void sendAppendRequest(MemberState member, AppendRequest request) {
     // Start the append to the member.
-    member.startAppend();
+    int size = sizeOf(request);
+    member.startAppend(size);
+    context.getMetrics().appendSent(member.getMember(), size, member.getAppending(), member.getAppendingBytes());
 
     context.getConnections().getConnection(member.getMember().address()).whenComplete((connection, error) -> {
       context.checkThread();
@@ -177,7 +275,7 @@ abstract class AbstractAppender implements AutoCloseable {
           sendAppendRequest(connection, member, request);
         } else {
           // Complete the append to the member.
-          member.completeAppend();
+          member.completeAppend(size);
 
           // Trigger reactions to the request failure.
           handleAppendRequestFailure(member, request, error);
@@ -191,22 +289,36 @@ abstract class AbstractAppender implements AutoCloseable {
    */
   protected void sendAppendRequest(Connection connection, MemberState member, AppendRequest request) {
     long timestamp = System.nanoTime();
+    long generation = member.getAppendGeneration();
+    int size = sizeOf(request);
 
     logger.trace("{} - Sending {} to {}", context.getCluster().member().address(), request, member.getMember().address());
     connection.<AppendRequest, AppendResponse>sendAndReceive(request).whenComplete((response, error) -> {
       context.checkThread();
 
       // Complete the append to the member.
-      if (!request.entries().isEmpty()) {
-        member.completeAppend(System.nanoTime() - timestamp);
+      if (request.hasEntries()) {
+        long time = System.nanoTime() - timestamp;
+        member.completeAppend(size);
+        if (error == null) {
+          updateBatchSize(member, size, time);
+          context.getMetrics().appendCompleted(member.getMember(), size, Duration.ofNanos(time));
+        }
       } else {
-        member.completeAppend();
+        member.completeAppend(size);
       }
 
       if (open) {
         if (error == null) {
           logger.trace("{} - Received {} from {}", context.getCluster().member().address(), response, member.getMember().address());
-          handleAppendResponse(member, request, response);
+
+          // If the member's nextIndex was rewound after the request was sent, the request was built from an
+          // optimistic nextIndex that's no longer valid, and the failure has already been handled.
+          if (generation != member.getAppendGeneration() && isRejected(request, response)) {
+            handleStaleAppendResponse(member, request, response);
+          } else {
+            handleAppendResponse(member, request, response);
+          }
         } else {
           handleAppendResponseFailure(member, request, error);
         }
@@ -214,7 +326,7 @@ abstract class AbstractAppender implements AutoCloseable {
     });
 
     updateNextIndex(member, request);
-    if (!request.entries().isEmpty() && hasMoreEntries(member)) {
+    if (request.hasEntries() && hasMoreEntries(member)) {
       appendEntries(member);
     }
   }
@@ -223,6 +335,9 @@ abstract class AbstractAppender implements AutoCloseable {
    * Handles an append failure.
    */
   protected void handleAppendRequestFailure(MemberState member, AppendRequest request, Throwable error) {
+    // The entries were never sent, so rewind the member's nextIndex to resend them.
+    rewindNextIndex(member, request);
+
     // Log the failed attempt to contact the member.
     failAttempt(member, error);
   }
@@ -231,10 +346,29 @@ abstract class AbstractAppender implements AutoCloseable {
    * Handles an append failure.
    */
   protected void handleAppendResponseFailure(MemberState member, AppendRequest request, Throwable error) {
+    // The entries may not have been received, so rewind the member's nextIndex to resend them.
+    rewindNextIndex(member, request);
+
     // Log the failed attempt to contact the member.
     failAttempt(member, error);
   }
 
+  /**
+   * Returns a boolean indicating whether the response rejected the request due to a log inconsistency.
+   */
+  private boolean isRejected(AppendRequest request, AppendResponse response) {
+    return response.status() == Response.Status.OK && !response.succeeded() && response.term() <= context.getTerm();
+  }
+
+  /**
+   * Handles a rejected append response to a request sent before the member's nextIndex was rewound.
+   */
+  protected void handleStaleAppendResponse(MemberState member, AppendRequest request, AppendResponse response) {
+    // Reset the member failure count and update the member's availability status if necessary.
+    succeedAttempt(member);
+    logger.trace("{} - Ignoring stale {} from {}", context.getCluster().member().address(), response, member.getMember().address());
+  }
+
   /**
    * Handles an append response.
    */
@@ -335,8 +469,8 @@ abstract class AbstractAppender implements AutoCloseable {
    */
   protected void updateNextIndex(MemberState member, AppendRequest request) {
     // If the match index was set, update the next index to be greater than the match index if necessary.
-    if (!request.entries().isEmpty()) {
-      member.setNextIndex(request.entries().get(request.entries().size()-1).getIndex()+1);
+    if (request.hasEntries()) {
+      member.setNextIndex(request.lastEntryIndex() + 1);
     }
   }
 
@@ -352,14 +486,31 @@ abstract class AbstractAppender implements AutoCloseable {
    * Resets the next index when a response fails.
    */
   protected void resetNextIndex(MemberState member) {
+    // Rewinding the nextIndex invalidates any pipelined requests still in flight to the member.
     if (member.getMatchIndex() != 0) {
-      member.setNextIndex(member.getMatchIndex() + 1);
+      member.rewind(member.getMatchIndex() + 1);
     } else {
-      member.setNextIndex(context.getLog().firstIndex());
+      member.rewind(context.getLog().firstIndex());
     }
+    context.getMetrics().nextIndexRewound(member.getMember(), member.getNextIndex());
     logger.trace("{} - Reset next index for {} to {}", context.getCluster().member().address(), member, member.getNextIndex());
   }
 
+  /**
+   * Rewinds the next index when a request with entries fails.
+   * <p>
+   * Because the nextIndex is advanced optimistically when a request is sent, a request that fails to reach the
+   * member leaves a gap in the member's log. The nextIndex is immediately rewound to the first entry in the failed
+   * request rather than waiting for subsequent requests to be rejected.
+   */
+  protected void rewindNextIndex(MemberState member, AppendRequest request) {
+    if (request.hasEntries() && member.getNextIndex() > request.logIndex() + 1) {
+      member.rewind(Math.max(request.logIndex() + 1, context.getLog().firstIndex()));
+      context.getMetrics().nextIndexRewound(member.getMember(), member.getNextIndex());
+      logger.trace("{} - Rewound next index for {} to {}", context.getCluster().member().address(), member, member.getNextIndex());
+    }
+  }
+
   /**
    * Builds a configure request for the given member.
    */
@@ -475,40 +626,81 @@ abstract class AbstractAppender implements AutoCloseable {
   }
 
   /**
-   * Builds an install request for the given member.
+   * Returns a boolean indicating whether an install request can be sent to the member.
+   * <p>
+   * Install requests are pipelined up to the configured {@link ServerContext#getSnapshotInstallWindow() window}.
+   * Once all chunks of the current snapshot have been sent, no more requests can be sent until the final chunk is
+   * acknowledged or the transfer is reset. If a {@link ServerContext#getSnapshotInstallRate() rate limit} is
+   * configured, permission to send the next chunk is acquired from the member's rate limiter. If the rate limit
+   * has been reached, the chunk will be sent on a subsequent response or heartbeat.
+   * <p>
+   * If the snapshot being sent has since been replaced or removed from the snapshot store, the transfer is reset
+   * to send the next snapshot from the start.
    */
-  protected InstallRequest buildInstallRequest(MemberState member) {
-    Snapshot snapshot = context.getSnapshotStore().currentSnapshot();
-    if (member.getNextSnapshotIndex() != snapshot.index()) {
-      member.setNextSnapshotIndex(snapshot.index()).setNextSnapshotOffset(0);
+  protected boolean canInstall(MemberState member) {
+    if (!member.canInstall(context.getSnapshotInstallWindow())) {
+      return false;
+    }
+
+    Snapshot snapshot = context.getSnapshotStore().nextSnapshot(member.getSnapshotIndex());
+    if (member.getSnapshot() != null && member.getSnapshot() != snapshot) {
+      resetInstall(member);
     }
 
-    InstallRequest request;
-    synchronized (snapshot) {
-      // Open a new snapshot reader.
-      try (SnapshotReader reader = snapshot.reader()) {
-        // Skip to the next batch of bytes according to the snapshot chunk size and current offset.
-        reader.skip(member.getNextSnapshotOffset() * MAX_BATCH_SIZE);
-        byte[] data = new byte[Math.min(MAX_BATCH_SIZE, (int) reader.remaining())];
-        reader.read(data);
-
-        // Create the install request, indicating whether this is the last chunk of data based on the number
-        // of bytes remaining in the buffer.
-        ServerMember leader = context.getLeader();
-        request = InstallRequest.builder()
-          .withTerm(context.getTerm())
-          .withLeader(leader != null ? leader.id() : 0)
-          .withIndex(member.getNextSnapshotIndex())
-          .withOffset(member.getNextSnapshotOffset())
-          .withData(data)
-          .withComplete(!reader.hasRemaining())
-          .build();
+    SnapshotReader reader = member.getSnapshotReader();
+    if (reader != null && !reader.hasRemaining()) {
+      return false;
+    }
+    return member.acquireInstallBytes(context.getSnapshotChunkSize(), context.getSnapshotInstallRate());
+  }
+
+  /**
+   * Builds an install request for the given member.
+   * <p>
+   * The snapshot reader is kept open across requests and positioned at the next chunk to send. A new reader is
+   * opened only when a new snapshot is sent or the transfer is reset. If the current snapshot is a delta, the
+   * snapshots in its chain are sent one at a time, starting after the last snapshot installed on the member.
+   */
+  protected InstallRequest buildInstallRequest(MemberState member) {
+    Snapshot snapshot = context.getSnapshotStore().nextSnapshot(member.getSnapshotIndex());
+    if (member.getSnapshot() != snapshot || member.getSnapshotReader() == null) {
+      synchronized (snapshot) {
+        member.setSnapshotReader(snapshot, snapshot.reader())
+          .setNextSnapshotIndex(snapshot.index())
+          .setNextSnapshotOffset(0);
       }
     }
 
+    // Read the next chunk of bytes from the snapshot.
+    SnapshotReader reader = member.getSnapshotReader();
+    byte[] data = new byte[(int) Math.min(context.getSnapshotChunkSize(), reader.remaining())];
+    reader.read(data);
+
+    // Create the install request, indicating whether this is the last chunk of data based on the number
+    // of bytes remaining in the buffer.
+    ServerMember leader = context.getLeader();
+    InstallRequest request = InstallRequest.builder()
+      .withTerm(context.getTerm())
+      .withLeader(leader != null ? leader.id() : 0)
+      .withIndex(member.getNextSnapshotIndex())
+      .withBaseIndex(snapshot.baseIndex())
+      .withOffset(member.getNextSnapshotOffset())
+      .withData(data)
+      .withComplete(!reader.hasRemaining())
+      .build();
+
+    // Advance the offset so the next chunk can be pipelined before this request is acknowledged.
+    member.setNextSnapshotOffset(member.getNextSnapshotOffset() + 1);
     return request;
   }
 
+  /**
+   * Resets the snapshot transfer to the member to resend the snapshot from the start.
+   */
+  protected void resetInstall(MemberState member) {
+    member.setNextSnapshotIndex(0).setNextSnapshotOffset(0).setSnapshotReader(null, null);
+  }
+
   /**
    * Connects to the member and sends a snapshot request.
    */
@@ -537,6 +729,9 @@ abstract class AbstractAppender implements AutoCloseable {
    * Sends a snapshot message.
    */
   protected void sendInstallRequest(Connection connection, MemberState member, InstallRequest request) {
+    // Store the reader from which the request was built to identify responses from earlier transfers.
+    SnapshotReader reader = member.getSnapshotReader();
+
     logger.trace("{} - Sending {} to {}", context.getCluster().member().address(), request, member.getMember().serverAddress());
     connection.<InstallRequest, InstallResponse>sendAndReceive(request).whenComplete((response, error) -> {
       context.checkThread();
@@ -544,6 +739,11 @@ abstract class AbstractAppender implements AutoCloseable {
       // Complete the install to the member.
       member.completeInstall();
 
+      // If the transfer was reset after the request was sent, ignore the response.
+      if (reader != member.getSnapshotReader()) {
+        return;
+      }
+
       if (open) {
         if (error == null) {
           logger.trace("{} - Received {} from {}", context.getCluster().member().address(), response, member.getMember().serverAddress());
@@ -556,12 +756,20 @@ abstract class AbstractAppender implements AutoCloseable {
         }
       }
     });
+
+    // If more chunks remain, pipeline the next chunk.
+    if (!request.complete()) {
+      appendEntries(member);
+    }
   }
 
   /**
    * Handles an install request failure.
    */
   protected void handleInstallRequestFailure(MemberState member, InstallRequest request, Throwable error) {
+    // The chunk was never sent, so resend the snapshot from the start.
+    resetInstall(member);
+
     // Log the failed attempt to contact the member.
     failAttempt(member, error);
   }
@@ -572,7 +780,7 @@ abstract class AbstractAppender implements AutoCloseable {
   protected void handleInstallResponseFailure(MemberState member, InstallRequest request, Throwable error) {
     // Reset the member's snapshot index and offset to resend the snapshot from the start
     // once a connection to the member is re-established.
-    member.setNextSnapshotIndex(0).setNextSnapshotOffset(0);
+    resetInstall(member);
 
     // Log the failed attempt to contact the member.
     failAttempt(member, error);
@@ -600,13 +808,8 @@ abstract class AbstractAppender implements AutoCloseable {
     // If the install request was completed successfully, set the member's snapshotIndex and reset
     // the next snapshot index/offset.
     if (request.complete()) {
-      member.setSnapshotIndex(request.index())
-        .setNextSnapshotIndex(0)
-        .setNextSnapshotOffset(0);
-    }
-    // If more install requests remain, increment the member's snapshot offset.
-    else {
-      member.setNextSnapshotOffset(request.offset() + 1);
+      member.setSnapshotIndex(request.index());
+      resetInstall(member);
     }
 
     // Recursively append entries to the member.
@@ -619,12 +822,23 @@ abstract class AbstractAppender implements AutoCloseable {
   @SuppressWarnings("unused")
   protected void handleInstallResponseError(MemberState member, InstallRequest request, InstallResponse response) {
     logger.warn("{} - Failed to install {}", context.getCluster().member().address(), member.getMember().serverAddress());
-    member.setNextSnapshotIndex(0).setNextSnapshotOffset(0);
+    resetInstall(member);
+
+    // If the member rejected a delta snapshot, it may be missing the base snapshot, so resend the snapshot
+    // chain from the full snapshot.
+    if (request.baseIndex() > 0) {
+      member.setSnapshotIndex(0);
+    }
   }
 
   @Override
   public void close() {
     open = false;
+
+    // Close any snapshot readers held open for in-progress transfers.
+    for (MemberState member : context.getClusterState().getRemoteMemberStates()) {
+      member.setSnapshotReader(null, null);
+    }
   }
 
 }
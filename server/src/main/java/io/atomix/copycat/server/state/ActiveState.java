@@ -19,9 +19,12 @@ import io.atomix.copycat.protocol.Request;
 import io.atomix.copycat.protocol.Response;
 import io.atomix.copycat.server.CopycatServer;
 import io.atomix.copycat.server.protocol.*;
+import io.atomix.copycat.server.storage.Log;
 import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.entry.RawEntry;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 /**
@@ -44,7 +47,7 @@ abstract class ActiveState extends PassiveState {
     // assign that term and leader to the current context and transition to follower.
     boolean transition = updateTermAndLeader(request.term(), request.leader());
 
-    CompletableFuture<AppendResponse> future = CompletableFuture.completedFuture(logResponse(handleAppend(request)));
+    CompletableFuture<AppendResponse> future = awaitWrite(handleAppend(request)).thenApply(this::logResponse);
 
     // If a transition is required then transition back to the follower state.
     // If the node is already a follower then the transition will be ignored.
@@ -92,36 +95,33 @@ abstract class ActiveState extends PassiveState {
   @Override
   protected AppendResponse appendEntries(AppendRequest request) {
     // Get the last entry index or default to the request log index.
-    long lastEntryIndex = request.logIndex();
-    if (!request.entries().isEmpty()) {
-      lastEntryIndex = request.entries().get(request.entries().size() - 1).getIndex();
-    }
+    long lastEntryIndex = request.lastEntryIndex();
 
     // Ensure the commitIndex is not increased beyond the index of the last entry in the request.
     long commitIndex = Math.max(context.getCommitIndex(), Math.min(request.commitIndex(), lastEntryIndex));
 
+    // Verify the checksums of raw entries before modifying the log. If an entry was corrupted in transit,
+    // reject the request so the leader resends the entries.
+    for (RawEntry entry : request.rawEntries()) {
+      if (!entry.isValid()) {
+        LOGGER.debug("{} - Rejected {}: Checksum mismatch for entry {}", context.getCluster().member().address(), request, entry.index());
+        return AppendResponse.builder()
+          .withStatus(Response.Status.OK)
+          .withTerm(context.getTerm())
+          .withSucceeded(false)
+          .withLogIndex(request.logIndex())
+          .build();
+      }
+    }
+
     // Iterate through request entries and append them to the log.
     for (Entry entry : request.entries()) {
-      // If the entry index is greater than the last log index, skip missing entries.
-      if (context.getLog().lastIndex() < entry.getIndex()) {
-        context.getLog().skip(entry.getIndex() - context.getLog().lastIndex() - 1).append(entry);
-        LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
-      } else if (entry.getIndex() > context.getCommitIndex()) {
-        // Compare the term of the received entry with the matching entry in the log.
-        long term = context.getLog().term(entry.getIndex());
-        if (term != 0) {
-          if (entry.getTerm() != term) {
-            // We found an invalid entry in the log. Remove the invalid entry and append the new entry.
-            // If appending to the log fails, apply commits and reply false to the append request.
-            LOGGER.debug("{} - Appended entry term does not match local log, removing incorrect entries", context.getCluster().member().address());
-            context.getLog().truncate(entry.getIndex() - 1).append(entry);
-            LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
-          }
-        } else {
-          context.getLog().truncate(entry.getIndex() - 1).append(entry);
-          LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.getIndex());
-        }
-      }
+      appendEntry(entry.getIndex(), entry.getTerm(), entry, log -> log.append(entry));
+    }
+
+    // Raw entries are copied into the log without being deserialized.
+    for (RawEntry entry : request.rawEntries()) {
+      appendEntry(entry.index(), entry.term(), entry, log -> log.appendRaw(entry));
     }
 
     // If we've made it this far, apply commits and send a successful response.
@@ -144,6 +144,32 @@ abstract class ActiveState extends PassiveState {
       .build();
   }
 
+  /**
+   * Appends an entry to the log, replacing any conflicting entries.
+   */
+  private void appendEntry(long index, long term, Object entry, Consumer<Log> appender) {
+    // If the entry index is greater than the last log index, skip missing entries.
+    if (context.getLog().lastIndex() < index) {
+      appender.accept(context.getLog().skip(index - context.getLog().lastIndex() - 1));
+      LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, index);
+    } else if (index > context.getCommitIndex()) {
+      // Compare the term of the received entry with the matching entry in the log.
+      long localTerm = context.getLog().term(index);
+      if (localTerm != 0) {
+        if (term != localTerm) {
+          // We found an invalid entry in the log. Remove the invalid entry and append the new entry.
+          // If appending to the log fails, apply commits and reply false to the append request.
+          LOGGER.debug("{} - Appended entry term does not match local log, removing incorrect entries", context.getCluster().member().address());
+          appender.accept(context.getLog().truncate(index - 1));
+          LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, index);
+        }
+      } else {
+        appender.accept(context.getLog().truncate(index - 1));
+        LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, index);
+      }
+    }
+  }
+
   @Override
   public CompletableFuture<PollResponse> poll(PollRequest request) {
     context.checkThread();
@@ -29,6 +29,7 @@ import io.atomix.copycat.server.protocol.InstallResponse;
 
 import java.time.Instant;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
@@ -148,7 +149,7 @@ final class LeaderAppender extends AbstractAppender {
       context.setCommitIndex(index);
       context.setGlobalIndex(index);
       completeCommits(previousCommitIndex, index);
-      return CompletableFuture.completedFuture(index);
+      return context.getLog().awaitFlush(index);
     }
     // If there are no other active members in the cluster, update the commit index and complete the commit.
     // The updated commit index will be sent to passive/reserve members on heartbeats.
@@ -156,16 +157,35 @@ final class LeaderAppender extends AbstractAppender {
       long previousCommitIndex = context.getCommitIndex();
       context.setCommitIndex(index);
       completeCommits(previousCommitIndex, index);
-      return CompletableFuture.completedFuture(index);
+      return context.getLog().awaitFlush(index);
     }
 
     // Only send entry-specific AppendRequests to active members of the cluster.
-    return appendFutures.computeIfAbsent(index, i -> {
-      for (MemberState member : context.getClusterState().getActiveMemberStates()) {
-        appendEntries(member);
+    CompletableFuture<Long> future = appendFutures.get(index);
+    if (future == null) {
+      CompletableFuture<Long> newFuture = new CompletableFuture<>();
+      appendFutures.put(index, newFuture);
+
+      // If the entry has not yet been written to the local log, send AppendRequests once the write completes
+      // since only written entries are replicated.
+      if (index > context.getLog().writeIndex()) {
+        context.getLog().awaitWrite(index).whenComplete((writeIndex, error) -> {
+          if (error == null) {
+            for (MemberState member : context.getClusterState().getActiveMemberStates()) {
+              appendEntries(member);
+            }
+          } else if (appendFutures.remove(index, newFuture)) {
+            newFuture.completeExceptionally(error);
+          }
+        });
+      } else {
+        for (MemberState member : context.getClusterState().getActiveMemberStates()) {
+          appendEntries(member);
+        }
       }
-      return new CompletableFuture<>();
-    });
+      future = newFuture;
+    }
+    return future;
   }
 
   @Override
@@ -195,7 +215,7 @@ final class LeaderAppender extends AbstractAppender {
     }
     // If the member is a reserve or passive member, send an empty AppendRequest to it.
     else if (member.getMember().type() == Member.Type.RESERVE || member.getMember().type() == Member.Type.PASSIVE) {
-      if (member.canAppend()) {
+      if (canAppend(member)) {
         sendAppendRequest(member, buildAppendEmptyRequest(member));
       }
     }
@@ -204,13 +224,13 @@ final class LeaderAppender extends AbstractAppender {
     else if (member.getMember().type() == Member.Type.ACTIVE && context.getSnapshotStore().currentSnapshot() != null
       && context.getSnapshotStore().currentSnapshot().index() >= member.getNextIndex()
       && context.getSnapshotStore().currentSnapshot().index() > member.getSnapshotIndex()) {
-      if (member.canInstall()) {
+      if (canInstall(member)) {
         sendInstallRequest(member, buildInstallRequest(member));
       }
     }
     // If no AppendRequest is already being sent, send an AppendRequest.
-    else if (member.canAppend()) {
-      sendAppendRequest(member, buildAppendRequest(member, context.getLog().lastIndex()));
+    else if (canAppend(member)) {
+      sendAppendRequest(member, buildAppendRequest(member, context.getLog().writeIndex()));
     }
   }
 
@@ -219,7 +239,7 @@ final class LeaderAppender extends AbstractAppender {
     // If the member's nextIndex is an entry in the local log then more entries can be sent.
     return member.getMember().type() != Member.Type.RESERVE
       && member.getMember().type() != Member.Type.PASSIVE
-      && member.getNextIndex() <= context.getLog().lastIndex();
+      && member.getNextIndex() <= context.getLog().writeIndex();
   }
 
   /**
@@ -342,14 +362,30 @@ final class LeaderAppender extends AbstractAppender {
 
   /**
    * Completes append entries attempts up to the given index.
+   * <p>
+   * Commit futures are completed only once the leader's log has been flushed up to the commit index. If group
+   * commit is enabled, all the futures committed by this call share a single flush of the log.
    */
   private void completeCommits(long previousCommitIndex, long commitIndex) {
+    Map<Long, CompletableFuture<Long>> futures = new LinkedHashMap<>();
     for (long i = previousCommitIndex + 1; i <= commitIndex; i++) {
       CompletableFuture<Long> future = appendFutures.remove(i);
       if (future != null) {
-        future.complete(i);
+        futures.put(i, future);
       }
     }
+
+    if (!futures.isEmpty()) {
+      context.getLog().awaitFlush(commitIndex).whenComplete((flushIndex, flushError) -> {
+        for (Map.Entry<Long, CompletableFuture<Long>> entry : futures.entrySet()) {
+          if (flushError == null) {
+            entry.getValue().complete(entry.getKey());
+          } else {
+            entry.getValue().completeExceptionally(flushError);
+          }
+        }
+      });
+    }
   }
 
   /**
@@ -393,6 +429,14 @@ final class LeaderAppender extends AbstractAppender {
     super.handleAppendResponse(member, request, response);
   }
 
+  @Override
+  protected void handleStaleAppendResponse(MemberState member, AppendRequest request, AppendResponse response) {
+    // Trigger commit futures if necessary.
+    updateHeartbeatTime(member, null);
+
+    super.handleStaleAppendResponse(member, request, response);
+  }
+
   /**
    * Handles a {@link Response.Status#OK} response.
    */
@@ -406,7 +450,7 @@ final class LeaderAppender extends AbstractAppender {
       updateMatchIndex(member, response);
 
       // If entries were committed to the replica then check commit indexes.
-      if (!request.entries().isEmpty()) {
+      if (request.hasEntries()) {
         commitEntries();
       }
 
@@ -17,6 +17,8 @@ package io.atomix.copycat.server.state;
 
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.storage.Log;
+import io.atomix.copycat.server.storage.snapshot.Snapshot;
+import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
 
 /**
  * Cluster member state.
@@ -24,7 +26,6 @@ import io.atomix.copycat.server.storage.Log;
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 final class MemberState {
-  private static final int MAX_APPENDS = 2;
   private final ServerMember member;
   private long term;
   private long configIndex;
@@ -36,12 +37,17 @@ final class MemberState {
   private long heartbeatTime;
   private long heartbeatStartTime;
   private int appending;
+  private long appendingBytes;
+  private int appendBatchSize;
   private boolean appendSucceeded;
-  private long appendTime;
+  private long appendGeneration;
   private boolean configuring;
-  private boolean installing;
+  private int installing;
+  private Snapshot snapshot;
+  private SnapshotReader snapshotReader;
+  private double installCredit;
+  private long installTime;
   private int failures;
-  private final TimeBuffer timeBuffer = new TimeBuffer(8);
 
   public MemberState(ServerMember member, ClusterState cluster) {
     this.member = Assert.notNull(member, "member").setCluster(cluster);
@@ -58,9 +64,14 @@ final class MemberState {
     heartbeatTime = 0;
     heartbeatStartTime = 0;
     appending = 0;
-    timeBuffer.reset();
+    appendingBytes = 0;
+    appendBatchSize = 0;
+    appendGeneration++;
     configuring = false;
-    installing = false;
+    installing = 0;
+    setSnapshotReader(null, null);
+    installCredit = 0;
+    installTime = 0;
     appendSucceeded = false;
     failures = 0;
   }
@@ -174,6 +185,43 @@ final class MemberState {
     return this;
   }
 
+  /**
+   * Returns the snapshot being sent to the member.
+   *
+   * @return The snapshot being sent to the member or {@code null} if no snapshot is being sent.
+   */
+  Snapshot getSnapshot() {
+    return snapshot;
+  }
+
+  /**
+   * Returns the reader for the snapshot being sent to the member.
+   *
+   * @return The reader for the snapshot being sent to the member or {@code null} if no snapshot is being sent.
+   */
+  SnapshotReader getSnapshotReader() {
+    return snapshotReader;
+  }
+
+  /**
+   * Sets the snapshot being sent to the member and its reader.
+   * <p>
+   * The reader is kept open and positioned at the next chunk to send across install requests. If a different
+   * reader was previously set, the previous reader is closed.
+   *
+   * @param snapshot The snapshot being sent to the member.
+   * @param snapshotReader The reader for the snapshot being sent to the member.
+   * @return The member state.
+   */
+  MemberState setSnapshotReader(Snapshot snapshot, SnapshotReader snapshotReader) {
+    if (this.snapshotReader != null && this.snapshotReader != snapshotReader) {
+      this.snapshotReader.close();
+    }
+    this.snapshot = snapshot;
+    this.snapshotReader = snapshotReader;
+    return this;
+  }
+
   /**
    * Returns the member's match index.
    *
@@ -216,11 +264,17 @@ final class MemberState {
 
   /**
    * Returns a boolean indicating whether an append request can be sent to the member.
+   * <p>
+   * Append requests are pipelined to the member up to the given window. A single request may always be sent if no
+   * requests are in flight. Additional requests are sent only if the last append to the member succeeded and both
+   * the number of in-flight requests and the number of in-flight bytes are within the window.
    *
+   * @param window The maximum number of append requests in flight to the member.
+   * @param windowSize The maximum number of entry bytes in flight to the member.
    * @return Indicates whether an append request can be sent to the member.
    */
-  boolean canAppend() {
-    return appending == 0 || (appendSucceeded && appending < MAX_APPENDS && System.nanoTime() - (timeBuffer.average() / MAX_APPENDS) >= appendTime);
+  boolean canAppend(int window, long windowSize) {
+    return appending == 0 || (appendSucceeded && appending < window && appendingBytes < windowSize);
   }
 
   /**
@@ -255,33 +309,86 @@ final class MemberState {
   /**
    * Starts an append request to the member.
    *
+   * @param bytes The number of entry bytes in the request.
    * @return The member state.
    */
-  MemberState startAppend() {
+  MemberState startAppend(int bytes) {
     appending++;
-    appendTime = System.nanoTime();
+    appendingBytes += bytes;
     return this;
   }
 
   /**
    * Completes an append request to the member.
    *
+   * @param bytes The number of entry bytes in the request.
    * @return The member state.
    */
-  MemberState completeAppend() {
+  MemberState completeAppend(int bytes) {
     appending--;
+    appendingBytes -= bytes;
     return this;
   }
 
   /**
-   * Completes an append request to the member.
+   * Returns the maximum number of entry bytes to send to the member in a single append request.
    *
-   * @param time The time in milliseconds for the append.
+   * @return The member's append batch size, or {@code 0} if the batch size has not been set.
+   */
+  int getAppendBatchSize() {
+    return appendBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of entry bytes to send to the member in a single append request.
+   *
+   * @param appendBatchSize The member's append batch size.
    * @return The member state.
    */
-  MemberState completeAppend(long time) {
-    timeBuffer.record(time);
-    return completeAppend();
+  MemberState setAppendBatchSize(int appendBatchSize) {
+    this.appendBatchSize = Assert.arg(appendBatchSize, appendBatchSize > 0, "appendBatchSize must be positive");
+    return this;
+  }
+
+  /**
+   * Returns the member's append generation.
+   * <p>
+   * The generation is incremented each time the member's {@code nextIndex} is rewound. Responses to requests sent
+   * in a prior generation were built from a {@code nextIndex} that's no longer valid.
+   *
+   * @return The member's append generation.
+   */
+  long getAppendGeneration() {
+    return appendGeneration;
+  }
+
+  /**
+   * Rewinds the member's next index after a failed append, invalidating append requests in flight.
+   *
+   * @param nextIndex The member's next index.
+   * @return The member state.
+   */
+  MemberState rewind(long nextIndex) {
+    appendGeneration++;
+    return setNextIndex(nextIndex);
+  }
+
+  /**
+   * Returns the number of append requests in flight to the member.
+   *
+   * @return The number of append requests in flight to the member.
+   */
+  int getAppending() {
+    return appending;
+  }
+
+  /**
+   * Returns the number of entry bytes in flight to the member.
+   *
+   * @return The number of entry bytes in flight to the member.
+   */
+  long getAppendingBytes() {
+    return appendingBytes;
   }
 
   /**
@@ -316,10 +423,41 @@ final class MemberState {
   /**
    * Returns a boolean indicating whether an install request can be sent to the member.
    *
+   * @param window The maximum number of install requests in flight to the member.
    * @return Indicates whether an install request can be sent to the member.
    */
-  boolean canInstall() {
-    return !installing;
+  boolean canInstall(int window) {
+    return installing < window;
+  }
+
+  /**
+   * Attempts to acquire permission to send the given number of snapshot bytes to the member.
+   * <p>
+   * Snapshot bytes are rate limited with a token bucket that accumulates up to one second's worth of bytes.
+   *
+   * @param bytes The number of bytes to send.
+   * @param rate The maximum number of bytes per second to send, or {@code 0} for no limit.
+   * @return Indicates whether the bytes can be sent.
+   */
+  boolean acquireInstallBytes(int bytes, long rate) {
+    if (rate <= 0) {
+      return true;
+    }
+
+    long time = System.nanoTime();
+    double limit = Math.max(rate, bytes);
+    if (installTime == 0) {
+      installCredit = limit;
+    } else {
+      installCredit = Math.min(limit, installCredit + (time - installTime) * rate / 1_000_000_000d);
+    }
+    installTime = time;
+
+    if (installCredit >= bytes) {
+      installCredit -= bytes;
+      return true;
+    }
+    return false;
   }
 
   /**
@@ -328,7 +466,7 @@ final class MemberState {
    * @return The member state.
    */
   MemberState startInstall() {
-    installing = true;
+    installing++;
     return this;
   }
 
@@ -338,7 +476,7 @@ final class MemberState {
    * @return The member state.
    */
   MemberState completeInstall() {
-    installing = false;
+    installing--;
     return this;
   }
 
@@ -415,53 +553,4 @@ final class MemberState {
     return member.serverAddress().toString();
   }
 
-  /**
-   * Timestamp ring buffer.
-   */
-  private static class TimeBuffer {
-    private final long[] buffer;
-    private int position;
-
-    public TimeBuffer(int size) {
-      this.buffer = new long[size];
-    }
-
-    /**
-     * Records a request round trip time.
-     *
-     * @param time The request round trip time to record.
-     */
-    public void record(long time) {
-      buffer[position++] = time;
-      if (position >= buffer.length) {
-        position = 0;
-      }
-    }
-
-    /**
-     * Returns the average of all recorded round trip times.
-     *
-     * @return The average of all recorded round trip times.
-     */
-    public long average() {
-      long total = 0;
-      for (long time : buffer) {
-        if (time > 0) {
-          total += time;
-        }
-      }
-      return total / buffer.length;
-    }
-
-    /**
-     * Resets the recorded round trip times.
-     */
-    public void reset() {
-      for (int i = 0; i < buffer.length; i++) {
-        buffer[i] = 0;
-      }
-      position = 0;
-    }
-  }
-
 }
@@ -29,6 +29,7 @@ import io.atomix.copycat.server.protocol.InstallResponse;
 import io.atomix.copycat.server.session.ServerSession;
 import io.atomix.copycat.server.storage.entry.Entry;
 import io.atomix.copycat.server.storage.entry.QueryEntry;
+import io.atomix.copycat.server.storage.entry.RawEntry;
 import io.atomix.copycat.server.storage.snapshot.Snapshot;
 import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
 
@@ -111,7 +112,22 @@ class PassiveState extends ReserveState {
     logRequest(request);
     updateTermAndLeader(request.term(), request.leader());
 
-    return CompletableFuture.completedFuture(logResponse(handleAppend(request)));
+    return awaitWrite(handleAppend(request)).thenApply(this::logResponse);
+  }
+
+  /**
+   * Returns a future to be completed with the given response once the appended entries have been written.
+   * <p>
+   * If {@link io.atomix.copycat.server.storage.Storage#asyncWrites() asynchronous writes} are enabled, appended
+   * entries may still be queued by the log writer once the request has been handled. Entries must not be
+   * acknowledged to the leader before they've been written, so successful responses are completed once the
+   * log has been written up to the response's log index.
+   */
+  protected CompletableFuture<AppendResponse> awaitWrite(AppendResponse response) {
+    if (!response.succeeded()) {
+      return CompletableFuture.completedFuture(response);
+    }
+    return context.getLog().awaitWrite(response.logIndex()).thenApply(index -> response);
   }
 
   /**
@@ -189,14 +205,25 @@ class PassiveState extends ReserveState {
    */
   protected AppendResponse appendEntries(AppendRequest request) {
     // Get the last entry index or default to the request log index.
-    long lastEntryIndex = request.logIndex();
-    if (!request.entries().isEmpty()) {
-      lastEntryIndex = request.entries().get(request.entries().size() - 1).getIndex();
-    }
+    long lastEntryIndex = request.lastEntryIndex();
 
     // Ensure the commitIndex is not increased beyond the index of the last entry in the request.
     long commitIndex = Math.max(context.getCommitIndex(), Math.min(request.commitIndex(), lastEntryIndex));
 
+    // Verify the checksums of raw entries before modifying the log. If an entry was corrupted in transit,
+    // reject the request so the entries are resent.
+    for (RawEntry entry : request.rawEntries()) {
+      if (!entry.isValid()) {
+        LOGGER.debug("{} - Rejected {}: Checksum mismatch for entry {}", context.getCluster().member().address(), request, entry.index());
+        return AppendResponse.builder()
+          .withStatus(Response.Status.OK)
+          .withTerm(context.getTerm())
+          .withSucceeded(false)
+          .withLogIndex(context.getLog().lastIndex())
+          .build();
+      }
+    }
+
     // Append entries to the log starting at the last log index.
     for (Entry entry : request.entries()) {
       // If the entry index is greater than the last index and less than the commit index, append the entry.
@@ -207,6 +234,14 @@ class PassiveState extends ReserveState {
       }
     }
 
+    // Raw entries are copied into the log without being deserialized.
+    for (RawEntry entry : request.rawEntries()) {
+      if (context.getLog().lastIndex() < entry.index() && entry.index() <= commitIndex) {
+        context.getLog().skip(entry.index() - context.getLog().lastIndex() - 1).appendRaw(entry);
+        LOGGER.trace("{} - Appended {} to log at index {}", context.getCluster().member().address(), entry, entry.index());
+      }
+    }
+
     // Update the context commit and global indices.
     long previousCommitIndex = context.getCommitIndex();
     context.setCommitIndex(commitIndex);
@@ -418,7 +453,9 @@ class PassiveState extends ReserveState {
     // where snapshots must be sent since entries can still legitimately exist prior to the snapshot,
     // and so snapshots aren't simply sent at the beginning of the follower's log, but rather the
     // leader dictates when a snapshot needs to be sent.
-    if (pendingSnapshot != null && request.index() != pendingSnapshot.index()) {
+    // Similarly, if the leader restarted the transfer of the pending snapshot from the first chunk, discard the
+    // chunks received so far.
+    if (pendingSnapshot != null && (request.index() != pendingSnapshot.index() || (request.offset() == 0 && nextSnapshotOffset > 0))) {
       pendingSnapshot.close();
       pendingSnapshot.delete();
       pendingSnapshot = null;
@@ -435,7 +472,15 @@ class PassiveState extends ReserveState {
           .build()));
       }
 
-      pendingSnapshot = context.getSnapshotStore().createSnapshot(request.index());
+      // A delta snapshot can only be installed on top of its base snapshot.
+      if (request.baseIndex() > 0 && context.getSnapshotStore().snapshot(request.baseIndex()) == null) {
+        return CompletableFuture.completedFuture(logResponse(InstallResponse.builder()
+          .withStatus(Response.Status.ERROR)
+          .withError(CopycatError.Type.ILLEGAL_MEMBER_STATE_ERROR)
+          .build()));
+      }
+
+      pendingSnapshot = context.getSnapshotStore().createSnapshot(request.index(), request.baseIndex());
       nextSnapshotOffset = 0;
     }
 
@@ -447,6 +492,14 @@ class PassiveState extends ReserveState {
         .build()));
     }
 
+    // If the request offset is less than the next expected snapshot offset, the chunk was already written
+    // by a prior request. Succeed the request without rewriting the chunk.
+    if (request.offset() < nextSnapshotOffset) {
+      return CompletableFuture.completedFuture(logResponse(InstallResponse.builder()
+        .withStatus(Response.Status.OK)
+        .build()));
+    }
+
     // Write the data to the snapshot.
     try (SnapshotWriter writer = pendingSnapshot.writer()) {
       writer.write(request.data());
@@ -25,6 +25,7 @@ import io.atomix.catalyst.transport.Connection;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.protocol.*;
 import io.atomix.copycat.server.CopycatServer;
+import io.atomix.copycat.server.ServerMetrics;
 import io.atomix.copycat.server.Snapshottable;
 import io.atomix.copycat.server.StateMachine;
 import io.atomix.copycat.server.cluster.Cluster;
@@ -68,12 +69,22 @@ public class ServerContext implements AutoCloseable {
   private SnapshotStore snapshot;
   private ServerStateMachine stateMachine;
   protected final ThreadContext stateContext;
+  protected final ThreadContext snapshotContext;
   protected final ConnectionManager connections;
   protected ServerState state = new InactiveState(this);
   private Duration electionTimeout = Duration.ofMillis(500);
   private Duration sessionTimeout = Duration.ofMillis(5000);
   private Duration heartbeatInterval = Duration.ofMillis(150);
   private Duration globalSuspendTimeout = Duration.ofHours(1);
+  private int snapshotChunkSize = 1024 * 32;
+  private int snapshotInstallWindow = 4;
+  private long snapshotInstallRate;
+  private int appendWindow = 8;
+  private int appendWindowSize = 1024 * 1024;
+  private int maxAppendBatchSize = 1024 * 512;
+  private int maxAppendBatchEntries = 1024 * 8;
+  private boolean rawAppendEntries;
+  private ServerMetrics metrics = ServerMetrics.NONE;
   private volatile int leader;
   private volatile long term;
   private int lastVotedFor;
@@ -89,6 +100,7 @@ public class ServerContext implements AutoCloseable {
     this.connections = Assert.notNull(connections, "connections");
     this.stateMachineFactory = Assert.notNull(stateMachineFactory, "stateMachineFactory");
     this.stateContext = new SingleThreadContext(String.format("copycat-server-%s-%s-state", serverAddress, name), threadContext.serializer().clone());
+    this.snapshotContext = new SingleThreadContext(String.format("copycat-server-%s-%s-snapshot", serverAddress, name), threadContext.serializer().clone());
 
     // Open the meta store.
     threadContext.execute(() -> this.meta = storage.openMetaStore(name)).join();
@@ -239,6 +251,186 @@ public class ServerContext implements AutoCloseable {
     return this;
   }
 
+  /**
+   * Returns the maximum number of snapshot bytes to send in a single install request.
+   *
+   * @return The snapshot chunk size.
+   */
+  public int getSnapshotChunkSize() {
+    return snapshotChunkSize;
+  }
+
+  /**
+   * Sets the maximum number of snapshot bytes to send in a single install request.
+   *
+   * @param snapshotChunkSize The snapshot chunk size.
+   * @return The Raft context.
+   */
+  public ServerContext setSnapshotChunkSize(int snapshotChunkSize) {
+    this.snapshotChunkSize = Assert.arg(snapshotChunkSize, snapshotChunkSize > 0, "snapshotChunkSize must be positive");
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of install requests in flight to a single member.
+   *
+   * @return The snapshot install window.
+   */
+  public int getSnapshotInstallWindow() {
+    return snapshotInstallWindow;
+  }
+
+  /**
+   * Sets the maximum number of install requests in flight to a single member.
+   *
+   * @param snapshotInstallWindow The snapshot install window.
+   * @return The Raft context.
+   */
+  public ServerContext setSnapshotInstallWindow(int snapshotInstallWindow) {
+    this.snapshotInstallWindow = Assert.arg(snapshotInstallWindow, snapshotInstallWindow > 0, "snapshotInstallWindow must be positive");
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of snapshot bytes per second to send to a single member.
+   *
+   * @return The snapshot install rate, or {@code 0} if the rate is unlimited.
+   */
+  public long getSnapshotInstallRate() {
+    return snapshotInstallRate;
+  }
+
+  /**
+   * Sets the maximum number of snapshot bytes per second to send to a single member.
+   *
+   * @param snapshotInstallRate The snapshot install rate, or {@code 0} for no limit.
+   * @return The Raft context.
+   */
+  public ServerContext setSnapshotInstallRate(long snapshotInstallRate) {
+    this.snapshotInstallRate = Assert.argNot(snapshotInstallRate, snapshotInstallRate < 0, "snapshotInstallRate cannot be negative");
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of append requests in flight to a single member.
+   *
+   * @return The append window.
+   */
+  public int getAppendWindow() {
+    return appendWindow;
+  }
+
+  /**
+   * Sets the maximum number of append requests in flight to a single member.
+   *
+   * @param appendWindow The append window.
+   * @return The Raft context.
+   */
+  public ServerContext setAppendWindow(int appendWindow) {
+    this.appendWindow = Assert.arg(appendWindow, appendWindow > 0, "appendWindow must be positive");
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of entry bytes in flight to a single member.
+   *
+   * @return The append window size.
+   */
+  public int getAppendWindowSize() {
+    return appendWindowSize;
+  }
+
+  /**
+   * Sets the maximum number of entry bytes in flight to a single member.
+   *
+   * @param appendWindowSize The append window size.
+   * @return The Raft context.
+   */
+  public ServerContext setAppendWindowSize(int appendWindowSize) {
+    this.appendWindowSize = Assert.arg(appendWindowSize, appendWindowSize > 0, "appendWindowSize must be positive");
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of entry bytes to send in a single append request.
+   *
+   * @return The maximum append batch size.
+   */
+  public int getMaxAppendBatchSize() {
+    return maxAppendBatchSize;
+  }
+
+  /**
+   * Sets the maximum number of entry bytes to send in a single append request.
+   *
+   * @param maxAppendBatchSize The maximum append batch size.
+   * @return The Raft context.
+   */
+  public ServerContext setMaxAppendBatchSize(int maxAppendBatchSize) {
+    this.maxAppendBatchSize = Assert.arg(maxAppendBatchSize, maxAppendBatchSize > 0, "maxAppendBatchSize must be positive");
+    return this;
+  }
+
+  /**
+   * Returns the maximum number of entries to send in a single append request.
+   *
+   * @return The maximum number of entries in an append request.
+   */
+  public int getMaxAppendBatchEntries() {
+    return maxAppendBatchEntries;
+  }
+
+  /**
+   * Sets the maximum number of entries to send in a single append request.
+   *
+   * @param maxAppendBatchEntries The maximum number of entries in an append request.
+   * @return The Raft context.
+   */
+  public ServerContext setMaxAppendBatchEntries(int maxAppendBatchEntries) {
+    this.maxAppendBatchEntries = Assert.arg(maxAppendBatchEntries, maxAppendBatchEntries > 0, "maxAppendBatchEntries must be positive");
+    return this;
+  }
+
+  /**
+   * Returns whether entries are replicated in their serialized form.
+   *
+   * @return Whether entries are replicated in their serialized form.
+   */
+  public boolean isRawAppendEntries() {
+    return rawAppendEntries;
+  }
+
+  /**
+   * Sets whether entries are replicated in their serialized form.
+   *
+   * @param rawAppendEntries Whether entries are replicated in their serialized form.
+   * @return The Raft context.
+   */
+  public ServerContext setRawAppendEntries(boolean rawAppendEntries) {
+    this.rawAppendEntries = rawAppendEntries;
+    return this;
+  }
+
+  /**
+   * Returns the server metrics.
+   *
+   * @return The server metrics.
+   */
+  public ServerMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Sets the server metrics.
+   *
+   * @param metrics The server metrics.
+   * @return The Raft context.
+   */
+  public ServerContext setMetrics(ServerMetrics metrics) {
+    this.metrics = Assert.notNull(metrics, "metrics");
+    return this;
+  }
+
   /**
    * Sets the state leader.
    *
@@ -490,7 +682,7 @@ public class ServerContext implements AutoCloseable {
     }
 
     // Create a new internal server state machine.
-    this.stateMachine = new ServerStateMachine(stateMachine, this, stateContext);
+    this.stateMachine = new ServerStateMachine(stateMachine, this, stateContext, snapshotContext);
     return this;
   }
 
@@ -652,6 +844,7 @@ public class ServerContext implements AutoCloseable {
     } catch (Exception e) {
     }
     stateMachine.close();
+    snapshotContext.close();
     threadContext.close();
   }
 
@@ -21,19 +21,25 @@ import io.atomix.catalyst.concurrent.ThreadContext;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.error.InternalException;
 import io.atomix.copycat.error.UnknownSessionException;
+import io.atomix.copycat.server.ConcurrentSnapshottable;
+import io.atomix.copycat.server.IncrementalSnapshottable;
 import io.atomix.copycat.server.Snapshottable;
 import io.atomix.copycat.server.StateMachine;
 import io.atomix.copycat.server.session.SessionListener;
 import io.atomix.copycat.server.storage.Log;
+import io.atomix.copycat.server.storage.LogReader;
 import io.atomix.copycat.server.storage.entry.*;
 import io.atomix.copycat.server.storage.snapshot.Snapshot;
 import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.SnapshotStore;
 import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.time.Instant;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
 
 /**
  * Internal server state machine.
@@ -49,16 +55,21 @@ final class ServerStateMachine implements AutoCloseable {
   private final ServerContext state;
   private final Log log;
   private final ServerStateMachineExecutor executor;
+  private final ThreadContext snapshotContext;
   private final ServerCommitPool commits;
+  private LogReader reader;
   private volatile long lastApplied;
   private long lastCompleted;
   private volatile Snapshot pendingSnapshot;
+  private CompletableFuture<Void> pendingSnapshotFuture;
+  private boolean snapshotDiscarded;
 
-  ServerStateMachine(StateMachine stateMachine, ServerContext state, ThreadContext executor) {
+  ServerStateMachine(StateMachine stateMachine, ServerContext state, ThreadContext executor, ThreadContext snapshotContext) {
     this.stateMachine = Assert.notNull(stateMachine, "stateMachine");
     this.state = Assert.notNull(state, "state");
     this.log = state.getLog();
     this.executor = new ServerStateMachineExecutor(new ServerStateMachineContext(state.getConnections(), new ServerSessionManager(state)), executor);
+    this.snapshotContext = Assert.notNull(snapshotContext, "snapshotContext");
     this.commits = new ServerCommitPool(log, this.executor.context().sessions());
     init();
   }
@@ -76,6 +87,13 @@ final class ServerStateMachine implements AutoCloseable {
    * Snapshots of the state machine are taken only once the log becomes compactable. This means snapshots
    * are largely dependent on the storage configuration and ensures that snapshots are not taken more
    * frequently than will benefit log compaction.
+   * <p>
+   * If the state machine is {@link IncrementalSnapshottable}, a delta of the current snapshot is taken until the
+   * current snapshot chain reaches the configured maximum number of deltas, at which point a full snapshot is
+   * taken to consolidate the chain.
+   * <p>
+   * If the state machine is {@link ConcurrentSnapshottable}, full snapshots are captured in the state machine thread
+   * and written in the snapshot thread so commands can continue to be applied while the snapshot is written.
    */
   private void takeSnapshot() {
     state.checkThread();
@@ -85,24 +103,71 @@ final class ServerStateMachine implements AutoCloseable {
     // Snapshots are only taken of the state machine when the log becomes compactable. If the log compactor's
     // compactIndex is greater than the last snapshot index and the lastApplied index is greater than the
     // last snapshot index, take the snapshot.
-    Snapshot currentSnapshot = state.getSnapshotStore().currentSnapshot();
+    SnapshotStore snapshotStore = state.getSnapshotStore();
+    Snapshot currentSnapshot = snapshotStore.currentSnapshot();
     if (pendingSnapshot == null && stateMachine instanceof Snapshottable
       && (currentSnapshot == null || (log.compactor().compactIndex() > currentSnapshot.index() && lastApplied > currentSnapshot.index()))) {
-      pendingSnapshot = state.getSnapshotStore().createSnapshot(lastApplied);
+      // If the last snapshot was discarded, the changes it contained are not in any stored snapshot,
+      // so a full snapshot must be taken.
+      if (stateMachine instanceof IncrementalSnapshottable && currentSnapshot != null && !snapshotDiscarded
+        && snapshotStore.deltas() < state.getStorage().maxSnapshotDeltas()) {
+        pendingSnapshot = snapshotStore.createSnapshot(lastApplied, currentSnapshot.index());
+      } else {
+        pendingSnapshot = snapshotStore.createSnapshot(lastApplied);
+        snapshotDiscarded = false;
+      }
+      Snapshot snapshot = pendingSnapshot;
+      CompletableFuture<Void> future = new CompletableFuture<>();
+      pendingSnapshotFuture = future;
 
       // Write the snapshot data. Note that we don't complete the snapshot here since the completion
       // of a snapshot is predicated on session events being received by clients up to the snapshot index.
-      LOGGER.info("{} - Taking snapshot {}", state.getCluster().member().address(), pendingSnapshot.index());
+      LOGGER.info("{} - Taking snapshot {}", state.getCluster().member().address(), snapshot.index());
       executor.executor().execute(() -> {
-        synchronized (pendingSnapshot) {
-          try (SnapshotWriter writer = pendingSnapshot.writer()) {
-            ((Snapshottable) stateMachine).snapshot(writer);
+        if (snapshot.isDelta()) {
+          writeSnapshot(snapshot, writer -> ((IncrementalSnapshottable) stateMachine).snapshotDelta(writer, snapshot.baseIndex()), future);
+        } else if (stateMachine instanceof ConcurrentSnapshottable) {
+          // Capture the state in the state machine thread and write it in the snapshot thread.
+          ConcurrentSnapshottable.Capture capture;
+          try {
+            capture = ((ConcurrentSnapshottable) stateMachine).captureSnapshot();
+          } catch (Exception e) {
+            LOGGER.warn("{} - Failed to capture snapshot {}", state.getCluster().member().address(), snapshot.index(), e);
+            future.completeExceptionally(e);
+            return;
           }
+
+          snapshotContext.execute(() -> {
+            try {
+              writeSnapshot(snapshot, capture::write, future);
+            } finally {
+              capture.close();
+            }
+          });
+        } else {
+          writeSnapshot(snapshot, ((Snapshottable) stateMachine)::snapshot, future);
         }
       });
     }
   }
 
+  /**
+   * Writes a snapshot, completing the given future once the snapshot has been written.
+   */
+  private void writeSnapshot(Snapshot snapshot, Consumer<SnapshotWriter> callback, CompletableFuture<Void> future) {
+    try {
+      synchronized (snapshot) {
+        try (SnapshotWriter writer = snapshot.writer()) {
+          callback.accept(writer);
+        }
+      }
+      future.complete(null);
+    } catch (Exception e) {
+      LOGGER.warn("{} - Failed to write snapshot {}", state.getCluster().member().address(), snapshot.index(), e);
+      future.completeExceptionally(e);
+    }
+  }
+
   /**
    * Installs a snapshot of the state machine state if necessary.
    * <p>
@@ -122,11 +187,19 @@ final class ServerStateMachine implements AutoCloseable {
       // synchronize on the snapshot object. In practice, this probably isn't even necessary and could prove
       // to be an expensive operation. Snapshots can be read concurrently with separate SnapshotReaders since
       // memory snapshots are copied to the reader and file snapshots open a separate FileBuffer for each reader.
+      // If the snapshot is a delta, install the full snapshot at the base of its chain followed by each delta.
       LOGGER.info("{} - Installing snapshot {}", state.getCluster().member().address(), currentSnapshot.index());
+      List<Snapshot> chain = state.getSnapshotStore().chain(currentSnapshot);
       executor.executor().execute(() -> {
-        synchronized (currentSnapshot) {
-          try (SnapshotReader reader = currentSnapshot.reader()) {
-            ((Snapshottable) stateMachine).install(reader);
+        for (Snapshot snapshot : chain) {
+          synchronized (snapshot) {
+            try (SnapshotReader reader = snapshot.reader()) {
+              if (snapshot.isDelta()) {
+                ((IncrementalSnapshottable) stateMachine).installDelta(reader, snapshot.baseIndex());
+              } else {
+                ((Snapshottable) stateMachine).install(reader);
+              }
+            }
           }
         }
       });
@@ -150,26 +223,51 @@ final class ServerStateMachine implements AutoCloseable {
 
     // If a snapshot is pending to be persisted and the last completed index is greater than the
     // waiting snapshot index and no current or newer snapshot exists,
-    // persist the snapshot and update the last snapshot index.
-    if (pendingSnapshot != null && lastCompleted > pendingSnapshot.index()) {
+    // persist the snapshot and update the last snapshot index. Snapshots may be written in the
+    // snapshot thread, so wait until the snapshot has been written to complete it.
+    if (pendingSnapshot != null && pendingSnapshotFuture.isDone() && lastCompleted > pendingSnapshot.index()) {
       long snapshotIndex = pendingSnapshot.index();
+      boolean completed = false;
       LOGGER.debug("{} - Completing snapshot {}", state.getCluster().member().address(), snapshotIndex);
       synchronized (pendingSnapshot) {
         Snapshot currentSnapshot = state.getSnapshotStore().currentSnapshot();
-        if (currentSnapshot == null || snapshotIndex > currentSnapshot.index()) {
+        if (pendingSnapshotFuture.isCompletedExceptionally()) {
+          LOGGER.debug("{} - Discarding pending snapshot at index {} since it could not be written", state.getCluster().member().address(), pendingSnapshot.index());
+          discardSnapshot(pendingSnapshot);
+        } else if (pendingSnapshot.isDelta() && state.getSnapshotStore().snapshot(pendingSnapshot.baseIndex()) == null) {
+          LOGGER.debug("{} - Discarding pending snapshot at index {} since its base snapshot {} no longer exists", state.getCluster().member().address(), pendingSnapshot.index(), pendingSnapshot.baseIndex());
+          discardSnapshot(pendingSnapshot);
+        } else if (currentSnapshot == null || snapshotIndex > currentSnapshot.index()) {
           pendingSnapshot.complete();
+          completed = true;
         } else {
           LOGGER.debug("{} - Discarding pending snapshot at index {} since the current snapshot is at index {}", state.getCluster().member().address(), pendingSnapshot.index(), currentSnapshot.index());
+          snapshotDiscarded = true;
         }
         pendingSnapshot = null;
       }
 
       // Once the snapshot has been completed, snapshot dependent entries can be cleaned from the log.
-      log.compactor().snapshotIndex(snapshotIndex);
-      log.compactor().compact();
+      // If the snapshot was discarded, no stored snapshot covers the entries up to its index, so they must be retained.
+      if (completed) {
+        log.compactor().snapshotIndex(snapshotIndex);
+        log.compactor().compact();
+      }
     }
   }
 
+  /**
+   * Discards a pending snapshot that will not be completed.
+   * <p>
+   * The changes written to a discarded snapshot are not stored in any other snapshot, so the next
+   * snapshot taken will be a full snapshot.
+   */
+  private void discardSnapshot(Snapshot snapshot) {
+    snapshot.close();
+    snapshot.delete();
+    snapshotDiscarded = true;
+  }
+
   /**
    * Returns the server state machine executor.
    *
@@ -274,8 +372,15 @@ final class ServerStateMachine implements AutoCloseable {
     // If the effective commit index is greater than the last index applied to the state machine then apply remaining entries.
     long lastIndex = Math.min(index, log.lastIndex());
     if (lastIndex > lastApplied) {
+      // Read entries sequentially, reusing the reader across calls as long as entries are applied in order.
+      if (reader == null) {
+        reader = log.reader(lastApplied + 1);
+      } else if (reader.nextIndex() != lastApplied + 1) {
+        reader.reset(lastApplied + 1);
+      }
+
       for (long i = lastApplied + 1; i <= lastIndex; i++) {
-        Entry entry = log.get(i);
+        Entry entry = reader.next();
         if (entry != null) {
           apply(entry).whenComplete((result, error) -> entry.release());
         }
@@ -983,6 +1088,9 @@ final class ServerStateMachine implements AutoCloseable {
 
   @Override
   public void close() {
+    if (reader != null) {
+      reader.close();
+    }
     executor.close();
   }
 
@@ -18,12 +18,15 @@ package io.atomix.copycat.server.storage;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.catalyst.concurrent.CatalystThreadFactory;
+import io.atomix.catalyst.concurrent.ThreadContext;
 import io.atomix.copycat.server.storage.compaction.Compaction;
 import io.atomix.copycat.server.storage.compaction.Compactor;
 import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.entry.RawEntry;
 import io.atomix.copycat.server.storage.entry.TypedEntryPool;
 import io.atomix.copycat.server.storage.util.EntryBuffer;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 
 /**
@@ -69,10 +72,10 @@ import java.util.concurrent.Executors;
  * In order to prevent exhausting disk space, the log manages a set of background threads that periodically rewrite and
  * combine segments to free disk space. This is known as log compaction. As entries are committed to the log and applied
  * to the Raft state machine as {@link io.atomix.copycat.server.Commit} objects, state machines {@link #release(long)}
- * entries that no longer apply to the state machine state. Internally, each log {@link Segment} maintains a compact
- * {@link io.atomix.catalyst.buffer.util.BitArray} to track the liveness of entries. When an entry is released, the entry's
- * offset is set in the bit array for the associated segment. The bit array represents the state of entries waiting to
- * be compacted from the log.
+ * entries that no longer apply to the state machine state. Internally, each log {@link Segment} maintains a compressed
+ * {@link io.atomix.copycat.server.storage.util.OffsetPredicate bitmap} to track the liveness of entries. When an entry is
+ * released, the entry's offset is added to the bitmap for the associated segment. The bitmap represents the state of
+ * entries waiting to be compacted from the log.
  * <p>
  * As entries are written to the log, segments reach their capacity and the log rolls over into new segments. Once a
  * segment is full and all of its entries have been {@link #commit(long) committed}, indicating they cannot be removed,
@@ -118,7 +121,10 @@ public class Log implements AutoCloseable {
   private final Storage storage;
   final SegmentManager segments;
   private final Compactor compactor;
+  private final LogFlusher flusher;
+  private final LogWriter writer;
   private final EntryBuffer entryBuffer;
+  private long sizedIndex;
   private final TypedEntryPool entryPool = new TypedEntryPool();
   private boolean open = true;
 
@@ -129,7 +135,22 @@ public class Log implements AutoCloseable {
     this.storage = Assert.notNull(storage, "storage");
     this.segments = new SegmentManager(name, storage, serializer);
     this.compactor = new Compactor(storage, segments, Executors.newScheduledThreadPool(storage.compactionThreads(), new CatalystThreadFactory("copycat-compactor-%d")));
-    this.entryBuffer = new EntryBuffer(storage.entryBufferSize());
+    this.flusher = storage.flushOnCommit() && storage.groupCommit() ? new LogFlusher(segments, ThreadContext.currentContext()) : null;
+    this.entryBuffer = new EntryBuffer(storage.entryBufferSize(), storage.entryCacheSize());
+    this.writer = storage.asyncWrites() ? new LogWriter(segments, storage.entryBufferSize(), lastIndex(), ThreadContext.currentContext(), compactor.throttle()) : null;
+    this.sizedIndex = lastIndex();
+  }
+
+  /**
+   * Returns the log entry buffer.
+   * <p>
+   * The entry buffer caches entries at the tail of the log and entries recently read from disk. Its hit and miss
+   * counts can be used to monitor the effectiveness of the {@link Storage#entryCacheSize() entry cache}.
+   *
+   * @return The log entry buffer.
+   */
+  public EntryBuffer entryBuffer() {
+    return entryBuffer;
   }
 
   /**
@@ -173,7 +194,7 @@ public class Log implements AutoCloseable {
    *
    * @throws IndexOutOfBoundsException if the {@code index} is out of bounds
    */
-  private void assertValidIndex(long index) {
+  void assertValidIndex(long index) {
     Assert.index(validIndex(index), "invalid log index: %d", index);
   }
 
@@ -185,7 +206,8 @@ public class Log implements AutoCloseable {
    */
   public boolean isEmpty() {
     assertIsOpen();
-    return segments.firstSegment().isEmpty();
+    // The writer must be checked first to ensure segment state is visible once pending entries have been written.
+    return (writer == null || !writer.isPending()) && segments.firstSegment().isEmpty();
   }
 
   /**
@@ -196,6 +218,7 @@ public class Log implements AutoCloseable {
    */
   public long size() {
     assertIsOpen();
+    drain();
     return segments.segments().stream().mapToLong(Segment::size).sum();
   }
 
@@ -210,6 +233,7 @@ public class Log implements AutoCloseable {
    */
   public long length() {
     assertIsOpen();
+    drain();
     return segments.segments().stream().mapToLong(Segment::length).sum();
   }
 
@@ -235,9 +259,29 @@ public class Log implements AutoCloseable {
    * @throws IllegalStateException If the log is not open.
    */
   public long lastIndex() {
+    if (writer != null && writer.isPending()) {
+      return writer.lastIndex();
+    }
     return !isEmpty() ? segments.lastSegment().lastIndex() : 0;
   }
 
+  /**
+   * Returns the index of the last entry written to the log's segments.
+   * <p>
+   * If {@link Storage#asyncWrites()} is enabled, entries are written to segments asynchronously after they're
+   * {@link #append(Entry) appended}, and the write index may lag behind the {@link #lastIndex()}. Otherwise, the
+   * write index is always equal to the last index.
+   *
+   * @return The index of the last entry written to the log's segments.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public long writeIndex() {
+    if (writer != null && writer.isPending()) {
+      return writer.writeIndex();
+    }
+    return lastIndex();
+  }
+
   /**
    * Returns the next index in the log.
    *
@@ -255,6 +299,8 @@ public class Log implements AutoCloseable {
     if (segment.isFull()) {
       segments.currentSegment().flush();
       segment = segments.nextSegment();
+    } else {
+      segments.prepareNextSegment(segment);
     }
     return segment;
   }
@@ -274,7 +320,7 @@ public class Log implements AutoCloseable {
   public <T extends Entry<T>> T create(Class<T> type) {
     Assert.notNull(type, "type");
     assertIsOpen();
-    return entryPool.acquire(type, currentSegment().nextIndex());
+    return entryPool.acquire(type, writer != null ? nextIndex() : currentSegment().nextIndex());
   }
 
   /**
@@ -285,17 +331,107 @@ public class Log implements AutoCloseable {
    * @throws IllegalStateException If the log is not open
    * @throws NullPointerException If {@code entry} is {@code null}
    * @throws IndexOutOfBoundsException If the entry's index does not match the expected next log index.
+   * @throws StorageException If {@link Storage#asyncWrites()} is enabled and the log writer failed to write a prior entry.
    */
   public long append(Entry entry) {
     Assert.notNull(entry, "entry");
     assertIsOpen();
 
-    // Append the entry to the appropriate segment.
-    long index = currentSegment().append(entry);
-    entryBuffer.append(entry);
+    // If writes are asynchronous, hand the entry off to the writer. The entry is validated here since the
+    // segment will not see the entry until after the append has returned.
+    long index;
+    if (writer != null) {
+      Assert.index(entry.getIndex() == nextIndex(), "inconsistent index: %s", entry.getIndex());
+      Assert.arg(entry.getTerm() > 0, "term must be monotonically increasing");
+      index = writer.append(entry);
+    } else if (compactor.throttle().isEnabled()) {
+      // Record the write latency so compaction can back off when writes slow down.
+      long startTime = System.nanoTime();
+      index = currentSegment().append(entry);
+      compactor.throttle().recordWrite(System.nanoTime() - startTime);
+    } else {
+      index = currentSegment().append(entry);
+    }
+
+    // The size of entries written asynchronously is not known until the writer has serialized them.
+    if (writer != null) {
+      updateEntrySizes();
+      entryBuffer.append(entry, EntryBuffer.UNKNOWN_SIZE);
+    } else {
+      entryBuffer.append(entry, entry.size());
+    }
     return index;
   }
 
+  /**
+   * Accounts the serialized sizes of buffered entries that have been written by the log writer.
+   * <p>
+   * Entries appended asynchronously are buffered with an unknown size. The number of entries that have yet to be
+   * written is bounded by the writer capacity, and the sizes of the remaining entries are accounted here once the
+   * writer has serialized them.
+   */
+  private void updateEntrySizes() {
+    // Reading the write index ensures the sizes set by the writer thread are visible.
+    long writeIndex = writer.writeIndex();
+    sizedIndex = Math.min(sizedIndex, writeIndex);
+    while (sizedIndex < writeIndex) {
+      entryBuffer.updateSize(++sizedIndex);
+    }
+  }
+
+  /**
+   * Appends a raw entry to the log.
+   * <p>
+   * The serialized entry bytes are copied directly into the log without deserializing the entry. Callers should
+   * verify the entry's checksum with {@link RawEntry#isValid()} before appending it. Raw entries are always written
+   * synchronously, so if {@link Storage#asyncWrites()} is enabled, pending entries are written first.
+   *
+   * @param entry The entry to append.
+   * @return The appended entry index.
+   * @throws IllegalStateException If the log is not open
+   * @throws NullPointerException If {@code entry} is {@code null}
+   * @throws IndexOutOfBoundsException If the entry's index does not match the expected next log index.
+   */
+  public long appendRaw(RawEntry entry) {
+    Assert.notNull(entry, "entry");
+    assertIsOpen();
+    drain();
+
+    long index = currentSegment().appendRaw(entry);
+    if (writer != null) {
+      writer.reset(index);
+    }
+    return index;
+  }
+
+  /**
+   * Returns a future to be completed once the entry at the given index has been written to the log's segments.
+   * <p>
+   * If {@link Storage#asyncWrites()} is enabled, the returned future will be completed once the log writer has
+   * written the entry at the given index. Otherwise, entries are written synchronously when they're
+   * {@link #append(Entry) appended}, and the returned future is completed immediately.
+   *
+   * @param index The index of the entry for which to wait.
+   * @return A completable future to be completed once the entry at the given index has been written.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public CompletableFuture<Long> awaitWrite(long index) {
+    assertIsOpen();
+    if (writer == null) {
+      return CompletableFuture.completedFuture(index);
+    }
+    return writer.await(index);
+  }
+
+  /**
+   * Blocks until all entries appended to the log have been written to segments.
+   */
+  private void drain() {
+    if (writer != null) {
+      writer.drain();
+    }
+  }
+
   /**
    * Returns the term for the entry at the given index.
    * <p>
@@ -313,6 +449,14 @@ public class Log implements AutoCloseable {
     assertIsOpen();
     assertValidIndex(index);
 
+    // Entries that have not yet been written are read from the entry buffer.
+    if (writer != null && writer.isPending(index)) {
+      try (Entry entry = entryBuffer.get(index)) {
+        Assert.state(entry != null, "missing pending entry: %s", index);
+        return entry.getTerm();
+      }
+    }
+
     Segment segment = segments.segment(index);
     Assert.index(segment != null, "invalid index: " + index);
 
@@ -344,6 +488,11 @@ public class Log implements AutoCloseable {
     assertIsOpen();
     assertValidIndex(index);
 
+    // Entries that have not yet been written cannot have been released or compacted.
+    if (writer != null && writer.isPending(index)) {
+      return entryBuffer.get(index);
+    }
+
     Segment segment = segments.segment(index);
     Assert.index(segment != null, "invalid index: " + index);
 
@@ -352,53 +501,117 @@ public class Log implements AutoCloseable {
     T entry = entryBuffer.get(index);
     if (entry == null) {
       entry = segment.get(index);
+      if (entry != null) {
+        entryBuffer.cache(entry, entry.size());
+      }
     }
 
-    // For non-null entries, we determine whether the entry should be exposed to the Raft algorithm
-    // based on the type of entry and whether it has been released.
-    if (entry != null) {
-      // The last entry in the log is always visible. This is necessary to ensure that candidates
-      // can properly read the last entry term for the voting protocol.
-      if (index == lastIndex()) {
-        return entry;
-      }
+    return entry != null && isVisible(index, segment, entry) ? entry : null;
+  }
 
-      Compaction.Mode mode = entry.getCompactionMode();
-      if (mode == Compaction.Mode.DEFAULT) {
-        mode = compactor.getDefaultCompactionMode();
-      }
+  /**
+   * Returns a boolean indicating whether the given entry should be exposed to the Raft algorithm.
+   * <p>
+   * Visibility is determined based on the type of entry and whether it has been released.
+   */
+  boolean isVisible(long index, Segment segment, Entry entry) {
+    // The last entry in the log is always visible. This is necessary to ensure that candidates
+    // can properly read the last entry term for the voting protocol.
+    if (index == lastIndex()) {
+      return true;
+    }
 
-      // Return the entry according to the compaction mode.
-      switch (mode) {
-        // SNAPSHOT entries are returned if the snapshotIndex is less than the entry index.
-        case SNAPSHOT:
-          if (index > compactor.snapshotIndex()) {
-            return entry;
-          }
-          break;
-        // RELEASE and QUORUM entries are returned if the minorIndex is less than the entry index or the
-        // entry is still live.
-        case RELEASE:
-        case QUORUM:
-          if (index > compactor.minorIndex() || segment.isLive(index)) {
-            return entry;
-          }
-          break;
-        // FULL, SEQUENTIAL, EXPIRING, and TOMBSTONE entries are returned if the minorIndex or majorIndex is less than the
-        // entry index or if the entry is still live.
-        case FULL:
-        case SEQUENTIAL:
-        case EXPIRING:
-        case TOMBSTONE:
-          if (index > compactor.minorIndex() || index > compactor.majorIndex() || segment.isLive(index)) {
-            return entry;
-          }
-          break;
-        default:
-          break;
-      }
+    Compaction.Mode mode = entry.getCompactionMode();
+    if (mode == Compaction.Mode.DEFAULT) {
+      mode = compactor.getDefaultCompactionMode();
+    }
+
+    // Return the entry according to the compaction mode.
+    switch (mode) {
+      // SNAPSHOT entries are returned if the snapshotIndex is less than the entry index.
+      case SNAPSHOT:
+        return index > compactor.snapshotIndex();
+      // RELEASE and QUORUM entries are returned if the minorIndex is less than the entry index or the
+      // entry is still live.
+      case RELEASE:
+      case QUORUM:
+        return index > compactor.minorIndex() || segment.isLive(index);
+      // FULL, SEQUENTIAL, EXPIRING, and TOMBSTONE entries are returned if the minorIndex or majorIndex is less than the
+      // entry index or if the entry is still live.
+      case FULL:
+      case SEQUENTIAL:
+      case EXPIRING:
+      case TOMBSTONE:
+        return index > compactor.minorIndex() || index > compactor.majorIndex() || segment.isLive(index);
+      default:
+        return false;
     }
-    return null;
+  }
+
+  /**
+   * Returns a boolean indicating whether the entry at the given index has yet to be written to a segment.
+   */
+  boolean isPending(long index) {
+    return writer != null && writer.isPending(index);
+  }
+
+  /**
+   * Returns a sequential reader of entries in the log starting at the given index.
+   * <p>
+   * Readers are more efficient than {@link #get(long)} for reading ranges of entries. Rather than looking up each
+   * entry by index, the reader reads ahead through the log's segments, skipping entries that have been compacted.
+   * Entries returned by the reader are filtered by compaction mode the same as entries returned by {@link #get(long)}.
+   * Readers must be {@link LogReader#close() closed} once reading is complete.
+   *
+   * @param index The index from which to read.
+   * @return A log reader.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public LogReader reader(long index) {
+    assertIsOpen();
+    return new LogReader(this, segments, entryBuffer, index);
+  }
+
+  /**
+   * Returns a boolean value indicating whether the entry at the given index can be read in raw form.
+   * <p>
+   * Whether an entry read via {@link #get(long)} is visible depends on the entry's compaction mode, which can only
+   * be determined by deserializing the entry. Entries with indexes greater than the compactor's minor, major and
+   * snapshot indexes are visible regardless of their compaction mode, so only those entries can be read via
+   * {@link #getRaw(long)}. Entries that have not yet been written to a segment cannot be read in raw form either.
+   *
+   * @param index The index to check.
+   * @return Indicates whether the entry at the given index can be read in raw form.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public boolean canReadRaw(long index) {
+    assertIsOpen();
+    return validIndex(index)
+      && index <= writeIndex()
+      && index > compactor.minorIndex()
+      && index > compactor.majorIndex()
+      && index > compactor.snapshotIndex();
+  }
+
+  /**
+   * Gets the serialized form of the entry at the given index.
+   * <p>
+   * The returned entry contains the checksummed entry bytes as stored in the log segment and is not deserialized.
+   * Raw entries may only be read for indexes for which {@link #canReadRaw(long)} is {@code true}.
+   *
+   * @param index The index of the entry to get.
+   * @return The raw entry at the given index or {@code null} if the entry doesn't exist.
+   * @throws IllegalStateException If the log is not open or the entry cannot be read in raw form.
+   * @throws IndexOutOfBoundsException If the given index is not within the bounds of the log.
+   */
+  public RawEntry getRaw(long index) {
+    assertIsOpen();
+    assertValidIndex(index);
+    Assert.state(canReadRaw(index), "cannot read raw entry: %s", index);
+
+    Segment segment = segments.segment(index);
+    Assert.index(segment != null, "invalid index: " + index);
+    return segment.getRaw(index);
   }
 
   /**
@@ -411,7 +624,7 @@ public class Log implements AutoCloseable {
    * @return Indicates whether the given index is within the bounds of the log.
    * @throws IllegalStateException If the log is not open.
    */
-  private boolean validIndex(long index) {
+  boolean validIndex(long index) {
     long firstIndex = firstIndex();
     long lastIndex = lastIndex();
     return !isEmpty() && firstIndex <= index && index <= lastIndex;
@@ -428,6 +641,9 @@ public class Log implements AutoCloseable {
     if (!validIndex(index))
       return false;
 
+    if (writer != null && writer.isPending(index))
+      return true;
+
     Segment segment = segments.segment(index);
     return segment != null && segment.contains(index);
   }
@@ -443,6 +659,9 @@ public class Log implements AutoCloseable {
   public Log release(long index) {
     assertIsOpen();
     assertValidIndex(index);
+    if (writer != null && writer.isPending(index)) {
+      writer.drain(index);
+    }
 
     Segment segment = segments.segment(index);
     Assert.index(segment != null, "invalid index: " + index);
@@ -452,6 +671,10 @@ public class Log implements AutoCloseable {
 
   /**
    * Commits entries up to the given index to the log.
+   * <p>
+   * If {@link Storage#flushOnCommit()} is enabled, the log will be flushed to disk. When {@link Storage#groupCommit()}
+   * is also enabled, the flush is performed asynchronously and may be combined with flushes for other commits. Use
+   * {@link #awaitFlush(long)} to determine when the committed entries have been made durable.
    *
    * @param index The index up to which to commit entries.
    * @return The log.
@@ -462,13 +685,50 @@ public class Log implements AutoCloseable {
     if (index > 0) {
       assertValidIndex(index);
       segments.commitIndex(index);
-      if (storage.flushOnCommit()) {
+      if (flusher != null) {
+        if (writer != null && writer.isPending(index)) {
+          writer.await(index).thenRun(() -> flusher.flush(index));
+        } else {
+          flusher.flush(index);
+        }
+      } else if (storage.flushOnCommit()) {
+        if (writer != null) {
+          writer.drain(index);
+        }
         segments.currentSegment().flush();
       }
     }
     return this;
   }
 
+  /**
+   * Returns a future to be completed once entries up to the given index have been flushed according to the
+   * storage configuration.
+   * <p>
+   * If {@link Storage#flushOnCommit()} and {@link Storage#groupCommit()} are both enabled, the returned future will
+   * be completed once a group flush including the given index has completed. Concurrent calls are merged such that
+   * many entries can be made durable by a single flush. If group commit is not enabled, entries are either flushed
+   * synchronously when {@link #commit(long) committed} or not flushed at all, and the returned future is completed
+   * immediately.
+   * <p>
+   * If {@link Storage#asyncWrites()} is also enabled, the flush is not requested until the entry at the given index
+   * has been written.
+   *
+   * @param index The index up to which entries must be flushed.
+   * @return A completable future to be completed once entries up to the given index have been flushed.
+   * @throws IllegalStateException If the log is not open.
+   */
+  public CompletableFuture<Long> awaitFlush(long index) {
+    assertIsOpen();
+    if (flusher == null) {
+      return awaitWrite(index);
+    }
+    if (writer != null && writer.isPending(index)) {
+      return writer.await(index).thenCompose(writeIndex -> flusher.flush(index)).thenApply(flushIndex -> index);
+    }
+    return flusher.flush(index).thenApply(flushIndex -> index);
+  }
+
   /**
    * Skips the given number of entries.
    * <p>
@@ -485,8 +745,16 @@ public class Log implements AutoCloseable {
    */
   public Log skip(long entries) {
     assertIsOpen();
+    if (entries == 0) {
+      return this;
+    }
+
+    drain();
     Segment segment = segments.currentSegment();
     segment.skip(entries);
+    if (writer != null) {
+      writer.reset(lastIndex());
+    }
     return this;
   }
 
@@ -517,6 +785,8 @@ public class Log implements AutoCloseable {
     if (lastIndex() == index)
       return this;
 
+    drain();
+
     for (Segment segment : segments.reverseSegments()) {
       if (segment.validIndex(index)) {
         segment.truncate(index);
@@ -526,6 +796,9 @@ public class Log implements AutoCloseable {
       }
     }
     entryBuffer.clear();
+    if (writer != null) {
+      writer.reset(lastIndex());
+    }
     return this;
   }
 
@@ -536,6 +809,7 @@ public class Log implements AutoCloseable {
    */
   public void flush() {
     assertIsOpen();
+    drain();
     segments.currentSegment().flush();
   }
 
@@ -548,6 +822,12 @@ public class Log implements AutoCloseable {
   public void close() {
     assertIsOpen();
     flush();
+    if (writer != null) {
+      writer.close();
+    }
+    if (flusher != null) {
+      flusher.close();
+    }
     compactor.close();
     segments.close();
     open = false;
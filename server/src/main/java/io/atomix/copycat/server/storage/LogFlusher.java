@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.concurrent.CatalystThreadFactory;
+import io.atomix.catalyst.concurrent.ThreadContext;
+import io.atomix.catalyst.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Flushes log {@link Segment}s to disk in groups.
+ * <p>
+ * The flusher implements group commit for logs configured with {@link Storage#groupCommit()}. Rather than forcing
+ * the current segment to disk on the server thread each time the commit index advances, flush requests are handed
+ * off to a dedicated background thread. While a flush is in progress, any new requests are merged into the next
+ * batch, and the entire batch is made durable by a single call to {@link Segment#flush()}. Under load, this allows
+ * many concurrently committed entries to share the cost of a single fsync.
+ * <p>
+ * Futures returned by {@link #flush(long)} are completed only once a flush that began after the requested index was
+ * written has completed. If the flusher was created on a {@link ThreadContext}, futures are completed on that context.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+final class LogFlusher implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LogFlusher.class);
+  private final SegmentManager segments;
+  private final ThreadContext context;
+  private final ExecutorService executor;
+  private volatile long flushIndex;
+  private Batch currentBatch;
+  private Batch nextBatch;
+
+  LogFlusher(SegmentManager segments, ThreadContext context) {
+    this.segments = Assert.notNull(segments, "segments");
+    this.context = context;
+    this.executor = Executors.newSingleThreadExecutor(new CatalystThreadFactory("copycat-log-flusher-%d"));
+  }
+
+  /**
+   * Returns the highest index known to have been flushed to disk.
+   *
+   * @return The highest index known to have been flushed to disk.
+   */
+  long flushIndex() {
+    return flushIndex;
+  }
+
+  /**
+   * Requests that entries up to the given index be flushed to disk.
+   * <p>
+   * If a flush is already in progress and that flush covers the given index, the returned future will be completed
+   * once the in-progress flush completes. Otherwise, the request will be merged into the next batch.
+   *
+   * @param index The index up to which to flush the log.
+   * @return A completable future to be completed with the flushed index once the entry has been made durable.
+   */
+  synchronized CompletableFuture<Long> flush(long index) {
+    if (index <= flushIndex) {
+      return CompletableFuture.completedFuture(flushIndex);
+    }
+
+    // If no flush is in progress, start a new flush immediately.
+    if (currentBatch == null) {
+      currentBatch = new Batch(index, segments.currentSegment());
+      submit(currentBatch);
+      return currentBatch.future;
+    }
+
+    // If the in-progress flush already covers the index, the entry was written before the flush began.
+    if (index <= currentBatch.index) {
+      return currentBatch.future;
+    }
+
+    // Otherwise, merge the request into the next batch to be flushed once the current flush completes.
+    if (nextBatch == null) {
+      nextBatch = new Batch(index, segments.currentSegment());
+    } else {
+      nextBatch.index = index;
+      nextBatch.segment = segments.currentSegment();
+    }
+    return nextBatch.future;
+  }
+
+  /**
+   * Submits a batch to be flushed on the flusher thread.
+   */
+  private void submit(Batch batch) {
+    executor.execute(() -> {
+      try {
+        // Segments prior to the batch segment are flushed when the log rolls over, so only the
+        // segment that was current at the time of the last request needs to be forced to disk.
+        if (batch.segment.isOpen()) {
+          batch.segment.flush();
+        }
+        complete(batch, null);
+      } catch (Exception e) {
+        LOGGER.warn("Failed to flush segment: {}", batch.segment, e);
+        complete(batch, e);
+      }
+    });
+  }
+
+  /**
+   * Completes a batch and starts the next batch if necessary.
+   */
+  private void complete(Batch batch, Throwable error) {
+    synchronized (this) {
+      if (error == null) {
+        flushIndex = Math.max(flushIndex, batch.index);
+      }
+
+      currentBatch = nextBatch;
+      nextBatch = null;
+      if (currentBatch != null && !executor.isShutdown()) {
+        submit(currentBatch);
+      }
+    }
+
+    if (context != null) {
+      context.executor().execute(() -> batch.complete(error));
+    } else {
+      batch.complete(error);
+    }
+  }
+
+  /**
+   * Closes the flusher.
+   * <p>
+   * Outstanding flushes are allowed to complete. The log is responsible for flushing its segments before closing
+   * the flusher, so any batches that were not submitted at the time the flusher was closed are completed successfully.
+   */
+  @Override
+  public void close() {
+    executor.shutdown();
+    try {
+      executor.awaitTermination(30, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+
+    Batch currentBatch;
+    Batch nextBatch;
+    synchronized (this) {
+      currentBatch = this.currentBatch;
+      nextBatch = this.nextBatch;
+      this.currentBatch = null;
+      this.nextBatch = null;
+    }
+
+    if (currentBatch != null) {
+      flushIndex = Math.max(flushIndex, currentBatch.index);
+      currentBatch.complete(null);
+    }
+    if (nextBatch != null) {
+      flushIndex = Math.max(flushIndex, nextBatch.index);
+      nextBatch.complete(null);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[flushIndex=%d]", getClass().getSimpleName(), flushIndex);
+  }
+
+  /**
+   * Group of flush requests to be completed by a single flush.
+   */
+  private static final class Batch {
+    private final CompletableFuture<Long> future = new CompletableFuture<>();
+    private long index;
+    private Segment segment;
+
+    private Batch(long index, Segment segment) {
+      this.index = index;
+      this.segment = segment;
+    }
+
+    /**
+     * Completes all requests in the batch.
+     */
+    private void complete(Throwable error) {
+      if (error == null) {
+        future.complete(index);
+      } else {
+        future.completeExceptionally(error);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.entry.RawEntry;
+import io.atomix.copycat.server.storage.util.EntryBuffer;
+
+/**
+ * Sequential reader of entries in a {@link Log}.
+ * <p>
+ * Log readers read entries in index order across the log's {@link Segment}s using a {@link SegmentReader} for each
+ * segment. Entries are read ahead from disk in bulk, making readers more efficient than {@link Log#get(long)} for
+ * reading ranges of entries, e.g. when applying committed entries or replicating entries to followers.
+ * <p>
+ * Entries returned by {@link #next()} are filtered the same as entries returned by {@link Log#get(long)}: if the
+ * entry at the next index has been compacted or is not visible, {@code null} is returned. Entries that are present
+ * in the log's entry buffer are read from the buffer without opening a segment reader, but entries read from disk
+ * are not added to the buffer, so large scans don't evict recently appended entries. Log readers are not thread safe
+ * and must be used on the log's thread.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class LogReader implements AutoCloseable {
+  private final Log log;
+  private final SegmentManager segments;
+  private final EntryBuffer entryBuffer;
+  private Segment segment;
+  private SegmentReader reader;
+  private long nextIndex;
+
+  LogReader(Log log, SegmentManager segments, EntryBuffer entryBuffer, long index) {
+    this.log = Assert.notNull(log, "log");
+    this.segments = Assert.notNull(segments, "segments");
+    this.entryBuffer = Assert.notNull(entryBuffer, "entryBuffer");
+    this.nextIndex = index;
+  }
+
+  /**
+   * Returns the index of the next entry to be read.
+   *
+   * @return The index of the next entry to be read.
+   */
+  public long nextIndex() {
+    return nextIndex;
+  }
+
+  /**
+   * Returns a boolean indicating whether the log contains an entry at the next index.
+   *
+   * @return Indicates whether the log contains an entry at the next index.
+   */
+  public boolean hasNext() {
+    return !log.isEmpty() && nextIndex <= log.lastIndex();
+  }
+
+  /**
+   * Resets the reader to the given index.
+   *
+   * @param index The index from which to read.
+   * @return The log reader.
+   */
+  public LogReader reset(long index) {
+    this.nextIndex = index;
+    return this;
+  }
+
+  /**
+   * Reads the entry at the next index and advances the reader.
+   * <p>
+   * Entries returned by this method are pooled and {@link io.atomix.catalyst.util.reference.ReferenceCounted reference counted}
+   * and must be released once they're no longer needed.
+   *
+   * @param <T> The entry type.
+   * @return The entry at the next index or {@code null} if the entry has been compacted or is not visible.
+   * @throws IllegalStateException If the log is not open.
+   * @throws IndexOutOfBoundsException If the next index is not within the bounds of the log.
+   */
+  public <T extends Entry> T next() {
+    long index = nextIndex++;
+    log.assertValidIndex(index);
+
+    // Entries that have not yet been written cannot have been released or compacted.
+    if (log.isPending(index)) {
+      return entryBuffer.get(index);
+    }
+
+    T entry = entryBuffer.get(index);
+    if (entry == null) {
+      entry = reader(index).next();
+    }
+    return entry != null && log.isVisible(index, segment(index), entry) ? entry : null;
+  }
+
+  /**
+   * Reads the raw entry at the next index and advances the reader.
+   * <p>
+   * Raw entries may only be read for indexes for which {@link Log#canReadRaw(long)} is {@code true}.
+   *
+   * @return The raw entry at the next index or {@code null} if the entry doesn't exist.
+   * @throws IllegalStateException If the log is not open or the entry cannot be read in raw form.
+   * @throws IndexOutOfBoundsException If the next index is not within the bounds of the log.
+   */
+  public RawEntry nextRaw() {
+    long index = nextIndex++;
+    log.assertValidIndex(index);
+    Assert.state(log.canReadRaw(index), "cannot read raw entry: %s", index);
+    return reader(index).nextRaw();
+  }
+
+  /**
+   * Returns the segment containing the given index.
+   */
+  private Segment segment(long index) {
+    if (segment == null || !segment.isOpen() || index < segment.index() || index > segment.lastIndex()) {
+      segment = segments.segment(index);
+      Assert.index(segment != null, "invalid index: " + index);
+    }
+    return segment;
+  }
+
+  /**
+   * Returns the segment reader positioned at the given index, opening a reader for the index's segment if necessary.
+   */
+  private SegmentReader reader(long index) {
+    Segment segment = segment(index);
+    if (reader == null || reader.segment() != segment) {
+      if (reader != null) {
+        reader.close();
+      }
+      reader = segment.reader(index);
+    } else if (reader.nextIndex() != index) {
+      reader.skip(index);
+    }
+    return reader;
+  }
+
+  @Override
+  public void close() {
+    if (reader != null) {
+      reader.close();
+      reader = null;
+    }
+    segment = null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[nextIndex=%d]", getClass().getSimpleName(), nextIndex);
+  }
+
+}
@@ -0,0 +1,362 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.concurrent.CatalystThreadFactory;
+import io.atomix.catalyst.concurrent.ThreadContext;
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compaction.CompactionThrottle;
+import io.atomix.copycat.server.storage.entry.Entry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes log entries to {@link Segment}s on a dedicated thread.
+ * <p>
+ * The writer implements asynchronous appends for logs configured with {@link Storage#asyncWrites()}. Entries
+ * appended to the log are handed off to the writer thread, which drains all pending entries at once and serializes
+ * and writes them to the current segment, rolling over to new segments as necessary. This keeps serialization and
+ * disk I/O off the server thread.
+ * <p>
+ * The number of entries waiting to be written is bounded by the writer capacity. Once the capacity is reached,
+ * {@link #append(Entry)} blocks until the writer catches up. Because the log's entry buffer holds at least as many
+ * entries as the writer capacity, pending entries can always be read from the entry buffer, and entries are never
+ * evicted from the entry buffer before they're written.
+ * <p>
+ * Futures returned by {@link #await(long)} are completed once the entry at the requested index has been written. If
+ * the writer was created on a {@link ThreadContext}, futures are completed on that context.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+final class LogWriter implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(LogWriter.class);
+  private static final long POLL_INTERVAL = 100;
+  private final SegmentManager segments;
+  private final ThreadContext context;
+  private final int capacity;
+  private final CompactionThrottle throttle;
+  private final BlockingQueue<Entry> queue = new LinkedBlockingQueue<>();
+  private final NavigableMap<Long, CompletableFuture<Long>> futures = new ConcurrentSkipListMap<>();
+  private final Thread thread;
+  private long lastIndex;
+  private volatile long writeIndex;
+  private volatile Throwable error;
+  private volatile boolean open = true;
+
+  LogWriter(SegmentManager segments, int capacity, long lastIndex, ThreadContext context, CompactionThrottle throttle) {
+    this.segments = Assert.notNull(segments, "segments");
+    this.capacity = Assert.arg(capacity, capacity > 0, "capacity must be positive");
+    this.throttle = Assert.notNull(throttle, "throttle");
+    this.context = context;
+    this.lastIndex = lastIndex;
+    this.writeIndex = lastIndex;
+    this.thread = new CatalystThreadFactory("copycat-log-writer-%d").newThread(this::run);
+    this.thread.start();
+  }
+
+  /**
+   * Returns the index of the last entry appended to the writer.
+   *
+   * @return The index of the last entry appended to the writer.
+   */
+  long lastIndex() {
+    return lastIndex;
+  }
+
+  /**
+   * Returns the index of the last entry written to a segment.
+   *
+   * @return The index of the last entry written to a segment.
+   */
+  long writeIndex() {
+    return writeIndex;
+  }
+
+  /**
+   * Returns a boolean indicating whether any appended entries have yet to be written.
+   *
+   * @return Indicates whether any appended entries have yet to be written.
+   */
+  boolean isPending() {
+    return writeIndex < lastIndex;
+  }
+
+  /**
+   * Returns a boolean indicating whether the entry at the given index has yet to be written.
+   *
+   * @param index The index to check.
+   * @return Indicates whether the entry at the given index has yet to be written.
+   */
+  boolean isPending(long index) {
+    return index > writeIndex && index <= lastIndex;
+  }
+
+  /**
+   * Resets the writer's indexes.
+   * <p>
+   * The log must {@link #drain() drain} the writer before modifying segments directly and reset the writer once
+   * the modification is complete.
+   *
+   * @param index The index of the last entry in the log.
+   */
+  void reset(long index) {
+    Assert.state(!isPending(), "cannot reset writer with pending entries");
+    lastIndex = index;
+    writeIndex = index;
+  }
+
+  /**
+   * Appends an entry to be written to the log.
+   * <p>
+   * If the number of pending entries has reached the writer capacity, this method blocks until the writer has
+   * written enough entries to accept the new entry.
+   *
+   * @param entry The entry to append.
+   * @return The appended entry index.
+   * @throws StorageException If the writer failed to write a prior entry.
+   */
+  long append(Entry entry) {
+    checkError();
+    long index = entry.getIndex();
+    if (index - capacity > writeIndex) {
+      drain(index - capacity);
+    }
+
+    queue.add(entry.acquire());
+    lastIndex = index;
+    return index;
+  }
+
+  /**
+   * Returns a future to be completed once the entry at the given index has been written.
+   *
+   * @param index The index for which to wait.
+   * @return A completable future to be completed once the entry at the given index has been written.
+   */
+  CompletableFuture<Long> await(long index) {
+    if (index <= writeIndex) {
+      return CompletableFuture.completedFuture(index);
+    }
+
+    Throwable error = this.error;
+    if (error != null) {
+      CompletableFuture<Long> future = new CompletableFuture<>();
+      future.completeExceptionally(error);
+      return future;
+    }
+
+    CompletableFuture<Long> future = futures.computeIfAbsent(index, i -> new CompletableFuture<>());
+
+    // If the writer passed the index or failed while the future was being registered, it may not have seen the future.
+    if (index <= writeIndex || this.error != null) {
+      complete(index, this.error);
+    }
+    return future;
+  }
+
+  /**
+   * Blocks until all pending entries have been written.
+   *
+   * @throws StorageException If the writer failed to write a pending entry.
+   */
+  void drain() {
+    drain(lastIndex);
+  }
+
+  /**
+   * Blocks until all entries up to the given index have been written.
+   *
+   * @param index The index up to which to wait for entries to be written.
+   * @throws StorageException If the writer failed to write a pending entry.
+   */
+  void drain(long index) {
+    if (index > writeIndex) {
+      synchronized (this) {
+        while (index > writeIndex && error == null) {
+          try {
+            wait();
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StorageException("interrupted while waiting for log writer", e);
+          }
+        }
+      }
+    }
+    checkError();
+  }
+
+  /**
+   * Throws an exception if the writer has failed.
+   */
+  private void checkError() {
+    Throwable error = this.error;
+    if (error != null) {
+      throw new StorageException("log writer failed", error);
+    }
+  }
+
+  /**
+   * Checks whether the writer needs to roll over to a new segment.
+   */
+  private Segment currentSegment() {
+    Segment segment = segments.currentSegment();
+    if (segment.isFull()) {
+      segment.flush();
+      segment = segments.nextSegment();
+    } else {
+      segments.prepareNextSegment(segment);
+    }
+    return segment;
+  }
+
+  /**
+   * Runs the writer loop.
+   */
+  private void run() {
+    List<Entry> batch = new ArrayList<>();
+    while (open || !queue.isEmpty()) {
+      try {
+        Entry entry = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+        if (entry == null) {
+          continue;
+        }
+
+        batch.add(entry);
+        queue.drainTo(batch);
+        write(batch);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        fail(e);
+        return;
+      } catch (Exception e) {
+        LOGGER.error("Failed to write entries", e);
+        fail(e);
+        return;
+      } finally {
+        for (Entry entry : batch) {
+          entry.release();
+        }
+        batch.clear();
+      }
+    }
+  }
+
+  /**
+   * Writes a batch of entries to the log and completes futures for the written indexes.
+   */
+  private void write(List<Entry> batch) {
+    long startTime = System.nanoTime();
+    long index = writeIndex;
+    for (Entry entry : batch) {
+      index = currentSegment().append(entry);
+    }
+
+    // Record the average latency of writes in the batch so compaction can back off when writes slow down.
+    if (throttle.isEnabled() && !batch.isEmpty()) {
+      throttle.recordWrite((System.nanoTime() - startTime) / batch.size());
+    }
+
+    writeIndex = index;
+    synchronized (this) {
+      notifyAll();
+    }
+
+    if (!futures.isEmpty()) {
+      complete(index, null);
+    }
+  }
+
+  /**
+   * Fails the writer, failing all outstanding futures.
+   */
+  private void fail(Throwable error) {
+    this.error = error;
+    synchronized (this) {
+      notifyAll();
+    }
+    complete(Long.MAX_VALUE, error);
+
+    Entry entry;
+    while ((entry = queue.poll()) != null) {
+      entry.release();
+    }
+  }
+
+  /**
+   * Completes futures up to the given index on the writer context.
+   */
+  private void complete(long index, Throwable error) {
+    List<Map.Entry<Long, CompletableFuture<Long>>> completed = new ArrayList<>();
+    Map.Entry<Long, CompletableFuture<Long>> entry = futures.firstEntry();
+    while (entry != null && entry.getKey() <= index) {
+      if (futures.remove(entry.getKey(), entry.getValue())) {
+        completed.add(entry);
+      }
+      entry = futures.higherEntry(entry.getKey());
+    }
+
+    if (completed.isEmpty()) {
+      return;
+    }
+
+    Runnable callback = () -> {
+      for (Map.Entry<Long, CompletableFuture<Long>> future : completed) {
+        if (error == null) {
+          future.getValue().complete(future.getKey());
+        } else {
+          future.getValue().completeExceptionally(error);
+        }
+      }
+    };
+
+    if (context != null) {
+      context.executor().execute(callback);
+    } else {
+      callback.run();
+    }
+  }
+
+  /**
+   * Closes the writer.
+   * <p>
+   * Pending entries are written to the log before the writer thread is stopped.
+   */
+  @Override
+  public void close() {
+    open = false;
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[lastIndex=%d, writeIndex=%d]", getClass().getSimpleName(), lastIndex, writeIndex);
+  }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import java.io.File;
+
+/**
+ * Advises the operating system's page cache about segment file ranges that will not be read again soon.
+ * <p>
+ * Log entries are typically read shortly after they're written, if at all, so once a range of a {@link StorageLevel#DISK}
+ * segment has been flushed to disk its pages only compete with the state machine's working set for memory. A page
+ * cache advisor can be provided to the {@link Storage.Builder#withPageCacheAdvisor(PageCacheAdvisor) storage builder}
+ * to drop those pages from the page cache, e.g. by calling {@code posix_fadvise} with {@code POSIX_FADV_DONTNEED}
+ * through a native library. The JDK provides no such facility, so the default advisor does nothing.
+ * <p>
+ * Advised ranges are aligned to {@link #PAGE_SIZE} and have always been flushed. Advisors may be called from internal
+ * storage threads and should not block.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@FunctionalInterface
+public interface PageCacheAdvisor {
+
+  /**
+   * The page size to which advised ranges are aligned.
+   */
+  int PAGE_SIZE = 1024 * 4;
+
+  /**
+   * Page cache advisor that leaves the page cache to the operating system.
+   */
+  PageCacheAdvisor NONE = (file, position, length) -> {
+  };
+
+  /**
+   * Called once a range of a segment file has been flushed to disk and is not expected to be read soon.
+   *
+   * @param file The segment file.
+   * @param position The page aligned position of the range within the file.
+   * @param length The page aligned length of the range.
+   */
+  void dontNeed(File file, long position, long length);
+
+}
@@ -15,16 +15,26 @@
  */
 package io.atomix.copycat.server.storage;
 
-import java.util.zip.CRC32;
-import java.util.zip.Checksum;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import io.atomix.catalyst.buffer.*;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compaction.Compaction;
 import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.entry.RawEntry;
 import io.atomix.copycat.server.storage.index.OffsetIndex;
+import io.atomix.copycat.server.storage.index.PositionIndex;
+import io.atomix.copycat.server.storage.util.ChecksumType;
 import io.atomix.copycat.server.storage.util.OffsetPredicate;
 import io.atomix.copycat.server.storage.util.TermIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import static io.atomix.catalyst.buffer.Bytes.BOOLEAN;
 import static io.atomix.catalyst.buffer.Bytes.INTEGER;
@@ -46,58 +56,147 @@ import static io.atomix.catalyst.buffer.Bytes.LONG;
  * the Raft consensus algorithm, readers should typically benefit from O(1) lookups.
  * <p>
  * When a segment is constructed, the segment will attempt to rebuild its index from the underlying segment
- * {@link Buffer}. This is done by reading a 32-bit length and 64-bit offset for each entry. Once the segment
- * has been built, new entries will be {@link #append(Entry) appended} at the end of the segment.
+ * {@link Buffer}. If the segment has a persistent {@link SegmentIndexFile}, the in-memory indexes are loaded from
+ * the index file and only the last indexed entry and any entries following it are read and verified. Otherwise,
+ * the index is rebuilt by reading a 32-bit length and 64-bit offset for each entry. Once the segment has been
+ * built, new entries will be {@link #append(Entry) appended} at the end of the segment.
+ * <p>
+ * Segments support a single writer and any number of concurrent readers. Appends are serialized, but reads are
+ * lock-free. Each record is published to readers through a {@link PositionIndex} only once it has been fully written,
+ * so readers never see partially written entries. Readers read records by position into a per-thread buffer rather
+ * than the writer's buffer. File based segments are read through a separate read-only {@link FileChannel} so that
+ * reads don't interfere with the writer's file position. Reads hold a reference to the segment's resources, and
+ * resources are released once the segment has been closed and all in-flight reads have completed.
  * <p>
  * Additionally, segments are responsible for keeping track of entries that have been {@link #release(long) released}.
- * Entry liveness is tracked in an internal {@link io.atomix.catalyst.buffer.util.BitArray} with a size equal
- * to the segment's entry {@link #count()}.
+ * Entry liveness is tracked in an internal {@link OffsetPredicate}, a compressed bitmap of released offsets.
  * <p>
  * An entry in the log is written in binary format. The binary format of an entry is as follows:
  * <ul>
  *   <li>Required 32-bit signed entry length</li>
  *   <li>Required 32-bit unsigned entry checksum</li>
  *   <li>Required 64-bit signed offset</li>
- *   <li>Required 8-bit term flag</li>
+ *   <li>Required 8-bit flags</li>
  *   <li>Optional 64-bit term</li>
  * </ul>
+ * The lowest bit of the flags indicates whether the record includes the entry term. In segments written in
+ * {@link SegmentDescriptor#FORMAT_V3} or later, the next four bits hold the entry's
+ * {@link Entry#getCompactionMode() compaction mode} so log compaction can determine how an entry may be compacted
+ * without deserializing it. A mode of {@code 0} indicates that the compaction mode is not known, in which case the
+ * entry must be deserialized to determine its mode. The flags are not covered by the entry checksum, so when a mode is
+ * recorded the highest bit of the flags is set to give the flags even parity. A recorded mode is only trusted if the
+ * parity of the flags is even, and otherwise the entry is deserialized to determine its mode.
+ * The entry checksum is computed over the serialized entry bytes using the {@link SegmentDescriptor#checksumType()}
+ * for the segment's {@link SegmentDescriptor#format() format}. Segments written in {@link SegmentDescriptor#FORMAT_V1}
+ * are checksummed with CRC32, and newer segments with CRC32C.
+ * <p>
+ * Segments rewritten by log compaction may be {@link SegmentDescriptor#isCompressed() compressed}. Compressed
+ * segments store the same records in independently compressed {@link SegmentBlocks blocks}, and record positions
+ * refer to the uncompressed stream of records. Compressed segments are written once and cannot be truncated.
  *
  * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
  */
 public class Segment implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(Segment.class);
+  private static final int READ_BUFFER_SIZE = 1024 * 4;
+  private static final int TERM_FLAG = 0x01;
+  private static final int MODE_SHIFT = 1;
+  private static final int MODE_MASK = 0x0f;
+  private static final int PARITY_FLAG = 0x80;
+  private static final Compaction.Mode[] MODES = Compaction.Mode.values();
+  private static final ThreadLocal<HeapBuffer> READ_BUFFER = ThreadLocal.withInitial(() -> HeapBuffer.wrap(new byte[READ_BUFFER_SIZE]));
   private final SegmentFile file;
   private final SegmentDescriptor descriptor;
+  private final ChecksumType checksumType;
   private final Serializer serializer;
   private final Buffer buffer;
+  private final FileChannel channel;
   private final HeapBuffer memory = HeapBuffer.allocate();
   private final OffsetIndex offsetIndex;
+  private final PositionIndex positionIndex = new PositionIndex();
   private final OffsetPredicate offsetPredicate;
   private final TermIndex termIndex = new TermIndex();
+  private final AtomicLong releaseSize = new AtomicLong();
+  private final AtomicInteger references = new AtomicInteger(1);
+  private final SegmentIndexFile indexFile;
+  private final SegmentBlocks blocks;
   private final SegmentManager manager;
+  private final PageCacheAdvisor pageCacheAdvisor;
+  private long advisedPosition;
   private long skip = 0;
-  private boolean open = true;
+  private volatile long truncations;
+  private volatile boolean open = true;
 
   /**
    * @throws NullPointerException if any argument is null
    */
   Segment(SegmentFile file, Buffer buffer, SegmentDescriptor descriptor, OffsetIndex offsetIndex, OffsetPredicate offsetPredicate, Serializer serializer, SegmentManager manager) {
+    this(file, buffer, descriptor, offsetIndex, null, offsetPredicate, serializer, manager);
+  }
+
+  /**
+   * @throws NullPointerException if any argument other than {@code indexFile} is null
+   */
+  Segment(SegmentFile file, Buffer buffer, SegmentDescriptor descriptor, OffsetIndex offsetIndex, SegmentIndexFile indexFile, OffsetPredicate offsetPredicate, Serializer serializer, SegmentManager manager) {
     this.serializer = Assert.notNull(serializer, "serializer");
     this.file = Assert.notNull(file, "file");
     this.buffer = Assert.notNull(buffer, "buffer");
     this.descriptor = Assert.notNull(descriptor, "descriptor");
+    this.checksumType = descriptor.checksumType();
     this.offsetIndex = Assert.notNull(offsetIndex, "offsetIndex");
     this.offsetPredicate = Assert.notNull(offsetPredicate, "offsetPredicate");
     this.manager = Assert.notNull(manager, "manager");
+    this.indexFile = indexFile;
+    this.channel = openChannel(file, buffer);
+    this.blocks = descriptor.isCompressed() ? new SegmentBlocks(buffer, this::readFile, checksumType) : null;
+    Buffer root = buffer instanceof SlicedBuffer ? ((SlicedBuffer) buffer).root() : buffer;
+    this.pageCacheAdvisor = root instanceof FileBuffer ? manager.storage().pageCacheAdvisor() : PageCacheAdvisor.NONE;
     buildIndex();
   }
 
+  /**
+   * Opens a read-only channel for file based segments.
+   *
+   * @return The read channel or {@code null} if the segment is not file based.
+   */
+  private static FileChannel openChannel(SegmentFile file, Buffer buffer) {
+    Buffer root = buffer instanceof SlicedBuffer ? ((SlicedBuffer) buffer).root() : buffer;
+    if (root instanceof FileBuffer || root instanceof MappedBuffer) {
+      try {
+        return FileChannel.open(file.file().toPath(), StandardOpenOption.READ);
+      } catch (IOException e) {
+        throw new StorageException("failed to open segment file: " + file.file(), e);
+      }
+    }
+    return null;
+  }
+
   /**
    * Builds the index from the segment bytes.
    */
   private void buildIndex() {
+    // Compressed segments must load the block index before any records can be read.
+    if (blocks != null) {
+      blocks.load();
+    }
+
+    // If the index file could not be loaded, reset the index file and rebuild the index from the segment.
+    if (indexFile != null && !loadIndex()) {
+      indexFile.truncate(-1);
+    }
+
+    // Records in compressed segments can only be read through the block index.
+    if (blocks != null) {
+      buildCompressedIndex();
+      return;
+    }
+
     // Read the current buffer position.
     long position = buffer.mark().position();
 
+    // Read the last indexed term.
+    long lastTerm = termIndex.term();
+
     // Read the first entry length.
     int length = buffer.readInt();
 
@@ -116,25 +215,28 @@ public class Segment implements AutoCloseable {
       long offset = memory.readLong();
 
       // If the term is set on the entry, read the term.
-      Long term = memory.readBoolean() ? memory.readLong() : null;
+      Long term = hasTerm(memory.readUnsignedByte()) ? memory.readLong() : null;
 
       // Calculate the entry position and length.
       int entryPosition = (int) memory.position();
       int entryLength = length - entryPosition;
 
-      // Compute the checksum for the entry bytes.
-      Checksum crc32 = new CRC32();
-      crc32.update(memory.array(), entryPosition, entryLength);
-
       // If the computed checksum equals the stored checksum...
-      if (checksum == crc32.getValue()) {
+      if (checksum == checksumType.checksum(memory.array(), entryPosition, entryLength)) {
         // If the entry contained a term, index the term.
         if (term != null) {
           termIndex.index(offset, term);
+          lastTerm = term;
         }
 
         // Index the entry offset.
         offsetIndex.index(offset, position);
+        positionIndex.index(offset, position, length);
+
+        // Add the entry to the index file.
+        if (indexFile != null) {
+          indexFile.index(offset, position, lastTerm);
+        }
       } else {
         break;
       }
@@ -150,6 +252,86 @@ public class Segment implements AutoCloseable {
     buffer.reset();
   }
 
+  /**
+   * Builds the index from the records of a compressed segment following the last indexed record.
+   */
+  private void buildCompressedIndex() {
+    long position = publishedEnd();
+    long lastTerm = termIndex.term();
+
+    int length;
+    while ((length = readRecord(position)) != -1) {
+      long offset = memory.readLong(INTEGER);
+      if (hasTerm(memory.readUnsignedByte(INTEGER + LONG))) {
+        lastTerm = memory.readLong(INTEGER + LONG + BOOLEAN);
+        termIndex.index(offset, lastTerm);
+      }
+
+      offsetIndex.index(offset, position);
+      positionIndex.index(offset, position, length);
+      if (indexFile != null) {
+        indexFile.index(offset, position, lastTerm);
+      }
+      position += INTEGER + length;
+    }
+  }
+
+  /**
+   * Loads the index from the index file.
+   * <p>
+   * Entries in the index file are verified to be in increasing order, and the last indexed entry is read from the
+   * segment and its checksum verified. If the index file is valid, the segment buffer is positioned after the last
+   * indexed entry so that any entries not yet indexed can be read from the segment.
+   *
+   * @return Indicates whether the index was loaded from the index file.
+   */
+  private boolean loadIndex() {
+    int size = indexFile.size();
+    if (size == 0) {
+      return false;
+    }
+
+    // Verify that offsets, positions, and terms are increasing.
+    long lastOffset = -1;
+    long lastPosition = -1;
+    long lastTerm = 0;
+    for (int i = 0; i < size; i++) {
+      long offset = indexFile.offset(i);
+      long position = indexFile.position(i);
+      long term = indexFile.term(i);
+      if (offset <= lastOffset || position <= lastPosition || term < lastTerm || term <= 0) {
+        return false;
+      }
+      lastOffset = offset;
+      lastPosition = position;
+      lastTerm = term;
+    }
+
+    // Verify the last indexed entry is present in the segment.
+    int length = readRecord(lastPosition);
+    if (length == -1 || memory.readLong(INTEGER) != lastOffset) {
+      return false;
+    }
+
+    // Rebuild the in-memory indexes from the index file. Records are contiguous, so the length of each record
+    // is the distance to the next record.
+    for (int i = 0; i < size; i++) {
+      long offset = indexFile.offset(i);
+      long position = indexFile.position(i);
+      long nextPosition = i < size - 1 ? indexFile.position(i + 1) : lastPosition + INTEGER + length;
+      termIndex.index(offset, indexFile.term(i));
+      offsetIndex.index(offset, position);
+      positionIndex.index(offset, position, (int) (nextPosition - position - INTEGER));
+    }
+
+    // Position the buffer after the last indexed entry. The buffer of a compressed segment is positioned after
+    // its last block when the block index is loaded.
+    if (blocks == null) {
+      buffer.position(lastPosition + INTEGER + length);
+    }
+    return true;
+  }
+
   /**
    * Returns the segment file.
    *
@@ -219,13 +401,25 @@ public class Segment implements AutoCloseable {
       || offsetIndex.size() >= descriptor.maxEntries();
   }
 
+  /**
+   * Returns a boolean value indicating whether the segment will have crossed the given fraction of its capacity
+   * once the next entry has been appended.
+   *
+   * @param threshold The fraction of the segment's maximum size and entries.
+   * @return Indicates whether the segment's size or entry count exceeds the given fraction of its maximum.
+   */
+  boolean exceeds(double threshold) {
+    return size() >= descriptor.maxSegmentSize() * threshold
+      || offsetIndex.size() + 1 >= descriptor.maxEntries() * threshold;
+  }
+
   /**
    * Returns the total size of the segment in bytes.
    *
    * @return The size of the segment in bytes.
    */
   public long size() {
-    return buffer.offset() + buffer.position();
+    return buffer.offset() + buffer.position() + (blocks != null ? blocks.pending() : 0);
   }
 
   /**
@@ -334,7 +528,7 @@ public class Segment implements AutoCloseable {
    * @throws IllegalStateException if the segment is full
    * @throws IndexOutOfBoundsException if the {@code entry} index does not match the next index
    */
-  public long append(Entry entry) {
+  public synchronized long append(Entry entry) {
     Assert.notNull(entry, "entry");
     Assert.stateNot(isFull(), "segment is full");
 
@@ -353,9 +547,6 @@ public class Segment implements AutoCloseable {
     // The entry term must be positive and >= the last term in the segment.
     Assert.arg(term > 0 && term >= lastTerm, "term must be monotonically increasing");
 
-    // Mark the starting position of the record and record the starting position of the new entry.
-    long position = buffer.position();
-
     // Determine whether to skip writing the term to the segment.
     boolean skipTerm = term == lastTerm;
 
@@ -381,34 +572,100 @@ public class Segment implements AutoCloseable {
     entry.setSize(totalLength);
 
     // Compute the checksum for the entry.
-    Checksum crc32 = new CRC32();
-    crc32.update(memory.array(), headerLength, entryLength);
-    long checksum = crc32.getValue();
+    long checksum = checksumType.checksum(memory.array(), headerLength, entryLength);
+
+    return write(index, offset, term, lastTerm, entry.getCompactionMode(), checksum);
+  }
+
+  /**
+   * Appends a raw entry to the segment.
+   * <p>
+   * The serialized entry bytes are copied directly into the segment without deserializing the entry. Callers
+   * should verify the entry's checksum with {@link RawEntry#isValid()} prior to appending it. If the raw entry was
+   * checksummed with a different {@link ChecksumType} than that used by this segment, the checksum is recomputed.
+   *
+   * @throws NullPointerException if {@code entry} is null
+   * @throws IllegalStateException if the segment is full
+   * @throws IndexOutOfBoundsException if the {@code entry} index does not match the next index
+   */
+  public synchronized long appendRaw(RawEntry entry) {
+    Assert.notNull(entry, "entry");
+    Assert.stateNot(isFull(), "segment is full");
 
+    long index = nextIndex();
+    Assert.index(index == entry.index(), "inconsistent index: %s", entry.index());
+
+    // Calculate the offset of the entry.
+    long offset = relativeOffset(index);
+
+    // The entry term must be positive and >= the last term in the segment.
+    long term = entry.term();
+    long lastTerm = termIndex.term();
+    Assert.arg(term > 0 && term >= lastTerm, "term must be monotonically increasing");
+
+    // Calculate the length of the entry header bytes.
+    int headerLength = INTEGER + LONG + BOOLEAN + (term == lastTerm ? 0 : LONG);
+
+    // Clear the memory, skip the header, and copy the entry bytes into the in-memory buffer.
+    memory.clear().skip(headerLength);
+    memory.write(entry.bytes());
+    memory.flip();
+
+    // Use the entry's checksum if it matches the segment's checksum type, otherwise recompute it.
+    long checksum = entry.checksumType() == checksumType
+      ? entry.checksum()
+      : checksumType.checksum(memory.array(), headerLength, entry.bytes().length);
+
+    return write(index, offset, term, lastTerm, entry.compactionMode(), checksum);
+  }
+
+  /**
+   * Writes the record in the in-memory buffer to the segment.
+   * <p>
+   * The in-memory buffer must contain the serialized entry following space for the record header, and its
+   * limit must be the length of the record.
+   */
+  private long write(long index, long offset, long term, long lastTerm, Compaction.Mode mode, long checksum) {
     // Rewind the in-memory buffer and write the length, checksum, and offset.
     memory.rewind()
       .writeUnsignedInt(checksum)
       .writeLong(offset);
 
+    // Write the flags, recording the compaction mode if supported by the segment format.
+    memory.writeByte(flags(term != lastTerm, descriptor.recordsCompactionMode() ? mode : null));
+
     // If the term has not yet been written, write the term to this entry.
-    if (skipTerm) {
-      memory.writeBoolean(false);
-    } else {
-      memory.writeBoolean(true).writeLong(term);
+    if (term != lastTerm) {
+      memory.writeLong(term);
     }
 
-    // Write the entry length and entry to the segment.
-    buffer.writeInt(totalLength)
-      .write(memory.rewind());
+    // Write the entry length and entry to the segment, recording the starting position of the new entry.
+    int length = (int) memory.limit();
+    long position;
+    if (blocks != null) {
+      position = blocks.write(length, memory.rewind());
+    } else {
+      position = buffer.position();
+      buffer.writeInt(length)
+        .write(memory.rewind());
+    }
 
     // Index the offset, position, and length.
     offsetIndex.index(offset, position);
 
+    // Add the entry to the index file.
+    if (indexFile != null) {
+      indexFile.index(offset, position, term);
+    }
+
     // If the entry term is greater than the last indexed term, index the term.
     if (term > lastTerm) {
       termIndex.index(offset, term);
     }
 
+    // Publish the entry to readers once it has been written and its term indexed.
+    positionIndex.index(offset, position, length);
+
     // Reset skip to zero since we wrote a new entry.
     skip = 0;
 
@@ -440,56 +697,318 @@ public class Segment implements AutoCloseable {
    * @return The entry at the given index.
    * @throws IllegalStateException if the segment is not open or {@code index} is inconsistent with the entry
    */
-  public synchronized <T extends Entry> T get(long index) {
+  public <T extends Entry> T get(long index) {
     assertSegmentOpen();
     checkRange(index);
 
     // Get the offset of the index within this segment.
     long offset = relativeOffset(index);
 
-    // Get the start position of the entry from the memory index.
-    long position = offsetIndex.position(offset);
+    // Read the entry into the read buffer and deserialize it if the checksum is valid.
+    HeapBuffer memory = read(index, offset);
+    if (memory != null) {
+      int length = (int) memory.limit();
+      T entry = readSerializer().readObject(memory);
+      entry.setIndex(index).setTerm(termIndex.lookup(offset)).setSize(length);
+      return entry;
+    }
+    return null;
+  }
 
-    // If the index contained the entry, read the entry from the buffer.
-    if (position != -1) {
+  /**
+   * Reads the raw entry at the given index.
+   * <p>
+   * The returned entry contains the serialized entry bytes as they're stored in the segment. The entry is not
+   * deserialized.
+   *
+   * @param index The index from which to read the entry.
+   * @return The raw entry at the given index or {@code null} if the entry is not present in the segment.
+   * @throws IllegalStateException if the segment is not open or {@code index} is inconsistent with the entry
+   */
+  public RawEntry getRaw(long index) {
+    assertSegmentOpen();
+    checkRange(index);
+
+    // Get the offset of the index within this segment.
+    long offset = relativeOffset(index);
 
-      // Read the length of the entry.
-      int length = buffer.readInt(position);
+    // Read the entry into the read buffer and copy the entry bytes if the checksum is valid.
+    HeapBuffer memory = read(index, offset);
+    if (memory != null) {
+      byte[] bytes = new byte[(int) memory.remaining()];
+      System.arraycopy(memory.array(), (int) memory.position(), bytes, 0, bytes.length);
+      long checksum = memory.readUnsignedInt(0);
+      Compaction.Mode mode = compactionMode(memory.readUnsignedByte(INTEGER + LONG));
+      return new RawEntry(index, termIndex.lookup(offset), checksum, checksumType, mode, bytes);
+    }
+    return null;
+  }
 
-      // Read the entry into memory.
-      try (Buffer slice = buffer.slice(position + INTEGER, length)) {
-        slice.read(memory.clear().limit(length));
-        memory.flip();
+  /**
+   * Reads the record at the given offset into the calling thread's read buffer.
+   * <p>
+   * The record is located through the {@link PositionIndex}, so only records that have been fully written are read.
+   * If the record is present and its checksum is valid, the returned buffer is positioned at the start of the
+   * serialized entry bytes and limited to the length of the record.
+   *
+   * @return The read buffer or {@code null} if the record is not present or its checksum is invalid.
+   */
+  private HeapBuffer read(long index, long offset) {
+    // Get the position and length of the entry from the position index.
+    long record = positionIndex.lookup(offset);
+    if (record == -1) {
+      return null;
+    }
+
+    // Read the entry into the read buffer.
+    int length = PositionIndex.length(record);
+    HeapBuffer memory = readBuffer(length);
+    readBytes(PositionIndex.position(record) + INTEGER, memory.array(), length);
+
+    // Verify the checksum and that the entry at the given offset matches.
+    if (!verifyRecord(memory, length)) {
+      return null;
+    }
+    Assert.state(memory.readLong(INTEGER) == offset, "inconsistent index: %s", index);
+    return memory;
+  }
+
+  /**
+   * Returns the calling thread's read buffer, cleared and limited to the given length.
+   */
+  private static HeapBuffer readBuffer(int length) {
+    HeapBuffer buffer = READ_BUFFER.get();
+    if (buffer.capacity() < length) {
+      buffer = HeapBuffer.wrap(new byte[(int) Math.max(length, Math.min(buffer.capacity() * 2, Integer.MAX_VALUE))]);
+      READ_BUFFER.set(buffer);
+    }
+    buffer.clear();
+    buffer.limit(length);
+    return buffer;
+  }
+
+  /**
+   * Returns the position of the first record at or after the given index.
+   * <p>
+   * If no such record has been written, the position following the last written record is returned.
+   */
+  long position(long index) {
+    long record = positionIndex.ceiling(Math.max(relativeOffset(index), 0));
+    return record != -1 ? PositionIndex.position(record) : publishedEnd();
+  }
+
+  /**
+   * Returns the position following the last record published by the segment writer.
+   * <p>
+   * Records before this position are fully written and may be read concurrently with writes.
+   */
+  long publishedEnd() {
+    long record = positionIndex.last();
+    return record != -1 ? PositionIndex.position(record) + INTEGER + PositionIndex.length(record) : 0;
+  }
+
+  /**
+   * Returns the number of times the segment has been truncated.
+   * <p>
+   * Readers that buffer records compare truncation counts to detect when buffered records may have been overwritten.
+   */
+  long truncations() {
+    return truncations;
+  }
+
+  /**
+   * Returns the calling thread's serializer for reading entries.
+   */
+  Serializer readSerializer() {
+    return manager.readSerializer();
+  }
+
+  /**
+   * Returns a sequential reader of entries in the segment starting at the given index.
+   *
+   * @param index The index from which to read.
+   * @return The segment reader.
+   * @throws IllegalStateException if the segment is not open
+   */
+  public SegmentReader reader(long index) {
+    assertSegmentOpen();
+    return new SegmentReader(this, index);
+  }
+
+  /**
+   * Reads bytes from the given position in the segment without modifying the segment buffer.
+   * <p>
+   * Positions in compressed segments refer to the uncompressed stream of records.
+   */
+  void readBytes(long position, byte[] bytes, int length) {
+    acquire();
+    try {
+      if (blocks != null) {
+        blocks.read(position, bytes, length);
+      } else {
+        readFile(position, bytes, length);
       }
+    } finally {
+      release();
+    }
+  }
 
-      // Read the checksum of the entry.
-      long checksum = memory.readUnsignedInt();
+  /**
+   * Acquires a reference to the segment's resources.
+   *
+   * @throws IllegalStateException if the segment is not open
+   */
+  private void acquire() {
+    int count;
+    do {
+      count = references.get();
+      Assert.state(count > 0, "segment not open");
+    } while (!references.compareAndSet(count, count + 1));
+  }
 
-      // Verify that the entry at the given offset matches.
-      long entryOffset = memory.readLong();
-      Assert.state(entryOffset == offset, "inconsistent index: %s", index);
+  /**
+   * Releases a reference to the segment's resources, closing the resources once no references remain.
+   */
+  private void release() {
+    if (references.decrementAndGet() == 0) {
+      closeResources();
+    }
+  }
 
-      // Skip the term if necessary.
-      if (memory.readBoolean()) {
-        memory.skip(LONG);
+  /**
+   * Reads bytes from the given physical position in the segment without modifying the segment buffer.
+   */
+  private void readFile(long position, byte[] bytes, int length) {
+    if (channel != null) {
+      ByteBuffer target = ByteBuffer.wrap(bytes, 0, length);
+      long filePosition = buffer.offset() + position;
+      try {
+        while (target.hasRemaining()) {
+          if (channel.read(target, filePosition + target.position()) == -1) {
+            throw new StorageException("unexpected end of segment: " + file.file());
+          }
+        }
+      } catch (IOException e) {
+        throw new StorageException("failed to read segment: " + file.file(), e);
       }
+    } else {
+      buffer.read(position, bytes, 0, length);
+    }
+  }
 
-      // Calculate the entry position and length.
-      int entryPosition = (int) memory.position();
-      int entryLength = length - entryPosition;
+  /**
+   * Reads the record at the given position into the in-memory buffer.
+   * <p>
+   * This method reads through the segment buffer and may only be called by the writer, e.g. while building the index.
+   * If the record's checksum is valid, the in-memory buffer is positioned at the start of the serialized entry
+   * bytes, and the length of the record is returned.
+   *
+   * @return The length of the record or {@code -1} if the record's checksum is invalid.
+   */
+  private int readRecord(long position) {
+    if (blocks != null) {
+      return readCompressedRecord(position);
+    }
+
+    // Read the length of the entry.
+    int length = buffer.readInt(position);
+    if (length <= 0) {
+      return -1;
+    }
+
+    // Read the entry into memory.
+    try (Buffer slice = buffer.slice(position + INTEGER, length)) {
+      slice.read(memory.clear().limit(length));
+      memory.flip();
+    }
+    return verifyRecord(memory, length) ? length : -1;
+  }
 
-      // Compute the checksum for the entry bytes.
-      Checksum crc32 = new CRC32();
-      crc32.update(memory.array(), entryPosition, entryLength);
+  /**
+   * Reads the record at the given uncompressed position of a compressed segment into the in-memory buffer.
+   *
+   * @return The length of the record or {@code -1} if the record is not present or its checksum is invalid.
+   */
+  private int readCompressedRecord(long position) {
+    long end = blocks.position();
+    if (position + INTEGER > end) {
+      return -1;
+    }
 
-      // If the stored checksum equals the computed checksum, return the entry.
-      if (checksum == crc32.getValue()) {
-        T entry = serializer.readObject(memory);
-        entry.setIndex(index).setTerm(termIndex.lookup(offset)).setSize(length);
-        return entry;
+    HeapBuffer record = readBuffer(INTEGER);
+    readBytes(position, record.array(), INTEGER);
+    int length = record.readInt(0);
+    if (length <= 0 || position + INTEGER + length > end) {
+      return -1;
+    }
+
+    record = readBuffer(length);
+    readBytes(position + INTEGER, record.array(), length);
+    memory.clear().write(record).flip();
+    return verifyRecord(memory, length) ? length : -1;
+  }
+
+  /**
+   * Returns a boolean indicating whether the given record flags indicate that the record includes the entry term.
+   */
+  static boolean hasTerm(int flags) {
+    return (flags & TERM_FLAG) != 0;
+  }
+
+  /**
+   * Returns the record flags for a record with the given compaction mode.
+   *
+   * @param hasTerm Whether the record includes the entry term.
+   * @param mode The compaction mode to record, or {@code null} if no compaction mode is recorded.
+   * @return The record flags.
+   */
+  static int flags(boolean hasTerm, Compaction.Mode mode) {
+    int flags = hasTerm ? TERM_FLAG : 0;
+    if (mode != null) {
+      flags |= (mode.ordinal() + 1) << MODE_SHIFT;
+      if (Integer.bitCount(flags) % 2 != 0) {
+        flags |= PARITY_FLAG;
       }
     }
-    return null;
+    return flags;
+  }
+
+  /**
+   * Returns the compaction mode recorded in the given record flags.
+   *
+   * @return The recorded compaction mode or {@code null} if no compaction mode was recorded or the flags are corrupt.
+   */
+  static Compaction.Mode compactionMode(int flags) {
+    int mode = (flags >>> MODE_SHIFT) & MODE_MASK;
+    if (mode == 0 || mode > MODES.length || Integer.bitCount(flags) % 2 != 0) {
+      return null;
+    }
+    return MODES[mode - 1];
+  }
+
+  /**
+   * Verifies the checksum of the record in the given buffer.
+   * <p>
+   * If the record's checksum is valid, the buffer is positioned at the start of the serialized entry bytes.
+   *
+   * @return Indicates whether the record's checksum is valid.
+   */
+  private boolean verifyRecord(HeapBuffer memory, int length) {
+    // Read the checksum of the entry and skip the offset.
+    long checksum = memory.readUnsignedInt();
+    memory.skip(LONG);
+
+    // Skip the term if necessary.
+    if (hasTerm(memory.readUnsignedByte())) {
+      memory.skip(LONG);
+    }
+
+    // Calculate the entry position and length.
+    int entryPosition = (int) memory.position();
+    int entryLength = length - entryPosition;
+
+    // If the stored checksum equals the computed checksum, the record is valid.
+    return checksum == checksumType.checksum(memory.array(), entryPosition, entryLength);
   }
 
   /**
@@ -517,9 +1036,9 @@ public class Segment implements AutoCloseable {
     if (!validIndex(index))
       return false;
 
-    // Check the memory index first for performance reasons.
+    // Check the position index, which is safe to read concurrently with writes.
     long offset = relativeOffset(index);
-    return offsetIndex.contains(offset);
+    return positionIndex.contains(offset);
   }
 
   /**
@@ -531,8 +1050,17 @@ public class Segment implements AutoCloseable {
    */
   public boolean release(long index) {
     assertSegmentOpen();
-    long offset = offsetIndex.find(relativeOffset(index));
-    return offset != -1 && offsetPredicate.release(offset);
+    long relativeOffset = relativeOffset(index);
+    long offset = offsetIndex.find(relativeOffset);
+    if (offset != -1 && offsetPredicate.release(offset)) {
+      // Track the size of released records so compaction can estimate the space reclaimed by rewriting the segment.
+      long record = positionIndex.lookup(relativeOffset);
+      if (record != -1) {
+        releaseSize.addAndGet(INTEGER + PositionIndex.length(record));
+      }
+      return true;
+    }
+    return false;
   }
 
   /**
@@ -558,6 +1086,31 @@ public class Segment implements AutoCloseable {
     return offsetPredicate.count();
   }
 
+  /**
+   * Returns the number of bytes of entries in the segment that have been released.
+   * <p>
+   * The size is tracked as entries are {@link #release(long) released}, and is measured in uncompressed record
+   * bytes for {@link SegmentDescriptor#isCompressed() compressed} segments.
+   *
+   * @return The number of bytes of entries in the segment that have been released.
+   * @throws IllegalStateException if the segment is not open
+   */
+  public long releaseSize() {
+    assertSegmentOpen();
+    return releaseSize.get();
+  }
+
+  /**
+   * Returns the number of bytes of entries in the segment that have not been released.
+   *
+   * @return The number of bytes of entries in the segment that have not been released.
+   * @throws IllegalStateException if the segment is not open
+   */
+  public long liveSize() {
+    assertSegmentOpen();
+    return Math.max(publishedEnd() - releaseSize.get(), 0);
+  }
+
   /**
    * Returns a predicate for live offsets in the segment.
    *
@@ -598,11 +1151,17 @@ public class Segment implements AutoCloseable {
     skip = Math.max(skip - diff, 0);
 
     if (offset < lastOffset) {
+      Assert.stateNot(blocks != null, "cannot truncate compressed segment");
+      truncations++;
+      positionIndex.truncate(offset);
       long position = offsetIndex.truncate(offset);
       buffer.position(position)
         .zero(position)
         .flush();
       termIndex.truncate(offset);
+      if (indexFile != null) {
+        indexFile.truncate(offset);
+      }
     }
     return this;
   }
@@ -613,18 +1172,62 @@ public class Segment implements AutoCloseable {
    * @return The segment.
    */
   public Segment flush() {
+    if (blocks != null) {
+      blocks.flush();
+    }
     buffer.flush();
     offsetIndex.flush();
+    adviseFlushed();
     return this;
   }
 
+  /**
+   * Advises the page cache advisor of the full pages that have been flushed since the last flush.
+   */
+  private synchronized void adviseFlushed() {
+    if (pageCacheAdvisor != PageCacheAdvisor.NONE) {
+      long flushedPosition = size() / PageCacheAdvisor.PAGE_SIZE * PageCacheAdvisor.PAGE_SIZE;
+      if (flushedPosition > advisedPosition) {
+        pageCacheAdvisor.dontNeed(file.file(), advisedPosition, flushedPosition - advisedPosition);
+      }
+      advisedPosition = flushedPosition;
+    }
+  }
+
+  /**
+   * Closes the segment.
+   * <p>
+   * Reads that are in progress when the segment is closed complete before the segment's resources are released.
+   */
   @Override
-  public void close() {
+  public synchronized void close() {
+    if (open) {
+      open = false;
+      release();
+    }
+  }
+
+  /**
+   * Closes the segment's resources.
+   */
+  private void closeResources() {
+    if (channel != null) {
+      try {
+        channel.close();
+      } catch (IOException e) {
+        LOGGER.warn("Failed to close segment channel: {}", file.file(), e);
+      }
+    }
+    if (blocks != null) {
+      blocks.close();
+    }
     buffer.close();
     offsetIndex.close();
+    if (indexFile != null) {
+      indexFile.close();
+    }
     offsetPredicate.close();
     descriptor.close();
-    open = false;
   }
 
   /**
@@ -633,12 +1236,18 @@ public class Segment implements AutoCloseable {
   public void delete() {
     Buffer buffer = this.buffer instanceof SlicedBuffer ? ((SlicedBuffer) this.buffer).root() : this.buffer;
     if (buffer instanceof FileBuffer) {
-      ((FileBuffer) buffer).delete();
+      // Recycle the segment file into the segment pool if possible rather than deleting it.
+      if (!manager.recycle(file.file())) {
+        ((FileBuffer) buffer).delete();
+      }
     } else if (buffer instanceof MappedBuffer) {
       ((MappedBuffer) buffer).delete();
     }
 
     offsetIndex.delete();
+    if (indexFile != null) {
+      indexFile.delete();
+    }
   }
 
   @Override
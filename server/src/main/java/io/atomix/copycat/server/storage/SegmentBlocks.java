@@ -0,0 +1,300 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.util.ChecksumType;
+
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static io.atomix.catalyst.buffer.Bytes.INTEGER;
+
+/**
+ * Stores the records of a compressed {@link Segment} in independently compressed blocks.
+ * <p>
+ * Records in a compressed segment are addressed by their position in the uncompressed stream of records, so the
+ * segment's indexes are the same as those of an uncompressed segment. Records are written to an in-memory block
+ * which is compressed and written to the segment buffer once it reaches {@link #BLOCK_SIZE} bytes or the segment
+ * is flushed. A record is never split across blocks. Each block is stored in the following format:
+ * <ul>
+ *   <li>Required 32-bit signed compressed length</li>
+ *   <li>Required 32-bit signed uncompressed length</li>
+ *   <li>Required 32-bit unsigned checksum of the compressed bytes</li>
+ *   <li>Required compressed bytes</li>
+ * </ul>
+ * An in-memory index of the uncompressed and physical positions of each block is built from the block headers when
+ * the segment is loaded, so reading a record only requires decompressing the block that contains it. The most
+ * recently decompressed block is retained for sequential reads.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class SegmentBlocks implements AutoCloseable {
+  static final int BLOCK_SIZE = 1024 * 64;
+  private static final int HEADER_BYTES = INTEGER + INTEGER + INTEGER;
+
+  /**
+   * Reads bytes from the segment by physical position.
+   */
+  @FunctionalInterface
+  interface Reader {
+    void read(long position, byte[] bytes, int length);
+  }
+
+  private final Buffer buffer;
+  private final Reader reader;
+  private final ChecksumType checksumType;
+  private final Deflater deflater = new Deflater();
+  private final Inflater inflater = new Inflater();
+  private final HeapBuffer block = HeapBuffer.allocate();
+  private long blockPosition;
+  private long[] positions = new long[16];
+  private long[] physicalPositions = new long[16];
+  private int count;
+  private int cachedBlock = -1;
+  private byte[] cachedBytes;
+
+  SegmentBlocks(Buffer buffer, Reader reader, ChecksumType checksumType) {
+    this.buffer = Assert.notNull(buffer, "buffer");
+    this.reader = Assert.notNull(reader, "reader");
+    this.checksumType = Assert.notNull(checksumType, "checksumType");
+  }
+
+  /**
+   * Loads the block index from the block headers following the segment buffer's position.
+   * <p>
+   * Blocks are read until a zero length or a block with an invalid checksum is found, and the segment buffer is
+   * positioned after the last valid block.
+   */
+  synchronized void load() {
+    long position = buffer.position();
+    while (position + HEADER_BYTES <= buffer.maxCapacity()) {
+      int compressedLength = buffer.readInt(position);
+      int length = buffer.readInt(position + INTEGER);
+      if (compressedLength <= 0 || length <= 0 || position + HEADER_BYTES + compressedLength > buffer.maxCapacity()) {
+        break;
+      }
+
+      long checksum = buffer.readUnsignedInt(position + INTEGER + INTEGER);
+      byte[] bytes = new byte[compressedLength];
+      buffer.read(position + HEADER_BYTES, bytes, 0, compressedLength);
+      if (checksum != checksumType.checksum(bytes, 0, compressedLength)) {
+        break;
+      }
+
+      index(position);
+      blockPosition += length;
+      position += HEADER_BYTES + compressedLength;
+    }
+    buffer.position(position);
+  }
+
+  /**
+   * Returns the uncompressed position at which the next record will be written.
+   *
+   * @return The uncompressed position at which the next record will be written.
+   */
+  synchronized long position() {
+    return blockPosition + block.position();
+  }
+
+  /**
+   * Returns the number of uncompressed bytes that have not yet been written to the segment buffer.
+   *
+   * @return The number of uncompressed bytes in the current block.
+   */
+  synchronized long pending() {
+    return block.position();
+  }
+
+  /**
+   * Writes a record to the current block.
+   *
+   * @param length The length of the record.
+   * @param record The record bytes.
+   * @return The uncompressed position of the record.
+   */
+  synchronized long write(int length, Buffer record) {
+    if (block.position() > 0 && block.position() + INTEGER + length > BLOCK_SIZE) {
+      writeBlock();
+    }
+
+    long position = position();
+    block.writeInt(length).write(record);
+    if (block.position() >= BLOCK_SIZE) {
+      writeBlock();
+    }
+    return position;
+  }
+
+  /**
+   * Writes the current block to the segment buffer if it contains any records.
+   */
+  synchronized void flush() {
+    if (block.position() > 0) {
+      writeBlock();
+    }
+  }
+
+  /**
+   * Compresses the current block and writes it to the segment buffer.
+   */
+  private void writeBlock() {
+    int length = (int) block.position();
+    byte[] bytes = Arrays.copyOf(block.array(), length);
+
+    deflater.reset();
+    deflater.setInput(bytes);
+    deflater.finish();
+    byte[] compressed = new byte[length + length / 8 + 64];
+    int compressedLength = 0;
+    while (!deflater.finished()) {
+      if (compressedLength == compressed.length) {
+        compressed = Arrays.copyOf(compressed, compressed.length * 2);
+      }
+      compressedLength += deflater.deflate(compressed, compressedLength, compressed.length - compressedLength);
+    }
+
+    long physicalPosition = buffer.position();
+    buffer.writeInt(compressedLength)
+      .writeInt(length)
+      .writeUnsignedInt(checksumType.checksum(compressed, 0, compressedLength))
+      .write(Arrays.copyOf(compressed, compressedLength));
+    index(physicalPosition);
+
+    // The block was just written, so keep its uncompressed bytes for reads that follow.
+    cachedBlock = count - 1;
+    cachedBytes = bytes;
+
+    blockPosition += length;
+    block.clear();
+  }
+
+  /**
+   * Adds a block at the given physical position to the block index.
+   */
+  private void index(long physicalPosition) {
+    if (count == positions.length) {
+      positions = Arrays.copyOf(positions, count * 2);
+      physicalPositions = Arrays.copyOf(physicalPositions, count * 2);
+    }
+    positions[count] = blockPosition;
+    physicalPositions[count] = physicalPosition;
+    count++;
+  }
+
+  /**
+   * Reads bytes from the given uncompressed position.
+   * <p>
+   * The bytes may span any number of blocks, including the current block.
+   *
+   * @param position The uncompressed position from which to read.
+   * @param bytes The array into which to read the bytes.
+   * @param length The number of bytes to read.
+   */
+  synchronized void read(long position, byte[] bytes, int length) {
+    int offset = 0;
+    while (offset < length) {
+      long next = position + offset;
+      int read;
+      if (next >= blockPosition) {
+        read = (int) Math.min(length - offset, blockPosition + block.position() - next);
+        Assert.state(read > 0, "position out of bounds: %s", next);
+        System.arraycopy(block.array(), (int) (next - blockPosition), bytes, offset, read);
+      } else {
+        int index = find(next);
+        byte[] data = decompress(index);
+        int blockOffset = (int) (next - positions[index]);
+        read = Math.min(length - offset, data.length - blockOffset);
+        System.arraycopy(data, blockOffset, bytes, offset, read);
+      }
+      offset += read;
+    }
+  }
+
+  /**
+   * Returns the index of the block containing the given uncompressed position.
+   */
+  private int find(long position) {
+    int low = 0;
+    int high = count - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (positions[mid] <= position) {
+        low = mid;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return low;
+  }
+
+  /**
+   * Returns the uncompressed bytes of the given block.
+   */
+  private byte[] decompress(int index) {
+    if (index == cachedBlock) {
+      return cachedBytes;
+    }
+
+    long physicalPosition = physicalPositions[index];
+    byte[] header = new byte[HEADER_BYTES];
+    reader.read(physicalPosition, header, HEADER_BYTES);
+    HeapBuffer headerBuffer = HeapBuffer.wrap(header);
+    int compressedLength = headerBuffer.readInt(0);
+    int length = headerBuffer.readInt(INTEGER);
+
+    byte[] compressed = new byte[compressedLength];
+    reader.read(physicalPosition + HEADER_BYTES, compressed, compressedLength);
+
+    byte[] bytes = new byte[length];
+    inflater.reset();
+    inflater.setInput(compressed);
+    try {
+      int read = 0;
+      while (read < length && !inflater.finished()) {
+        read += inflater.inflate(bytes, read, length - read);
+      }
+      if (read != length) {
+        throw new StorageException("corrupt segment block at position " + physicalPosition);
+      }
+    } catch (DataFormatException e) {
+      throw new StorageException("corrupt segment block at position " + physicalPosition, e);
+    }
+
+    cachedBlock = index;
+    cachedBytes = bytes;
+    return bytes;
+  }
+
+  @Override
+  public synchronized void close() {
+    block.close();
+    deflater.end();
+    inflater.end();
+    cachedBytes = null;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[blocks=%d]", getClass().getSimpleName(), count);
+  }
+
+}
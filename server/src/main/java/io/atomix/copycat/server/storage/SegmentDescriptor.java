@@ -17,6 +17,7 @@ package io.atomix.copycat.server.storage;
 
 import io.atomix.catalyst.buffer.*;
 import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.util.ChecksumType;
 
 /**
  * Stores information about a {@link Segment} of the log.
@@ -42,6 +43,9 @@ import io.atomix.catalyst.util.Assert;
  *   <li>{@code locked} (8-bit boolean) - A boolean indicating whether the segment is locked. Segments will be locked once
  *   all entries have been committed to the segment. The lock state of each segment is used to determine log compaction
  *   and recovery behavior.</li>
+ *   <li>{@code format} (8-bit unsigned integer) - The format with which entries are encoded in the segment.</li>
+ *   <li>{@code compression} (8-bit unsigned integer) - The compression with which entries are stored in the segment.
+ *   Compressed segments are only written by log compaction.</li>
  * </ul>
  * The remainder of the 64 segment header bytes are reserved for future metadata.
  *
@@ -50,6 +54,36 @@ import io.atomix.catalyst.util.Assert;
 public final class SegmentDescriptor implements AutoCloseable {
   public static final int BYTES = 64;
 
+  /**
+   * Segment format in which entries are checksummed with CRC32.
+   */
+  public static final int FORMAT_V1 = 1;
+
+  /**
+   * Segment format in which entries are checksummed with CRC32C.
+   */
+  public static final int FORMAT_V2 = 2;
+
+  /**
+   * Segment format in which entries are checksummed with CRC32C and record headers carry the entry compaction mode.
+   */
+  public static final int FORMAT_V3 = 3;
+
+  /**
+   * The format with which new segments are written.
+   */
+  public static final int CURRENT_FORMAT = FORMAT_V3;
+
+  /**
+   * Segment compression in which records are stored uncompressed.
+   */
+  public static final int COMPRESSION_NONE = 0;
+
+  /**
+   * Segment compression in which records are stored in independently Deflate compressed blocks.
+   */
+  public static final int COMPRESSION_DEFLATE = 1;
+
   // The lengths of each field in the header.
   private static final int          ID_LENGTH = Bytes.LONG;    // 64-bit signed integer
   private static final int     VERSION_LENGTH = Bytes.LONG;    // 64-bit signed integer
@@ -58,6 +92,8 @@ public final class SegmentDescriptor implements AutoCloseable {
   private static final int MAX_ENTRIES_LENGTH = Bytes.INTEGER; // 32-bit signed integer
   private static final int     UPDATED_LENGTH = Bytes.LONG;    // 64-bit signed integer
   private static final int      LOCKED_LENGTH = Bytes.BOOLEAN; // 8-bit boolean
+  private static final int      FORMAT_LENGTH = Bytes.BYTE;    // 8-bit unsigned integer
+  private static final int COMPRESSION_LENGTH = Bytes.BYTE;    // 8-bit unsigned integer
 
   // The positions of each field in the header.
   private static final long          ID_POSITION = 0;                                         // 0
@@ -67,6 +103,8 @@ public final class SegmentDescriptor implements AutoCloseable {
   private static final long MAX_ENTRIES_POSITION = MAX_SIZE_POSITION + MAX_SIZE_LENGTH;       // 28
   private static final long     UPDATED_POSITION = MAX_ENTRIES_POSITION + MAX_ENTRIES_LENGTH; // 32
   private static final long      LOCKED_POSITION = UPDATED_POSITION + UPDATED_LENGTH;         // 40
+  private static final long      FORMAT_POSITION = LOCKED_POSITION + LOCKED_LENGTH;           // 41
+  private static final long COMPRESSION_POSITION = FORMAT_POSITION + FORMAT_LENGTH;           // 42
 
   /**
    * Returns a descriptor builder.
@@ -98,9 +136,12 @@ public final class SegmentDescriptor implements AutoCloseable {
   private final int maxEntries;
   private volatile long updated;
   private volatile boolean locked;
+  private final int format;
+  private final int compression;
 
   /**
    * @throws NullPointerException if {@code buffer} is null
+   * @throws DescriptorException if the descriptor's compression is not a known compression
    */
   public SegmentDescriptor(Buffer buffer) {
     this.buffer = Assert.notNull(buffer, "buffer");
@@ -111,6 +152,11 @@ public final class SegmentDescriptor implements AutoCloseable {
     this.maxEntries = buffer.readInt();
     this.updated = buffer.readLong();
     this.locked = buffer.readBoolean();
+    this.format = Math.max(buffer.readUnsignedByte(), FORMAT_V1);
+    this.compression = buffer.readUnsignedByte();
+    if (!isKnownCompression(compression)) {
+      throw new DescriptorException("unknown segment compression: %s", compression);
+    }
     buffer.skip(BYTES - buffer.position()); // 64 bytes reserved for the header
   }
 
@@ -211,6 +257,63 @@ public final class SegmentDescriptor implements AutoCloseable {
     locked = true;
   }
 
+  /**
+   * Returns the segment format version.
+   * <p>
+   * The format version determines how entries are encoded in the segment. Segments written before format versions
+   * were introduced are reported as {@link #FORMAT_V1}.
+   *
+   * @return The segment format version.
+   */
+  public int format() {
+    return format;
+  }
+
+  /**
+   * Returns the checksum type used to verify entries in the segment.
+   *
+   * @return The checksum type used to verify entries in the segment.
+   */
+  public ChecksumType checksumType() {
+    return format >= FORMAT_V2 ? ChecksumType.CRC32C : ChecksumType.CRC32;
+  }
+
+  /**
+   * Returns a boolean indicating whether record headers in the segment carry the entry compaction mode.
+   *
+   * @return Indicates whether record headers in the segment carry the entry compaction mode.
+   */
+  public boolean recordsCompactionMode() {
+    return format >= FORMAT_V3;
+  }
+
+  /**
+   * Returns the segment compression.
+   * <p>
+   * Segments written before compression was introduced are reported as {@link #COMPRESSION_NONE}.
+   *
+   * @return The segment compression.
+   */
+  public int compression() {
+    return compression;
+  }
+
+  /**
+   * Returns a boolean indicating whether the given compression is a known segment compression.
+   */
+  private static boolean isKnownCompression(int compression) {
+    return compression == COMPRESSION_NONE || compression == COMPRESSION_DEFLATE;
+  }
+
+  /**
+   * Returns a boolean indicating whether entries in the segment are stored compressed.
+   *
+   * @return Indicates whether the segment is compressed.
+   */
+  public boolean isCompressed() {
+    return compression != COMPRESSION_NONE;
+  }
+
   /**
    * Copies the segment to a new buffer.
    */
@@ -223,6 +326,8 @@ public final class SegmentDescriptor implements AutoCloseable {
       .writeInt(maxEntries)
       .writeLong(updated)
       .writeBoolean(locked)
+      .writeByte(format)
+      .writeByte(compression)
       .skip(BYTES - buffer.position())
       .flush();
     return this;
@@ -246,7 +351,7 @@ public final class SegmentDescriptor implements AutoCloseable {
 
   @Override
   public String toString() {
-    return String.format("%s[id=%d, version=%d, index=%d, updated=%d, locked=%b]", getClass().getSimpleName(), id, version, index, updated, locked);
+    return String.format("%s[id=%d, version=%d, index=%d, updated=%d, locked=%b, format=%d, compression=%d]", getClass().getSimpleName(), id, version, index, updated, locked, format, compression);
   }
 
   /**
@@ -257,6 +362,7 @@ public final class SegmentDescriptor implements AutoCloseable {
 
     private Builder(Buffer buffer) {
       this.buffer = Assert.notNull(buffer, "buffer");
+      buffer.writeByte(FORMAT_POSITION, CURRENT_FORMAT);
     }
 
     /**
@@ -314,6 +420,36 @@ public final class SegmentDescriptor implements AutoCloseable {
       return this;
     }
 
+    /**
+     * Sets the segment format version.
+     * <p>
+     * By default, segments are built with the {@link #CURRENT_FORMAT}.
+     *
+     * @param format The segment format version.
+     * @return The segment descriptor builder.
+     * @throws IllegalArgumentException if the format is not a known format version
+     */
+    public Builder withFormat(int format) {
+      Assert.arg(format >= FORMAT_V1 && format <= CURRENT_FORMAT, "unknown segment format: %s", format);
+      buffer.writeByte(FORMAT_POSITION, format);
+      return this;
+    }
+
+    /**
+     * Sets the segment compression.
+     * <p>
+     * By default, segments are built with {@link #COMPRESSION_NONE}.
+     *
+     * @param compression The segment compression.
+     * @return The segment descriptor builder.
+     * @throws IllegalArgumentException if the compression is not a known compression
+     */
+    public Builder withCompression(int compression) {
+      Assert.arg(isKnownCompression(compression), "unknown segment compression: %s", compression);
+      buffer.writeByte(COMPRESSION_POSITION, compression);
+      return this;
+    }
+
     /**
      * Builds the segment descriptor.
      *
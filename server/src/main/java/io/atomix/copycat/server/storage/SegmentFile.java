@@ -18,6 +18,10 @@ package io.atomix.copycat.server.storage;
 import io.atomix.catalyst.util.Assert;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Segment file utility.
@@ -28,6 +32,10 @@ public final class SegmentFile {
   private static final char PART_SEPARATOR = '-';
   private static final char EXTENSION_SEPARATOR = '.';
   private static final String EXTENSION = "log";
+  private static final String INDEX_EXTENSION = "index";
+  private static final String POOL_EXTENSION = "pool";
+  private static final int PREALLOCATE_BLOCK_SIZE = PageCacheAdvisor.PAGE_SIZE * 256;
+  private static final ByteBuffer ZEROS = ByteBuffer.allocateDirect(PREALLOCATE_BLOCK_SIZE);
   private final File file;
 
   /**
@@ -60,6 +68,58 @@ public final class SegmentFile {
     return fileName.substring(0, fileName.lastIndexOf(PART_SEPARATOR, fileName.lastIndexOf(PART_SEPARATOR) - 1)).equals(name);
   }
 
+  /**
+   * Returns a boolean value indicating whether the given file appears to be a segment index file.
+   *
+   * @throws NullPointerException if {@code file} is null
+   */
+  public static boolean isIndexFile(String name, File file) {
+    Assert.notNull(name, "name");
+    Assert.notNull(file, "file");
+    String fileName = file.getName();
+    if (!fileName.endsWith(EXTENSION_SEPARATOR + INDEX_EXTENSION))
+      return false;
+    String segmentName = fileName.substring(0, fileName.length() - INDEX_EXTENSION.length()) + EXTENSION;
+    return isSegmentFile(name, new File(file.getParentFile(), segmentName));
+  }
+
+  /**
+   * Returns a boolean value indicating whether the given file appears to be a pooled segment file.
+   *
+   * @throws NullPointerException if {@code file} is null
+   */
+  public static boolean isPoolFile(String name, File file) {
+    Assert.notNull(name, "name");
+    Assert.notNull(file, "file");
+    return poolFileId(name, file) != -1;
+  }
+
+  /**
+   * Returns the identifier of the given pooled segment file or {@code -1} if the file is not a pooled segment file.
+   */
+  static long poolFileId(String name, File file) {
+    String fileName = file.getName();
+    String prefix = name + PART_SEPARATOR;
+    String suffix = EXTENSION_SEPARATOR + POOL_EXTENSION;
+    if (!fileName.startsWith(prefix) || !fileName.endsWith(suffix) || fileName.length() == prefix.length() + suffix.length())
+      return -1;
+
+    String id = fileName.substring(prefix.length(), fileName.length() - suffix.length());
+    for (int i = 0; i < id.length(); i++) {
+      if (!Character.isDigit(id.charAt(i))) {
+        return -1;
+      }
+    }
+    return Long.parseLong(id);
+  }
+
+  /**
+   * Creates a pooled segment file for the given directory, log name, and pool file ID.
+   */
+  static File createPoolFile(String name, File directory, long id) {
+    return new File(directory, String.format("%s-%d.%s", Assert.notNull(name, "name"), id, POOL_EXTENSION));
+  }
+
   /**
    * Creates a segment file for the given directory, log name, segment ID, and segment version.
    */
@@ -67,6 +127,56 @@ public final class SegmentFile {
     return new File(directory, String.format("%s-%d-%d.log", Assert.notNull(name, "name"), id, version));
   }
 
+  /**
+   * Creates a segment index file for the given directory, log name, segment ID, and segment version.
+   */
+  static File createIndexFile(String name, File directory, long id, long version) {
+    return new File(directory, String.format("%s-%d-%d.%s", Assert.notNull(name, "name"), id, version, INDEX_EXTENSION));
+  }
+
+  /**
+   * Returns the given size rounded up to a multiple of the {@link PageCacheAdvisor#PAGE_SIZE page size}.
+   */
+  static long alignedSize(long size) {
+    return (size + PageCacheAdvisor.PAGE_SIZE - 1) / PageCacheAdvisor.PAGE_SIZE * PageCacheAdvisor.PAGE_SIZE;
+  }
+
+  /**
+   * Preallocates a segment file of the given size.
+   * <p>
+   * The file is filled with zeros in page aligned blocks written from a direct buffer and forced to disk, so the
+   * file's blocks are allocated up front rather than as entries are appended. Unwritten regions of segments are
+   * expected to be zeroed, so preallocated files are read the same as files that grow as entries are written.
+   *
+   * @param file The file to preallocate.
+   * @param size The size of the file in bytes. The size is rounded up to a multiple of the page size.
+   * @return The size of the preallocated file.
+   * @throws StorageException if the file cannot be preallocated
+   */
+  static long preallocate(File file, long size) {
+    long alignedSize = alignedSize(size);
+    try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+      // Recycled files may be larger than the requested size. Discard their tails so no stale records remain.
+      if (randomAccessFile.length() > alignedSize) {
+        randomAccessFile.setLength(alignedSize);
+      }
+
+      FileChannel channel = randomAccessFile.getChannel();
+      long position = 0;
+      while (position < alignedSize) {
+        ByteBuffer zeros = ZEROS.duplicate();
+        zeros.limit((int) Math.min(zeros.capacity(), alignedSize - position));
+        while (zeros.hasRemaining()) {
+          position += channel.write(zeros, position);
+        }
+      }
+      channel.force(true);
+    } catch (IOException e) {
+      throw new StorageException("failed to preallocate segment: " + file, e);
+    }
+    return alignedSize;
+  }
+
   /**
    * @throws IllegalArgumentException if {@code file} is not a valid segment file
    */
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.MappedBuffer;
+import io.atomix.catalyst.util.Assert;
+
+import java.io.File;
+
+/**
+ * Persistent, memory-mapped index of the entries in a {@link Segment}.
+ * <p>
+ * The index file is stored alongside each segment file and records the offset, position, and term of each entry
+ * as it's appended to the segment. When a segment is loaded from disk, the segment's in-memory offset and term
+ * indexes are rebuilt from the index file rather than by reading and checksumming every entry in the segment.
+ * <p>
+ * The index file is not forced to disk with the segment. If the index file is missing entries at the end of
+ * the segment, the segment resumes scanning at the end of the last indexed entry. The index file begins with a
+ * 16 byte header containing a magic number, the index format version, and the segment's base index. Each entry
+ * in the index is stored in 16 bytes:
+ * <ul>
+ *   <li>32-bit signed offset plus one, such that a zero value indicates the end of the index</li>
+ *   <li>32-bit unsigned position of the entry within the segment</li>
+ *   <li>64-bit signed term of the entry</li>
+ * </ul>
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class SegmentIndexFile implements AutoCloseable {
+  private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+  private static final int MAGIC = 0x43435849;
+  private static final int VERSION = 1;
+  private static final int HEADER_SIZE = 16;
+  private static final int ENTRY_SIZE = 16;
+  private static final int POSITION_OFFSET = 4;
+  private static final int TERM_OFFSET = 8;
+
+  /**
+   * Returns the size of the index file for the given number of entries.
+   */
+  static long size(int maxEntries) {
+    return (long) maxEntries * ENTRY_SIZE + HEADER_SIZE;
+  }
+
+  private final MappedBuffer buffer;
+  private final long maxEntries;
+  private int size;
+
+  /**
+   * Opens the index file for the given segment descriptor.
+   * <p>
+   * If the index file does not exist or does not belong to the segment, the index file is reset.
+   */
+  SegmentIndexFile(File file, SegmentDescriptor descriptor) {
+    this(file, descriptor.maxEntries());
+
+    // If the header does not match the segment, reset the index file.
+    if (buffer.readInt(0) != MAGIC || buffer.readInt(4) != VERSION || buffer.readLong(8) != descriptor.index()) {
+      reset(descriptor.index());
+    } else {
+      while (size < maxEntries && buffer.readInt(entryPosition(size)) != 0) {
+        size++;
+      }
+    }
+  }
+
+  /**
+   * Opens an index file for a segment that has not yet been created.
+   * <p>
+   * The index file must be {@link #reset(long) reset} before it's used.
+   */
+  SegmentIndexFile(File file, int maxEntries) {
+    Assert.notNull(file, "file");
+    long maxSize = size(maxEntries);
+    this.buffer = MappedBuffer.allocate(file, Math.min(DEFAULT_BUFFER_SIZE, maxSize), maxSize);
+    this.maxEntries = maxEntries;
+  }
+
+  /**
+   * Clears the index file and resets its header to the given segment base index.
+   *
+   * @param index The segment base index.
+   */
+  void reset(long index) {
+    buffer.position(0).zero();
+    size = 0;
+    rebase(index);
+  }
+
+  /**
+   * Sets the segment base index in the header of an empty index file.
+   *
+   * @param index The segment base index.
+   */
+  void rebase(long index) {
+    Assert.state(size == 0, "cannot rebase non-empty index file");
+    buffer.writeInt(0, MAGIC)
+      .writeInt(4, VERSION)
+      .writeLong(8, index);
+  }
+
+  /**
+   * Returns the position of the given entry in the index file.
+   */
+  private static long entryPosition(int entry) {
+    return HEADER_SIZE + (long) entry * ENTRY_SIZE;
+  }
+
+  /**
+   * Returns the number of entries in the index file.
+   *
+   * @return The number of entries in the index file.
+   */
+  int size() {
+    return size;
+  }
+
+  /**
+   * Returns the offset of the given entry.
+   *
+   * @param entry The entry number.
+   * @return The offset of the entry.
+   */
+  long offset(int entry) {
+    return buffer.readInt(entryPosition(entry)) - 1;
+  }
+
+  /**
+   * Returns the segment position of the given entry.
+   *
+   * @param entry The entry number.
+   * @return The position of the entry within the segment.
+   */
+  long position(int entry) {
+    return buffer.readUnsignedInt(entryPosition(entry) + POSITION_OFFSET);
+  }
+
+  /**
+   * Returns the term of the given entry.
+   *
+   * @param entry The entry number.
+   * @return The term of the entry.
+   */
+  long term(int entry) {
+    return buffer.readLong(entryPosition(entry) + TERM_OFFSET);
+  }
+
+  /**
+   * Indexes the given offset with the given position and term.
+   *
+   * @param offset The offset to index.
+   * @param position The position of the entry within the segment.
+   * @param term The term of the entry.
+   */
+  void index(long offset, long position, long term) {
+    if (size < maxEntries) {
+      long entry = entryPosition(size);
+      buffer.writeUnsignedInt(entry + POSITION_OFFSET, position)
+        .writeLong(entry + TERM_OFFSET, term)
+        .writeInt(entry, (int) offset + 1);
+      size++;
+    }
+  }
+
+  /**
+   * Truncates the index file to the given offset.
+   *
+   * @param offset The offset after which to remove entries from the index.
+   */
+  void truncate(long offset) {
+    while (size > 0 && offset(size - 1) > offset) {
+      buffer.writeInt(entryPosition(--size), 0);
+    }
+  }
+
+  /**
+   * Flushes the index file to disk.
+   */
+  void flush() {
+    buffer.flush();
+  }
+
+  @Override
+  public void close() {
+    buffer.flush();
+    buffer.close();
+  }
+
+  /**
+   * Deletes the index file.
+   */
+  void delete() {
+    buffer.delete();
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[size=%d]", getClass().getSimpleName(), size);
+  }
+
+}
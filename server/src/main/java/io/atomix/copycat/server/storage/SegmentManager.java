@@ -19,6 +19,7 @@ import io.atomix.catalyst.buffer.Buffer;
 import io.atomix.catalyst.buffer.FileBuffer;
 import io.atomix.catalyst.buffer.HeapBuffer;
 import io.atomix.catalyst.buffer.MappedBuffer;
+import io.atomix.catalyst.concurrent.CatalystThreadFactory;
 import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.storage.index.DelegatingOffsetIndex;
@@ -29,11 +30,20 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.nio.ByteOrder;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.NavigableMap;
 import java.util.TreeMap;
 import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
 
 /**
  * Manages creation and deletion of {@link Segment}s of the {@link Log}.
@@ -46,12 +56,19 @@ import java.util.concurrent.ConcurrentSkipListMap;
 public class SegmentManager implements AutoCloseable {
   private static final Logger LOGGER = LoggerFactory.getLogger(SegmentManager.class);
   private static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+  private static final double ROLLOVER_THRESHOLD = 0.75;
   
   private final String name;
   private final Storage storage;
   private final Serializer serializer;
+  private final ThreadLocal<Serializer> readSerializer = ThreadLocal.withInitial(this::cloneSerializer);
   private final NavigableMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
-  private Segment currentSegment;
+  private final SegmentPool pool;
+  private final ExecutorService roller;
+  private Future<PreparedSegment> nextSegment;
+  private volatile boolean preparing;
+  private volatile long preparedSegments;
+  private volatile Segment currentSegment;
   private long commitIndex;
 
   /**
@@ -61,9 +78,20 @@ public class SegmentManager implements AutoCloseable {
     this.name = Assert.notNull(name, "name");
     this.storage = Assert.notNull(storage, "storage");
     this.serializer = Assert.notNull(serializer, "serializer");
+    this.pool = storage.level() == StorageLevel.DISK && storage.segmentPoolSize() > 0 ? new SegmentPool(name, storage) : null;
+    this.roller = storage.level() != StorageLevel.MEMORY && storage.backgroundRollover() ? Executors.newSingleThreadExecutor(new CatalystThreadFactory("copycat-segment-roller-%d")) : null;
     open();
   }
 
+  /**
+   * Returns the name of the log.
+   *
+   * @return The name of the log.
+   */
+  public String name() {
+    return name;
+  }
+
   /**
    * Returns the storage configuration underlying the segment manager.
    *
@@ -82,6 +110,28 @@ public class SegmentManager implements AutoCloseable {
     return serializer;
   }
 
+  /**
+   * Returns the calling thread's serializer for reading entries from segments.
+   * <p>
+   * Read serializers are shared by all segments in the log.
+   *
+   * @return The calling thread's read serializer.
+   */
+  Serializer readSerializer() {
+    return readSerializer.get();
+  }
+
+  /**
+   * Clones the entry serializer.
+   * <p>
+   * Serializers are cloned by segment writers and by reader threads, so cloning is synchronized on the serializer.
+   */
+  private Serializer cloneSerializer() {
+    synchronized (serializer) {
+      return serializer.clone();
+    }
+  }
+
   /**
    * Sets the log commit index.
    *
@@ -148,6 +198,8 @@ public class SegmentManager implements AutoCloseable {
    * @return The current segment.
    */
   public Segment currentSegment() {
+    // The current segment is replaced by the log writer thread when the log rolls over, so read it once.
+    Segment currentSegment = this.currentSegment;
     return currentSegment != null ? currentSegment : lastSegment();
   }
 
@@ -214,12 +266,112 @@ public class SegmentManager implements AutoCloseable {
       .build();
     descriptor.lock();
 
-    currentSegment = createSegment(descriptor);
+    // If the next segment was prepared in the background, only the descriptor needs to be written. If segments
+    // were removed or replaced since the segment was prepared, the prepared segment may not be the next segment.
+    PreparedSegment prepared = takePreparedSegment();
+    if (prepared != null && prepared.id != descriptor.id()) {
+      prepared.discard();
+      prepared = null;
+    }
+    currentSegment = prepared != null ? createPreparedSegment(descriptor, prepared) : createSegment(descriptor);
 
     segments.put(descriptor.index(), currentSegment);
+
+    // Small segments may cross the rollover threshold with their first entry.
+    prepareNextSegment(currentSegment);
     return currentSegment;
   }
 
+  /**
+   * Prepares the next segment in the background once the given segment crosses the rollover threshold.
+   * <p>
+   * If {@link Storage#backgroundRollover()} is enabled, the file, buffer, and indexes of the segment that will follow
+   * the current segment are created on a background thread once the current segment is mostly full. When the log
+   * rolls over to the next segment, the prepared segment is used, so files are not created on the writing thread.
+   * This method is called before an entry is appended to the segment, and the entry is counted towards the threshold.
+   *
+   * @param segment The segment to which entries are being written.
+   */
+  void prepareNextSegment(Segment segment) {
+    if (roller == null || preparing || !segment.exceeds(ROLLOVER_THRESHOLD)) {
+      return;
+    }
+
+    synchronized (this) {
+      if (preparing || segment != currentSegment || currentSegment == null) {
+        return;
+      }
+
+      Segment lastSegment = lastSegment();
+      long id = lastSegment != null ? lastSegment.descriptor().id() + 1 : 1;
+      preparing = true;
+      nextSegment = roller.submit(() -> prepareSegment(id));
+    }
+  }
+
+  /**
+   * Creates the resources for a segment with the given ID without writing the segment descriptor.
+   * <p>
+   * The segment file is left without a locked descriptor until the segment is created, so a prepared segment that's
+   * never used is deleted when the log is next loaded.
+   */
+  private PreparedSegment prepareSegment(long id) {
+    File segmentFile = SegmentFile.createSegmentFile(name, storage.directory(), id, 1);
+    Buffer buffer = storage.level() == StorageLevel.MAPPED
+      ? MappedBuffer.allocate(segmentFile, Math.min(DEFAULT_BUFFER_SIZE, storage.maxSegmentSize()), Integer.MAX_VALUE)
+      : allocateDiskBuffer(segmentFile, storage.maxSegmentSize());
+    SegmentIndexFile indexFile = new SegmentIndexFile(SegmentFile.createIndexFile(name, storage.directory(), id, 1), storage.maxEntriesPerSegment());
+    indexFile.reset(0);
+    LOGGER.debug("Prepared segment: {}", segmentFile.getName());
+    return new PreparedSegment(id, segmentFile, buffer, createIndex(storage.maxEntriesPerSegment()), indexFile);
+  }
+
+  /**
+   * Takes the prepared segment, waiting for it to be prepared if necessary.
+   *
+   * @return The prepared segment or {@code null} if no segment was prepared.
+   */
+  private PreparedSegment takePreparedSegment() {
+    Future<PreparedSegment> future = nextSegment;
+    if (future == null) {
+      return null;
+    }
+
+    nextSegment = null;
+    preparing = false;
+
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      return null;
+    } catch (ExecutionException e) {
+      LOGGER.warn("Failed to prepare segment", e.getCause());
+      return null;
+    }
+  }
+
+  /**
+   * Creates a segment from a prepared segment.
+   */
+  private Segment createPreparedSegment(SegmentDescriptor descriptor, PreparedSegment prepared) {
+    descriptor.copyTo(prepared.buffer);
+    prepared.indexFile.rebase(descriptor.index());
+    Segment segment = new Segment(new SegmentFile(prepared.file), prepared.buffer.slice(), descriptor, prepared.offsetIndex, prepared.indexFile, new OffsetPredicate(), cloneSerializer(), this);
+    LOGGER.debug("Created prepared segment: {}", segment);
+    preparedSegments++;
+    return segment;
+  }
+
+  /**
+   * Returns the number of segments that were created from segments prepared in the background.
+   *
+   * @return The number of segments created from prepared segments.
+   */
+  long preparedSegments() {
+    return preparedSegments;
+  }
+
   /**
    * Returns the collection of segments.
    *
@@ -317,13 +469,37 @@ public class SegmentManager implements AutoCloseable {
    */
   private Segment createDiskSegment(SegmentDescriptor descriptor) {
     File segmentFile = SegmentFile.createSegmentFile(name, storage.directory(), descriptor.id(), descriptor.version());
-    Buffer buffer = FileBuffer.allocate(segmentFile, Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
+
+    // Compressed segments are written once and are typically much smaller than their maximum size, so they're not
+    // taken from the segment pool or preallocated. Otherwise the compressed segment file would occupy the full size.
+    Buffer buffer = descriptor.isCompressed()
+      ? FileBuffer.allocate(segmentFile, Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE)
+      : allocateDiskBuffer(segmentFile, descriptor.maxSegmentSize());
     descriptor.copyTo(buffer);
-    Segment segment = new Segment(new SegmentFile(segmentFile), buffer.slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
+    Segment segment = new Segment(new SegmentFile(segmentFile), buffer.slice(), descriptor, createIndex(descriptor), createIndexFile(descriptor), new OffsetPredicate(), cloneSerializer(), this);
     LOGGER.debug("Created segment: {}", segment);
     return segment;
   }
 
+  /**
+   * Allocates the file buffer for a new disk segment.
+   */
+  private Buffer allocateDiskBuffer(File segmentFile, long maxSegmentSize) {
+    long bufferSize = Math.min(DEFAULT_BUFFER_SIZE, maxSegmentSize);
+
+    // Take a preallocated file from the segment pool if one is ready. Otherwise, if segments are preallocated,
+    // allocate the full file and drop the zeroed pages from the page cache. The buffer must cover the entire file,
+    // otherwise growing the buffer would shrink the file.
+    File pooledFile = pool != null ? pool.take(SegmentDescriptor.BYTES + maxSegmentSize) : null;
+    if (pooledFile != null && pooledFile.renameTo(segmentFile)) {
+      bufferSize = segmentFile.length();
+    } else if (storage.preallocateSegments()) {
+      bufferSize = SegmentFile.preallocate(segmentFile, SegmentDescriptor.BYTES + maxSegmentSize);
+      storage.pageCacheAdvisor().dontNeed(segmentFile, 0, bufferSize);
+    }
+    return FileBuffer.allocate(segmentFile, bufferSize, Integer.MAX_VALUE);
+  }
+
   /**
    * Creates a new segment.
    */
@@ -331,7 +507,7 @@ public class SegmentManager implements AutoCloseable {
     File segmentFile = SegmentFile.createSegmentFile(name, storage.directory(), descriptor.id(), descriptor.version());
     Buffer buffer = MappedBuffer.allocate(segmentFile, Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
     descriptor.copyTo(buffer);
-    Segment segment = new Segment(new SegmentFile(segmentFile), buffer.slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
+    Segment segment = new Segment(new SegmentFile(segmentFile), buffer.slice(), descriptor, createIndex(descriptor), createIndexFile(descriptor), new OffsetPredicate(), cloneSerializer(), this);
     LOGGER.debug("Created segment: {}", segment);
     return segment;
   }
@@ -343,7 +519,7 @@ public class SegmentManager implements AutoCloseable {
     File segmentFile = SegmentFile.createSegmentFile(name, storage.directory(), descriptor.id(), descriptor.version());
     Buffer buffer = HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxSegmentSize()), Integer.MAX_VALUE);
     descriptor.copyTo(buffer);
-    Segment segment = new Segment(new SegmentFile(segmentFile), buffer.slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
+    Segment segment = new Segment(new SegmentFile(segmentFile), buffer.slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), cloneSerializer(), this);
     LOGGER.debug("Created segment: {}", segment);
     return segment;
   }
@@ -352,13 +528,20 @@ public class SegmentManager implements AutoCloseable {
    * Loads a segment.
    */
   public Segment loadSegment(long segmentId, long segmentVersion) {
+    return loadSegment(segmentId, segmentVersion, cloneSerializer());
+  }
+
+  /**
+   * Loads a segment with the given serializer.
+   */
+  private Segment loadSegment(long segmentId, long segmentVersion, Serializer serializer) {
     switch (storage.level()) {
       case MEMORY:
-        return loadMemorySegment(segmentId, segmentVersion);
+        return loadMemorySegment(segmentId, segmentVersion, serializer);
       case MAPPED:
-        return loadMappedSegment(segmentId, segmentVersion);
+        return loadMappedSegment(segmentId, segmentVersion, serializer);
       case DISK:
-        return loadDiskSegment(segmentId, segmentVersion);
+        return loadDiskSegment(segmentId, segmentVersion, serializer);
       default:
         throw new AssertionError();
     }
@@ -367,11 +550,12 @@ public class SegmentManager implements AutoCloseable {
   /**
    * Loads a segment.
    */
-  private Segment loadDiskSegment(long segmentId, long segmentVersion) {
+  private Segment loadDiskSegment(long segmentId, long segmentVersion, Serializer serializer) {
     File file = SegmentFile.createSegmentFile(name, storage.directory(), segmentId, segmentVersion);
-    Buffer buffer = FileBuffer.allocate(file, Math.min(DEFAULT_BUFFER_SIZE, storage.maxSegmentSize()), Integer.MAX_VALUE);
+    // Cover preallocated files with the buffer so they're not shrunk when the buffer grows.
+    Buffer buffer = FileBuffer.allocate(file, Math.max(Math.min(DEFAULT_BUFFER_SIZE, storage.maxSegmentSize()), file.length()), Integer.MAX_VALUE);
     SegmentDescriptor descriptor = new SegmentDescriptor(buffer);
-    Segment segment = new Segment(new SegmentFile(file), buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
+    Segment segment = new Segment(new SegmentFile(file), buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor), createIndexFile(descriptor), new OffsetPredicate(), serializer, this);
     LOGGER.debug("Loaded file segment: {} ({})", descriptor.id(), file.getName());
     return segment;
   }
@@ -379,11 +563,11 @@ public class SegmentManager implements AutoCloseable {
   /**
    * Loads a segment.
    */
-  private Segment loadMappedSegment(long segmentId, long segmentVersion) {
+  private Segment loadMappedSegment(long segmentId, long segmentVersion, Serializer serializer) {
     File file = SegmentFile.createSegmentFile(name, storage.directory(), segmentId, segmentVersion);
     Buffer buffer = MappedBuffer.allocate(file, Math.min(DEFAULT_BUFFER_SIZE, storage.maxSegmentSize()), Integer.MAX_VALUE);
     SegmentDescriptor descriptor = new SegmentDescriptor(buffer);
-    Segment segment = new Segment(new SegmentFile(file), buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
+    Segment segment = new Segment(new SegmentFile(file), buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor), createIndexFile(descriptor), new OffsetPredicate(), serializer, this);
     LOGGER.debug("Loaded mapped segment: {} ({})", descriptor.id(), file.getName());
     return segment;
   }
@@ -391,11 +575,11 @@ public class SegmentManager implements AutoCloseable {
   /**
    * Loads a segment.
    */
-  private Segment loadMemorySegment(long segmentId, long segmentVersion) {
+  private Segment loadMemorySegment(long segmentId, long segmentVersion, Serializer serializer) {
     File file = SegmentFile.createSegmentFile(name, storage.directory(), segmentId, segmentVersion);
     Buffer buffer = HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, storage.maxSegmentSize()), Integer.MAX_VALUE);
     SegmentDescriptor descriptor = new SegmentDescriptor(buffer);
-    Segment segment = new Segment(new SegmentFile(file), buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer.clone(), this);
+    Segment segment = new Segment(new SegmentFile(file), buffer.position(SegmentDescriptor.BYTES).slice(), descriptor, createIndex(descriptor), new OffsetPredicate(), serializer, this);
     LOGGER.debug("Loaded memory segment: {}", descriptor.id());
     return segment;
   }
@@ -404,11 +588,30 @@ public class SegmentManager implements AutoCloseable {
    * Creates an in memory segment index.
    */
   private OffsetIndex createIndex(SegmentDescriptor descriptor) {
-    return new DelegatingOffsetIndex(HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, descriptor.maxEntries()), OffsetIndex.size(descriptor.maxEntries())));
+    return createIndex(descriptor.maxEntries());
+  }
+
+  /**
+   * Creates an in memory segment index for the given number of entries.
+   */
+  private OffsetIndex createIndex(int maxEntries) {
+    return new DelegatingOffsetIndex(HeapBuffer.allocate(Math.min(DEFAULT_BUFFER_SIZE, maxEntries), OffsetIndex.size(maxEntries)));
+  }
+
+  /**
+   * Opens the persistent index file for a segment.
+   */
+  private SegmentIndexFile createIndexFile(SegmentDescriptor descriptor) {
+    File indexFile = SegmentFile.createIndexFile(name, storage.directory(), descriptor.id(), descriptor.version());
+    return new SegmentIndexFile(indexFile, descriptor);
   }
 
   /**
    * Loads all segments from disk.
+   * <p>
+   * Segment files are loaded, verified, and indexed in parallel on a bounded fork-join pool sized by
+   * {@link Storage#loadThreads()}. Once all segments have been loaded, overlapping segments are resolved in
+   * order on the calling thread.
    *
    * @return A collection of segments for the log.
    */
@@ -416,77 +619,108 @@ public class SegmentManager implements AutoCloseable {
     // Ensure log directories are created.
     storage.directory().mkdirs();
 
-    TreeMap<Long, Segment> segments = new TreeMap<>();
+    long startTime = System.nanoTime();
 
-    // Iterate through all files in the log directory.
+    // Find all files in the log directory that look like segment files.
+    List<File> files = new ArrayList<>();
     for (File file : storage.directory().listFiles(File::isFile)) {
-
-      // If the file looks like a segment file, attempt to load the segment.
       if (SegmentFile.isSegmentFile(name, file)) {
-        SegmentFile segmentFile = new SegmentFile(file);
-        SegmentDescriptor descriptor = new SegmentDescriptor(FileBuffer.allocate(file, SegmentDescriptor.BYTES));
-
-        // Valid segments will have been locked. Segments that resulting from failures during log cleaning will be
-        // unlocked and should ultimately be deleted from disk.
-        if (descriptor.locked()) {
-
-          // Load the segment.
-          Segment segment = loadSegment(descriptor.id(), descriptor.version());
-
-          // If a segment with an equal or lower index has already been loaded, ensure this segment is not superseded
-          // by the earlier segment. This can occur due to segments being combined during log compaction.
-          Map.Entry<Long, Segment> previousEntry = segments.floorEntry(segment.index());
-          if (previousEntry != null) {
-
-            // If an existing descriptor exists with a lower index than this segment's first index, check to determine
-            // whether this segment's first index is contained in that existing index. If it is, determine which segment
-            // should take precedence based on segment versions.
-            Segment previousSegment = previousEntry.getValue();
-
-            // If the two segments start at the same index, the segment with the higher version number is used.
-            if (previousSegment.index() == segment.index()) {
-              if (segment.descriptor().version() > previousSegment.descriptor().version()) {
-                LOGGER.debug("Replaced segment {} with newer version: {} ({})", previousSegment.descriptor().id(), segment.descriptor().version(), segmentFile.file().getName());
-                segments.remove(previousEntry.getKey());
-                previousSegment.close();
-                previousSegment.delete();
-              } else {
-                segment.close();
-                segment.delete();
-                continue;
-              }
+        files.add(file);
+      }
+    }
+
+    // Load the segments in parallel, preserving the order in which the files were found.
+    List<Segment> loadedSegments = new ArrayList<>(files.size());
+    if (!files.isEmpty()) {
+      ForkJoinPool pool = new ForkJoinPool(Math.min(storage.loadThreads(), files.size()));
+      try {
+        // Serializers are cloned on the calling thread since cloning a serializer is not thread safe.
+        List<ForkJoinTask<Segment>> tasks = new ArrayList<>(files.size());
+        for (File file : files) {
+          Serializer serializer = cloneSerializer();
+          tasks.add(pool.submit(() -> loadSegmentFile(file, serializer)));
+        }
+
+        // If any segment fails to load, close the segments that were loaded before rethrowing the failure.
+        RuntimeException error = null;
+        for (ForkJoinTask<Segment> task : tasks) {
+          try {
+            loadedSegments.add(task.join());
+          } catch (RuntimeException e) {
+            if (error == null) {
+              error = e;
+            } else {
+              error.addSuppressed(e);
             }
-            // If the existing segment's entries overlap with the loaded segment's entries, the existing segment always
-            // supersedes the loaded segment. Log compaction processes ensure this is always the case.
-            else if (previousSegment.index() + previousSegment.length() > segment.index()) {
+          }
+        }
+        if (error != null) {
+          for (Segment segment : loadedSegments) {
+            if (segment != null) {
               segment.close();
-              segment.delete();
-              continue;
             }
           }
+          throw error;
+        }
+      } finally {
+        pool.shutdown();
+      }
+    }
 
-          // Add the segment to the segments list.
-          LOGGER.debug("Found segment: {} ({})", segment.descriptor().id(), segmentFile.file().getName());
-          segments.put(segment.index(), segment);
+    TreeMap<Long, Segment> segments = new TreeMap<>();
 
-          // Ensure any segments later in the log with which this segment overlaps are removed.
-          Map.Entry<Long, Segment> nextEntry = segments.higherEntry(segment.index());
-          while (nextEntry != null) {
-            if (nextEntry.getValue().index() < segment.index() + segment.length()) {
-              segments.remove(nextEntry.getKey());
-              nextEntry = segments.higherEntry(segment.index());
-            } else {
-              break;
-            }
-          }
+    // Iterate through all loaded segments.
+    for (Segment segment : loadedSegments) {
+
+      // Segments that were not locked were deleted when they were loaded.
+      if (segment == null) {
+        continue;
+      }
+
+      // If a segment with an equal or lower index has already been loaded, ensure this segment is not superseded
+      // by the earlier segment. This can occur due to segments being combined during log compaction.
+      Map.Entry<Long, Segment> previousEntry = segments.floorEntry(segment.index());
+      if (previousEntry != null) {
 
-          descriptor.close();
+        // If an existing descriptor exists with a lower index than this segment's first index, check to determine
+        // whether this segment's first index is contained in that existing index. If it is, determine which segment
+        // should take precedence based on segment versions.
+        Segment previousSegment = previousEntry.getValue();
+
+        // If the two segments start at the same index, the segment with the higher version number is used.
+        if (previousSegment.index() == segment.index()) {
+          if (segment.descriptor().version() > previousSegment.descriptor().version()) {
+            LOGGER.debug("Replaced segment {} with newer version: {} ({})", previousSegment.descriptor().id(), segment.descriptor().version(), segment.file().file().getName());
+            segments.remove(previousEntry.getKey());
+            previousSegment.close();
+            previousSegment.delete();
+          } else {
+            segment.close();
+            segment.delete();
+            continue;
+          }
+        }
+        // If the existing segment's entries overlap with the loaded segment's entries, the existing segment always
+        // supersedes the loaded segment. Log compaction processes ensure this is always the case.
+        else if (previousSegment.index() + previousSegment.length() > segment.index()) {
+          segment.close();
+          segment.delete();
+          continue;
         }
-        // If the segment descriptor wasn't locked, close and delete the descriptor.
-        else {
-          LOGGER.debug("Deleting unlocked segment: {}-{} ({})", descriptor.id(), descriptor.version(), segmentFile.file().getName());
-          descriptor.close();
-          descriptor.delete();
+      }
+
+      // Add the segment to the segments list.
+      LOGGER.debug("Found segment: {} ({})", segment.descriptor().id(), segment.file().file().getName());
+      segments.put(segment.index(), segment);
+
+      // Ensure any segments later in the log with which this segment overlaps are removed.
+      Map.Entry<Long, Segment> nextEntry = segments.higherEntry(segment.index());
+      while (nextEntry != null) {
+        if (nextEntry.getValue().index() < segment.index() + segment.length()) {
+          segments.remove(nextEntry.getKey());
+          nextEntry = segments.higherEntry(segment.index());
+        } else {
+          break;
         }
       }
     }
@@ -502,9 +736,60 @@ public class SegmentManager implements AutoCloseable {
       }
     }
 
+    Duration time = Duration.ofNanos(System.nanoTime() - startTime);
+    LOGGER.debug("Loaded {} segments in {} ms", segments.size(), time.toMillis());
+    storage.metrics().segmentsLoaded(name, segments.size(), time);
+
     return segments.values();
   }
 
+  /**
+   * Loads the segment for the given segment file.
+   * <p>
+   * Valid segments will have been locked. Segments that resulted from failures during log cleaning will be
+   * unlocked and are deleted from disk.
+   *
+   * @return The loaded segment or {@code null} if the segment was not locked.
+   */
+  private Segment loadSegmentFile(File file, Serializer serializer) {
+    SegmentDescriptor descriptor = new SegmentDescriptor(FileBuffer.allocate(file, SegmentDescriptor.BYTES));
+    if (descriptor.locked()) {
+      try {
+        return loadSegment(descriptor.id(), descriptor.version(), serializer);
+      } finally {
+        descriptor.close();
+      }
+    } else {
+      // Segments prepared in the background have no descriptor, so the segment ID and version are parsed from the
+      // file name to locate the segment's index file.
+      SegmentFile segmentFile = new SegmentFile(file);
+      LOGGER.debug("Deleting unlocked segment: {}-{} ({})", segmentFile.id(), segmentFile.version(), file.getName());
+      descriptor.close();
+      descriptor.delete();
+      SegmentFile.createIndexFile(name, storage.directory(), segmentFile.id(), segmentFile.version()).delete();
+      return null;
+    }
+  }
+
+  /**
+   * Returns the segment pool.
+   *
+   * @return The segment pool or {@code null} if the segment pool is disabled.
+   */
+  SegmentPool pool() {
+    return pool;
+  }
+
+  /**
+   * Recycles the file of a deleted segment into the segment pool.
+   *
+   * @param file The segment file.
+   * @return Indicates whether the file was recycled. If the file was not recycled, it must be deleted.
+   */
+  boolean recycle(File file) {
+    return pool != null && pool.recycle(file);
+  }
+
   @Override
   public void close() {
     segments.values().forEach(s -> {
@@ -512,6 +797,18 @@ public class SegmentManager implements AutoCloseable {
       s.close();
     });
     currentSegment = null;
+    if (roller != null) {
+      synchronized (this) {
+        PreparedSegment prepared = takePreparedSegment();
+        if (prepared != null) {
+          prepared.discard();
+        }
+      }
+      roller.shutdown();
+    }
+    if (pool != null) {
+      pool.close();
+    }
   }
 
   @Override
@@ -519,4 +816,36 @@ public class SegmentManager implements AutoCloseable {
     return String.format("%s[directory=%s, segments=%d]", getClass().getSimpleName(), storage.directory(), segments.size());
   }
 
+  /**
+   * Resources of a segment prepared ahead of roll-over.
+   */
+  private static final class PreparedSegment {
+    private final long id;
+    private final File file;
+    private final Buffer buffer;
+    private final OffsetIndex offsetIndex;
+    private final SegmentIndexFile indexFile;
+
+    private PreparedSegment(long id, File file, Buffer buffer, OffsetIndex offsetIndex, SegmentIndexFile indexFile) {
+      this.id = id;
+      this.file = file;
+      this.buffer = buffer;
+      this.offsetIndex = offsetIndex;
+      this.indexFile = indexFile;
+    }
+
+    /**
+     * Closes and deletes the prepared segment.
+     */
+    private void discard() {
+      buffer.close();
+      offsetIndex.close();
+      indexFile.close();
+      indexFile.delete();
+      if (!file.delete()) {
+        LOGGER.warn("Failed to delete prepared segment: {}", file);
+      }
+    }
+  }
+
 }
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.concurrent.CatalystThreadFactory;
+import io.atomix.catalyst.util.Assert;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of preallocated segment files.
+ * <p>
+ * The segment pool keeps up to {@link Storage#segmentPoolSize()} zero filled files of the maximum segment size
+ * ready in the log directory so that creating a {@link StorageLevel#DISK} segment only requires renaming a file. Files
+ * are prepared on a dedicated thread: new files are {@link SegmentFile#preallocate(File, long) preallocated}, and the
+ * files of deleted segments are recycled into the pool and zeroed rather than being deleted. When the pool is empty,
+ * segments are created as usual.
+ * <p>
+ * Pooled files are named {@code <log>-<id>.pool}. Pooled files left in the log directory when a log is reopened may
+ * not have been fully zeroed, so they're prepared again before being reused.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+final class SegmentPool implements AutoCloseable {
+  private static final Logger LOGGER = LoggerFactory.getLogger(SegmentPool.class);
+  private final String name;
+  private final File directory;
+  private final int capacity;
+  private final long fileSize;
+  private final PageCacheAdvisor pageCacheAdvisor;
+  private final Queue<File> files = new ConcurrentLinkedQueue<>();
+  private final ExecutorService executor;
+  private final AtomicLong nextId = new AtomicLong();
+  private int pending;
+  private boolean open = true;
+
+  SegmentPool(String name, Storage storage) {
+    this.name = Assert.notNull(name, "name");
+    this.directory = storage.directory();
+    this.capacity = Assert.arg(storage.segmentPoolSize(), storage.segmentPoolSize() > 0, "segmentPoolSize must be positive");
+    this.fileSize = SegmentFile.alignedSize(SegmentDescriptor.BYTES + (long) storage.maxSegmentSize());
+    this.pageCacheAdvisor = storage.pageCacheAdvisor();
+    this.executor = Executors.newSingleThreadExecutor(new CatalystThreadFactory("copycat-segment-pool-%d"));
+    reload();
+    fill();
+  }
+
+  /**
+   * Reloads pooled files left in the log directory.
+   */
+  private synchronized void reload() {
+    directory.mkdirs();
+    File[] poolFiles = directory.listFiles(f -> SegmentFile.isPoolFile(name, f));
+    if (poolFiles == null) {
+      return;
+    }
+
+    for (File file : poolFiles) {
+      nextId.accumulateAndGet(SegmentFile.poolFileId(name, file), Math::max);
+      if (pending < capacity) {
+        pending++;
+        executor.execute(() -> prepare(file));
+      } else if (!file.delete()) {
+        LOGGER.warn("Failed to delete pooled segment file: {}", file);
+      }
+    }
+  }
+
+  /**
+   * Returns the number of files ready to be taken from the pool.
+   *
+   * @return The number of files ready to be taken from the pool.
+   */
+  int size() {
+    return files.size();
+  }
+
+  /**
+   * Takes a preallocated file from the pool.
+   * <p>
+   * The returned file is zero filled and at least as large as the maximum segment size. The caller is responsible for
+   * renaming the file.
+   *
+   * @param size The minimum size of the file.
+   * @return A pooled file or {@code null} if no file of the given size is ready.
+   */
+  File take(long size) {
+    if (size > fileSize) {
+      return null;
+    }
+
+    File file = files.poll();
+    if (file != null) {
+      fill();
+    }
+    return file;
+  }
+
+  /**
+   * Recycles the file of a deleted segment into the pool.
+   * <p>
+   * If the pool is full or closed, the file is not recycled and must be deleted by the caller.
+   *
+   * @param file The file to recycle.
+   * @return Indicates whether the file was recycled.
+   */
+  boolean recycle(File file) {
+    synchronized (this) {
+      if (!open || files.size() + pending >= capacity) {
+        return false;
+      }
+      pending++;
+    }
+
+    File poolFile = SegmentFile.createPoolFile(name, directory, nextId.incrementAndGet());
+    if (!file.renameTo(poolFile)) {
+      synchronized (this) {
+        pending--;
+      }
+      return false;
+    }
+
+    executor.execute(() -> prepare(poolFile));
+    return true;
+  }
+
+  /**
+   * Schedules new files to be preallocated until the pool is full.
+   */
+  private synchronized void fill() {
+    while (open && files.size() + pending < capacity) {
+      pending++;
+      File file = SegmentFile.createPoolFile(name, directory, nextId.incrementAndGet());
+      executor.execute(() -> prepare(file));
+    }
+  }
+
+  /**
+   * Zero fills a file and adds it to the pool.
+   */
+  private void prepare(File file) {
+    try {
+      SegmentFile.preallocate(file, fileSize);
+      pageCacheAdvisor.dontNeed(file, 0, fileSize);
+      files.add(file);
+      LOGGER.trace("Prepared pooled segment file: {}", file.getName());
+    } catch (StorageException e) {
+      LOGGER.warn("Failed to prepare pooled segment file: {}", file, e);
+      file.delete();
+    } finally {
+      synchronized (this) {
+        pending--;
+      }
+    }
+  }
+
+  /**
+   * Closes the pool.
+   * <p>
+   * Files that are being prepared are completed. Pooled files are left in the log directory to be reused when the
+   * log is reopened.
+   */
+  @Override
+  public void close() {
+    synchronized (this) {
+      open = false;
+    }
+    executor.shutdown();
+    try {
+      executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[size=%d, capacity=%d]", getClass().getSimpleName(), files.size(), capacity);
+  }
+
+}
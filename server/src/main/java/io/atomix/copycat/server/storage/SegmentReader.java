@@ -0,0 +1,340 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.entry.RawEntry;
+
+import static io.atomix.catalyst.buffer.Bytes.INTEGER;
+import static io.atomix.catalyst.buffer.Bytes.LONG;
+
+/**
+ * Sequential reader of entries in a {@link Segment}.
+ * <p>
+ * Rather than looking up each entry's position in the segment's index, the segment reader reads records
+ * sequentially from the segment. Records are read ahead in bulk into a reader-owned buffer which is allocated on the
+ * first read and doubles in size with each read up to {@link #MAX_READAHEAD_SIZE} bytes as long as the reader
+ * continues to read sequentially.
+ * Because each record carries its offset, entries that have been compacted out of the segment are skipped without
+ * any index lookups, and only the checksums of records that are actually read are verified.
+ * <p>
+ * The {@link #nextMode() compaction mode} of the next entry can be read from its verified record header without
+ * deserializing the entry, allowing log compaction to decide whether to retain an entry before copying its
+ * {@link #nextRaw() raw} record.
+ * <p>
+ * Only records that have been published by the segment writer are read, so a reader may be used concurrently with
+ * appends to the segment. If the segment is truncated, the reader discards its buffered records and repositions
+ * itself via the segment's index. Segment readers are not thread safe.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class SegmentReader implements AutoCloseable {
+  static final int MIN_READAHEAD_SIZE = 1024 * 64;
+  static final int MAX_READAHEAD_SIZE = 1024 * 1024;
+
+  private final Segment segment;
+  private HeapBuffer buffer;
+  private long bufferPosition;
+  private int bufferLength;
+  private long position;
+  private long truncations;
+  private long nextIndex;
+
+  // The record at the current position, if it has been read.
+  private boolean hasRecord;
+  private long recordOffset;
+  private int recordLength;
+  private long recordChecksum;
+  private Compaction.Mode recordMode;
+  private int entryPosition;
+
+  SegmentReader(Segment segment, long index) {
+    this.segment = Assert.notNull(segment, "segment");
+    reset(index);
+  }
+
+  /**
+   * Returns the segment being read.
+   *
+   * @return The segment being read.
+   */
+  public Segment segment() {
+    return segment;
+  }
+
+  /**
+   * Returns the index of the next entry to be read.
+   *
+   * @return The index of the next entry to be read.
+   */
+  public long nextIndex() {
+    return nextIndex;
+  }
+
+  /**
+   * Returns a boolean indicating whether the reader has another index to read in the segment.
+   *
+   * @return Indicates whether the next index is within the bounds of the segment.
+   */
+  public boolean hasNext() {
+    return nextIndex <= segment.lastIndex();
+  }
+
+  /**
+   * Resets the reader to the given index.
+   * <p>
+   * Buffered records are retained if they cover the record at the given index and the segment has not since been
+   * truncated.
+   *
+   * @param index The index from which to read.
+   * @return The segment reader.
+   */
+  public SegmentReader reset(long index) {
+    long truncations = segment.truncations();
+    if (truncations != this.truncations) {
+      this.truncations = truncations;
+      this.bufferLength = 0;
+    }
+    this.nextIndex = index;
+    this.position = segment.position(index);
+    this.hasRecord = false;
+    return this;
+  }
+
+  /**
+   * Skips the reader to the given index.
+   * <p>
+   * If the index is ahead of the reader, records are skipped sequentially without being verified. Otherwise, the
+   * reader is {@link #reset(long) reset} to the index.
+   *
+   * @param index The index to which to skip.
+   * @return The segment reader.
+   */
+  public SegmentReader skip(long index) {
+    if (index >= nextIndex) {
+      nextIndex = index;
+      return this;
+    }
+    return reset(index);
+  }
+
+  /**
+   * Reads the entry at the next index and advances the reader.
+   *
+   * @param <T> The entry type.
+   * @return The entry at the next index or {@code null} if the entry is not present in the segment.
+   * @throws IllegalStateException if the segment is not open
+   */
+  public <T extends Entry> T next() {
+    long index = nextIndex;
+    if (!seek(index)) {
+      return null;
+    }
+
+    buffer.clear();
+    buffer.limit(recordPosition() + recordLength);
+    buffer.position(entryPosition);
+    T entry = segment.readSerializer().readObject(buffer);
+    entry.setIndex(index).setTerm(segment.term(index)).setSize(recordLength);
+    consume();
+    return entry;
+  }
+
+  /**
+   * Returns the compaction mode of the entry at the next index without advancing the reader.
+   * <p>
+   * The record's checksum is verified before its header is trusted. If the compaction mode was recorded in the
+   * entry's record header, the mode is returned without deserializing the entry. Otherwise, the entry is deserialized
+   * to determine its mode.
+   *
+   * @return The {@link Entry#getCompactionMode() compaction mode} of the entry at the next index or {@code null} if
+   *         the entry is not present in the segment or its checksum is invalid.
+   * @throws IllegalStateException if the segment is not open
+   */
+  public Compaction.Mode nextMode() {
+    if (!locate(nextIndex) || !verify()) {
+      return null;
+    }
+    if (recordMode != null) {
+      return recordMode;
+    }
+
+    buffer.clear();
+    buffer.limit(recordPosition() + recordLength);
+    buffer.position(entryPosition);
+    try (Entry entry = segment.readSerializer().readObject(buffer)) {
+      return entry.getCompactionMode();
+    }
+  }
+
+  /**
+   * Reads the raw entry at the next index and advances the reader.
+   *
+   * @return The raw entry at the next index or {@code null} if the entry is not present in the segment.
+   * @throws IllegalStateException if the segment is not open
+   */
+  public RawEntry nextRaw() {
+    long index = nextIndex;
+    if (!seek(index)) {
+      return null;
+    }
+
+    byte[] bytes = new byte[recordLength - (entryPosition - recordPosition())];
+    System.arraycopy(buffer.array(), entryPosition, bytes, 0, bytes.length);
+    RawEntry entry = new RawEntry(index, segment.term(index), recordChecksum, segment.descriptor().checksumType(), recordMode, bytes);
+    consume();
+    return entry;
+  }
+
+  /**
+   * Advances the reader to the given index and reads the record for the index if present.
+   *
+   * @return Indicates whether a record is present for the given index.
+   */
+  private boolean seek(long index) {
+    boolean found = locate(index);
+    nextIndex = index + 1;
+    return found && verify();
+  }
+
+  /**
+   * Positions the reader at the record for the given index if present without verifying the record.
+   *
+   * @return Indicates whether a record is present for the given index.
+   */
+  private boolean locate(long index) {
+    Assert.state(segment.isOpen(), "segment not open");
+
+    // If the segment was truncated, discard buffered records and reposition the reader.
+    if (truncations != segment.truncations()) {
+      reset(index);
+    }
+
+    // Skip records prior to the index. Records for compacted entries are simply missing, so if the next record
+    // is for a later index, the entry at this index was compacted.
+    long offset = index - segment.index();
+    while (read() && recordOffset < offset) {
+      consume();
+    }
+    return hasRecord && recordOffset == offset;
+  }
+
+  /**
+   * Reads the header of the record at the current position if the record has been published.
+   */
+  private boolean read() {
+    if (hasRecord) {
+      return true;
+    }
+
+    long end = segment.publishedEnd();
+    if (position + INTEGER > end || !fill(position, INTEGER, end)) {
+      return false;
+    }
+
+    int length = buffer.readInt(position - bufferPosition);
+    if (length <= 0 || position + INTEGER + length > end || !fill(position, INTEGER + length, end)) {
+      return false;
+    }
+
+    // Read the record header.
+    int recordPosition = (int) (position - bufferPosition) + INTEGER;
+    long checksum = buffer.readUnsignedInt(recordPosition);
+    long offset = buffer.readLong(recordPosition + INTEGER);
+    int flags = buffer.readUnsignedByte(recordPosition + INTEGER + LONG);
+    int entryPosition = recordPosition + INTEGER + LONG + 1 + (Segment.hasTerm(flags) ? LONG : 0);
+
+    this.recordOffset = offset;
+    this.recordLength = length;
+    this.recordChecksum = checksum;
+    this.recordMode = Segment.compactionMode(flags);
+    this.entryPosition = entryPosition;
+    this.hasRecord = true;
+    return true;
+  }
+
+  /**
+   * Verifies the checksum of the current record.
+   */
+  private boolean verify() {
+    int entryLength = recordLength - (entryPosition - recordPosition());
+    return recordChecksum == segment.descriptor().checksumType().checksum(buffer.array(), entryPosition, entryLength);
+  }
+
+  /**
+   * Returns the position of the current record's header in the buffer.
+   */
+  private int recordPosition() {
+    return (int) (position - bufferPosition) + INTEGER;
+  }
+
+  /**
+   * Advances past the current record.
+   */
+  private void consume() {
+    position += INTEGER + recordLength;
+    hasRecord = false;
+  }
+
+  /**
+   * Ensures the given range of the segment is buffered, reading ahead up to the given end position.
+   */
+  private boolean fill(long position, int length, long end) {
+    if (position >= bufferPosition && position + length <= bufferPosition + bufferLength) {
+      return true;
+    }
+
+    // Allocate the readahead buffer on the first read and grow it while reading sequentially.
+    int capacity;
+    if (buffer == null) {
+      capacity = Math.max(length, MIN_READAHEAD_SIZE);
+      buffer = HeapBuffer.wrap(new byte[capacity]);
+    } else {
+      capacity = (int) buffer.capacity();
+      boolean sequential = bufferLength > 0 && position >= bufferPosition && position <= bufferPosition + bufferLength;
+      if (length > capacity || sequential) {
+        capacity = Math.max(length, Math.min(capacity * 2, MAX_READAHEAD_SIZE));
+        if (capacity != buffer.capacity()) {
+          buffer = HeapBuffer.wrap(new byte[capacity]);
+        }
+      }
+    }
+
+    bufferPosition = position;
+    bufferLength = (int) Math.min(capacity, end - position);
+    if (bufferLength < length) {
+      bufferLength = 0;
+      return false;
+    }
+    segment.readBytes(position, buffer.array(), bufferLength);
+    return true;
+  }
+
+  @Override
+  public void close() {
+    buffer = null;
+    bufferLength = 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[segment=%d, nextIndex=%d]", getClass().getSimpleName(), segment.descriptor().id(), nextIndex);
+  }
+
+}
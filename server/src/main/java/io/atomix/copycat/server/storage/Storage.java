@@ -64,24 +64,52 @@ public class Storage {
   private static final int DEFAULT_MAX_SEGMENT_SIZE = 1024 * 1024 * 32;
   private static final int DEFAULT_MAX_ENTRIES_PER_SEGMENT = 1024 * 1024;
   private static final int DEFAULT_ENTRY_BUFFER_SIZE = 1024;
+  private static final long DEFAULT_ENTRY_CACHE_SIZE = 1024 * 1024 * 16;
   private static final boolean DEFAULT_FLUSH_ON_COMMIT = false;
+  private static final boolean DEFAULT_GROUP_COMMIT = false;
+  private static final boolean DEFAULT_ASYNC_WRITES = false;
+  private static final boolean DEFAULT_PREALLOCATE_SEGMENTS = false;
+  private static final int DEFAULT_SEGMENT_POOL_SIZE = 0;
+  private static final boolean DEFAULT_BACKGROUND_ROLLOVER = false;
   private static final boolean DEFAULT_RETAIN_STALE_SNAPSHOTS = false;
+  private static final int DEFAULT_MAX_SNAPSHOT_DELTAS = 8;
   private static final int DEFAULT_COMPACTION_THREADS = max(1, Runtime.getRuntime().availableProcessors() / 2);
+  private static final int DEFAULT_LOAD_THREADS = Runtime.getRuntime().availableProcessors();
   private static final Duration DEFAULT_MINOR_COMPACTION_INTERVAL = Duration.ofMinutes(1);
   private static final Duration DEFAULT_MAJOR_COMPACTION_INTERVAL = Duration.ofHours(1);
   private static final double DEFAULT_COMPACTION_THRESHOLD = 0.5;
+  private static final boolean DEFAULT_COMPRESS_COMPACTED_SEGMENTS = false;
+  private static final boolean DEFAULT_INCREMENTAL_COMPACTION = false;
+  private static final long DEFAULT_COMPACTION_BUDGET = 1024L * 1024 * 256;
+  private static final long DEFAULT_COMPACTION_RATE = 0;
+  private static final long DEFAULT_COMPACTION_ENTRY_RATE = 0;
 
   private StorageLevel storageLevel = StorageLevel.DISK;
   private File directory = new File(DEFAULT_DIRECTORY);
   private int maxSegmentSize = DEFAULT_MAX_SEGMENT_SIZE;
   private int maxEntriesPerSegment = DEFAULT_MAX_ENTRIES_PER_SEGMENT;
   private int entryBufferSize = DEFAULT_ENTRY_BUFFER_SIZE;
+  private long entryCacheSize = DEFAULT_ENTRY_CACHE_SIZE;
   private boolean flushOnCommit = DEFAULT_FLUSH_ON_COMMIT;
+  private boolean groupCommit = DEFAULT_GROUP_COMMIT;
+  private boolean asyncWrites = DEFAULT_ASYNC_WRITES;
+  private boolean preallocateSegments = DEFAULT_PREALLOCATE_SEGMENTS;
+  private int segmentPoolSize = DEFAULT_SEGMENT_POOL_SIZE;
+  private boolean backgroundRollover = DEFAULT_BACKGROUND_ROLLOVER;
+  private PageCacheAdvisor pageCacheAdvisor = PageCacheAdvisor.NONE;
   private boolean retainStaleSnapshots = DEFAULT_RETAIN_STALE_SNAPSHOTS;
+  private int maxSnapshotDeltas = DEFAULT_MAX_SNAPSHOT_DELTAS;
   private int compactionThreads = DEFAULT_COMPACTION_THREADS;
+  private int loadThreads = DEFAULT_LOAD_THREADS;
+  private StorageMetrics metrics = StorageMetrics.NONE;
   private Duration minorCompactionInterval = DEFAULT_MINOR_COMPACTION_INTERVAL;
   private Duration majorCompactionInterval = DEFAULT_MAJOR_COMPACTION_INTERVAL;
   private double compactionThreshold = DEFAULT_COMPACTION_THRESHOLD;
+  private boolean compressCompactedSegments = DEFAULT_COMPRESS_COMPACTED_SEGMENTS;
+  private boolean incrementalCompaction = DEFAULT_INCREMENTAL_COMPACTION;
+  private long compactionBudget = DEFAULT_COMPACTION_BUDGET;
+  private long compactionRate = DEFAULT_COMPACTION_RATE;
+  private long compactionEntryRate = DEFAULT_COMPACTION_ENTRY_RATE;
 
   public Storage() {
   }
@@ -170,7 +198,7 @@ public class Storage {
   /**
    * Returns the entry buffer size.
    * <p>
-   * The entry buffer size dictates the number of entries that will be held in memory for read operations
+   * The entry buffer size dictates the minimum number of entries that will be held in memory for read operations
    * at the tail of the log.
    *
    * @return The entry buffer size.
@@ -179,6 +207,20 @@ public class Storage {
     return entryBufferSize;
   }
 
+  /**
+   * Returns the entry cache size in bytes.
+   * <p>
+   * The entry cache size bounds the number of bytes of entries held in memory by the log's
+   * {@link io.atomix.copycat.server.storage.util.EntryBuffer}, including both entries at the tail of the log and
+   * entries recently read from disk. The tail of the log always retains at least {@link #entryBufferSize()}
+   * entries regardless of the cache size.
+   *
+   * @return The entry cache size in bytes.
+   */
+  public long entryCacheSize() {
+    return entryCacheSize;
+  }
+
   /**
    *
    * Returns whether to flush buffers to disk when entries are committed.
@@ -189,6 +231,81 @@ public class Storage {
     return flushOnCommit;
   }
 
+  /**
+   * Returns whether to group flushes of committed entries.
+   * <p>
+   * Group commit applies only when {@link #flushOnCommit()} is enabled. When group commit is enabled, buffers
+   * are flushed to disk on a background thread rather than on each commit, and commits that occur while a flush
+   * is in progress are combined into a single subsequent flush.
+   *
+   * @return Whether to group flushes of committed entries.
+   */
+  public boolean groupCommit() {
+    return groupCommit;
+  }
+
+  /**
+   * Returns whether to write entries to segments asynchronously.
+   * <p>
+   * When asynchronous writes are enabled, entries appended to the {@link Log} are serialized and written to
+   * segments by a dedicated log writer thread. The number of entries awaiting a write is bounded by the
+   * {@link #entryBufferSize()}.
+   *
+   * @return Whether to write entries to segments asynchronously.
+   */
+  public boolean asyncWrites() {
+    return asyncWrites;
+  }
+
+  /**
+   * Returns whether to preallocate {@link StorageLevel#DISK} segment files.
+   * <p>
+   * When preallocation is enabled, each segment file is allocated on disk at its maximum size when the segment is
+   * created rather than growing as entries are written.
+   *
+   * @return Whether to preallocate segment files.
+   */
+  public boolean preallocateSegments() {
+    return preallocateSegments;
+  }
+
+  /**
+   * Returns the number of preallocated segment files to keep ready for new {@link StorageLevel#DISK} segments.
+   * <p>
+   * Pooled files are preallocated in the background and the files of deleted segments are recycled into the pool,
+   * so rolling over to a new segment doesn't create or extend a file. A pool size of {@code 0} disables the pool.
+   *
+   * @return The number of preallocated segment files to keep ready.
+   */
+  public int segmentPoolSize() {
+    return segmentPoolSize;
+  }
+
+  /**
+   * Returns whether to prepare the next segment in the background before the log rolls over.
+   * <p>
+   * When background roll-over is enabled, the file and indexes of the next segment are created on a background
+   * thread once the current segment is mostly full, so rolling over to the next segment does not create files on
+   * the thread writing to the log.
+   *
+   * @return Whether to prepare the next segment in the background.
+   */
+  public boolean backgroundRollover() {
+    return backgroundRollover;
+  }
+
+  /**
+   * Returns the page cache advisor.
+   * <p>
+   * The page cache advisor is notified of ranges of {@link StorageLevel#DISK} segment files that have been flushed
+   * to disk and can be dropped from the page cache.
+   *
+   * @return The page cache advisor.
+   */
+  public PageCacheAdvisor pageCacheAdvisor() {
+    return pageCacheAdvisor;
+  }
+
   /**
    * Returns a boolean value indicating whether to retain stale snapshots on disk.
    * <p>
@@ -202,6 +319,19 @@ public class Storage {
     return retainStaleSnapshots;
   }
 
+  /**
+   * Returns the maximum number of delta snapshots to take on top of a full snapshot.
+   * <p>
+   * State machines that implement {@link io.atomix.copycat.server.IncrementalSnapshottable} write delta snapshots
+   * containing only the changes since the prior snapshot. Once the current snapshot chain contains the maximum
+   * number of deltas, a full snapshot is taken to consolidate the chain and the prior snapshots are removed.
+   *
+   * @return The maximum number of delta snapshots per full snapshot.
+   */
+  public int maxSnapshotDeltas() {
+    return maxSnapshotDeltas;
+  }
+
   /**
    * Returns the number of log compaction threads.
    * <p>
@@ -214,6 +344,27 @@ public class Storage {
     return compactionThreads;
   }
 
+  /**
+   * Returns the number of threads with which to load segments when a log is opened.
+   * <p>
+   * When a log is opened, existing segments are loaded and their indexes rebuilt in parallel by up to this many
+   * threads.
+   *
+   * @return The number of segment loading threads.
+   */
+  public int loadThreads() {
+    return loadThreads;
+  }
+
+  /**
+   * Returns the storage metrics.
+   *
+   * @return The storage metrics.
+   */
+  public StorageMetrics metrics() {
+    return metrics;
+  }
+
   /**
    * Returns the minor compaction interval.
    * <p>
@@ -252,6 +403,58 @@ public class Storage {
     return compactionThreshold;
   }
 
+  /**
+   * Returns whether to compress segments rewritten by log compaction.
+   * <p>
+   * When enabled, compacted segments are written in blocks of entries that are compressed independently of one
+   * another. Segments that are still being written to are never compressed.
+   *
+   * @return Whether to compress compacted segments.
+   */
+  public boolean compressCompactedSegments() {
+    return compressCompactedSegments;
+  }
+
+  /**
+   * Returns whether to compact the log incrementally.
+   * <p>
+   * When incremental compaction is enabled, both {@link io.atomix.copycat.server.storage.compaction.Compaction#MINOR minor}
+   * and {@link io.atomix.copycat.server.storage.compaction.Compaction#MAJOR major} compaction run at the
+   * {@link #minorCompactionInterval()}, and each compaction rewrites segments up to the {@link #compactionBudget()}.
+   *
+   * @return Whether to compact the log incrementally.
+   */
+  public boolean incrementalCompaction() {
+    return incrementalCompaction;
+  }
+
+  /**
+   * Returns the estimated number of bytes of I/O allowed for each incremental compaction.
+   *
+   * @return The estimated number of bytes of I/O allowed for each incremental compaction.
+   */
+  public long compactionBudget() {
+    return compactionBudget;
+  }
+
+  /**
+   * Returns the maximum number of bytes per second read and written by compaction.
+   *
+   * @return The maximum number of bytes per second read and written by compaction, or {@code 0} if unlimited.
+   */
+  public long compactionRate() {
+    return compactionRate;
+  }
+
+  /**
+   * Returns the maximum number of entries per second read by compaction.
+   *
+   * @return The maximum number of entries per second read by compaction, or {@code 0} if unlimited.
+   */
+  public long compactionEntryRate() {
+    return compactionEntryRate;
+  }
+
   /**
    * Opens a new {@link MetaStore}, recovering metadata from disk if it exists.
    * <p>
@@ -332,7 +535,7 @@ public class Storage {
    */
   public void deleteLog(String name) {
     StorageCleaner cleaner = new StorageCleaner(this);
-    cleaner.cleanFiles(f -> SegmentFile.isSegmentFile(name, f));
+    cleaner.cleanFiles(f -> SegmentFile.isSegmentFile(name, f) || SegmentFile.isIndexFile(name, f) || SegmentFile.isPoolFile(name, f));
   }
 
   @Override
@@ -449,7 +652,7 @@ public class Storage {
     /**
      * Sets the entry buffer size.
      * <p>
-     * The entry buffer size dictates the number of entries to hold in memory at the tail of the log. Increasing
+     * The entry buffer size dictates the minimum number of entries to hold in memory at the tail of the log. Increasing
      * the buffer size increases the number of entries that will be held in memory and thus implies greater memory
      * consumption, but server performance may be improved due to reduced disk access.
      *
@@ -462,6 +665,22 @@ public class Storage {
       return this;
     }
 
+    /**
+     * Sets the entry cache size in bytes.
+     * <p>
+     * The entry cache size bounds the memory used to cache entries at the tail of the log and entries recently read
+     * from disk. A larger cache allows followers and state machines that are catching up to be served from memory
+     * rather than disk. Defaults to {@code 16MB}.
+     *
+     * @param entryCacheSize The entry cache size in bytes.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if the cache size is not positive
+     */
+    public Builder withEntryCacheSize(long entryCacheSize) {
+      storage.entryCacheSize = Assert.arg(entryCacheSize, entryCacheSize > 0, "entryCacheSize must be positive");
+      return this;
+    }
+
     /**
      * Enables flushing buffers to disk when entries are committed to a segment, returning the builder
      * for method chaining.
@@ -490,6 +709,157 @@ public class Storage {
       return this;
     }
 
+    /**
+     * Enables grouping flushes of committed entries, returning the builder for method chaining.
+     * <p>
+     * When group commit is enabled in conjunction with {@link #withFlushOnCommit() flush-on-commit}, log
+     * buffers will be flushed to disk on a background thread rather than synchronously each time an entry is
+     * committed. Commits that occur while a flush is in progress will be combined into a single subsequent flush,
+     * and leaders will not acknowledge committed entries until they have been flushed.
+     *
+     * @return The storage builder.
+     */
+    public Builder withGroupCommit() {
+      return withGroupCommit(true);
+    }
+
+    /**
+     * Sets whether to group flushes of committed entries, returning the builder for method chaining.
+     * <p>
+     * When group commit is enabled in conjunction with {@link #withFlushOnCommit() flush-on-commit}, log
+     * buffers will be flushed to disk on a background thread rather than synchronously each time an entry is
+     * committed. Commits that occur while a flush is in progress will be combined into a single subsequent flush,
+     * and leaders will not acknowledge committed entries until they have been flushed.
+     *
+     * @param groupCommit Whether to group flushes of committed entries.
+     * @return The storage builder.
+     */
+    public Builder withGroupCommit(boolean groupCommit) {
+      storage.groupCommit = groupCommit;
+      return this;
+    }
+
+    /**
+     * Enables asynchronous writes of log entries, returning the builder for method chaining.
+     * <p>
+     * When asynchronous writes are enabled, {@link Log#append(io.atomix.copycat.server.storage.entry.Entry) appended}
+     * entries are handed off to a dedicated log writer thread which serializes and writes them to segments in batches.
+     * Entries that have not yet been written are served from the log's entry buffer.
+     *
+     * @return The storage builder.
+     */
+    public Builder withAsyncWrites() {
+      return withAsyncWrites(true);
+    }
+
+    /**
+     * Sets whether to write log entries asynchronously, returning the builder for method chaining.
+     * <p>
+     * When asynchronous writes are enabled, {@link Log#append(io.atomix.copycat.server.storage.entry.Entry) appended}
+     * entries are handed off to a dedicated log writer thread which serializes and writes them to segments in batches.
+     * Leaders will not replicate entries until they have been written locally, and if the number of entries waiting
+     * to be written reaches the {@link #withEntryBufferSize(int) entry buffer size}, appends will block until the
+     * writer catches up. Entries that have not been written when the process crashes are lost.
+     *
+     * @param asyncWrites Whether to write log entries asynchronously.
+     * @return The storage builder.
+     */
+    public Builder withAsyncWrites(boolean asyncWrites) {
+      storage.asyncWrites = asyncWrites;
+      return this;
+    }
+
+    /**
+     * Enables preallocation of segment files, returning the builder for method chaining.
+     * <p>
+     * When preallocation is enabled, {@link StorageLevel#DISK} segment files are zero filled to their maximum size
+     * when segments are created, so disk space is allocated up front rather than as entries are written.
+     *
+     * @return The storage builder.
+     */
+    public Builder withPreallocateSegments() {
+      return withPreallocateSegments(true);
+    }
+
+    /**
+     * Sets whether to preallocate segment files, returning the builder for method chaining.
+     * <p>
+     * When preallocation is enabled, {@link StorageLevel#DISK} segment files are zero filled to their
+     * {@link #withMaxSegmentSize(int) maximum size} in page aligned blocks when segments are created. This avoids
+     * growing files and allocating disk blocks as entries are written at the cost of writing each segment file
+     * in full up front.
+     *
+     * @param preallocateSegments Whether to preallocate segment files.
+     * @return The storage builder.
+     */
+    public Builder withPreallocateSegments(boolean preallocateSegments) {
+      storage.preallocateSegments = preallocateSegments;
+      return this;
+    }
+
+    /**
+     * Sets the number of preallocated segment files to keep ready, returning the builder for method chaining.
+     * <p>
+     * When the segment pool is enabled, up to {@code segmentPoolSize} zero filled files of the
+     * {@link #withMaxSegmentSize(int) maximum segment size} are prepared on a background thread and kept in the log
+     * directory. New {@link StorageLevel#DISK} segments take a file from the pool rather than creating one, and the
+     * files of segments deleted by compaction are recycled into the pool. If the pool is empty when a segment is
+     * created, the segment is created as usual. By default, the pool is disabled.
+     *
+     * @param segmentPoolSize The number of preallocated segment files to keep ready.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code segmentPoolSize} is negative
+     */
+    public Builder withSegmentPoolSize(int segmentPoolSize) {
+      storage.segmentPoolSize = Assert.argNot(segmentPoolSize, segmentPoolSize < 0, "segmentPoolSize cannot be negative");
+      return this;
+    }
+
+    /**
+     * Enables background segment roll-over, returning the builder for method chaining.
+     * <p>
+     * When background roll-over is enabled, the next segment is prepared on a background thread once the current
+     * segment crosses a fill threshold.
+     *
+     * @return The storage builder.
+     */
+    public Builder withBackgroundRollover() {
+      return withBackgroundRollover(true);
+    }
+
+    /**
+     * Sets whether to prepare the next segment in the background, returning the builder for method chaining.
+     * <p>
+     * When background roll-over is enabled, once the current segment crosses a fill threshold, the file, buffer, and
+     * indexes of the next segment are created on a background thread. When the current segment is full, the log
+     * switches to the prepared segment, writing only its descriptor. This removes file creation from the latency of
+     * the append that triggers the roll-over. Background roll-over has no effect on {@link StorageLevel#MEMORY} logs.
+     *
+     * @param backgroundRollover Whether to prepare the next segment in the background.
+     * @return The storage builder.
+     */
+    public Builder withBackgroundRollover(boolean backgroundRollover) {
+      storage.backgroundRollover = backgroundRollover;
+      return this;
+    }
+
+    /**
+     * Sets the page cache advisor, returning the builder for method chaining.
+     * <p>
+     * Once ranges of {@link StorageLevel#DISK} segment files have been flushed to disk, the advisor is notified that
+     * those ranges are not expected to be read soon. Advisors can drop the ranges from the page cache, e.g. with
+     * {@code posix_fadvise(POSIX_FADV_DONTNEED)}, to prevent log writes from evicting the state machine's working set
+     * on memory constrained hosts. By default, the page cache is left to the operating system.
+     *
+     * @param pageCacheAdvisor The page cache advisor.
+     * @return The storage builder.
+     * @throws NullPointerException if {@code pageCacheAdvisor} is null
+     */
+    public Builder withPageCacheAdvisor(PageCacheAdvisor pageCacheAdvisor) {
+      storage.pageCacheAdvisor = Assert.notNull(pageCacheAdvisor, "pageCacheAdvisor");
+      return this;
+    }
+
     /**
      * Enables retaining stale snapshots on disk, returning the builder for method chaining.
      * <p>
@@ -522,6 +892,25 @@ public class Storage {
       return this;
     }
 
+    /**
+     * Sets the maximum number of delta snapshots to take on top of a full snapshot, returning the builder for
+     * method chaining.
+     * <p>
+     * State machines that implement {@link io.atomix.copycat.server.IncrementalSnapshottable} write delta snapshots
+     * containing only the changes since the prior snapshot. Once the current snapshot chain contains the maximum
+     * number of deltas, a full snapshot is taken to consolidate the chain. Longer chains reduce snapshot I/O at the
+     * cost of slower recovery. By default, a full snapshot is taken after every {@code 8} deltas. Setting the
+     * maximum to {@code 0} disables delta snapshots.
+     *
+     * @param maxSnapshotDeltas The maximum number of delta snapshots per full snapshot.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code maxSnapshotDeltas} is negative
+     */
+    public Builder withMaxSnapshotDeltas(int maxSnapshotDeltas) {
+      storage.maxSnapshotDeltas = Assert.argNot(maxSnapshotDeltas, maxSnapshotDeltas < 0, "maxSnapshotDeltas cannot be negative");
+      return this;
+    }
+
     /**
      * Sets the number of log compaction threads, returning the builder for method chaining.
      * <p>
@@ -538,6 +927,36 @@ public class Storage {
       return this;
     }
 
+    /**
+     * Sets the number of threads with which to load segments when a log is opened, returning the builder for
+     * method chaining.
+     * <p>
+     * When a log is opened, existing segments are loaded, verified, and indexed in parallel. By default, the log
+     * uses {@code Runtime.getRuntime().availableProcessors()} threads to load segments.
+     *
+     * @param loadThreads The number of segment loading threads.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if {@code loadThreads} is not positive
+     */
+    public Builder withLoadThreads(int loadThreads) {
+      storage.loadThreads = Assert.arg(loadThreads, loadThreads > 0, "loadThreads must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the storage metrics, returning the builder for method chaining.
+     * <p>
+     * Storage components report timing and size information to the provided {@link StorageMetrics}.
+     *
+     * @param metrics The storage metrics.
+     * @return The storage builder.
+     * @throws NullPointerException if {@code metrics} is null
+     */
+    public Builder withMetrics(StorageMetrics metrics) {
+      storage.metrics = Assert.notNull(metrics, "metrics");
+      return this;
+    }
+
     /**
      * Sets the minor compaction interval, returning the builder for method chaining.
      * <p>
@@ -600,6 +1019,115 @@ public class Storage {
       return this;
     }
 
+    /**
+     * Enables compression of compacted segments, returning the builder for method chaining.
+     *
+     * @return The storage builder.
+     */
+    public Builder withCompressCompactedSegments() {
+      return withCompressCompactedSegments(true);
+    }
+
+    /**
+     * Sets whether to compress segments rewritten by log compaction, returning the builder for method chaining.
+     * <p>
+     * When enabled, {@link io.atomix.copycat.server.storage.compaction.Compaction#MINOR minor} and
+     * {@link io.atomix.copycat.server.storage.compaction.Compaction#MAJOR major} compaction write compacted segments
+     * in blocks of entries that are compressed independently with Deflate. Each compressed segment keeps an index of
+     * its blocks, so reading an entry at random only requires decompressing the block that contains it. Compacted
+     * segments contain only committed entries which are rarely read, so compressing them trades some CPU during
+     * compaction and cold reads for a smaller log on disk. Segments written before compression was enabled are
+     * compressed once they're next compacted, and compressed segments remain readable if compression is disabled.
+     *
+     * @param compressCompactedSegments Whether to compress compacted segments.
+     * @return The storage builder.
+     */
+    public Builder withCompressCompactedSegments(boolean compressCompactedSegments) {
+      storage.compressCompactedSegments = compressCompactedSegments;
+      return this;
+    }
+
+    /**
+     * Enables incremental compaction, returning the builder for method chaining.
+     *
+     * @return The storage builder.
+     */
+    public Builder withIncrementalCompaction() {
+      return withIncrementalCompaction(true);
+    }
+
+    /**
+     * Sets whether to compact the log incrementally, returning the builder for method chaining.
+     * <p>
+     * By default, minor and major compaction run at independent fixed intervals, and major compaction rewrites every
+     * compacted segment in the log each time it runs. When incremental compaction is enabled, both minor and major
+     * compaction run at the {@link #withMinorCompactionInterval(Duration) minor compaction interval} and each
+     * compaction is limited to the {@link #withCompactionBudget(long) compaction budget}. Minor compaction rewrites
+     * the segments that reclaim the most released bytes per byte of I/O first, and major compaction skips segments
+     * that have nothing to reclaim. This spreads compaction I/O evenly over time rather than in periodic bursts.
+     *
+     * @param incrementalCompaction Whether to compact the log incrementally.
+     * @return The storage builder.
+     */
+    public Builder withIncrementalCompaction(boolean incrementalCompaction) {
+      storage.incrementalCompaction = incrementalCompaction;
+      return this;
+    }
+
+    /**
+     * Sets the estimated number of bytes of I/O allowed for each incremental compaction, returning the builder for
+     * method chaining.
+     * <p>
+     * The I/O cost of rewriting a segment is estimated as the size of the segment plus the size of the entries that
+     * have not been released from it. Each incremental compaction rewrites segments until the next segment would
+     * exceed the budget, but always rewrites at least one segment or group of segments. The budget only applies if
+     * {@link #withIncrementalCompaction() incremental compaction} is enabled. By default, the budget is {@code 256MB}.
+     *
+     * @param compactionBudget The estimated number of bytes of I/O allowed for each incremental compaction.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if the budget is not positive
+     */
+    public Builder withCompactionBudget(long compactionBudget) {
+      storage.compactionBudget = Assert.argNot(compactionBudget, compactionBudget <= 0, "compactionBudget must be positive");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes per second read and written by compaction, returning the builder for method
+     * chaining.
+     * <p>
+     * Compaction tasks share a token bucket that allows up to one second of bytes to be read or written in a burst.
+     * Once the bucket is empty, compaction tasks wait for the bucket to refill. The rate adapts to the latency of
+     * writes to the log: if writes slow down while compaction is running, the rate is reduced, down to {@code 1/16}
+     * of the configured rate, and it recovers once write latency returns to normal. By default, the rate is unlimited.
+     *
+     * @param compactionRate The maximum number of bytes per second read and written by compaction, or {@code 0}
+     *                       for no limit.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if the rate is negative
+     */
+    public Builder withCompactionRate(long compactionRate) {
+      storage.compactionRate = Assert.argNot(compactionRate, compactionRate < 0, "compactionRate cannot be negative");
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of entries per second read by compaction, returning the builder for method chaining.
+     * <p>
+     * Limiting the rate at which entries are read bounds the CPU time spent deserializing and filtering entries
+     * during compaction, particularly for logs of many small entries. The entry rate adapts to write latency in
+     * the same way as the {@link #withCompactionRate(long) compaction rate}. By default, the rate is unlimited.
+     *
+     * @param compactionEntryRate The maximum number of entries per second read by compaction, or {@code 0} for
+     *                            no limit.
+     * @return The storage builder.
+     * @throws IllegalArgumentException if the rate is negative
+     */
+    public Builder withCompactionEntryRate(long compactionEntryRate) {
+      storage.compactionEntryRate = Assert.argNot(compactionEntryRate, compactionEntryRate < 0, "compactionEntryRate cannot be negative");
+      return this;
+    }
+
     /**
      * Builds the {@link Storage} object.
      *
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import java.time.Duration;
+
+/**
+ * Receives metrics from {@link Storage} components.
+ * <p>
+ * Storage metrics can be provided to the {@link Storage.Builder#withMetrics(StorageMetrics) storage builder} to
+ * export timing and size information from logs to an external metrics system. All methods have empty default
+ * implementations, so implementations need only override the methods for the metrics they're interested in.
+ * <p>
+ * Metrics methods may be called from internal storage threads and should not block.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public interface StorageMetrics {
+
+  /**
+   * Storage metrics that ignore all metrics.
+   */
+  StorageMetrics NONE = new StorageMetrics() {
+  };
+
+  /**
+   * Called once the segments of a log have been loaded from disk.
+   *
+   * @param name The name of the log.
+   * @param segments The number of segments loaded.
+   * @param time The time taken to load the segments.
+   */
+  default void segmentsLoaded(String name, int segments, Duration time) {
+  }
+
+  /**
+   * Called each time a group of segments rewritten by major compaction replaces the original segments in a log.
+   * <p>
+   * Groups are completed in log order, so {@code group} indicates the progress of the compaction.
+   *
+   * @param name The name of the log.
+   * @param group The number of groups completed so far, including this group.
+   * @param groups The total number of groups being compacted.
+   * @param segments The number of segments in the group.
+   * @param time The time taken to rewrite the group.
+   */
+  default void segmentGroupCompacted(String name, int group, int groups, int segments, Duration time) {
+  }
+
+  /**
+   * Called once a major compaction of a log has completed.
+   *
+   * @param name The name of the log.
+   * @param groups The number of groups of segments compacted.
+   * @param time The time taken to compact the log.
+   */
+  default void majorCompactionCompleted(String name, int groups, Duration time) {
+  }
+
+}
@@ -0,0 +1,210 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.compaction;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the rate at which compaction tasks read and write entries.
+ * <p>
+ * The throttle enforces the {@link Storage#compactionRate()} in bytes per second and the
+ * {@link Storage#compactionEntryRate()} in entries per second with a token bucket shared by all compaction tasks.
+ * Each bucket holds up to one second of tokens. Compaction tasks {@link #acquire(int, long) acquire} tokens for each
+ * entry they read or write, and if a bucket is empty the task sleeps until enough tokens have accumulated.
+ * <p>
+ * Rates adapt to the latency of writes to the log. The log {@link #recordWrite(long) records} the latency of each
+ * write, and the throttle keeps a fast moving average of all writes and a slow moving average of writes made while
+ * compaction is idle. While compaction is running, if the fast average rises above twice the idle average, the rates
+ * are halved, down to a minimum of {@code 1/16} of the configured rates. Otherwise the rates recover gradually.
+ * <p>
+ * Once the throttle is {@link #close() closed}, waiting tasks are woken and further attempts to acquire tokens abort
+ * the calling task.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class CompactionThrottle {
+  private static final long ADJUST_INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long IDLE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+  private static final double FAST_WEIGHT = 0.2;
+  private static final double SLOW_WEIGHT = 0.01;
+  private static final double LATENCY_THRESHOLD = 2;
+  private static final double MIN_FACTOR = 1 / 16d;
+
+  private final TokenBucket bytes;
+  private final TokenBucket entries;
+  private volatile double fastLatency;
+  private volatile double idleLatency;
+  private volatile long lastAcquire = System.nanoTime() - IDLE_INTERVAL;
+  private double factor = 1;
+  private long lastAdjust;
+  private boolean closed;
+
+  CompactionThrottle(long bytesPerSecond, long entriesPerSecond) {
+    Assert.argNot(bytesPerSecond < 0, "bytesPerSecond cannot be negative");
+    Assert.argNot(entriesPerSecond < 0, "entriesPerSecond cannot be negative");
+    this.bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond) : null;
+    this.entries = entriesPerSecond > 0 ? new TokenBucket(entriesPerSecond) : null;
+  }
+
+  /**
+   * Returns a boolean indicating whether compaction is throttled.
+   *
+   * @return Indicates whether a compaction rate has been configured.
+   */
+  public boolean isEnabled() {
+    return bytes != null || entries != null;
+  }
+
+  /**
+   * Returns the fraction of the configured rates currently allowed.
+   *
+   * @return The fraction of the configured rates currently allowed, between {@code 1/16} and {@code 1}.
+   */
+  public synchronized double factor() {
+    return factor;
+  }
+
+  /**
+   * Records the latency of a write to the log.
+   * <p>
+   * This method should be called by the thread writing entries to the log.
+   *
+   * @param latency The latency of the write in nanoseconds.
+   */
+  public void recordWrite(long latency) {
+    double fastLatency = this.fastLatency;
+    this.fastLatency = fastLatency == 0 ? latency : fastLatency + (latency - fastLatency) * FAST_WEIGHT;
+
+    // Only writes made while compaction is idle contribute to the baseline latency.
+    if (System.nanoTime() - lastAcquire >= IDLE_INTERVAL) {
+      double idleLatency = this.idleLatency;
+      this.idleLatency = idleLatency == 0 ? latency : idleLatency + (latency - idleLatency) * SLOW_WEIGHT;
+    }
+  }
+
+  /**
+   * Acquires tokens for reading or writing entries, blocking until the tokens are available.
+   * <p>
+   * If the throttle is closed or the calling thread is interrupted, a {@link StorageException} is thrown to abort
+   * the compaction task. The thread's interrupt status is preserved.
+   *
+   * @param entries The number of entries.
+   * @param bytes The number of bytes.
+   * @throws StorageException if the throttle is closed or the calling thread is interrupted
+   */
+  synchronized void acquire(int entries, long bytes) {
+    checkOpen();
+    if (!isEnabled()) {
+      return;
+    }
+
+    long now = System.nanoTime();
+    lastAcquire = now;
+    adjust(now);
+    long wait = Math.max(
+      this.bytes != null ? this.bytes.reserve(bytes, factor, now) : 0,
+      this.entries != null ? this.entries.reserve(entries, factor, now) : 0);
+
+    // Tokens are reserved before waiting, and waiting releases the lock, so concurrent tasks wait in turn.
+    long deadline = now + wait;
+    while (wait > 0) {
+      try {
+        TimeUnit.NANOSECONDS.timedWait(this, wait);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      checkOpen();
+      wait = deadline - System.nanoTime();
+    }
+  }
+
+  /**
+   * Throws an exception if the throttle has been closed or the calling thread has been interrupted.
+   */
+  private void checkOpen() {
+    if (closed) {
+      throw new StorageException("compaction throttle closed");
+    }
+    if (Thread.currentThread().isInterrupted()) {
+      throw new StorageException("compaction interrupted");
+    }
+  }
+
+  /**
+   * Closes the throttle, aborting compaction tasks waiting for or attempting to acquire tokens.
+   */
+  synchronized void close() {
+    closed = true;
+    notifyAll();
+  }
+
+  /**
+   * Adjusts the rate factor according to the write latency.
+   */
+  private void adjust(long now) {
+    if (now - lastAdjust < ADJUST_INTERVAL) {
+      return;
+    }
+    lastAdjust = now;
+
+    double idleLatency = this.idleLatency;
+    if (idleLatency > 0 && fastLatency > idleLatency * LATENCY_THRESHOLD) {
+      factor = Math.max(factor / 2, MIN_FACTOR);
+    } else {
+      factor = Math.min(factor + MIN_FACTOR, 1);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%s[bytes=%s, entries=%s, factor=%s]", getClass().getSimpleName(), bytes, entries, factor);
+  }
+
+  /**
+   * Token bucket holding up to one second of tokens.
+   */
+  private static final class TokenBucket {
+    private final long rate;
+    private double tokens;
+    private long lastRefill = System.nanoTime();
+
+    private TokenBucket(long rate) {
+      this.rate = rate;
+      this.tokens = rate;
+    }
+
+    /**
+     * Reserves tokens, returning the time to wait in nanoseconds until the reserved tokens are available.
+     */
+    private long reserve(long amount, double factor, long now) {
+      double rate = this.rate * factor;
+      tokens = Math.min(tokens + (now - lastRefill) * rate / TimeUnit.SECONDS.toNanos(1), rate);
+      lastRefill = now;
+      tokens -= amount;
+      return tokens >= 0 ? 0 : (long) (-tokens / rate * TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Override
+    public String toString() {
+      return String.valueOf(rate);
+    }
+  }
+
+}
@@ -41,6 +41,14 @@ import java.util.concurrent.atomic.AtomicInteger;
  * {@link Storage#minorCompactionInterval()} and {@link Storage#majorCompactionInterval()} respectively.
  * Compaction can also be run synchronously via {@link Compactor#compact()} or {@link Compactor#compact(Compaction)}.
  * <p>
+ * If {@link Storage#incrementalCompaction() incremental compaction} is enabled, minor and major compaction are instead
+ * run one after the other at the {@link Storage#minorCompactionInterval()}, and each compaction rewrites segments up
+ * to the {@link Storage#compactionBudget()}. An incremental compaction is skipped if the previous compaction is still
+ * running.
+ * <p>
+ * Compaction I/O is limited to the configured {@link Storage#compactionRate()} and {@link Storage#compactionEntryRate()}
+ * by a {@link CompactionThrottle} shared by all compaction tasks.
+ * <p>
  * When a {@link Compaction} is executed either synchronously or asynchronously, the compaction's associated
  * {@link CompactionManager} is called to build a list of {@link CompactionTask}s to run. Compaction tasks
  * are run in parallel in the compaction thread pool. However, the compactor will not allow multiple compaction
@@ -54,6 +62,7 @@ public class Compactor implements AutoCloseable {
   private final Storage storage;
   private final SegmentManager segments;
   private final ScheduledExecutorService executor;
+  private final CompactionThrottle throttle;
   private long minorIndex;
   private long majorIndex;
   private long snapshotIndex;
@@ -67,8 +76,49 @@ public class Compactor implements AutoCloseable {
     this.storage = Assert.notNull(storage, "storage");
     this.segments = Assert.notNull(segments, "segments");
     this.executor = Assert.notNull(executor, "executor");
-    minor = executor.scheduleAtFixedRate(() -> compact(Compaction.MINOR), storage.minorCompactionInterval().toMillis(), storage.minorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
-    major = executor.scheduleAtFixedRate(() -> compact(Compaction.MAJOR), storage.majorCompactionInterval().toMillis(), storage.majorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
+    this.throttle = new CompactionThrottle(storage.compactionRate(), storage.compactionEntryRate());
+    if (storage.incrementalCompaction()) {
+      minor = executor.scheduleWithFixedDelay(this::compactIncrementally, storage.minorCompactionInterval().toMillis(), storage.minorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
+    } else {
+      minor = executor.scheduleAtFixedRate(() -> compact(Compaction.MINOR), storage.minorCompactionInterval().toMillis(), storage.minorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
+      major = executor.scheduleAtFixedRate(() -> compact(Compaction.MAJOR), storage.majorCompactionInterval().toMillis(), storage.majorCompactionInterval().toMillis(), TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Estimates the number of bytes of I/O required to rewrite the given segment.
+   * <p>
+   * Rewriting a segment requires reading the segment and writing the entries that have not been released.
+   *
+   * @param segment The segment for which to estimate the cost of compaction.
+   * @return The estimated number of bytes of I/O required to rewrite the segment.
+   */
+  static long rewriteCost(Segment segment) {
+    long size = segment.size();
+    long liveSize = segment.liveSize();
+    long totalSize = liveSize + segment.releaseSize();
+    return size + (totalSize > 0 ? size * liveSize / totalSize : size);
+  }
+
+  /**
+   * Returns the throttle that limits the rate of compaction I/O.
+   * <p>
+   * The log {@link CompactionThrottle#recordWrite(long) records} the latency of writes with the throttle so
+   * compaction can back off when writes slow down.
+   *
+   * @return The compaction throttle.
+   */
+  public CompactionThrottle throttle() {
+    return throttle;
+  }
+
+  /**
+   * Returns the executor on which compaction tasks are run.
+   *
+   * @return The compaction executor.
+   */
+  ScheduledExecutorService executor() {
+    return executor;
   }
 
   /**
@@ -195,6 +245,16 @@ public class Compactor implements AutoCloseable {
     return this.future;
   }
 
+  /**
+   * Runs an incremental minor and major compaction unless a compaction is already running.
+   */
+  private synchronized void compactIncrementally() {
+    if (future.isDone()) {
+      compact(Compaction.MINOR);
+      compact(Compaction.MAJOR);
+    }
+  }
+
   /**
    * Compacts the log.
    */
@@ -229,8 +289,9 @@ public class Compactor implements AutoCloseable {
   /**
    * Closes the log compactor.
    * <p>
-   * When the compactor is closed, existing compaction tasks will be allowed to complete, future scheduled
-   * compactions will be cancelled, and the underlying {@link ScheduledExecutorService} will be shut down.
+   * When the compactor is closed, future scheduled compactions will be cancelled, running compaction tasks will be
+   * aborted the next time they {@link CompactionThrottle#acquire(int, long) acquire} tokens from the throttle,
+   * and the underlying {@link ScheduledExecutorService} will be shut down.
    */
   @Override
   public void close() {
@@ -239,10 +300,12 @@ public class Compactor implements AutoCloseable {
     if (major != null)
       major.cancel(true);
 
-    executor.shutdown();
+    throttle.close();
+    executor.shutdownNow();
     try {
       executor.awaitTermination(30, TimeUnit.SECONDS);
     } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
   }
 
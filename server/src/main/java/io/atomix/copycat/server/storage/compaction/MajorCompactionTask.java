@@ -20,13 +20,21 @@ import io.atomix.copycat.server.Commit;
 import io.atomix.copycat.server.storage.Segment;
 import io.atomix.copycat.server.storage.SegmentDescriptor;
 import io.atomix.copycat.server.storage.SegmentManager;
+import io.atomix.copycat.server.storage.SegmentReader;
 import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.entry.RawEntry;
 import io.atomix.copycat.server.storage.util.OffsetPredicate;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Removes tombstones from the log and combines {@link Segment}s to reclaim disk space.
@@ -87,6 +95,16 @@ import java.util.List;
  * state of offsets underlying all the segments to be compacted prior to rewriting any entries. This ensures that any
  * entries released after the start of rewriting segments will not be considered for compaction during the execution
  * of this task.
+ * <p>
+ * <b>Parallel compaction</b>
+ * <p>
+ * Because compaction decisions are made from the copied offset predicates, groups can be rewritten independently
+ * of one another. Groups are rewritten in parallel on up to {@link io.atomix.copycat.server.storage.Storage#compactionThreads()}
+ * threads, each writing a new compact segment. However, rewritten groups still replace the original segments in
+ * sequential order: a group's compact segment is only {@link SegmentManager#replaceSegments(java.util.Collection, Segment) installed}
+ * once all prior groups have been installed. Compact segments that have not been installed are not locked and are
+ * deleted if the server fails, so the log can only ever reflect a compacted prefix of the groups, preserving the
+ * ordering guarantees described above. If rewriting a group fails, later groups are discarded.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
@@ -98,13 +116,17 @@ public final class MajorCompactionTask implements CompactionTask {
   private final long snapshotIndex;
   private final long compactIndex;
   private final Compaction.Mode defaultCompactionMode;
+  private final CompactionThrottle throttle;
+  private final ScheduledExecutorService executor;
 
-  MajorCompactionTask(SegmentManager manager, List<List<Segment>> groups, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode) {
+  MajorCompactionTask(SegmentManager manager, List<List<Segment>> groups, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode, CompactionThrottle throttle, ScheduledExecutorService executor) {
     this.manager = Assert.notNull(manager, "manager");
     this.groups = Assert.notNull(groups, "segments");
     this.snapshotIndex = snapshotIndex;
     this.compactIndex = compactIndex;
     this.defaultCompactionMode = Assert.notNull(defaultCompactionMode, "defaultCompactionMode");
+    this.throttle = Assert.notNull(throttle, "throttle");
+    this.executor = Assert.notNull(executor, "executor");
   }
 
   @Override
@@ -131,17 +153,150 @@ public final class MajorCompactionTask implements CompactionTask {
    * Compacts all compactable segments.
    */
   private void compactGroups() {
+    List<Integer> selected = selectGroups();
+    if (selected.isEmpty()) {
+      return;
+    }
+
+    long startTime = System.nanoTime();
+    List<CompletableFuture<Segment>> results = new ArrayList<>(selected.size());
+    for (int i = 0; i < selected.size(); i++) {
+      results.add(new CompletableFuture<>());
+    }
+    long[] times = new long[selected.size()];
+    AtomicInteger next = new AtomicInteger();
+
+    // Rewrite groups on additional compaction threads. If no threads are available, the groups are rewritten
+    // on this thread.
+    int parallelism = Math.min(manager.storage().compactionThreads(), selected.size());
+    for (int i = 1; i < parallelism; i++) {
+      try {
+        executor.execute(() -> rewriteGroups(selected, results, times, next));
+      } catch (RejectedExecutionException e) {
+        break;
+      }
+    }
+
+    // Rewrite groups on this thread, installing rewritten groups in order as they complete.
+    int installed = 0;
+    int i;
+    while ((i = next.getAndIncrement()) < selected.size()) {
+      rewriteGroup(selected.get(i), results.get(i), times, i);
+      while (installed < results.size() && results.get(installed).isDone()) {
+        installGroup(selected, results, times, installed++, next);
+      }
+    }
+
+    // Install the remaining groups once they've been rewritten by other threads.
+    while (installed < results.size()) {
+      installGroup(selected, results, times, installed++, next);
+    }
+
+    Duration time = Duration.ofNanos(System.nanoTime() - startTime);
+    LOGGER.debug("Compacted {} group(s) in {} ms", selected.size(), time.toMillis());
+    manager.storage().metrics().majorCompactionCompleted(manager.name(), selected.size(), time);
+  }
+
+  /**
+   * Returns the indexes of the groups to compact.
+   */
+  private List<Integer> selectGroups() {
+    List<Integer> selected = new ArrayList<>(groups.size());
+    boolean incremental = manager.storage().incrementalCompaction();
+    long budget = manager.storage().compactionBudget();
+    long cost = 0;
     for (int i = 0; i < groups.size(); i++) {
       List<Segment> group = groups.get(i);
-      List<OffsetPredicate> groupPredicates = predicates.get(i);
-      Segment segment = compactGroup(group, groupPredicates);
-      mergeReleased(group, groupPredicates, segment);
-      deleteGroup(group);
+
+      // When compacting incrementally, skip single segments with no released entries. Because the decision is made
+      // from the copied predicates, any entry released after the copy is ignored by the rest of the task, so skipping
+      // a segment can't allow a later tombstone to be removed before an earlier entry.
+      if (incremental) {
+        if (group.size() == 1 && predicates.get(i).get(0).count() == 0) {
+          continue;
+        }
+
+        // Groups must be compacted in order, so stop once the next group would exceed the budget.
+        long groupCost = group.stream().mapToLong(Compactor::rewriteCost).sum();
+        if (cost > 0 && cost + groupCost > budget) {
+          LOGGER.debug("Compaction budget exhausted after {} bytes", cost);
+          break;
+        }
+        cost += groupCost;
+      }
+      selected.add(i);
+    }
+    return selected;
+  }
+
+  /**
+   * Rewrites groups until no groups remain to be rewritten.
+   */
+  private void rewriteGroups(List<Integer> selected, List<CompletableFuture<Segment>> results, long[] times, AtomicInteger next) {
+    int i;
+    while ((i = next.getAndIncrement()) < selected.size()) {
+      rewriteGroup(selected.get(i), results.get(i), times, i);
+    }
+  }
+
+  /**
+   * Rewrites a group to a new compact segment, completing the given future with the compact segment.
+   */
+  private void rewriteGroup(int group, CompletableFuture<Segment> result, long[] times, int i) {
+    long startTime = System.nanoTime();
+    try {
+      Segment segment = compactGroup(groups.get(group), predicates.get(group));
+      times[i] = System.nanoTime() - startTime;
+      result.complete(segment);
+    } catch (Throwable e) {
+      result.completeExceptionally(e);
+    }
+  }
+
+  /**
+   * Replaces a rewritten group with its compact segment.
+   * <p>
+   * If the group could not be rewritten, no later groups are installed and the compaction fails.
+   */
+  private void installGroup(List<Integer> selected, List<CompletableFuture<Segment>> results, long[] times, int i, AtomicInteger next) {
+    Segment segment;
+    try {
+      segment = results.get(i).join();
+    } catch (CompletionException e) {
+      discardGroups(results, i + 1, next);
+      throw e;
+    }
+
+    List<Segment> group = groups.get(selected.get(i));
+    manager.replaceSegments(group, segment);
+    mergeReleased(group, predicates.get(selected.get(i)), segment);
+    deleteGroup(group);
+
+    Duration time = Duration.ofNanos(times[i]);
+    LOGGER.debug("Compacted group {} of {} ({} segment(s)) in {} ms", i + 1, selected.size(), group.size(), time.toMillis());
+    manager.storage().metrics().segmentGroupCompacted(manager.name(), i + 1, selected.size(), group.size(), time);
+  }
+
+  /**
+   * Stops rewriting groups and deletes the compact segments of groups following a failed group.
+   */
+  private void discardGroups(List<CompletableFuture<Segment>> results, int from, AtomicInteger next) {
+    // Groups that have not been claimed by a thread will never be rewritten.
+    int claimed = Math.min(next.getAndSet(results.size()), results.size());
+    for (int i = from; i < claimed; i++) {
+      try {
+        Segment segment = results.get(i).join();
+        segment.close();
+        segment.delete();
+      } catch (CompletionException e) {
+        // The group failed to be rewritten, so there's no compact segment to delete.
+        LOGGER.debug("Failed to compact group {}", i + 1, e.getCause());
+      }
     }
   }
 
   /**
-   * Compacts a group.
+   * Rewrites a group to a new compact segment.
    */
   private Segment compactGroup(List<Segment> segments, List<OffsetPredicate> predicates) {
     // Get the first segment which contains the first index being compacted. The compact segment will be written
@@ -155,13 +310,20 @@ public final class MajorCompactionTask implements CompactionTask {
       .withIndex(firstSegment.descriptor().index())
       .withMaxSegmentSize(Math.max(segments.stream().mapToLong(s -> s.descriptor().maxSegmentSize()).max().getAsLong(), manager.storage().maxSegmentSize()))
       .withMaxEntries(Math.max(segments.stream().mapToInt(s -> s.descriptor().maxEntries()).max().getAsInt(), manager.storage().maxEntriesPerSegment()))
+      .withCompression(manager.storage().compressCompactedSegments() ? SegmentDescriptor.COMPRESSION_DEFLATE : SegmentDescriptor.COMPRESSION_NONE)
       .build());
 
-    compactGroup(segments, predicates, compactSegment);
-
-    // Replace the rewritten segments with the updated segment.
-    manager.replaceSegments(segments, compactSegment);
+    try {
+      compactGroup(segments, predicates, compactSegment);
 
+      // Flush the compact segment, writing any buffered compressed block, before the rewritten segments are deleted.
+      compactSegment.flush();
+    } catch (Throwable e) {
+      // The compact segment has not been locked, so it would be deleted on recovery anyway.
+      compactSegment.close();
+      compactSegment.delete();
+      throw e;
+    }
     return compactSegment;
   }
 
@@ -185,61 +347,63 @@ public final class MajorCompactionTask implements CompactionTask {
    * @param compactSegment The segment to which to write the compacted segment.
    */
   private void compactSegment(Segment segment, OffsetPredicate predicate, Segment compactSegment) {
-    for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
-      checkEntry(i, segment, predicate, compactSegment);
+    try (SegmentReader reader = segment.reader(segment.firstIndex())) {
+      for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
+        checkEntry(i, reader, segment, predicate, compactSegment);
+      }
     }
   }
 
   /**
    * Compacts the entry at the given index.
+   * <p>
+   * Entries that have not been released are always retained, so the compaction mode is only read for released
+   * entries. In segments that record compaction modes, the mode is read from the record header, so released entries
+   * are removed without being deserialized.
    *
    * @param index The index at which to compact the entry.
+   * @param reader The reader positioned at the given index.
    * @param segment The segment to compact.
    * @param compactSegment The segment to which to write the uncompacted segment.
    */
-  private void checkEntry(long index, Segment segment, OffsetPredicate predicate, Segment compactSegment) {
-    try (Entry entry = segment.get(index)) {
-      // If an entry was found, remove the entry from the segment.
-      if (entry != null) {
-        checkEntry(index, entry, segment, predicate, compactSegment);
-      } else {
+  private void checkEntry(long index, SegmentReader reader, Segment segment, OffsetPredicate predicate, Segment compactSegment) {
+    if (!isLive(index, segment, predicate)) {
+      Compaction.Mode mode = reader.nextMode();
+      if (mode == null) {
+        reader.skip(index + 1);
         compactSegment.skip(1);
+        return;
+      }
+
+      // Retained entries are charged to the throttle when they're transferred.
+      if (isCompactable(index, mode)) {
+        throttle.acquire(1, 0);
+        reader.skip(index + 1);
+        compactEntry(index, segment, compactSegment);
+        return;
       }
     }
+    transferEntry(reader, compactSegment);
   }
 
   /**
-   * Compacts a command entry from a segment.
+   * Returns a boolean indicating whether a released entry with the given compaction mode can be compacted.
    */
-  private void checkEntry(long index, Entry entry, Segment segment, OffsetPredicate predicate, Segment compactSegment) {
-    // Get the entry compaction mode. If the compaction mode is DEFAULT apply the default compaction
-    // mode to the entry.
-    Compaction.Mode mode = entry.getCompactionMode();
+  private boolean isCompactable(long index, Compaction.Mode mode) {
+    // If the compaction mode is DEFAULT apply the default compaction mode to the entry.
     if (mode == Compaction.Mode.DEFAULT) {
       mode = defaultCompactionMode;
     }
 
-    // According to the entry's compaction mode, either append the entry to the compact segment
-    // or skip the entry in the compact segment (removing it from the resulting segment).
     switch (mode) {
       // SNAPSHOT entries are compacted if a snapshot has been taken at an index greater than the
       // entry's index.
       case SNAPSHOT:
-        if (index <= snapshotIndex && !isLive(index, segment, predicate)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(entry, compactSegment);
-        }
-        break;
+        return index <= snapshotIndex;
       // RELEASE and QUORUM entries are compacted if the entry has been released from the segment.
       case RELEASE:
       case QUORUM:
-        if (!isLive(index, segment, predicate)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(entry, compactSegment);
-        }
-        break;
+        return true;
       // FULL entries are compacted if the major compact index is greater than the entry index and
       // the entry has been released.
       // SEQUENTIAL, EXPIRING, and TOMBSTONE entries are compacted if the major compact index is greater than the
@@ -248,23 +412,13 @@ public final class MajorCompactionTask implements CompactionTask {
       case SEQUENTIAL:
       case EXPIRING:
       case TOMBSTONE:
-        if (index <= compactIndex && !isLive(index, segment, predicate)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(entry, compactSegment);
-        }
-        break;
+        return index <= compactIndex;
       // UNKNOWN entries are compacted if the index is less than both the snapshot and major
       // compaction indexes and the entry has been released.
       case UNKNOWN:
-        if (index <= snapshotIndex && index <= compactIndex && !isLive(index, segment, predicate)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(entry, compactSegment);
-        }
-        break;
+        return index <= snapshotIndex && index <= compactIndex;
       default:
-        break;
+        return false;
     }
   }
 
@@ -278,9 +432,19 @@ public final class MajorCompactionTask implements CompactionTask {
 
   /**
    * Transfers an entry to the given segment.
+   * <p>
+   * The entry's record is copied to the compact segment without deserializing the entry. Only the record header is
+   * rewritten, and the checksum is reused unless the compact segment uses a different checksum type.
    */
-  private void transferEntry(Entry entry, Segment compactSegment) {
-    compactSegment.append(entry);
+  private void transferEntry(SegmentReader reader, Segment compactSegment) {
+    RawEntry entry = reader.nextRaw();
+    if (entry == null) {
+      compactSegment.skip(1);
+      return;
+    }
+
+    throttle.acquire(1, 2L * entry.bytes().length);
+    compactSegment.appendRaw(entry);
   }
 
   /**
@@ -22,6 +22,7 @@ import io.atomix.copycat.server.storage.Storage;
 import io.atomix.copycat.server.storage.entry.Entry;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 
@@ -53,6 +54,11 @@ import java.util.List;
  *   }
  *   }
  * </pre>
+ * <p>
+ * If {@link Storage#incrementalCompaction() incremental compaction} is enabled, the percentage of the segment's
+ * entry bytes that have been {@link Segment#releaseSize() released} is used in place of the percentage of entries.
+ * Selected segments are then ordered by the number of released bytes reclaimed per byte of I/O required to rewrite
+ * them, and segments are compacted in that order up to the {@link Storage#compactionBudget()}.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
@@ -66,8 +72,13 @@ public final class MinorCompactionManager implements CompactionManager {
   @Override
   public List<CompactionTask> buildTasks(Storage storage, SegmentManager segments) {
     List<CompactionTask> tasks = new ArrayList<>(segments.segments().size());
-    for (Segment segment : getCompactableSegments(storage, segments)) {
-      tasks.add(new MinorCompactionTask(segments, segment, compactor.snapshotIndex(), compactor.majorIndex(), compactor.getDefaultCompactionMode()));
+    List<Segment> compactable = getCompactableSegments(storage, segments);
+    if (storage.incrementalCompaction()) {
+      compactable = prioritizeSegments(compactable, storage.compactionBudget());
+    }
+
+    for (Segment segment : compactable) {
+      tasks.add(new MinorCompactionTask(segments, segment, compactor.snapshotIndex(), compactor.majorIndex(), compactor.getDefaultCompactionMode(), compactor.throttle()));
     }
     return tasks;
   }
@@ -77,7 +88,7 @@ public final class MinorCompactionManager implements CompactionManager {
    *
    * @return A list of compactable segments.
    */
-  private Iterable<Segment> getCompactableSegments(Storage storage, SegmentManager manager) {
+  private List<Segment> getCompactableSegments(Storage storage, SegmentManager manager) {
     List<Segment> segments = new ArrayList<>(manager.segments().size());
     Iterator<Segment> iterator = manager.segments().iterator();
     Segment segment = iterator.next();
@@ -89,7 +100,7 @@ public final class MinorCompactionManager implements CompactionManager {
       // a non-empty entry always remains at the end of the log.
       if (segment.isCompacted() || (segment.isFull() && segment.lastIndex() < compactor.minorIndex() && nextSegment.firstIndex() <= manager.commitIndex() && !nextSegment.isEmpty())) {
         // Calculate the percentage of entries that have been released in the segment.
-        double compactablePercentage = segment.releaseCount() / (double) segment.count();
+        double compactablePercentage = getCompactablePercentage(storage, segment);
 
         // If the percentage of entries released times the segment version meets the compaction threshold,
         // add the segment to the segments list for compaction.
@@ -103,4 +114,37 @@ public final class MinorCompactionManager implements CompactionManager {
     return segments;
   }
 
+  /**
+   * Returns the percentage of the given segment that has been released.
+   */
+  private static double getCompactablePercentage(Storage storage, Segment segment) {
+    if (storage.incrementalCompaction()) {
+      long releaseSize = segment.releaseSize();
+      long totalSize = releaseSize + segment.liveSize();
+      return totalSize > 0 ? releaseSize / (double) totalSize : 0;
+    }
+    return segment.releaseCount() / (double) segment.count();
+  }
+
+  /**
+   * Orders segments by the number of released bytes reclaimed per byte of I/O and limits them to the given budget.
+   * <p>
+   * At least one segment is always returned if any segment is compactable.
+   */
+  private static List<Segment> prioritizeSegments(List<Segment> segments, long budget) {
+    segments.sort(Comparator.comparingDouble((Segment segment) -> segment.releaseSize() / (double) Compactor.rewriteCost(segment)).reversed());
+
+    List<Segment> prioritized = new ArrayList<>(segments.size());
+    long cost = 0;
+    for (Segment segment : segments) {
+      long segmentCost = Compactor.rewriteCost(segment);
+      if (!prioritized.isEmpty() && cost + segmentCost > budget) {
+        break;
+      }
+      prioritized.add(segment);
+      cost += segmentCost;
+    }
+    return prioritized;
+  }
+
 }
@@ -19,7 +19,8 @@ import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.storage.Segment;
 import io.atomix.copycat.server.storage.SegmentDescriptor;
 import io.atomix.copycat.server.storage.SegmentManager;
-import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.SegmentReader;
+import io.atomix.copycat.server.storage.entry.RawEntry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,13 +51,15 @@ public final class MinorCompactionTask implements CompactionTask {
   private final long snapshotIndex;
   private final long compactIndex;
   private final Compaction.Mode defaultCompactionMode;
+  private final CompactionThrottle throttle;
 
-  MinorCompactionTask(SegmentManager manager, Segment segment, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode) {
+  MinorCompactionTask(SegmentManager manager, Segment segment, long snapshotIndex, long compactIndex, Compaction.Mode defaultCompactionMode, CompactionThrottle throttle) {
     this.manager = Assert.notNull(manager, "manager");
     this.segment = Assert.notNull(segment, "segment");
     this.snapshotIndex = snapshotIndex;
     this.compactIndex = compactIndex;
     this.defaultCompactionMode = Assert.notNull(defaultCompactionMode, "defaultCompactionMode");
+    this.throttle = Assert.notNull(throttle, "throttle");
   }
 
   @Override
@@ -75,9 +78,20 @@ public final class MinorCompactionTask implements CompactionTask {
       .withIndex(segment.descriptor().index())
       .withMaxSegmentSize(segment.descriptor().maxSegmentSize())
       .withMaxEntries(segment.descriptor().maxEntries())
+      .withCompression(manager.storage().compressCompactedSegments() ? SegmentDescriptor.COMPRESSION_DEFLATE : SegmentDescriptor.COMPRESSION_NONE)
       .build());
 
-    compactEntries(segment, compactSegment);
+    try {
+      compactEntries(segment, compactSegment);
+
+      // Flush the compact segment, writing any buffered compressed block, before the old segment is deleted.
+      compactSegment.flush();
+    } catch (Throwable e) {
+      // The compact segment has not been locked, so it would be deleted on recovery anyway.
+      compactSegment.close();
+      compactSegment.delete();
+      throw e;
+    }
 
     // Replace the old segment with the compact segment.
     manager.replaceSegments(Collections.singletonList(segment), compactSegment);
@@ -97,80 +111,71 @@ public final class MinorCompactionTask implements CompactionTask {
    * @param compactSegment The compact segment.
    */
   private void compactEntries(Segment segment, Segment compactSegment) {
-    for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
-      checkEntry(i, segment, compactSegment);
+    try (SegmentReader reader = segment.reader(segment.firstIndex())) {
+      for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
+        checkEntry(i, reader, segment, compactSegment);
+      }
     }
   }
 
   /**
    * Compacts the entry at the given index.
+   * <p>
+   * Entries that have not been released are always retained, so the compaction mode is only read for released
+   * entries. In segments that record compaction modes, the mode is read from the record header, so released entries
+   * are removed without being deserialized.
    *
    * @param index The index at which to compact the entry.
+   * @param reader The reader positioned at the given index.
    * @param segment The segment to compact.
    * @param compactSegment The segment to which to write the compacted segment.
    */
-  private void checkEntry(long index, Segment segment, Segment compactSegment) {
-    try (Entry entry = segment.get(index)) {
-      // If an entry was found, only remove the entry from the segment if it's not a tombstone that has been released.
-      if (entry != null) {
-        checkEntry(index, entry, segment, compactSegment);
-      } else {
+  private void checkEntry(long index, SegmentReader reader, Segment segment, Segment compactSegment) {
+    if (!segment.isLive(index)) {
+      Compaction.Mode mode = reader.nextMode();
+      if (mode == null) {
+        reader.skip(index + 1);
         compactSegment.skip(1);
+        return;
+      }
+
+      // Retained entries are charged to the throttle when they're transferred.
+      if (isCompactable(index, mode)) {
+        throttle.acquire(1, 0);
+        reader.skip(index + 1);
+        compactEntry(index, segment, compactSegment);
+        return;
       }
     }
+    transferEntry(index, reader, compactSegment);
   }
 
   /**
-   * Compacts a command entry from a segment.
+   * Returns a boolean indicating whether a released entry with the given compaction mode can be compacted.
    */
-  private void checkEntry(long index, Entry entry, Segment segment, Segment compactSegment) {
-    // Get the entry compaction mode. If the compaction mode is DEFAULT apply the default compaction
-    // mode to the entry.
-    Compaction.Mode mode = entry.getCompactionMode();
+  private boolean isCompactable(long index, Compaction.Mode mode) {
+    // If the compaction mode is DEFAULT apply the default compaction mode to the entry.
     if (mode == Compaction.Mode.DEFAULT) {
       mode = defaultCompactionMode;
     }
 
-    // According to the entry's compaction mode, either append the entry to the compact segment
-    // or skip the entry in the compact segment (removing it from the resulting segment).
     switch (mode) {
       // SNAPSHOT entries are compacted if a snapshot has been taken at an index greater than the
       // entry's index.
       case SNAPSHOT:
-        if (index <= snapshotIndex && !segment.isLive(index)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(index, entry, compactSegment);
-        }
-        break;
+        return index <= snapshotIndex;
       // RELEASE and QUORUM entries are compacted if the entry has been released in the segment.
       case RELEASE:
       case QUORUM:
-        if (!segment.isLive(index)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(index, entry, compactSegment);
-        }
-        break;
+        return true;
       // FULL entries are compacted if the major compact index is greater than the entry index
       // and the entry has been released.
       case FULL:
-        if (index <= compactIndex && !segment.isLive(index)) {
-          compactEntry(index, segment, compactSegment);
-        } else {
-          transferEntry(index, entry, compactSegment);
-        }
-        break;
+        return index <= compactIndex;
       // SEQUENTIAL, EXPIRING, and TOMBSTONE entries can only be compacted during major compaction.
       // UNKNOWN entries can only be compacted during major compaction.
-      case SEQUENTIAL:
-      case EXPIRING:
-      case TOMBSTONE:
-      case UNKNOWN:
-        transferEntry(index, entry, compactSegment);
-        break;
       default:
-        break;
+        return false;
     }
   }
 
@@ -184,9 +189,19 @@ public final class MinorCompactionTask implements CompactionTask {
 
   /**
    * Transfers an entry to the given compact segment.
+   * <p>
+   * The entry's record is copied to the compact segment without deserializing the entry. Only the record header is
+   * rewritten, and the checksum is reused unless the compact segment uses a different checksum type.
    */
-  private void transferEntry(long index, Entry entry, Segment compactSegment) {
-    compactSegment.append(entry);
+  private void transferEntry(long index, SegmentReader reader, Segment compactSegment) {
+    RawEntry entry = reader.nextRaw();
+    if (entry == null) {
+      compactSegment.skip(1);
+      return;
+    }
+
+    throttle.acquire(1, 2L * entry.bytes().length);
+    compactSegment.appendRaw(entry);
 
     // If the entry was released in the prior segment, mark it as released in the compact segment.
     if (!segment.isLive(index)) {
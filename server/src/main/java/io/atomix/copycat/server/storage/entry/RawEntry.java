@@ -0,0 +1,154 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.entry;
+
+import io.atomix.catalyst.util.Assert;
+import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.util.ChecksumType;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * Serialized form of an {@link Entry} as stored in a log segment.
+ * <p>
+ * Raw entries carry the checksummed bytes of an entry exactly as they were written to a
+ * {@link io.atomix.copycat.server.storage.Segment} along with the entry's index and term. They allow entries to be
+ * copied between logs without deserializing and reserializing the entry object. The {@link #checksum()} is computed
+ * over the entry {@link #bytes()} with the entry's {@link #checksumType()} and should be verified with
+ * {@link #isValid()} before the entry is written.
+ * <p>
+ * Raw entries read from segments that record compaction modes in their record headers also carry the entry's
+ * {@link #compactionMode()}, which is written along with the entry so the mode can be determined without
+ * deserializing the entry.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class RawEntry {
+  private final long index;
+  private final long term;
+  private final long checksum;
+  private final ChecksumType checksumType;
+  private final Compaction.Mode compactionMode;
+  private final byte[] bytes;
+
+  public RawEntry(long index, long term, long checksum, byte[] bytes) {
+    this(index, term, checksum, ChecksumType.CRC32, bytes);
+  }
+
+  public RawEntry(long index, long term, long checksum, ChecksumType checksumType, byte[] bytes) {
+    this(index, term, checksum, checksumType, null, bytes);
+  }
+
+  public RawEntry(long index, long term, long checksum, ChecksumType checksumType, Compaction.Mode compactionMode, byte[] bytes) {
+    this.index = Assert.argNot(index, index <= 0, "index must be positive");
+    this.term = Assert.argNot(term, term <= 0, "term must be positive");
+    this.checksum = checksum;
+    this.checksumType = Assert.notNull(checksumType, "checksumType");
+    this.compactionMode = compactionMode;
+    this.bytes = Assert.notNull(bytes, "bytes");
+  }
+
+  /**
+   * Returns the entry index.
+   *
+   * @return The entry index.
+   */
+  public long index() {
+    return index;
+  }
+
+  /**
+   * Returns the entry term.
+   *
+   * @return The entry term.
+   */
+  public long term() {
+    return term;
+  }
+
+  /**
+   * Returns the checksum of the entry bytes.
+   *
+   * @return The checksum of the entry bytes.
+   */
+  public long checksum() {
+    return checksum;
+  }
+
+  /**
+   * Returns the type of the entry checksum.
+   *
+   * @return The type of the entry checksum.
+   */
+  public ChecksumType checksumType() {
+    return checksumType;
+  }
+
+  /**
+   * Returns the entry compaction mode if known.
+   * <p>
+   * The compaction mode is the mode returned by the entry's {@link Entry#getCompactionMode()} and may be
+   * {@link Compaction.Mode#DEFAULT}.
+   *
+   * @return The entry compaction mode or {@code null} if the mode is not known without deserializing the entry.
+   */
+  public Compaction.Mode compactionMode() {
+    return compactionMode;
+  }
+
+  /**
+   * Returns the serialized entry bytes.
+   *
+   * @return The serialized entry bytes.
+   */
+  public byte[] bytes() {
+    return bytes;
+  }
+
+  /**
+   * Returns a boolean indicating whether the entry bytes match the entry checksum.
+   *
+   * @return Indicates whether the entry bytes match the entry checksum.
+   */
+  public boolean isValid() {
+    return checksumType.checksum(bytes, 0, bytes.length) == checksum;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(getClass(), index, term, checksum);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (object instanceof RawEntry) {
+      RawEntry entry = (RawEntry) object;
+      return entry.index == index
+        && entry.term == term
+        && entry.checksum == checksum
+        && entry.checksumType == checksumType
+        && Arrays.equals(entry.bytes, bytes);
+    }
+    return false;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[index=%d, term=%d, size=%d]", getClass().getSimpleName(), index, term, bytes.length);
+  }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage.index;
+
+import io.atomix.catalyst.util.Assert;
+
+import java.util.Arrays;
+
+/**
+ * Lock-free index of record positions for concurrent segment readers.
+ * <p>
+ * The position index maps the relative offset of each record in a segment to the record's position and length.
+ * Whereas the {@link OffsetIndex} is only safe to access from the segment writer, the position index may be read
+ * by any number of threads while a single thread writes to it.
+ * <p>
+ * Entries are stored in parallel arrays which are only appended to while they're current. Each entry is published
+ * by a volatile write of the index size after the record it describes has been fully written, so the size serves
+ * as a watermark beyond which readers never look. When the arrays must grow or the index is truncated, entries are
+ * copied to new arrays and the new arrays are published, so readers holding the prior arrays continue to see a
+ * consistent view of the index.
+ * <p>
+ * Lookups return the position and length of a record packed into a single {@code long}, which can be unpacked with
+ * {@link #position(long)} and {@link #length(long)}.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+public final class PositionIndex {
+  private static final int DEFAULT_CAPACITY = 1024;
+  private static final long MAX_POSITION = 0xFFFFFFFFL;
+
+  /**
+   * Returns the position of the given record.
+   *
+   * @param record The record returned by {@link #lookup(long)}.
+   * @return The position of the record.
+   */
+  public static long position(long record) {
+    return record >>> 32;
+  }
+
+  /**
+   * Returns the length of the given record.
+   *
+   * @param record The record returned by {@link #lookup(long)}.
+   * @return The length of the record.
+   */
+  public static int length(long record) {
+    return (int) record;
+  }
+
+  private volatile Entries entries;
+
+  public PositionIndex() {
+    this(DEFAULT_CAPACITY);
+  }
+
+  public PositionIndex(int capacity) {
+    Assert.arg(capacity > 0, "capacity must be positive");
+    this.entries = new Entries(new long[capacity], new long[capacity], 0);
+  }
+
+  /**
+   * Returns the number of records in the index.
+   *
+   * @return The number of records in the index.
+   */
+  public int size() {
+    return entries.size;
+  }
+
+  /**
+   * Indexes the record at the given offset.
+   * <p>
+   * The record must already have been written to the segment since it becomes visible to readers immediately.
+   *
+   * @param offset The relative offset of the record.
+   * @param position The position of the record.
+   * @param length The length of the record, excluding the 32-bit length prefix.
+   * @throws IllegalArgumentException if the offset is not greater than the last offset in the index
+   */
+  public void index(long offset, long position, int length) {
+    Assert.argNot(position < 0 || position > MAX_POSITION, "position cannot be greater than " + MAX_POSITION);
+    Assert.argNot(length <= 0, "length must be positive");
+
+    Entries entries = this.entries;
+    int size = entries.size;
+    Assert.argNot(size > 0 && offset <= entries.offsets[size - 1], "offset must be greater than the last offset in the index");
+
+    if (size == entries.offsets.length) {
+      entries = new Entries(Arrays.copyOf(entries.offsets, size * 2), Arrays.copyOf(entries.records, size * 2), size);
+      this.entries = entries;
+    }
+
+    entries.offsets[size] = offset;
+    entries.records[size] = position << 32 | length;
+    entries.size = size + 1;
+  }
+
+  /**
+   * Looks up the record at the given offset.
+   *
+   * @param offset The relative offset of the record.
+   * @return The packed position and length of the record or {@code -1} if the offset is not indexed.
+   */
+  public long lookup(long offset) {
+    Entries entries = this.entries;
+    int size = entries.size;
+    if (size == 0) {
+      return -1;
+    }
+
+    long[] offsets = entries.offsets;
+
+    // Entries that have not been compacted are indexed sequentially, so check the sequential slot first.
+    long slot = offset - offsets[0];
+    if (slot >= 0 && slot < size && offsets[(int) slot] == offset) {
+      return entries.records[(int) slot];
+    }
+
+    int i = Arrays.binarySearch(offsets, 0, size, offset);
+    return i >= 0 ? entries.records[i] : -1;
+  }
+
+  /**
+   * Looks up the first record at or after the given offset.
+   *
+   * @param offset The relative offset from which to look up the record.
+   * @return The packed position and length of the first record at or after the given offset or {@code -1} if no
+   * such record is indexed.
+   */
+  public long ceiling(long offset) {
+    Entries entries = this.entries;
+    int size = entries.size;
+    int i = Arrays.binarySearch(entries.offsets, 0, size, offset);
+    if (i < 0) {
+      i = -(i + 1);
+    }
+    return i < size ? entries.records[i] : -1;
+  }
+
+  /**
+   * Returns the last record in the index.
+   *
+   * @return The packed position and length of the last record in the index or {@code -1} if the index is empty.
+   */
+  public long last() {
+    Entries entries = this.entries;
+    int size = entries.size;
+    return size > 0 ? entries.records[size - 1] : -1;
+  }
+
+  /**
+   * Returns a boolean indicating whether the given offset is indexed.
+   *
+   * @param offset The relative offset to check.
+   * @return Indicates whether the given offset is indexed.
+   */
+  public boolean contains(long offset) {
+    return lookup(offset) != -1;
+  }
+
+  /**
+   * Truncates the index to the given offset.
+   *
+   * @param offset The offset after which to remove records.
+   */
+  public void truncate(long offset) {
+    Entries entries = this.entries;
+    int size = entries.size;
+    int i = Arrays.binarySearch(entries.offsets, 0, size, offset);
+    int count = i >= 0 ? i + 1 : -(i + 1);
+    if (count < size) {
+      int capacity = entries.offsets.length;
+      this.entries = new Entries(Arrays.copyOf(entries.offsets, capacity), Arrays.copyOf(entries.records, capacity), count);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[size=%d]", getClass().getSimpleName(), size());
+  }
+
+  /**
+   * Index arrays.
+   */
+  private static final class Entries {
+    private final long[] offsets;
+    private final long[] records;
+    private volatile int size;
+
+    private Entries(long[] offsets, long[] records, int size) {
+      this.offsets = offsets;
+      this.records = records;
+      this.size = size;
+    }
+  }
+
+}
@@ -30,11 +30,13 @@ import java.nio.file.Path;
  */
 final class FileSnapshot extends Snapshot {
   private final SnapshotFile file;
+  private final long baseIndex;
   private final SnapshotStore store;
 
-  FileSnapshot(SnapshotFile file, SnapshotStore store) {
+  FileSnapshot(SnapshotFile file, long baseIndex, SnapshotStore store) {
     super(store);
     this.file = Assert.notNull(file, "file");
+    this.baseIndex = baseIndex;
     this.store = Assert.notNull(store, "store");
   }
 
@@ -48,12 +50,18 @@ final class FileSnapshot extends Snapshot {
     return file.timestamp();
   }
 
+  @Override
+  public long baseIndex() {
+    return baseIndex;
+  }
+
   @Override
   public synchronized SnapshotWriter writer() {
     checkWriter();
     SnapshotDescriptor descriptor = SnapshotDescriptor.builder()
       .withIndex(file.index())
       .withTimestamp(file.timestamp())
+      .withBaseIndex(baseIndex)
       .build();
 
     Buffer buffer = FileBuffer.allocate(file.file(), SnapshotDescriptor.BYTES);
@@ -81,6 +89,7 @@ final class FileSnapshot extends Snapshot {
 
   @Override
   public Snapshot complete() {
+    store.checkComplete(this);
     Buffer buffer = FileBuffer.allocate(file.file(), SnapshotDescriptor.BYTES);
     try (SnapshotDescriptor descriptor = new SnapshotDescriptor(buffer)) {
       Assert.stateNot(descriptor.locked(), "cannot complete locked snapshot descriptor");
@@ -47,6 +47,11 @@ final class MemorySnapshot extends Snapshot {
     return descriptor.timestamp();
   }
 
+  @Override
+  public long baseIndex() {
+    return descriptor.baseIndex();
+  }
+
   @Override
   public SnapshotWriter writer() {
     checkWriter();
@@ -66,6 +71,7 @@ final class MemorySnapshot extends Snapshot {
 
   @Override
   public Snapshot complete() {
+    store.checkComplete(this);
     descriptor.lock();
     buffer.flip().position(SnapshotDescriptor.BYTES).mark();
     return super.complete();
@@ -78,6 +78,25 @@ public abstract class Snapshot implements AutoCloseable {
    */
   public abstract long timestamp();
 
+  /**
+   * Returns the index of the snapshot on which this snapshot is based.
+   * <p>
+   * Delta snapshots store only the changes to the state machine state since the base snapshot was taken.
+   * To restore the state machine state from a delta snapshot, the base snapshot must be installed first.
+   *
+   * @return The base snapshot index, or {@code 0} if the snapshot is a full snapshot.
+   */
+  public abstract long baseIndex();
+
+  /**
+   * Returns a boolean indicating whether the snapshot is a delta of a prior snapshot.
+   *
+   * @return Indicates whether the snapshot is a delta of the {@link #baseIndex() base} snapshot.
+   */
+  public boolean isDelta() {
+    return baseIndex() > 0;
+  }
+
   /**
    * Returns a new snapshot writer.
    * <p>
@@ -58,6 +58,7 @@ public final class SnapshotDescriptor implements AutoCloseable {
   private final long index;
   private final long timestamp;
   private boolean locked;
+  private final long baseIndex;
 
   /**
    * @throws NullPointerException if {@code buffer} is null
@@ -67,6 +68,7 @@ public final class SnapshotDescriptor implements AutoCloseable {
     this.index = buffer.readLong();
     this.timestamp = buffer.readLong();
     this.locked = buffer.readBoolean();
+    this.baseIndex = buffer.readLong();
     buffer.skip(BYTES - buffer.position());
   }
 
@@ -88,6 +90,18 @@ public final class SnapshotDescriptor implements AutoCloseable {
     return timestamp;
   }
 
+  /**
+   * Returns the index of the snapshot on which the snapshot is based.
+   * <p>
+   * Delta snapshots store only the changes to the state machine state since the base snapshot.
+   * Full snapshots have a base index of {@code 0}.
+   *
+   * @return The base snapshot index, or {@code 0} if the snapshot is a full snapshot.
+   */
+  public long baseIndex() {
+    return baseIndex;
+  }
+
   /**
    * Returns whether the snapshot has been locked by commitment.
    * <p>
@@ -117,6 +131,7 @@ public final class SnapshotDescriptor implements AutoCloseable {
       .writeLong(index)
       .writeLong(timestamp)
       .writeBoolean(locked)
+      .writeLong(baseIndex)
       .skip(BYTES - buffer.position())
       .flush();
     return this;
@@ -167,6 +182,17 @@ public final class SnapshotDescriptor implements AutoCloseable {
       return this;
     }
 
+    /**
+     * Sets the index of the snapshot on which the snapshot is based.
+     *
+     * @param baseIndex The base snapshot index, or {@code 0} for a full snapshot.
+     * @return The snapshot builder.
+     */
+    public Builder withBaseIndex(long baseIndex) {
+      buffer.writeLong(17, baseIndex);
+      return this;
+    }
+
     /**
      * Builds the segment descriptor.
      *
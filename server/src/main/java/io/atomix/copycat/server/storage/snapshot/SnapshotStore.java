@@ -67,6 +67,12 @@ import java.util.*;
  * the state machine state, only prior entries that contributed to the state stored in the snapshot -
  * commands marked with the {@link Command.CompactionMode#SNAPSHOT SNAPSHOT}
  * compaction mode - are removed from the log prior to the snapshot.
+ * <p>
+ * Snapshots may also be {@link Snapshot#isDelta() deltas} of a prior snapshot. A delta snapshot is created with
+ * the {@link Snapshot#baseIndex() index} of the snapshot on which it's based via {@link #createSnapshot(long, long)},
+ * and restoring the state from a delta requires the {@link #chain(Snapshot) chain} of snapshots from the most recent
+ * full snapshot through the delta. The store retains all snapshots in the chain of the current snapshot, and once
+ * a new full snapshot is completed, the prior chain is removed.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
@@ -93,6 +99,18 @@ public class SnapshotStore implements AutoCloseable {
       snapshots.put(snapshot.index(), snapshot);
     }
 
+    // Delete delta snapshots whose base snapshot is missing since they cannot be restored.
+    Iterator<Map.Entry<Long, Snapshot>> iterator = snapshots.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Snapshot snapshot = iterator.next().getValue();
+      if (snapshot.isDelta() && !snapshots.containsKey(snapshot.baseIndex())) {
+        LOGGER.debug("Deleting orphaned delta snapshot: {} (base {})", snapshot.index(), snapshot.baseIndex());
+        iterator.remove();
+        snapshot.close();
+        snapshot.delete();
+      }
+    }
+
     if (!snapshots.isEmpty()) {
       currentSnapshot = snapshots.lastEntry().getValue();
     }
@@ -143,6 +161,64 @@ public class SnapshotStore implements AutoCloseable {
     return snapshots.get(index);
   }
 
+  /**
+   * Returns the chain of snapshots required to restore the state of the given snapshot.
+   * <p>
+   * The chain begins with the most recent full snapshot on which the given snapshot is based, followed by each
+   * delta snapshot in order up to and including the given snapshot. If the given snapshot is a full snapshot,
+   * the chain contains only the given snapshot.
+   *
+   * @param snapshot The snapshot for which to return the chain.
+   * @return The chain of snapshots, ordered from the full snapshot to the given snapshot.
+   * @throws NullPointerException if {@code snapshot} is null
+   * @throws IllegalStateException if a snapshot in the chain is missing
+   */
+  public List<Snapshot> chain(Snapshot snapshot) {
+    Assert.notNull(snapshot, "snapshot");
+    LinkedList<Snapshot> chain = new LinkedList<>();
+    chain.addFirst(snapshot);
+    while (snapshot.isDelta()) {
+      Snapshot base = snapshots.get(snapshot.baseIndex());
+      Assert.state(base != null, "missing base snapshot %d", snapshot.baseIndex());
+      chain.addFirst(base);
+      snapshot = base;
+    }
+    return chain;
+  }
+
+  /**
+   * Returns the number of delta snapshots in the chain of the current snapshot.
+   *
+   * @return The number of delta snapshots taken since the most recent full snapshot.
+   */
+  public int deltas() {
+    return currentSnapshot != null ? chain(currentSnapshot).size() - 1 : 0;
+  }
+
+  /**
+   * Returns the next snapshot to install on a server whose most recent snapshot is at the given index.
+   * <p>
+   * If the given index is the index of a snapshot in the chain of the current snapshot, the snapshot that
+   * follows it in the chain is returned. Otherwise, the full snapshot at the base of the chain is returned.
+   * Installing each returned snapshot in turn reconstructs the current snapshot chain on the server.
+   *
+   * @param index The index of the server's most recent snapshot.
+   * @return The next snapshot to install, or {@code null} if no snapshot exists.
+   */
+  public Snapshot nextSnapshot(long index) {
+    if (currentSnapshot == null) {
+      return null;
+    }
+
+    List<Snapshot> chain = chain(currentSnapshot);
+    for (int i = 0; i < chain.size() - 1; i++) {
+      if (chain.get(i).index() == index) {
+        return chain.get(i + 1);
+      }
+    }
+    return chain.get(0);
+  }
+
   /**
    * Loads all available snapshots from disk.
    *
@@ -166,7 +242,7 @@ public class SnapshotStore implements AutoCloseable {
         // unlocked and should ultimately be deleted from disk.
         if (descriptor.locked()) {
           LOGGER.debug("Loaded disk snapshot: {} ({})", snapshotFile.index(), snapshotFile.file().getName());
-          snapshots.add(new FileSnapshot(snapshotFile, this));
+          snapshots.add(new FileSnapshot(snapshotFile, descriptor.baseIndex(), this));
           descriptor.close();
         }
         // If the segment descriptor wasn't locked, close and delete the descriptor.
@@ -188,9 +264,27 @@ public class SnapshotStore implements AutoCloseable {
    * @return The snapshot.
    */
   public Snapshot createSnapshot(long index) {
+    return createSnapshot(index, 0);
+  }
+
+  /**
+   * Creates a new delta snapshot.
+   * <p>
+   * The delta snapshot stores the changes to the state machine state since the snapshot at the given
+   * {@code baseIndex}. The base snapshot must be stored in the snapshot store when the delta is completed.
+   *
+   * @param index The snapshot index.
+   * @param baseIndex The index of the snapshot on which the delta is based, or {@code 0} for a full snapshot.
+   * @return The snapshot.
+   * @throws IllegalArgumentException if {@code baseIndex} is negative or not less than {@code index}
+   */
+  public Snapshot createSnapshot(long index, long baseIndex) {
+    Assert.argNot(baseIndex < 0, "baseIndex cannot be negative");
+    Assert.argNot(baseIndex >= index, "baseIndex must be less than index");
     SnapshotDescriptor descriptor = SnapshotDescriptor.builder()
       .withIndex(index)
       .withTimestamp(System.currentTimeMillis())
+      .withBaseIndex(baseIndex)
       .build();
     return createSnapshot(descriptor);
   }
@@ -221,11 +315,18 @@ public class SnapshotStore implements AutoCloseable {
    */
   private Snapshot createDiskSnapshot(SnapshotDescriptor descriptor) {
     SnapshotFile file = new SnapshotFile(SnapshotFile.createSnapshotFile(name, storage.directory(), descriptor.index(), descriptor.timestamp()));
-    Snapshot snapshot = new FileSnapshot(file, this);
+    Snapshot snapshot = new FileSnapshot(file, descriptor.baseIndex(), this);
     LOGGER.debug("Created disk snapshot: {}", snapshot);
     return snapshot;
   }
 
+  /**
+   * Checks that a snapshot can be completed.
+   */
+  void checkComplete(Snapshot snapshot) {
+    Assert.state(!snapshot.isDelta() || snapshots.containsKey(snapshot.baseIndex()), "missing base snapshot %d", snapshot.baseIndex());
+  }
+
   /**
    * Completes writing a snapshot.
    */
@@ -237,12 +338,17 @@ public class SnapshotStore implements AutoCloseable {
       currentSnapshot = snapshot;
     }
 
-    // Delete old snapshots if necessary.
+    // Delete old snapshots if necessary. Snapshots in the chain of the current snapshot are required
+    // to restore the current snapshot and are retained until a newer full snapshot is completed. The chain
+    // of the completed snapshot is also retained since a chain may be installed from another server one
+    // snapshot at a time, and the deltas that follow may not yet have been received.
     if (!storage.retainStaleSnapshots()) {
+      Set<Snapshot> chain = new HashSet<>(chain(currentSnapshot));
+      chain.addAll(chain(snapshot));
       Iterator<Map.Entry<Long, Snapshot>> iterator = snapshots.entrySet().iterator();
       while (iterator.hasNext()) {
         Snapshot oldSnapshot = iterator.next().getValue();
-        if (oldSnapshot.index() < currentSnapshot.index()) {
+        if (oldSnapshot.index() < currentSnapshot.index() && !chain.contains(oldSnapshot)) {
           iterator.remove();
           oldSnapshot.close();
           oldSnapshot.delete();
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.util;
+
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+/**
+ * Checksum algorithm used to verify log entries.
+ * <p>
+ * Each checksum type maintains a thread-confined {@link Checksum} instance which is reset and reused for each
+ * {@link #checksum(byte[], int, int) checksum} to avoid allocating a checksum per entry.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+public enum ChecksumType {
+
+  /**
+   * CRC32 checksum. Used by segments written prior to {@link io.atomix.copycat.server.storage.SegmentDescriptor#FORMAT_V2}.
+   */
+  CRC32(1) {
+    @Override
+    Checksum create() {
+      return new CRC32();
+    }
+  },
+
+  /**
+   * CRC32C checksum.
+   */
+  CRC32C(2) {
+    @Override
+    Checksum create() {
+      return Crc32c.create();
+    }
+  };
+
+  /**
+   * Returns the checksum type for the given identifier.
+   *
+   * @param id The checksum type identifier.
+   * @return The checksum type.
+   * @throws IllegalArgumentException if the identifier is unknown
+   */
+  public static ChecksumType forId(int id) {
+    switch (id) {
+      case 1:
+        return CRC32;
+      case 2:
+        return CRC32C;
+      default:
+        throw new IllegalArgumentException("unknown checksum type: " + id);
+    }
+  }
+
+  private final int id;
+  private final ThreadLocal<Checksum> checksum = ThreadLocal.withInitial(this::create);
+
+  ChecksumType(int id) {
+    this.id = id;
+  }
+
+  /**
+   * Returns the checksum type identifier.
+   *
+   * @return The checksum type identifier.
+   */
+  public int id() {
+    return id;
+  }
+
+  /**
+   * Creates a new checksum instance.
+   */
+  abstract Checksum create();
+
+  /**
+   * Computes the checksum of the given bytes.
+   *
+   * @param bytes The bytes for which to compute the checksum.
+   * @param offset The offset of the first byte.
+   * @param length The number of bytes.
+   * @return The checksum of the given bytes.
+   */
+  public long checksum(byte[] bytes, int offset, int length) {
+    Checksum checksum = this.checksum.get();
+    checksum.reset();
+    checksum.update(bytes, offset, length);
+    return checksum.getValue();
+  }
+
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage.util;
+
+import java.lang.reflect.Constructor;
+import java.util.zip.Checksum;
+
+/**
+ * CRC32C (Castagnoli) checksum.
+ * <p>
+ * This is a table driven slicing-by-8 implementation of the CRC32C checksum for runtimes that don't provide
+ * {@code java.util.zip.CRC32C}. Where the JDK implementation is available, {@link #create()} returns it instead
+ * since it's intrinsified to use hardware CRC32C instructions. Both implementations produce identical values.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+public final class Crc32c implements Checksum {
+  private static final int POLYNOMIAL = 0x82F63B78;
+  private static final int[][] TABLES = new int[8][256];
+  private static final Constructor<? extends Checksum> JDK_CONSTRUCTOR = jdkConstructor();
+
+  static {
+    for (int i = 0; i < 256; i++) {
+      int crc = i;
+      for (int j = 0; j < 8; j++) {
+        crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+      }
+      TABLES[0][i] = crc;
+    }
+    for (int i = 0; i < 256; i++) {
+      int crc = TABLES[0][i];
+      for (int t = 1; t < 8; t++) {
+        crc = TABLES[0][crc & 0xff] ^ (crc >>> 8);
+        TABLES[t][i] = crc;
+      }
+    }
+  }
+
+  /**
+   * Looks up the JDK CRC32C constructor if the runtime provides one.
+   */
+  @SuppressWarnings("unchecked")
+  private static Constructor<? extends Checksum> jdkConstructor() {
+    try {
+      return (Constructor<? extends Checksum>) Class.forName("java.util.zip.CRC32C").getConstructor();
+    } catch (ReflectiveOperationException | LinkageError e) {
+      return null;
+    }
+  }
+
+  /**
+   * Returns a new CRC32C checksum, preferring the JDK implementation if available.
+   *
+   * @return A new CRC32C checksum.
+   */
+  public static Checksum create() {
+    if (JDK_CONSTRUCTOR != null) {
+      try {
+        return JDK_CONSTRUCTOR.newInstance();
+      } catch (ReflectiveOperationException e) {
+      }
+    }
+    return new Crc32c();
+  }
+
+  private int crc = 0xFFFFFFFF;
+
+  @Override
+  public void update(int b) {
+    crc = (crc >>> 8) ^ TABLES[0][(crc ^ b) & 0xff];
+  }
+
+  @Override
+  public void update(byte[] bytes, int offset, int length) {
+    int[] t0 = TABLES[0], t1 = TABLES[1], t2 = TABLES[2], t3 = TABLES[3];
+    int[] t4 = TABLES[4], t5 = TABLES[5], t6 = TABLES[6], t7 = TABLES[7];
+    int crc = this.crc;
+    while (length >= 8) {
+      int low = crc ^ ((bytes[offset] & 0xff)
+        | (bytes[offset + 1] & 0xff) << 8
+        | (bytes[offset + 2] & 0xff) << 16
+        | (bytes[offset + 3] & 0xff) << 24);
+      int high = (bytes[offset + 4] & 0xff)
+        | (bytes[offset + 5] & 0xff) << 8
+        | (bytes[offset + 6] & 0xff) << 16
+        | (bytes[offset + 7] & 0xff) << 24;
+      crc = t7[low & 0xff] ^ t6[(low >>> 8) & 0xff] ^ t5[(low >>> 16) & 0xff] ^ t4[low >>> 24]
+        ^ t3[high & 0xff] ^ t2[(high >>> 8) & 0xff] ^ t1[(high >>> 16) & 0xff] ^ t0[high >>> 24];
+      offset += 8;
+      length -= 8;
+    }
+    while (length-- > 0) {
+      crc = (crc >>> 8) ^ t0[(crc ^ bytes[offset++]) & 0xff];
+    }
+    this.crc = crc;
+  }
+
+  @Override
+  public long getValue() {
+    return ~crc & 0xFFFFFFFFL;
+  }
+
+  @Override
+  public void reset() {
+    crc = 0xFFFFFFFF;
+  }
+
+}
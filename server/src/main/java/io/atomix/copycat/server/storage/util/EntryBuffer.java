@@ -15,36 +15,194 @@
  */
 package io.atomix.copycat.server.storage.util;
 
+import io.atomix.catalyst.util.Assert;
 import io.atomix.copycat.server.storage.entry.Entry;
 
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * Log entry buffer.
+ * <p>
+ * The entry buffer is a byte-bounded cache of log entries split into two regions:
+ * <ul>
+ *   <li>The <em>tail</em> region holds the most recently {@link #append(Entry, int) appended} entries in the order
+ *   in which they were appended. The tail always retains at least the configured minimum number of entries
+ *   regardless of their size, and beyond that is bounded to half the buffer's bytes. Entries that fall out of the
+ *   tail are demoted to the read region.</li>
+ *   <li>The <em>read</em> region holds entries demoted from the tail and entries {@link #cache(Entry, int) cached}
+ *   after being read from disk. Entries are evicted from the read region using the CLOCK algorithm: each entry has a
+ *   reference bit that is set when the entry is read, and entries are evicted in insertion order unless their
+ *   reference bit is set, in which case the bit is cleared and the entry is given a second chance.</li>
+ * </ul>
+ * The buffer tracks the number of {@link #hitCount() hits} and {@link #missCount() misses} for lookups. The buffer
+ * is not thread safe.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public class EntryBuffer {
-  private final Entry[] buffer;
+
+  /**
+   * Size with which to {@link #append(Entry, int) append} entries that have not yet been persisted. Such entries
+   * are accounted at a nominal size until their serialized size is {@link #updateSize(long) updated}.
+   */
+  public static final int UNKNOWN_SIZE = -1;
+  private static final int NOMINAL_ENTRY_SIZE = 64;
+
+  private final int minTailEntries;
+  private final long maxBytes;
+  private final long maxTailBytes;
+  private final Map<Long, Node> entries = new HashMap<>();
+  private final ArrayDeque<Node> tail = new ArrayDeque<>();
+  private final ArrayDeque<Node> clock = new ArrayDeque<>();
+  private long tailBytes;
+  private long readBytes;
+  private long hits;
+  private long misses;
 
   public EntryBuffer(int size) {
-    this.buffer = new Entry[size];
+    this(size, (long) size * NOMINAL_ENTRY_SIZE);
   }
 
   /**
-   * Appends an entry to the buffer.
+   * @param minTailEntries The minimum number of entries to retain at the tail of the buffer.
+   * @param maxBytes The maximum number of bytes to retain in the buffer.
+   * @throws IllegalArgumentException if either argument is not positive
+   */
+  public EntryBuffer(int minTailEntries, long maxBytes) {
+    this.minTailEntries = Assert.arg(minTailEntries, minTailEntries > 0, "minTailEntries must be positive");
+    this.maxBytes = Assert.arg(maxBytes, maxBytes > 0, "maxBytes must be positive");
+    this.maxTailBytes = maxBytes / 2;
+  }
+
+  /**
+   * Appends an entry of unknown size to the tail of the buffer.
    *
    * @param entry The entry to append.
    * @return The entry buffer.
    */
   public EntryBuffer append(Entry entry) {
-    int offset = offset(entry.getIndex());
-    Entry oldEntry = buffer[offset];
-    buffer[offset] = entry.acquire();
-    if (oldEntry != null) {
-      oldEntry.release();
+    return append(entry, UNKNOWN_SIZE);
+  }
+
+  /**
+   * Appends an entry to the tail of the buffer.
+   *
+   * @param entry The entry to append.
+   * @param size The serialized size of the entry or {@link #UNKNOWN_SIZE} if the size is not yet known.
+   * @return The entry buffer.
+   */
+  public EntryBuffer append(Entry entry, int size) {
+    remove(entry.getIndex());
+    Node node = new Node(entry.acquire(), size != UNKNOWN_SIZE ? size : NOMINAL_ENTRY_SIZE, true);
+    node.sized = size != UNKNOWN_SIZE;
+    entries.put(entry.getIndex(), node);
+    tail.add(node);
+    tailBytes += node.size;
+    demote();
+    evict();
+    return this;
+  }
+
+  /**
+   * Accounts the serialized size of an entry that was {@link #append(Entry, int) appended} with an unknown size.
+   * <p>
+   * This method should be called once the entry has been persisted and its {@link Entry#size() size} is known. If
+   * the entry is not present in the buffer or its size is already known, the buffer is not modified.
+   *
+   * @param index The index of the persisted entry.
+   * @return The entry buffer.
+   */
+  public EntryBuffer updateSize(long index) {
+    Node node = entries.get(index);
+    if (node == null || node.sized) {
+      return this;
+    }
+
+    int size = node.entry.size();
+    if (node.tail) {
+      tailBytes += size - node.size;
+    } else {
+      readBytes += size - node.size;
+    }
+    node.size = size;
+    node.sized = true;
+    demote();
+    evict();
+    return this;
+  }
+
+  /**
+   * Demotes the oldest entries from the tail once it exceeds its share of the buffer.
+   */
+  private void demote() {
+    while (tail.size() > minTailEntries && tailBytes > maxTailBytes) {
+      Node oldest = tail.poll();
+      tailBytes -= oldest.size;
+      oldest.tail = false;
+      clock.add(oldest);
+      readBytes += oldest.size;
+    }
+  }
+
+  /**
+   * Caches an entry that was read from disk in the read region of the buffer.
+   * <p>
+   * If the entry is already present in the buffer or is larger than the buffer, it will not be cached.
+   *
+   * @param entry The entry to cache.
+   * @param size The serialized size of the entry.
+   * @return The entry buffer.
+   */
+  public EntryBuffer cache(Entry entry, int size) {
+    if (size > maxBytes || entries.containsKey(entry.getIndex())) {
+      return this;
     }
+
+    Node node = new Node(entry.acquire(), size, false);
+    node.sized = true;
+    entries.put(entry.getIndex(), node);
+    clock.add(node);
+    readBytes += size;
+    evict();
     return this;
   }
 
+  /**
+   * Evicts entries from the read region until the buffer is within its size bound.
+   */
+  private void evict() {
+    while (tailBytes + readBytes > maxBytes && !clock.isEmpty()) {
+      Node node = clock.poll();
+      if (node.referenced) {
+        node.referenced = false;
+        clock.add(node);
+      } else {
+        readBytes -= node.size;
+        entries.remove(node.entry.getIndex());
+        node.entry.release();
+      }
+    }
+  }
+
+  /**
+   * Removes the entry at the given index if present.
+   */
+  private void remove(long index) {
+    Node node = entries.remove(index);
+    if (node != null) {
+      if (node.tail) {
+        tail.remove(node);
+        tailBytes -= node.size;
+      } else {
+        clock.remove(node);
+        readBytes -= node.size;
+      }
+      node.entry.release();
+    }
+  }
+
   /**
    * Looks up an entry in the buffer.
    *
@@ -54,30 +212,89 @@ public class EntryBuffer {
    */
   @SuppressWarnings("unchecked")
   public <T extends Entry> T get(long index) {
-    Entry entry = buffer[offset(index)];
-    return entry != null && entry.getIndex() == index ? (T) entry.acquire() : null;
+    Node node = entries.get(index);
+    if (node == null) {
+      misses++;
+      return null;
+    }
+    hits++;
+    node.referenced = true;
+    return (T) node.entry.acquire();
   }
 
   /**
-   * Clears the buffer and resets the index to the given index.
+   * Returns the number of entries in the buffer.
+   *
+   * @return The number of entries in the buffer.
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Returns the number of bytes accounted to entries in the buffer.
+   *
+   * @return The number of bytes accounted to entries in the buffer.
+   */
+  public long bytes() {
+    return tailBytes + readBytes;
+  }
+
+  /**
+   * Returns the number of lookups that found an entry in the buffer.
+   *
+   * @return The number of lookups that found an entry in the buffer.
+   */
+  public long hitCount() {
+    return hits;
+  }
+
+  /**
+   * Returns the number of lookups that did not find an entry in the buffer.
+   *
+   * @return The number of lookups that did not find an entry in the buffer.
+   */
+  public long missCount() {
+    return misses;
+  }
+
+  /**
+   * Clears the buffer, releasing all buffered entries.
    *
    * @return The entry buffer.
    */
   public EntryBuffer clear() {
-    for (int i = 0; i < buffer.length; i++) {
-      buffer[i] = null;
+    for (Node node : entries.values()) {
+      node.entry.release();
     }
+    entries.clear();
+    tail.clear();
+    clock.clear();
+    tailBytes = 0;
+    readBytes = 0;
     return this;
   }
 
+  @Override
+  public String toString() {
+    return String.format("%s[size=%d, bytes=%d, hits=%d, misses=%d]", getClass().getSimpleName(), size(), bytes(), hits, misses);
+  }
+
   /**
-   * Returns the buffer index for the given offset.
+   * Buffered entry.
    */
-  private int offset(long index) {
-    int offset = (int) (index % buffer.length);
-    if (offset < 0) {
-      offset += buffer.length;
+  private static final class Node {
+    private final Entry entry;
+    private int size;
+    private boolean sized;
+    private boolean tail;
+    private boolean referenced;
+
+    private Node(Entry entry, int size, boolean tail) {
+      this.entry = entry;
+      this.size = size;
+      this.tail = tail;
     }
-    return offset;
   }
+
 }
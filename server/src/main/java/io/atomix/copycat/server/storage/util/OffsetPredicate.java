@@ -11,35 +11,47 @@
  * distributed under the License is distributed on an "AS IS" BASIS,
  * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
  * See the License for the specific language governing permissions and
- * limitations under the License
+ * limitations under the License.
  */
 package io.atomix.copycat.server.storage.util;
 
-import io.atomix.catalyst.buffer.util.BitArray;
 import io.atomix.catalyst.util.Assert;
 
+import java.util.Arrays;
 import java.util.function.Predicate;
 
 /**
  * Segment offset liveness predicate.
  * <p>
- * The offset predicate tracks the liveness of relative offsets within a segment. Liveness is tracked
- * in a {@link BitArray} that is resized to accommodate offsets as necessary. Each bit in the array
- * represents the liveness of a relative offset in the segment. When an offset is
- * {@link #release(long) released} from a segment, the bit at that offset is flipped in the bit array.
+ * The offset predicate tracks the liveness of relative offsets within a segment. When an offset is
+ * {@link #release(long) released} from a segment, the offset is added to a compressed bitmap of released offsets.
  * {@link #test(Long) Testing} the predicate indicates whether an offset is still live in the segment.
+ * <p>
+ * Released offsets are partitioned into containers of {@code 65536} offsets by the high bits of each offset. Sparse
+ * containers store the low bits of released offsets in a sorted array, and containers are converted to bitmaps once
+ * they hold more than {@code 4096} offsets, so a segment in which few entries have been released uses little memory.
+ * The number of released offsets is maintained as offsets are released, so {@link #count()} does not scan the bitmap.
+ * <p>
+ * {@link #copy() Copies} share containers with the predicate from which they were copied. Shared containers are
+ * copied only once they're modified, so copying a predicate for compaction is cheap regardless of its size.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
-  private final BitArray bits;
+  private static final int CONTAINER_BITS = 16;
+  private static final int CONTAINER_MASK = (1 << CONTAINER_BITS) - 1;
+  private static final int MAX_ARRAY_SIZE = 1024 * 4;
+
+  private Container[] containers;
+  private long count;
 
   public OffsetPredicate() {
-    this(BitArray.allocate(1024));
+    this(new Container[1], 0);
   }
 
-  OffsetPredicate(BitArray bits) {
-    this.bits = Assert.notNull(bits, "bits");
+  private OffsetPredicate(Container[] containers, long count) {
+    this.containers = Assert.notNull(containers, "containers");
+    this.count = count;
   }
 
   /**
@@ -50,7 +62,19 @@ public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
    */
   @Override
   public boolean test(Long offset) {
-    return offset != -1 && (bits.size() <= offset || !bits.get(offset));
+    return offset != -1 && !isReleased(offset);
+  }
+
+  /**
+   * Returns a boolean value indicating whether an offset has been released.
+   */
+  private synchronized boolean isReleased(long offset) {
+    long key = offset >>> CONTAINER_BITS;
+    if (key >= containers.length) {
+      return false;
+    }
+    Container container = containers[(int) key];
+    return container != null && container.contains((int) offset & CONTAINER_MASK);
   }
 
   /**
@@ -59,14 +83,29 @@ public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
    * @param offset The offset to release.
    * @return Indicates whether the offset was newly released.
    */
-  public boolean release(long offset) {
+  public synchronized boolean release(long offset) {
     Assert.argNot(offset < 0, "offset must be positive");
-    if (bits.size() <= offset) {
-      while (bits.size() <= offset) {
-        bits.resize(bits.size() * 2);
-      }
+    Assert.argNot(offset > Integer.MAX_VALUE, "offset out of range");
+
+    int key = (int) (offset >>> CONTAINER_BITS);
+    if (key >= containers.length) {
+      containers = Arrays.copyOf(containers, Math.max(key + 1, containers.length * 2));
+    }
+
+    Container container = containers[key];
+    if (container == null) {
+      container = new ArrayContainer();
+    } else if (container.shared) {
+      container = container.copy();
     }
-    return bits.set(offset);
+
+    int cardinality = container.cardinality;
+    containers[key] = container = container.add((int) offset & CONTAINER_MASK);
+    if (container.cardinality > cardinality) {
+      count++;
+      return true;
+    }
+    return false;
   }
 
   /**
@@ -74,22 +113,242 @@ public final class OffsetPredicate implements Predicate<Long>, AutoCloseable {
    *
    * @return The number of offsets released from the segment.
    */
-  public long count() {
-    return bits.count();
+  public synchronized long count() {
+    return count;
+  }
+
+  /**
+   * Returns the number of released offsets less than the given offset.
+   *
+   * @param offset The offset for which to return the rank.
+   * @return The number of offsets less than the given offset that have been released.
+   */
+  public synchronized long rank(long offset) {
+    if (offset <= 0) {
+      return 0;
+    }
+
+    long key = offset >>> CONTAINER_BITS;
+    long rank = 0;
+    for (int i = 0; i < containers.length && i <= key; i++) {
+      Container container = containers[i];
+      if (container != null) {
+        rank += i < key ? container.cardinality : container.rank((int) offset & CONTAINER_MASK);
+      }
+    }
+    return rank;
+  }
+
+  /**
+   * Returns the released offset with the given rank.
+   * <p>
+   * This is the inverse of {@link #rank(long)}: the offset returned for rank {@code n} is the {@code n}th smallest
+   * released offset, starting at {@code 0}.
+   *
+   * @param rank The rank of the released offset to return.
+   * @return The released offset with the given rank or {@code -1} if fewer offsets have been released.
+   */
+  public synchronized long select(long rank) {
+    if (rank < 0 || rank >= count) {
+      return -1;
+    }
+
+    for (int i = 0; i < containers.length; i++) {
+      Container container = containers[i];
+      if (container != null) {
+        if (rank < container.cardinality) {
+          return ((long) i << CONTAINER_BITS) | container.select((int) rank);
+        }
+        rank -= container.cardinality;
+      }
+    }
+    return -1;
   }
 
   /**
    * Copies the offset predicate.
+   * <p>
+   * The copy shares containers with this predicate until either predicate is modified.
    *
    * @return The copied offset predicate.
    */
-  public OffsetPredicate copy() {
-    return new OffsetPredicate(bits.copy());
+  public synchronized OffsetPredicate copy() {
+    for (Container container : containers) {
+      if (container != null) {
+        container.shared = true;
+      }
+    }
+    return new OffsetPredicate(containers.clone(), count);
   }
 
   @Override
-  public void close() {
-    bits.close();
+  public synchronized void close() {
+    containers = new Container[1];
+    count = 0;
+  }
+
+  @Override
+  public synchronized String toString() {
+    return String.format("%s[count=%d]", getClass().getSimpleName(), count);
+  }
+
+  /**
+   * Container of the low bits of released offsets that share the same high bits.
+   */
+  private static abstract class Container {
+    int cardinality;
+    boolean shared;
+
+    /**
+     * Returns whether the container contains the given value.
+     */
+    abstract boolean contains(int value);
+
+    /**
+     * Adds a value to the container, returning the container holding the value.
+     */
+    abstract Container add(int value);
+
+    /**
+     * Returns the number of values in the container less than the given value.
+     */
+    abstract int rank(int value);
+
+    /**
+     * Returns the value with the given rank in the container.
+     */
+    abstract int select(int rank);
+
+    /**
+     * Returns an unshared copy of the container.
+     */
+    abstract Container copy();
+  }
+
+  /**
+   * Container that stores values in a sorted array.
+   */
+  private static final class ArrayContainer extends Container {
+    private char[] values;
+
+    ArrayContainer() {
+      this(new char[4], 0);
+    }
+
+    private ArrayContainer(char[] values, int cardinality) {
+      this.values = values;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    boolean contains(int value) {
+      return Arrays.binarySearch(values, 0, cardinality, (char) value) >= 0;
+    }
+
+    @Override
+    Container add(int value) {
+      int index = Arrays.binarySearch(values, 0, cardinality, (char) value);
+      if (index >= 0) {
+        return this;
+      }
+
+      // Once the array is larger than a bitmap would be, convert the container to a bitmap.
+      if (cardinality == MAX_ARRAY_SIZE) {
+        BitmapContainer bitmap = new BitmapContainer();
+        for (int i = 0; i < cardinality; i++) {
+          bitmap.add(values[i]);
+        }
+        return bitmap.add(value);
+      }
+
+      index = -index - 1;
+      if (cardinality == values.length) {
+        values = Arrays.copyOf(values, Math.min(values.length * 2, MAX_ARRAY_SIZE));
+      }
+      System.arraycopy(values, index, values, index + 1, cardinality - index);
+      values[index] = (char) value;
+      cardinality++;
+      return this;
+    }
+
+    @Override
+    int rank(int value) {
+      int index = Arrays.binarySearch(values, 0, cardinality, (char) value);
+      return index >= 0 ? index : -index - 1;
+    }
+
+    @Override
+    int select(int rank) {
+      return values[rank];
+    }
+
+    @Override
+    Container copy() {
+      return new ArrayContainer(Arrays.copyOf(values, values.length), cardinality);
+    }
+  }
+
+  /**
+   * Container that stores values in a bitmap.
+   */
+  private static final class BitmapContainer extends Container {
+    private final long[] words;
+
+    BitmapContainer() {
+      this(new long[(CONTAINER_MASK + 1) / Long.SIZE], 0);
+    }
+
+    private BitmapContainer(long[] words, int cardinality) {
+      this.words = words;
+      this.cardinality = cardinality;
+    }
+
+    @Override
+    boolean contains(int value) {
+      return (words[value >>> 6] & (1L << value)) != 0;
+    }
+
+    @Override
+    Container add(int value) {
+      long word = words[value >>> 6];
+      long bit = 1L << value;
+      if ((word & bit) == 0) {
+        words[value >>> 6] = word | bit;
+        cardinality++;
+      }
+      return this;
+    }
+
+    @Override
+    int rank(int value) {
+      int index = value >>> 6;
+      int rank = 0;
+      for (int i = 0; i < index; i++) {
+        rank += Long.bitCount(words[i]);
+      }
+      return rank + Long.bitCount(words[index] & ((1L << value) - 1));
+    }
+
+    @Override
+    int select(int rank) {
+      for (int i = 0; i < words.length; i++) {
+        int bits = Long.bitCount(words[i]);
+        if (rank < bits) {
+          long word = words[i];
+          for (int j = 0; j < rank; j++) {
+            word &= word - 1;
+          }
+          return (i << 6) + Long.numberOfTrailingZeros(word);
+        }
+        rank -= bits;
+      }
+      return -1;
+    }
+
+    @Override
+    Container copy() {
+      return new BitmapContainer(words.clone(), cardinality);
+    }
   }
 
 }
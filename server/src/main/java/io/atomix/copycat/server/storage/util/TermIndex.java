@@ -15,8 +15,7 @@
  */
 package io.atomix.copycat.server.storage.util;
 
-import java.util.Map;
-import java.util.TreeMap;
+import java.util.Arrays;
 
 /**
  * Log entry term index.
@@ -26,25 +25,30 @@ import java.util.TreeMap;
  * we can assume that if entry {@code n}'s term is {@code t} then entry {@code n + 1}'s term
  * will be {@code t} or greater.
  * <p>
- * The implementation of the term index uses a {@link TreeMap} to store a map of offsets to
- * terms. To look up the term for any given offset, we use {@code map.floorEntry(offset)}
- * to loop up the term for the offset.
+ * The implementation of the term index stores offsets and terms in sorted parallel {@code long}
+ * arrays. To look up the term for any given offset, a binary search finds the greatest indexed
+ * offset less than or equal to the offset. Since offsets are indexed in increasing order, a new
+ * term is always appended to the end of the arrays.
  * <p>
- * This class is thread safe.
+ * This class is thread safe for a single writer and any number of readers. The arrays are published
+ * to readers through a volatile reference, so lookups never block. Slots beyond the published size
+ * are written before the size is published, and the arrays are copied when the index is truncated,
+ * so readers never observe a slot that is being overwritten.
  *
  * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
  */
 public final class TermIndex {
-  private final TreeMap<Long, Long> terms = new TreeMap<>();
+  private static final int DEFAULT_CAPACITY = 8;
+  private volatile Terms terms = new Terms(new long[DEFAULT_CAPACITY], new long[DEFAULT_CAPACITY], 0);
 
   /**
    * Returns the highest term in the index.
    *
    * @return The highest term in the index.
    */
-  public synchronized long term() {
-    Map.Entry<Long, Long> entry = terms.lastEntry();
-    return entry != null ? entry.getValue() : 0;
+  public long term() {
+    Terms terms = this.terms;
+    return terms.size > 0 ? terms.terms[terms.size - 1] : 0;
   }
 
   /**
@@ -54,8 +58,24 @@ public final class TermIndex {
    * @param term The term to index.
    */
   public synchronized void index(long offset, long term) {
-    if (lookup(offset) != term) {
-      terms.put(offset, term);
+    Terms terms = this.terms;
+
+    // If the offset precedes the last indexed offset, remove the existing terms for the offset.
+    if (terms.size > 0 && terms.offsets[terms.size - 1] >= offset) {
+      truncate(offset - 1);
+      terms = this.terms;
+    }
+
+    if (terms.lookup(offset) != term) {
+      long[] offsets = terms.offsets;
+      long[] values = terms.terms;
+      if (terms.size == offsets.length) {
+        offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        values = Arrays.copyOf(values, values.length * 2);
+      }
+      offsets[terms.size] = offset;
+      values[terms.size] = term;
+      this.terms = new Terms(offsets, values, terms.size + 1);
     }
   }
 
@@ -65,9 +85,8 @@ public final class TermIndex {
    * @param offset The offset for which to look up the term.
    * @return The term for the entry at the given offset.
    */
-  public synchronized long lookup(long offset) {
-    Map.Entry<Long, Long> entry = terms.floorEntry(offset);
-    return entry != null ? entry.getValue() : 0;
+  public long lookup(long offset) {
+    return terms.lookup(offset);
   }
 
   /**
@@ -76,7 +95,16 @@ public final class TermIndex {
    * @param offset The offset to which to truncate the index.
    */
   public synchronized void truncate(long offset) {
-    terms.tailMap(offset, false).clear();
+    Terms terms = this.terms;
+    int size = terms.size;
+    while (size > 0 && terms.offsets[size - 1] > offset) {
+      size--;
+    }
+
+    if (size != terms.size) {
+      int capacity = Math.max(DEFAULT_CAPACITY, terms.offsets.length);
+      this.terms = new Terms(Arrays.copyOf(terms.offsets, capacity), Arrays.copyOf(terms.terms, capacity), size);
+    }
   }
 
   @Override
@@ -84,4 +112,39 @@ public final class TermIndex {
     return getClass().getSimpleName();
   }
 
+  /**
+   * Immutable view of the indexed offsets and terms.
+   */
+  private static final class Terms {
+    private final long[] offsets;
+    private final long[] terms;
+    private final int size;
+
+    private Terms(long[] offsets, long[] terms, int size) {
+      this.offsets = offsets;
+      this.terms = terms;
+      this.size = size;
+    }
+
+    /**
+     * Looks up the term for the greatest indexed offset less than or equal to the given offset.
+     */
+    private long lookup(long offset) {
+      int low = 0;
+      int high = size - 1;
+      while (low <= high) {
+        int mid = (low + high) >>> 1;
+        long midOffset = offsets[mid];
+        if (midOffset < offset) {
+          low = mid + 1;
+        } else if (midOffset > offset) {
+          high = mid - 1;
+        } else {
+          return terms[mid];
+        }
+      }
+      return high >= 0 ? terms[high] : 0;
+    }
+  }
+
 }
@@ -0,0 +1,346 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.state;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.copycat.error.CopycatError;
+import io.atomix.copycat.protocol.Response;
+import io.atomix.copycat.server.ServerMetrics;
+import io.atomix.copycat.server.cluster.Member;
+import io.atomix.copycat.server.protocol.AppendRequest;
+import io.atomix.copycat.server.protocol.InstallRequest;
+import io.atomix.copycat.server.protocol.InstallResponse;
+import io.atomix.copycat.server.storage.entry.Entry;
+import io.atomix.copycat.server.storage.snapshot.Snapshot;
+import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Appender test.
+ */
+@Test
+public class AbstractAppenderTest extends AbstractStateTest<AbstractState> {
+
+  /**
+   * Test appender that sends no requests.
+   */
+  private static class TestAppender extends AbstractAppender {
+    private boolean moreEntries;
+
+    private TestAppender(ServerContext context) {
+      super(context);
+    }
+
+    @Override
+    protected void appendEntries(MemberState member) {
+    }
+
+    @Override
+    protected boolean hasMoreEntries(MemberState member) {
+      return moreEntries;
+    }
+  }
+
+  /**
+   * Creates a new member state.
+   */
+  private MemberState createMemberState() {
+    return new MemberState(new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5003), new Address("localhost", 6003), Instant.now()), null);
+  }
+
+  /**
+   * Writes a snapshot of the given number of longs.
+   */
+  private Snapshot writeSnapshot(long index, long baseIndex, int count) {
+    Snapshot snapshot = serverContext.getSnapshotStore().createSnapshot(index, baseIndex);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      for (int i = 0; i < count; i++) {
+        writer.writeLong(index + i);
+      }
+    }
+    return snapshot.complete();
+  }
+
+  /**
+   * Tests that the batch size grows while a member responds quickly to full batches.
+   */
+  public void testBatchSizeGrowsUnderLowLatency() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setHeartbeatInterval(Duration.ofMillis(100)).setMaxAppendBatchSize(1024 * 256);
+
+      TestAppender appender = new TestAppender(serverContext);
+      appender.moreEntries = true;
+      MemberState member = createMemberState();
+      int batchSize = appender.getBatchSize(member);
+      threadAssertEquals(batchSize, 1024 * 32);
+
+      long time = Duration.ofMillis(10).toNanos();
+      appender.updateBatchSize(member, batchSize, time);
+      threadAssertEquals(appender.getBatchSize(member), batchSize * 2);
+      appender.updateBatchSize(member, batchSize * 2, time);
+      threadAssertEquals(appender.getBatchSize(member), batchSize * 4);
+
+      // The batch size does not grow if the batch was not full or no more entries remain to be sent.
+      appender.updateBatchSize(member, batchSize, time);
+      threadAssertEquals(appender.getBatchSize(member), batchSize * 4);
+      appender.moreEntries = false;
+      appender.updateBatchSize(member, batchSize * 4, time);
+      threadAssertEquals(appender.getBatchSize(member), batchSize * 4);
+      appender.close();
+    });
+  }
+
+  /**
+   * Tests that the batch size shrinks while a member responds slowly.
+   */
+  public void testBatchSizeShrinksUnderHighLatency() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setHeartbeatInterval(Duration.ofMillis(100)).setMaxAppendBatchSize(1024 * 256);
+
+      TestAppender appender = new TestAppender(serverContext);
+      MemberState member = createMemberState();
+      member.setAppendBatchSize(1024 * 256);
+
+      long time = Duration.ofMillis(200).toNanos();
+      appender.updateBatchSize(member, 1024 * 256, time);
+      threadAssertEquals(appender.getBatchSize(member), 1024 * 128);
+      appender.updateBatchSize(member, 1024 * 128, time);
+      threadAssertEquals(appender.getBatchSize(member), 1024 * 64);
+
+      // Responses between half a heartbeat and a heartbeat leave the batch size unchanged.
+      appender.moreEntries = true;
+      appender.updateBatchSize(member, 1024 * 64, Duration.ofMillis(75).toNanos());
+      threadAssertEquals(appender.getBatchSize(member), 1024 * 64);
+      appender.close();
+    });
+  }
+
+  /**
+   * Tests that the batch size stays within its minimum and the configured maximum.
+   */
+  public void testBatchSizeBounds() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setHeartbeatInterval(Duration.ofMillis(100)).setMaxAppendBatchSize(1024 * 128);
+
+      TestAppender appender = new TestAppender(serverContext);
+      appender.moreEntries = true;
+      MemberState member = createMemberState();
+      for (int i = 0; i < 10; i++) {
+        appender.updateBatchSize(member, appender.getBatchSize(member), Duration.ofMillis(10).toNanos());
+        threadAssertTrue(appender.getBatchSize(member) <= 1024 * 128);
+      }
+      threadAssertEquals(appender.getBatchSize(member), 1024 * 128);
+
+      for (int i = 0; i < 10; i++) {
+        appender.updateBatchSize(member, appender.getBatchSize(member), Duration.ofMillis(200).toNanos());
+        threadAssertTrue(appender.getBatchSize(member) >= 1024 * 32);
+      }
+      threadAssertEquals(appender.getBatchSize(member), 1024 * 32);
+
+      // A configured maximum below the minimum batch size bounds the batch size.
+      serverContext.setMaxAppendBatchSize(1024 * 8);
+      MemberState small = createMemberState();
+      threadAssertEquals(appender.getBatchSize(small), 1024 * 8);
+      appender.updateBatchSize(small, 1024 * 8, Duration.ofMillis(10).toNanos());
+      threadAssertEquals(appender.getBatchSize(small), 1024 * 8);
+      appender.updateBatchSize(small, 1024 * 8, Duration.ofMillis(200).toNanos());
+      threadAssertEquals(appender.getBatchSize(small), 1024 * 8);
+      appender.close();
+    });
+  }
+
+  /**
+   * Tests that entries are replicated in raw form only once raw replication is enabled.
+   */
+  public void testRawAppendEntries() throws Throwable {
+    runOnServer(() -> {
+      append(3, 1);
+
+      TestAppender appender = new TestAppender(serverContext);
+      MemberState member = createMemberState();
+      threadAssertFalse(serverContext.isRawAppendEntries());
+      AppendRequest request = appender.buildAppendEntriesRequest(member, 3);
+      threadAssertEquals(request.entries().size(), 3);
+      threadAssertTrue(request.rawEntries().isEmpty());
+      request.entries().forEach(Entry::release);
+
+      serverContext.setRawAppendEntries(true);
+      request = appender.buildAppendEntriesRequest(member, 3);
+      threadAssertTrue(request.entries().isEmpty());
+      threadAssertEquals(request.rawEntries().size(), 3);
+      threadAssertEquals(request.lastEntryIndex(), 3L);
+      appender.close();
+    });
+  }
+
+  /**
+   * Tests that rewinding a member's next index is reported to the server metrics.
+   */
+  public void testRewindMetrics() throws Throwable {
+    runOnServer(() -> {
+      append(10, 1);
+
+      List<Long> rewinds = new ArrayList<>();
+      serverContext.setMetrics(new ServerMetrics() {
+        @Override
+        public void nextIndexRewound(Member member, long nextIndex) {
+          rewinds.add(nextIndex);
+        }
+      });
+
+      TestAppender appender = new TestAppender(serverContext);
+      MemberState member = createMemberState();
+      member.setMatchIndex(5);
+      member.setNextIndex(11);
+      appender.resetNextIndex(member);
+      threadAssertEquals(member.getNextIndex(), 6L);
+
+      // A failed request only rewinds the next index if it was advanced past the request.
+      AppendRequest request = appender.buildAppendEntriesRequest(member, 8);
+      member.setNextIndex(9);
+      appender.rewindNextIndex(member, request);
+      threadAssertEquals(member.getNextIndex(), 6L);
+      appender.rewindNextIndex(member, request);
+      request.entries().forEach(Entry::release);
+
+      threadAssertEquals(rewinds, Arrays.asList(6L, 6L));
+      appender.close();
+    });
+  }
+
+  /**
+   * Tests that a snapshot is sent in ordered chunks.
+   */
+  public void testInstallChunkOrdering() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setSnapshotChunkSize(32).setSnapshotInstallRate(0);
+      writeSnapshot(10, 0, 10);
+
+      TestAppender appender = new TestAppender(serverContext);
+      MemberState member = createMemberState();
+      ByteArrayOutputStream data = new ByteArrayOutputStream();
+      int[] lengths = {32, 32, 16};
+      for (int i = 0; i < lengths.length; i++) {
+        threadAssertTrue(appender.canInstall(member));
+        InstallRequest request = appender.buildInstallRequest(member);
+        threadAssertEquals(request.index(), 10L);
+        threadAssertEquals(request.offset(), i);
+        threadAssertEquals(request.data().length, lengths[i]);
+        threadAssertEquals(request.complete(), i == lengths.length - 1);
+        data.write(request.data());
+      }
+
+      // No more chunks can be sent until the final chunk is acknowledged.
+      threadAssertFalse(appender.canInstall(member));
+      threadAssertEquals(data.size(), 80);
+      appender.close();
+    });
+  }
+
+  /**
+   * Tests that a reset transfer resends the snapshot from the first chunk.
+   */
+  public void testResetInstall() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setSnapshotChunkSize(32).setSnapshotInstallRate(0);
+      writeSnapshot(10, 0, 10);
+
+      TestAppender appender = new TestAppender(serverContext);
+      MemberState member = createMemberState();
+      byte[] first = appender.buildInstallRequest(member).data();
+      appender.buildInstallRequest(member);
+
+      appender.resetInstall(member);
+      threadAssertNull(member.getSnapshotReader());
+      InstallRequest request = appender.buildInstallRequest(member);
+      threadAssertEquals(request.offset(), 0);
+      threadAssertTrue(Arrays.equals(request.data(), first));
+      appender.close();
+    });
+  }
+
+  /**
+   * Tests that a transfer is restarted when the snapshot being sent is removed from the snapshot store.
+   */
+  public void testInstallReplacedSnapshot() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setSnapshotChunkSize(32).setSnapshotInstallRate(0);
+      Snapshot snapshot = writeSnapshot(10, 0, 10);
+
+      TestAppender appender = new TestAppender(serverContext);
+      MemberState member = createMemberState();
+      appender.buildInstallRequest(member);
+      threadAssertEquals(member.getSnapshot(), snapshot);
+
+      // Completing a newer full snapshot removes the snapshot being sent.
+      Snapshot newSnapshot = writeSnapshot(20, 0, 10);
+      threadAssertTrue(appender.canInstall(member));
+      threadAssertNull(member.getSnapshotReader());
+      InstallRequest request = appender.buildInstallRequest(member);
+      threadAssertEquals(member.getSnapshot(), newSnapshot);
+      threadAssertEquals(request.index(), 20L);
+      threadAssertEquals(request.offset(), 0);
+      appender.close();
+    });
+  }
+
+  /**
+   * Tests that a snapshot chain is resent from the full snapshot when a member rejects a delta.
+   */
+  public void testResendChainOnRejectedDelta() throws Throwable {
+    runOnServer(() -> {
+      serverContext.setSnapshotChunkSize(1024).setSnapshotInstallRate(0);
+      writeSnapshot(10, 0, 10);
+      writeSnapshot(20, 10, 10);
+
+      TestAppender appender = new TestAppender(serverContext);
+      MemberState member = createMemberState();
+      InstallRequest request = appender.buildInstallRequest(member);
+      threadAssertEquals(request.index(), 10L);
+      threadAssertEquals(request.baseIndex(), 0L);
+
+      // Once the full snapshot has been installed, the delta is sent.
+      appender.handleInstallResponseOk(member, request, InstallResponse.builder()
+        .withStatus(Response.Status.OK)
+        .build());
+      threadAssertEquals(member.getSnapshotIndex(), 10L);
+      request = appender.buildInstallRequest(member);
+      threadAssertEquals(request.index(), 20L);
+      threadAssertEquals(request.baseIndex(), 10L);
+
+      // If the member rejects the delta, the chain is resent from the full snapshot.
+      appender.handleInstallResponseError(member, request, InstallResponse.builder()
+        .withStatus(Response.Status.ERROR)
+        .withError(CopycatError.Type.ILLEGAL_MEMBER_STATE_ERROR)
+        .build());
+      threadAssertEquals(member.getSnapshotIndex(), 0L);
+      threadAssertNull(member.getSnapshotReader());
+      request = appender.buildInstallRequest(member);
+      threadAssertEquals(request.index(), 10L);
+      threadAssertEquals(request.baseIndex(), 0L);
+      threadAssertEquals(request.offset(), 0);
+      appender.close();
+    });
+  }
+
+}
@@ -77,7 +77,7 @@ public abstract class AbstractStateTest<T extends AbstractState> extends Concurr
     ).disableWhitelist();
 
     storageDir = Files.createTempDirectory("copycat-test");
-    storage = Storage.builder().withStorageLevel(StorageLevel.MEMORY).withDirectory(storageDir.toFile()).build();
+    storage = createStorage();
 
     members = createMembers(3);
     transport = new LocalTransport(new LocalServerRegistry());
@@ -93,6 +93,13 @@ public abstract class AbstractStateTest<T extends AbstractState> extends Concurr
     await(1000);
   }
 
+  /**
+   * Creates the server storage.
+   */
+  protected Storage createStorage() {
+    return Storage.builder().withStorageLevel(StorageLevel.MEMORY).withDirectory(storageDir.toFile()).build();
+  }
+
   /**
    * Clears test logs.
    */
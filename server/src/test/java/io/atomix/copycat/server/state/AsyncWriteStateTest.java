@@ -0,0 +1,94 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.state;
+
+import io.atomix.copycat.server.protocol.AppendRequest;
+import io.atomix.copycat.server.storage.Storage;
+import io.atomix.copycat.server.storage.StorageLevel;
+import io.atomix.copycat.server.storage.TestEntry;
+import io.atomix.copycat.server.storage.entry.Entry;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Server state test with asynchronous log writes.
+ */
+@Test
+public class AsyncWriteStateTest extends AbstractStateTest<PassiveState> {
+  private static final int ENTRIES = 1000;
+
+  @Override
+  protected Storage createStorage() {
+    return Storage.builder()
+      .withStorageLevel(StorageLevel.MEMORY)
+      .withDirectory(storageDir.toFile())
+      .withAsyncWrites()
+      .build();
+  }
+
+  /**
+   * Tests that a passive member acknowledges appended entries only once they've been written.
+   */
+  public void testPassiveAppendAwaitsWrite() throws Throwable {
+    testAppendAwaitsWrite(() -> new PassiveState(serverContext));
+  }
+
+  /**
+   * Tests that an active member acknowledges appended entries only once they've been written.
+   */
+  public void testActiveAppendAwaitsWrite() throws Throwable {
+    testAppendAwaitsWrite(() -> new ActiveState(serverContext) {
+    });
+  }
+
+  /**
+   * Appends a batch of entries and verifies that the response is completed once the entries have been written.
+   */
+  private void testAppendAwaitsWrite(Supplier<PassiveState> factory) throws Throwable {
+    serverCtx.execute(() -> {
+      serverContext.setTerm(1);
+      state = factory.get();
+
+      List<Entry> entries = new ArrayList<>(ENTRIES);
+      for (int i = 1; i <= ENTRIES; i++) {
+        entries.add(new TestEntry().setIndex(i).setTerm(1));
+      }
+
+      AppendRequest request = AppendRequest.builder()
+        .withTerm(1)
+        .withLeader(serverContext.getClusterState().getActiveMemberStates().iterator().next().getMember().id())
+        .withLogIndex(0)
+        .withLogTerm(0)
+        .withCommitIndex(ENTRIES)
+        .withGlobalIndex(0)
+        .withEntries(entries)
+        .build();
+
+      state.append(request).whenComplete((response, error) -> {
+        threadAssertNull(error);
+        threadAssertTrue(response.succeeded());
+        threadAssertEquals(response.logIndex(), (long) ENTRIES);
+        threadAssertTrue(serverContext.getLog().writeIndex() >= ENTRIES);
+        resume();
+      });
+    });
+    await(5000);
+  }
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.state;
+
+import io.atomix.catalyst.transport.Address;
+import io.atomix.copycat.server.cluster.Member;
+import org.testng.annotations.Test;
+
+import java.time.Instant;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Member state test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class MemberStateTest {
+
+  /**
+   * Creates a new member state.
+   */
+  private MemberState createMemberState() {
+    return new MemberState(new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5000), new Address("localhost", 6000), Instant.now()), null);
+  }
+
+  /**
+   * Tests that append requests are pipelined up to the append window.
+   */
+  public void testAppendWindow() {
+    MemberState member = createMemberState();
+    assertTrue(member.canAppend(2, 1024));
+    member.startAppend(100);
+    assertFalse(member.canAppend(2, 1024));
+    member.appendSucceeded();
+    assertTrue(member.canAppend(2, 1024));
+    member.startAppend(100);
+    assertFalse(member.canAppend(2, 1024));
+    assertEquals(member.getAppending(), 2);
+    assertEquals(member.getAppendingBytes(), 200);
+    member.completeAppend(100);
+    assertTrue(member.canAppend(2, 1024));
+    member.completeAppend(100);
+    assertEquals(member.getAppending(), 0);
+    assertEquals(member.getAppendingBytes(), 0);
+  }
+
+  /**
+   * Tests that append requests are limited by the number of bytes in flight.
+   */
+  public void testAppendWindowSize() {
+    MemberState member = createMemberState();
+    member.appendSucceeded();
+    member.startAppend(1024);
+    assertFalse(member.canAppend(8, 1024));
+    member.completeAppend(1024);
+    assertTrue(member.canAppend(8, 1024));
+  }
+
+  /**
+   * Tests that a single append request can always be sent after a failure.
+   */
+  public void testAppendAfterFailure() {
+    MemberState member = createMemberState();
+    member.startAppend(100);
+    member.appendFailed();
+    assertFalse(member.canAppend(8, 1024));
+    member.completeAppend(100);
+    assertTrue(member.canAppend(8, 1024));
+  }
+
+  /**
+   * Tests that rewinding the next index increments the append generation.
+   */
+  public void testRewind() {
+    MemberState member = createMemberState();
+    member.setNextIndex(10);
+    long generation = member.getAppendGeneration();
+    member.rewind(5);
+    assertEquals(member.getNextIndex(), 5);
+    assertNotEquals(member.getAppendGeneration(), generation);
+  }
+
+  /**
+   * Tests that install bytes are not limited without a rate.
+   */
+  public void testAcquireInstallBytesUnlimited() {
+    MemberState member = createMemberState();
+    for (int i = 0; i < 100; i++) {
+      assertTrue(member.acquireInstallBytes(1024 * 1024, 0));
+    }
+  }
+
+  /**
+   * Tests that install bytes are limited to a second's worth of bytes.
+   */
+  public void testAcquireInstallBytesRate() throws Throwable {
+    MemberState member = createMemberState();
+    assertTrue(member.acquireInstallBytes(400, 1000));
+    assertTrue(member.acquireInstallBytes(400, 1000));
+    assertFalse(member.acquireInstallBytes(400, 1000));
+
+    // Credit accumulates over time.
+    Thread.sleep(500);
+    assertTrue(member.acquireInstallBytes(400, 1000));
+  }
+
+  /**
+   * Tests that a chunk larger than the rate can be sent once a full chunk's worth of credit has accumulated.
+   */
+  public void testAcquireInstallBytesLargeChunk() throws Throwable {
+    MemberState member = createMemberState();
+    assertTrue(member.acquireInstallBytes(2000, 1000));
+    assertFalse(member.acquireInstallBytes(2000, 1000));
+    Thread.sleep(2100);
+    assertTrue(member.acquireInstallBytes(2000, 1000));
+  }
+
+}
@@ -253,4 +253,62 @@ public class PassiveStateTest extends AbstractStateTest<PassiveState> {
     });
   }
 
+  /**
+   * Tests that a delta snapshot is rejected if its base snapshot is missing.
+   */
+  public void testRejectInstallDeltaWithoutBase() throws Throwable {
+    runOnServer(() -> {
+      int leader = serverContext.getClusterState().getActiveMemberStates().iterator().next().getMember().id();
+      serverContext.setTerm(1);
+      InstallRequest request = InstallRequest.builder()
+        .withTerm(1)
+        .withLeader(leader)
+        .withIndex(20)
+        .withBaseIndex(10)
+        .withOffset(0)
+        .withData(new byte[8])
+        .withComplete(true)
+        .build();
+
+      InstallResponse response = state.install(request).get();
+      threadAssertEquals(response.status(), Status.ERROR);
+      threadAssertNull(serverContext.getSnapshotStore().snapshot(20));
+      threadAssertNull(serverContext.getSnapshotStore().currentSnapshot());
+    });
+  }
+
+  /**
+   * Tests that a delta snapshot is installed on top of its base snapshot.
+   */
+  public void testInstallDeltaWithBase() throws Throwable {
+    runOnServer(() -> {
+      int leader = serverContext.getClusterState().getActiveMemberStates().iterator().next().getMember().id();
+      serverContext.setTerm(1);
+      InstallRequest full = InstallRequest.builder()
+        .withTerm(1)
+        .withLeader(leader)
+        .withIndex(10)
+        .withOffset(0)
+        .withData(new byte[8])
+        .withComplete(true)
+        .build();
+      threadAssertEquals(state.install(full).get().status(), Status.OK);
+
+      InstallRequest delta = InstallRequest.builder()
+        .withTerm(1)
+        .withLeader(leader)
+        .withIndex(20)
+        .withBaseIndex(10)
+        .withOffset(0)
+        .withData(new byte[8])
+        .withComplete(true)
+        .build();
+      threadAssertEquals(state.install(delta).get().status(), Status.OK);
+
+      threadAssertEquals(serverContext.getSnapshotStore().currentSnapshot().index(), 20L);
+      threadAssertEquals(serverContext.getSnapshotStore().currentSnapshot().baseIndex(), 10L);
+      threadAssertNotNull(serverContext.getSnapshotStore().snapshot(10));
+    });
+  }
+
 }
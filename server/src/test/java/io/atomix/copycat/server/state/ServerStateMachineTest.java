@@ -27,12 +27,17 @@ import io.atomix.copycat.Query;
 import io.atomix.copycat.protocol.ClientRequestTypeResolver;
 import io.atomix.copycat.protocol.ClientResponseTypeResolver;
 import io.atomix.copycat.server.Commit;
+import io.atomix.copycat.server.ConcurrentSnapshottable;
+import io.atomix.copycat.server.IncrementalSnapshottable;
 import io.atomix.copycat.server.StateMachine;
 import io.atomix.copycat.server.StateMachineExecutor;
 import io.atomix.copycat.server.cluster.Member;
 import io.atomix.copycat.server.storage.Storage;
 import io.atomix.copycat.server.storage.StorageLevel;
 import io.atomix.copycat.server.storage.entry.*;
+import io.atomix.copycat.server.storage.snapshot.Snapshot;
+import io.atomix.copycat.server.storage.snapshot.SnapshotReader;
+import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
 import io.atomix.copycat.server.storage.util.StorageSerialization;
 import io.atomix.copycat.server.util.ServerSerialization;
 import io.atomix.copycat.session.Session;
@@ -43,8 +48,16 @@ import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import static org.testng.Assert.*;
 
@@ -55,6 +68,9 @@ import static org.testng.Assert.*;
  */
 @Test
 public class ServerStateMachineTest extends ConcurrentTestCase {
+  private Serializer serializer;
+  private LocalServerRegistry registry;
+  private ServerMember member;
   private ThreadContext callerContext;
   private ThreadContext stateContext;
   private Transport transport;
@@ -64,7 +80,7 @@ public class ServerStateMachineTest extends ConcurrentTestCase {
 
   @BeforeMethod
   public void createStateMachine() throws Throwable {
-    Serializer serializer = new Serializer().resolve(
+    serializer = new Serializer().resolve(
       new ClientRequestTypeResolver(),
       new ClientResponseTypeResolver(),
       new ProtocolSerialization(),
@@ -72,20 +88,70 @@ public class ServerStateMachineTest extends ConcurrentTestCase {
       new StorageSerialization()
     ).disableWhitelist();
 
-    callerContext = new SingleThreadContext("caller", serializer.clone());
     stateContext = new SingleThreadContext("state", serializer.clone());
-    LocalServerRegistry registry = new LocalServerRegistry();
+    registry = new LocalServerRegistry();
     transport = new LocalTransport(registry);
-    Storage storage = new Storage(StorageLevel.MEMORY);
-    ServerMember member = new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5000), new Address("localhost", 6000), Instant.now());
+    member = new ServerMember(Member.Type.ACTIVE, new Address("localhost", 5000), new Address("localhost", 6000), Instant.now());
+    openState(new Storage(StorageLevel.MEMORY), TestStateMachine::new);
+    timestamp = System.currentTimeMillis();
+    sequence = new AtomicLong();
+  }
 
+  /**
+   * Opens the server context with the given storage and state machine.
+   */
+  private void openState(Storage storage, Supplier<StateMachine> stateMachine) throws Throwable {
+    callerContext = new SingleThreadContext("caller", serializer.clone());
     new SingleThreadContext("test", serializer.clone()).executor().execute(() -> {
-      state = new ServerContext("test", member.type(), member.serverAddress(), member.clientAddress(), storage, serializer, TestStateMachine::new, new ConnectionManager(new LocalTransport(registry).client()), callerContext);
+      state = new ServerContext("test", member.type(), member.serverAddress(), member.clientAddress(), storage, serializer, stateMachine, new ConnectionManager(new LocalTransport(registry).client()), callerContext);
       resume();
     });
     await(1000);
-    timestamp = System.currentTimeMillis();
-    sequence = new AtomicLong();
+  }
+
+  /**
+   * Closes the server context and reopens it with the given storage and state machine.
+   */
+  private void reopenState(Storage storage, Supplier<StateMachine> stateMachine) throws Throwable {
+    state.close();
+    openState(storage, stateMachine);
+  }
+
+  /**
+   * Registers a new session, applying the register entry to the state machine.
+   */
+  private void register() throws Throwable {
+    callerContext.execute(() -> {
+      long index;
+      try (RegisterEntry entry = state.getLog().create(RegisterEntry.class)) {
+        entry.setTerm(1)
+          .setTimestamp(timestamp)
+          .setTimeout(5000)
+          .setClient(UUID.randomUUID().toString());
+        index = state.getLog().append(entry);
+      }
+
+      state.getStateMachine().apply(index).whenComplete((result, error) -> {
+        threadAssertNull(error);
+        resume();
+      });
+    });
+    await(5000);
+  }
+
+  /**
+   * Registers sessions until a snapshot newer than the given index is completed.
+   */
+  private Snapshot awaitSnapshot(long index) throws Throwable {
+    for (int i = 0; i < 10; i++) {
+      register();
+      Snapshot snapshot = state.getSnapshotStore().currentSnapshot();
+      if (snapshot != null && snapshot.index() > index) {
+        return snapshot;
+      }
+    }
+    fail("no snapshot completed after index " + index);
+    return null;
   }
 
   /**
@@ -466,6 +532,195 @@ public class ServerStateMachineTest extends ConcurrentTestCase {
     callerContext.close();
   }
 
+  /**
+   * Tests that a capture is written in the snapshot thread while entries continue to be applied.
+   */
+  public void testConcurrentSnapshotWrite() throws Throwable {
+    CountDownLatch writing = new CountDownLatch(1);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch closed = new CountDownLatch(1);
+    AtomicReference<String> thread = new AtomicReference<>();
+    reopenState(new Storage(StorageLevel.MEMORY), () -> new ConcurrentSnapshotStateMachine(() -> new ConcurrentSnapshottable.Capture() {
+      @Override
+      public void write(SnapshotWriter writer) {
+        thread.set(Thread.currentThread().getName());
+        writing.countDown();
+        try {
+          release.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          throw new RuntimeException(e);
+        }
+        writer.writeLong(1);
+      }
+
+      @Override
+      public void close() {
+        closed.countDown();
+      }
+    }));
+
+    register();
+    assertTrue(writing.await(10, TimeUnit.SECONDS));
+
+    // Entries are applied while the snapshot is written, but the snapshot isn't completed until it's written.
+    for (int i = 0; i < 3; i++) {
+      register();
+    }
+    assertNull(state.getSnapshotStore().currentSnapshot());
+    assertEquals(state.getLog().compactor().snapshotIndex(), 0);
+
+    release.countDown();
+    assertTrue(closed.await(10, TimeUnit.SECONDS));
+    register();
+    assertEquals(state.getSnapshotStore().currentSnapshot().index(), 1);
+    assertEquals(state.getLog().compactor().snapshotIndex(), 1);
+    assertTrue(thread.get().contains("snapshot"));
+  }
+
+  /**
+   * Tests that a snapshot is discarded when capturing the state machine state fails.
+   */
+  public void testCaptureSnapshotFailure() throws Throwable {
+    AtomicInteger captures = new AtomicInteger();
+    reopenState(new Storage(StorageLevel.MEMORY), () -> new ConcurrentSnapshotStateMachine(() -> {
+      if (captures.incrementAndGet() == 1) {
+        throw new IllegalStateException("capture failed");
+      }
+      return writer -> writer.writeLong(1);
+    }));
+
+    for (int i = 0; i < 3; i++) {
+      register();
+    }
+    assertNull(state.getSnapshotStore().currentSnapshot());
+    assertEquals(state.getLog().compactor().snapshotIndex(), 0);
+
+    Snapshot snapshot = awaitSnapshot(1);
+    assertFalse(snapshot.isDelta());
+    assertEquals(captures.get(), 2);
+    assertEquals(state.getLog().compactor().snapshotIndex(), snapshot.index());
+  }
+
+  /**
+   * Tests that a snapshot is discarded and its capture closed when writing the capture fails.
+   */
+  public void testCaptureWriteFailure() throws Throwable {
+    AtomicInteger writes = new AtomicInteger();
+    CountDownLatch closed = new CountDownLatch(2);
+    reopenState(new Storage(StorageLevel.MEMORY), () -> new ConcurrentSnapshotStateMachine(() -> new ConcurrentSnapshottable.Capture() {
+      @Override
+      public void write(SnapshotWriter writer) {
+        if (writes.incrementAndGet() == 1) {
+          throw new IllegalStateException("write failed");
+        }
+        writer.writeLong(1);
+      }
+
+      @Override
+      public void close() {
+        closed.countDown();
+      }
+    }));
+
+    for (int i = 0; i < 3; i++) {
+      register();
+    }
+    assertNull(state.getSnapshotStore().currentSnapshot());
+    assertNull(state.getSnapshotStore().snapshot(1));
+    assertEquals(state.getLog().compactor().snapshotIndex(), 0);
+
+    Snapshot snapshot = awaitSnapshot(1);
+    assertFalse(snapshot.isDelta());
+    assertEquals(writes.get(), 2);
+    assertTrue(closed.await(10, TimeUnit.SECONDS));
+    assertEquals(state.getLog().compactor().snapshotIndex(), snapshot.index());
+  }
+
+  /**
+   * Returns memory storage that rolls over segments frequently enough for the log to become compactable.
+   */
+  private Storage snapshotStorage(int maxSnapshotDeltas) {
+    return Storage.builder()
+      .withStorageLevel(StorageLevel.MEMORY)
+      .withMaxEntriesPerSegment(2)
+      .withMaxSnapshotDeltas(maxSnapshotDeltas)
+      .build();
+  }
+
+  /**
+   * Tests that delta snapshots are taken until the maximum number of deltas is reached.
+   */
+  public void testIncrementalSnapshots() throws Throwable {
+    IncrementalSnapshotStateMachine stateMachine = new IncrementalSnapshotStateMachine();
+    reopenState(snapshotStorage(2), () -> stateMachine);
+
+    Snapshot first = awaitSnapshot(0);
+    assertFalse(first.isDelta());
+
+    Snapshot second = awaitSnapshot(first.index());
+    assertTrue(second.isDelta());
+    assertEquals(second.baseIndex(), first.index());
+
+    Snapshot third = awaitSnapshot(second.index());
+    assertTrue(third.isDelta());
+    assertEquals(third.baseIndex(), second.index());
+
+    // Once the chain holds the maximum number of deltas, a full snapshot is taken and the chain is removed.
+    Snapshot fourth = awaitSnapshot(third.index());
+    assertFalse(fourth.isDelta());
+    assertNull(state.getSnapshotStore().snapshot(first.index()));
+    assertNull(state.getSnapshotStore().snapshot(third.index()));
+    assertEquals(stateMachine.calls, Arrays.asList(
+      "snapshot",
+      "delta " + first.index(),
+      "delta " + second.index(),
+      "snapshot"));
+  }
+
+  /**
+   * Tests that a full snapshot is taken after a delta snapshot is discarded.
+   */
+  public void testFullSnapshotAfterDiscardedDelta() throws Throwable {
+    IncrementalSnapshotStateMachine stateMachine = new IncrementalSnapshotStateMachine();
+    stateMachine.failDeltas = 1;
+    reopenState(snapshotStorage(8), () -> stateMachine);
+
+    Snapshot first = awaitSnapshot(0);
+    assertFalse(first.isDelta());
+
+    // The first delta fails to be written, so the changes it contained are in no stored snapshot.
+    Snapshot second = awaitSnapshot(first.index());
+    assertFalse(second.isDelta());
+    assertEquals(stateMachine.calls, Arrays.asList("snapshot", "delta " + first.index(), "snapshot"));
+    assertEquals(state.getLog().compactor().snapshotIndex(), second.index());
+  }
+
+  /**
+   * Tests that a snapshot chain is installed in order.
+   */
+  public void testInstallSnapshotChain() throws Throwable {
+    IncrementalSnapshotStateMachine stateMachine = new IncrementalSnapshotStateMachine();
+    reopenState(snapshotStorage(8), () -> stateMachine);
+
+    Snapshot full = state.getSnapshotStore().createSnapshot(2);
+    try (SnapshotWriter writer = full.writer()) {
+      writer.writeLong(2);
+    }
+    full.complete();
+    Snapshot delta = state.getSnapshotStore().createSnapshot(3, 2);
+    try (SnapshotWriter writer = delta.writer()) {
+      writer.writeLong(3);
+    }
+    delta.complete();
+
+    // The chain is installed once the state machine reaches the index of the current snapshot.
+    for (int i = 0; i < 4; i++) {
+      register();
+    }
+    assertEquals(stateMachine.calls, Arrays.asList("install 2", "install delta 2 3"));
+    assertEquals(state.getLog().compactor().snapshotIndex(), 3);
+  }
+
   /**
    * Test state machine.
    */
@@ -498,6 +753,60 @@ public class ServerStateMachineTest extends ConcurrentTestCase {
     }
   }
 
+  /**
+   * Concurrently snapshottable test state machine.
+   */
+  private static class ConcurrentSnapshotStateMachine extends StateMachine implements ConcurrentSnapshottable {
+    private final Supplier<Capture> capture;
+
+    private ConcurrentSnapshotStateMachine(Supplier<Capture> capture) {
+      this.capture = capture;
+    }
+
+    @Override
+    public Capture captureSnapshot() {
+      return capture.get();
+    }
+
+    @Override
+    public void install(SnapshotReader reader) {
+    }
+  }
+
+  /**
+   * Incrementally snapshottable test state machine that records snapshot calls.
+   */
+  private static class IncrementalSnapshotStateMachine extends StateMachine implements IncrementalSnapshottable {
+    private final List<String> calls = new CopyOnWriteArrayList<>();
+    private volatile int failDeltas;
+
+    @Override
+    public void snapshot(SnapshotWriter writer) {
+      calls.add("snapshot");
+      writer.writeLong(0);
+    }
+
+    @Override
+    public void snapshotDelta(SnapshotWriter writer, long baseIndex) {
+      calls.add("delta " + baseIndex);
+      if (failDeltas > 0) {
+        failDeltas--;
+        throw new IllegalStateException("delta failed");
+      }
+      writer.writeLong(baseIndex);
+    }
+
+    @Override
+    public void install(SnapshotReader reader) {
+      calls.add("install " + reader.readLong());
+    }
+
+    @Override
+    public void installDelta(SnapshotReader reader, long baseIndex) {
+      calls.add("install delta " + baseIndex + " " + reader.readLong());
+    }
+  }
+
   /**
    * Test command.
    */
@@ -21,6 +21,8 @@ import io.atomix.copycat.server.storage.snapshot.SnapshotStore;
 import io.atomix.copycat.server.storage.snapshot.SnapshotWriter;
 import org.testng.annotations.Test;
 
+import java.util.List;
+
 import static org.testng.Assert.*;
 
 /**
@@ -74,4 +76,60 @@ public abstract class AbstractSnapshotStoreTest {
     }
   }
 
+  /**
+   * Tests writing a chain of delta snapshots and consolidating the chain with a full snapshot.
+   */
+  public void testDeltaSnapshotChain() {
+    SnapshotStore store = createSnapshotStore();
+    writeSnapshot(store, 1, 0, 10);
+    writeSnapshot(store, 2, 1, 11);
+    writeSnapshot(store, 3, 2, 12);
+
+    assertEquals(store.currentSnapshot().index(), 3);
+    assertTrue(store.currentSnapshot().isDelta());
+    assertEquals(store.currentSnapshot().baseIndex(), 2);
+    assertEquals(store.deltas(), 2);
+
+    List<Snapshot> chain = store.chain(store.currentSnapshot());
+    assertEquals(chain.size(), 3);
+    for (int i = 0; i < chain.size(); i++) {
+      assertEquals(chain.get(i).index(), i + 1);
+      try (SnapshotReader reader = chain.get(i).reader()) {
+        assertEquals(reader.readLong(), 10 + i);
+      }
+    }
+
+    // Snapshot chains are installed on other servers one snapshot at a time.
+    assertEquals(store.nextSnapshot(0).index(), 1);
+    assertEquals(store.nextSnapshot(1).index(), 2);
+    assertEquals(store.nextSnapshot(2).index(), 3);
+
+    // A full snapshot consolidates the chain and removes the prior snapshots.
+    writeSnapshot(store, 4, 0, 13);
+    assertEquals(store.deltas(), 0);
+    assertEquals(store.snapshots().size(), 1);
+    assertNull(store.snapshot(1));
+    assertEquals(store.nextSnapshot(3).index(), 4);
+  }
+
+  /**
+   * Tests that a delta snapshot cannot be completed without its base snapshot.
+   */
+  @Test(expectedExceptions = IllegalStateException.class)
+  public void testCompleteDeltaSnapshotWithoutBase() {
+    SnapshotStore store = createSnapshotStore();
+    writeSnapshot(store, 2, 1, 10);
+  }
+
+  /**
+   * Writes and completes a snapshot containing a single value.
+   */
+  protected void writeSnapshot(SnapshotStore store, long index, long baseIndex, long value) {
+    Snapshot snapshot = store.createSnapshot(index, baseIndex);
+    try (SnapshotWriter writer = snapshot.writer()) {
+      writer.writeLong(value);
+    }
+    snapshot.complete();
+  }
+
 }
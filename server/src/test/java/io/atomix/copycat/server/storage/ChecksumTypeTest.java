@@ -0,0 +1,90 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.util.ChecksumType;
+import io.atomix.copycat.server.storage.util.Crc32c;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Checksum type test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class ChecksumTypeTest {
+
+  /**
+   * Tests computing checksums against known check values.
+   */
+  public void testCheckValues() {
+    byte[] bytes = "123456789".getBytes(StandardCharsets.US_ASCII);
+    assertEquals(ChecksumType.CRC32.checksum(bytes, 0, bytes.length), 0xCBF43926L);
+    assertEquals(ChecksumType.CRC32C.checksum(bytes, 0, bytes.length), 0xE3069283L);
+
+    Crc32c crc32c = new Crc32c();
+    crc32c.update(bytes, 0, bytes.length);
+    assertEquals(crc32c.getValue(), 0xE3069283L);
+  }
+
+  /**
+   * Tests that the table driven CRC32C matches byte at a time updates for arbitrary offsets and lengths.
+   */
+  public void testCrc32cSlices() {
+    Random random = new Random(0);
+    byte[] bytes = new byte[1024];
+    random.nextBytes(bytes);
+    for (int i = 0; i < 100; i++) {
+      int offset = random.nextInt(bytes.length);
+      int length = random.nextInt(bytes.length - offset);
+
+      Crc32c expected = new Crc32c();
+      for (int j = offset; j < offset + length; j++) {
+        expected.update(bytes[j]);
+      }
+
+      assertEquals(ChecksumType.CRC32C.checksum(bytes, offset, length), expected.getValue());
+    }
+  }
+
+  /**
+   * Tests that reused checksums are reset between computations.
+   */
+  public void testChecksumReuse() {
+    byte[] bytes = "copycat".getBytes(StandardCharsets.US_ASCII);
+    CRC32 crc32 = new CRC32();
+    crc32.update(bytes, 0, bytes.length);
+    assertEquals(ChecksumType.CRC32.checksum(bytes, 0, bytes.length), crc32.getValue());
+    assertEquals(ChecksumType.CRC32.checksum(bytes, 0, bytes.length), crc32.getValue());
+    assertEquals(ChecksumType.CRC32C.checksum(bytes, 0, bytes.length), ChecksumType.CRC32C.checksum(bytes, 0, bytes.length));
+  }
+
+  /**
+   * Tests looking up checksum types by identifier.
+   */
+  public void testForId() {
+    for (ChecksumType type : ChecksumType.values()) {
+      assertEquals(ChecksumType.forId(type.id()), type);
+    }
+  }
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.util.EntryBuffer;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Entry buffer test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class EntryBufferTest {
+
+  /**
+   * Creates a test entry at the given index.
+   */
+  private static TestEntry entry(long index) {
+    TestEntry entry = new TestEntry();
+    entry.setIndex(index).setTerm(1);
+    return entry;
+  }
+
+  /**
+   * Tests that the tail retains the minimum number of entries regardless of size.
+   */
+  public void testMinimumTailEntries() {
+    EntryBuffer buffer = new EntryBuffer(10, 100);
+    for (long i = 1; i <= 10; i++) {
+      buffer.append(entry(i), 100);
+    }
+    for (long i = 1; i <= 10; i++) {
+      assertNotNull(buffer.get(i));
+    }
+    assertEquals(buffer.size(), 10);
+  }
+
+  /**
+   * Tests that the buffer is bounded by bytes.
+   */
+  public void testByteBound() {
+    EntryBuffer buffer = new EntryBuffer(1, 1000);
+    for (long i = 1; i <= 100; i++) {
+      buffer.append(entry(i), 100);
+    }
+    assertTrue(buffer.bytes() <= 1000);
+    assertEquals(buffer.size(), 10);
+    assertNotNull(buffer.get(100));
+    assertNotNull(buffer.get(91));
+    assertNull(buffer.get(90));
+  }
+
+  /**
+   * Tests that entries appended with an unknown size are accounted at their real size once updated.
+   */
+  public void testUpdateUnknownSize() {
+    EntryBuffer buffer = new EntryBuffer(1, 1000);
+    TestEntry[] entries = new TestEntry[10];
+    for (int i = 0; i < entries.length; i++) {
+      entries[i] = entry(i + 1);
+      buffer.append(entries[i], EntryBuffer.UNKNOWN_SIZE);
+    }
+    assertEquals(buffer.size(), 10);
+    assertTrue(buffer.bytes() < 1000);
+
+    for (int i = 0; i < entries.length; i++) {
+      entries[i].setSize(200);
+      buffer.updateSize(i + 1);
+    }
+    assertTrue(buffer.bytes() <= 1000);
+    assertTrue(buffer.size() <= 5);
+    assertNotNull(buffer.get(10));
+    assertNull(buffer.get(1));
+
+    // Updating an entry whose size is already known does not change the accounting.
+    long bytes = buffer.bytes();
+    entries[9].setSize(500);
+    buffer.updateSize(10);
+    assertEquals(buffer.bytes(), bytes);
+  }
+
+  /**
+   * Tests that recently read entries are given a second chance before eviction.
+   */
+  public void testClockEviction() {
+    EntryBuffer buffer = new EntryBuffer(1, 1000);
+    for (long i = 1; i <= 10; i++) {
+      buffer.cache(entry(i), 100);
+    }
+    assertEquals(buffer.size(), 10);
+
+    // Reference the oldest entry so it survives the next eviction.
+    assertNotNull(buffer.get(1));
+    buffer.cache(entry(11), 100);
+    assertNotNull(buffer.get(1));
+    assertNull(buffer.get(2));
+    assertNotNull(buffer.get(11));
+  }
+
+  /**
+   * Tests that entries larger than the buffer are not cached.
+   */
+  public void testCacheLargeEntry() {
+    EntryBuffer buffer = new EntryBuffer(1, 1000);
+    buffer.cache(entry(1), 1001);
+    assertNull(buffer.get(1));
+    assertEquals(buffer.size(), 0);
+  }
+
+  /**
+   * Tests hit and miss counts.
+   */
+  public void testHitMissCounts() {
+    EntryBuffer buffer = new EntryBuffer(10, 1024);
+    buffer.append(entry(1), 10);
+    assertNotNull(buffer.get(1));
+    assertNull(buffer.get(2));
+    assertNotNull(buffer.get(1));
+    assertEquals(buffer.hitCount(), 2);
+    assertEquals(buffer.missCount(), 1);
+  }
+
+  /**
+   * Tests clearing the buffer.
+   */
+  public void testClear() {
+    EntryBuffer buffer = new EntryBuffer(10, 1024);
+    buffer.append(entry(1), 10);
+    buffer.cache(entry(2), 10);
+    buffer.clear();
+    assertEquals(buffer.size(), 0);
+    assertEquals(buffer.bytes(), 0);
+    assertNull(buffer.get(1));
+    assertNull(buffer.get(2));
+  }
+
+}
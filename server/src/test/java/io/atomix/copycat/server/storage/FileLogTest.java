@@ -19,6 +19,14 @@ import io.atomix.copycat.server.storage.entry.Entry;
 import org.testng.annotations.Factory;
 import org.testng.annotations.Test;
 
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.testng.Assert.*;
 
 /**
@@ -58,6 +66,285 @@ public class FileLogTest extends LogTest {
     }
   }
 
+  /**
+   * Tests recovery of a log with missing segment index files.
+   */
+  public void testRecoverWithoutIndexFiles() {
+    appendEntries(entriesPerSegment * 5);
+    log.close();
+
+    File[] indexFiles = storage.directory().listFiles(f -> f.getName().endsWith(".index"));
+    assertTrue(indexFiles.length > 0);
+    for (File file : indexFiles) {
+      assertTrue(file.delete());
+    }
+
+    try (Log log = createLog()) {
+      assertEquals(log.length(), entriesPerSegment * 5);
+      for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests recovery of a log with corrupt segment index files.
+   */
+  public void testRecoverCorruptIndexFiles() throws Throwable {
+    appendEntries(entriesPerSegment * 5);
+    log.close();
+
+    for (File file : storage.directory().listFiles(f -> f.getName().endsWith(".index"))) {
+      try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+        raf.seek(16);
+        raf.writeInt(Integer.MAX_VALUE);
+        raf.writeInt(Integer.MAX_VALUE);
+      }
+    }
+
+    try (Log log = createLog()) {
+      assertEquals(log.length(), entriesPerSegment * 5);
+      for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests reporting metrics when segments are loaded in parallel.
+   */
+  public void testLoadSegmentsMetrics() {
+    appendEntries(entriesPerSegment * 5);
+    int segments = log.segments.segments().size();
+    log.close();
+
+    AtomicInteger loaded = new AtomicInteger();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withLoadThreads(2)
+      .withMetrics(new StorageMetrics() {
+        @Override
+        public void segmentsLoaded(String name, int count, Duration time) {
+          loaded.set(count);
+        }
+      })
+      .build();
+
+    try (Log log = createLog()) {
+      assertEquals(loaded.get(), segments);
+      assertEquals(log.length(), entriesPerSegment * 5);
+      for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests preallocating segment files and recovering a log from preallocated segments.
+   */
+  public void testPreallocateSegments() {
+    log.close();
+
+    List<Long> advised = new ArrayList<>();
+    int maxSegmentSize = PageCacheAdvisor.PAGE_SIZE * 4;
+    storage = tempStorageBuilder()
+      .withMaxSegmentSize(maxSegmentSize)
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withPreallocateSegments()
+      .withPageCacheAdvisor((file, position, length) -> {
+        assertEquals(position % PageCacheAdvisor.PAGE_SIZE, 0);
+        assertEquals(length % PageCacheAdvisor.PAGE_SIZE, 0);
+        advised.add(length);
+      })
+      .build();
+
+    log = createLog();
+    appendEntries(entriesPerSegment * 5);
+    int segments = log.segments.segments().size();
+    assertEquals(advised.size(), segments);
+    for (Segment segment : log.segments.segments()) {
+      assertTrue(segment.file().file().length() >= maxSegmentSize + SegmentDescriptor.BYTES);
+    }
+    log.close();
+
+    try (Log log = createLog()) {
+      assertEquals(log.length(), entriesPerSegment * 5);
+      for (long i = log.firstIndex(); i <= log.lastIndex(); i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests creating segments from the segment pool and recycling deleted segments into the pool.
+   */
+  public void testSegmentPool() throws Throwable {
+    log.close();
+
+    int maxSegmentSize = PageCacheAdvisor.PAGE_SIZE * 4;
+    storage = tempStorageBuilder()
+      .withMaxSegmentSize(maxSegmentSize)
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withSegmentPoolSize(2)
+      .build();
+
+    log = createLog();
+    awaitPool(2);
+
+    // Roll over to a new segment, which should be created from a pooled file.
+    appendEntries(entriesPerSegment + 1);
+    assertTrue(log.segments.lastSegment().file().file().length() >= SegmentFile.alignedSize(maxSegmentSize + SegmentDescriptor.BYTES));
+    awaitPool(2);
+
+    // Compact the log, recycling the compacted segments' files.
+    appendEntries(entriesPerSegment * 4);
+    log.commit(log.lastIndex()).compactor().minorIndex(log.lastIndex()).majorIndex(log.lastIndex());
+    cleanAndCompact(1, entriesPerSegment * 3);
+    awaitPool(2);
+    log.close();
+
+    assertTrue(storage.directory().listFiles(f -> SegmentFile.isPoolFile(logId, f)).length <= 2);
+    try (Log log = createLog()) {
+      assertEquals(log.lastIndex(), entriesPerSegment * 5 + 1);
+      for (long i = entriesPerSegment * 3 + 1; i <= log.lastIndex(); i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Waits for the segment pool to fill.
+   */
+  private void awaitPool(int size) throws InterruptedException {
+    for (int i = 0; i < 500 && log.segments.pool().size() < size; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals(log.segments.pool().size(), size);
+  }
+
+  /**
+   * Tests rolling over to segments prepared in the background.
+   */
+  public void testBackgroundRollover() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withBackgroundRollover()
+      .build();
+
+    log = createLog();
+    appendEntries(entriesPerSegment * 5);
+    assertEquals(log.segments.segments().size(), 5);
+
+    // Every segment following the first segment is created from a segment prepared in the background.
+    assertEquals(log.segments.preparedSegments(), 4);
+
+    for (long i = 1; i <= log.lastIndex(); i++) {
+      try (Entry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+      }
+    }
+    log.close();
+
+    try (Log log = createLog()) {
+      assertEquals(log.segments.segments().size(), 5);
+      assertEquals(log.lastIndex(), entriesPerSegment * 5);
+      for (long i = 1; i <= log.lastIndex(); i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests compressing compacted segments.
+   */
+  public void testCompressCompactedSegments() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withCompressCompactedSegments()
+      .build();
+
+    log = createLog();
+    appendEntries(entriesPerSegment * 3);
+    assertFalse(log.segments.segment(1).descriptor().isCompressed());
+
+    log.commit(entriesPerSegment * 3).compactor().minorIndex(entriesPerSegment * 3).majorIndex(entriesPerSegment * 3);
+    cleanAndCompact(entriesPerSegment + 1, entriesPerSegment * 2);
+    assertTrue(log.segments.segment(1).descriptor().isCompressed());
+    assertCompressedEntries(log);
+    log.close();
+
+    try (Log log = createLog()) {
+      assertTrue(log.segments.segment(1).descriptor().isCompressed());
+      assertEquals(log.lastIndex(), entriesPerSegment * 3);
+      assertCompressedEntries(log);
+    }
+  }
+
+  /**
+   * Asserts that entries outside the compacted range can be read from the log.
+   */
+  private void assertCompressedEntries(Log log) {
+    try (LogReader reader = log.reader(1)) {
+      for (long i = 1; i <= entriesPerSegment * 3; i++) {
+        try (Entry entry = log.get(i); Entry next = reader.next()) {
+          if (i > entriesPerSegment && i <= entriesPerSegment * 2) {
+            assertNull(entry);
+            assertNull(next);
+          } else {
+            assertEquals(entry.getIndex(), i);
+            assertEquals(next.getIndex(), i);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests advising the page cache of flushed segment pages.
+   */
+  public void testPageCacheAdvisor() {
+    log.close();
+
+    List<long[]> advised = new ArrayList<>();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(1024)
+      .withStorageLevel(storageLevel())
+      .withPageCacheAdvisor((file, position, length) -> advised.add(new long[]{position, length}))
+      .build();
+
+    log = createLog();
+    appendEntries(1000);
+    log.flush();
+
+    long size = log.segments.currentSegment().size();
+    assertEquals(advised.size(), 1);
+    assertEquals(advised.get(0)[0], 0);
+    assertEquals(advised.get(0)[1], size / PageCacheAdvisor.PAGE_SIZE * PageCacheAdvisor.PAGE_SIZE);
+
+    appendEntries(20);
+    log.flush();
+    assertEquals(advised.get(advised.size() - 1)[0] + advised.get(advised.size() - 1)[1], log.segments.currentSegment().size() / PageCacheAdvisor.PAGE_SIZE * PageCacheAdvisor.PAGE_SIZE);
+  }
+
   /**
    * Tests recovery of a log after compaction.
    */
@@ -116,4 +403,82 @@ public class FileLogTest extends LogTest {
     }
   }
 
+  /**
+   * Tests flushing committed entries with group commit enabled.
+   */
+  public void testGroupCommit() {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withFlushOnCommit()
+      .withGroupCommit()
+      .build();
+    log = createLog();
+
+    appendEntries(entriesPerSegment * 3);
+    log.commit(entriesPerSegment);
+    assertEquals(log.awaitFlush(entriesPerSegment).join().longValue(), entriesPerSegment);
+    log.commit(entriesPerSegment * 3);
+    assertEquals(log.awaitFlush(entriesPerSegment * 2).join().longValue(), entriesPerSegment * 2);
+    assertEquals(log.awaitFlush(entriesPerSegment * 3).join().longValue(), entriesPerSegment * 3);
+
+    // Hold the flusher's lock so the first flush can't complete while the following requests are made.
+    LogFlusher flusher = new LogFlusher(log.segments, null);
+    try {
+      CompletableFuture<Long> first;
+      CompletableFuture<Long> second;
+      CompletableFuture<Long> third;
+      synchronized (flusher) {
+        first = flusher.flush(1);
+        second = flusher.flush(2);
+        third = flusher.flush(3);
+      }
+
+      // Requests made while a flush is in progress share a single flush.
+      assertNotSame(first, second);
+      assertSame(second, third);
+      assertEquals(first.join().longValue(), 1);
+      assertEquals(second.join().longValue(), 3);
+      assertEquals(flusher.flushIndex(), 3);
+    } finally {
+      flusher.close();
+    }
+  }
+
+  /**
+   * Tests appending, reading and recovering entries with asynchronous writes enabled.
+   */
+  public void testAsyncWrites() {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(entriesPerSegment)
+      .withStorageLevel(storageLevel())
+      .withAsyncWrites()
+      .build();
+    log = createLog();
+
+    appendEntries(entriesPerSegment * 3);
+    assertEquals(log.lastIndex(), entriesPerSegment * 3);
+    for (long i = 1; i <= entriesPerSegment * 3; i++) {
+      try (Entry entry = log.get(i)) {
+        assertEquals(entry.getIndex(), i);
+      }
+      assertEquals(log.term(i), 1);
+    }
+
+    assertEquals(log.awaitWrite(entriesPerSegment * 3).join().longValue(), entriesPerSegment * 3);
+    assertEquals(log.writeIndex(), entriesPerSegment * 3);
+    log.close();
+
+    try (Log log = createLog()) {
+      assertEquals(log.length(), entriesPerSegment * 3);
+      for (long i = 1; i <= entriesPerSegment * 3; i++) {
+        try (Entry entry = log.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
 }
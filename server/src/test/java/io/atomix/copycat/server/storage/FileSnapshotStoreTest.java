@@ -31,6 +31,7 @@ import java.util.UUID;
 
 import static org.testng.Assert.assertEquals;
 import static org.testng.Assert.assertNotNull;
+import static org.testng.Assert.assertTrue;
 
 /**
  * File snapshot store test.
@@ -71,6 +72,23 @@ public class FileSnapshotStoreTest extends AbstractSnapshotStoreTest {
     assertEquals(store.currentSnapshot().index(), 1);
   }
 
+  /**
+   * Tests storing and loading a chain of delta snapshots.
+   */
+  public void testStoreLoadDeltaSnapshots() {
+    SnapshotStore store = createSnapshotStore();
+    writeSnapshot(store, 1, 0, 10);
+    writeSnapshot(store, 2, 1, 11);
+    store.close();
+
+    store = createSnapshotStore();
+    assertEquals(store.currentSnapshot().index(), 2);
+    assertTrue(store.currentSnapshot().isDelta());
+    assertEquals(store.currentSnapshot().baseIndex(), 1);
+    assertEquals(store.chain(store.currentSnapshot()).size(), 2);
+    assertEquals(store.deltas(), 1);
+  }
+
   @BeforeMethod
   @AfterMethod
   protected void cleanupStorage() throws IOException {
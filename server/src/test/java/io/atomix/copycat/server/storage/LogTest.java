@@ -15,11 +15,21 @@
  */
 package io.atomix.copycat.server.storage;
 
+import io.atomix.catalyst.serializer.Serializer;
 import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.entry.RawEntry;
+import io.atomix.copycat.server.storage.util.ChecksumType;
+import io.atomix.copycat.server.storage.util.StorageSerialization;
 import org.testng.annotations.Test;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.testng.Assert.*;
 
@@ -359,4 +369,249 @@ public abstract class LogTest extends AbstractLogTest {
     assertEquals(log.firstIndex(), 1);
     assertEquals(log.lastIndex(), 10);
   }
+
+  /**
+   * Tests copying raw entries from one log to another.
+   */
+  public void testAppendRaw() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    assertTrue(log.canReadRaw(1));
+    assertFalse(log.canReadRaw(entriesPerSegment * 3 + 1));
+
+    String copyId = UUID.randomUUID().toString();
+    try (Log copy = new Log(copyId, storage, new Serializer().resolve(new StorageSerialization()).register(TestEntry.class))) {
+      for (long i = 1; i <= entriesPerSegment * 3; i++) {
+        RawEntry entry = log.getRaw(i);
+        assertEquals(entry.index(), i);
+        assertEquals(entry.term(), 1);
+        assertTrue(entry.isValid());
+        assertEquals(copy.appendRaw(entry), i);
+      }
+
+      assertEquals(copy.lastIndex(), entriesPerSegment * 3);
+      for (long i = 1; i <= entriesPerSegment * 3; i++) {
+        try (TestEntry entry = copy.get(i)) {
+          assertEquals(entry.getIndex(), i);
+          assertEquals(entry.getTerm(), 1);
+        }
+        assertEquals(copy.getRaw(i), log.getRaw(i));
+      }
+    } finally {
+      storage.deleteLog(copyId);
+    }
+  }
+
+  /**
+   * Tests that raw entries with invalid checksums are detected.
+   */
+  public void testRawEntryChecksum() throws Throwable {
+    appendEntries(1);
+    RawEntry entry = log.getRaw(1);
+    byte[] bytes = entry.bytes().clone();
+    bytes[bytes.length - 1] ^= 1;
+    assertFalse(new RawEntry(entry.index(), entry.term(), entry.checksum(), entry.checksumType(), bytes).isValid());
+  }
+
+  /**
+   * Tests appending raw entries checksummed with a different checksum type than the log's segments.
+   */
+  public void testAppendRawChecksumType() throws Throwable {
+    appendEntries(entriesPerSegment);
+
+    String copyId = UUID.randomUUID().toString();
+    try (Log copy = new Log(copyId, storage, new Serializer().resolve(new StorageSerialization()).register(TestEntry.class))) {
+      for (long i = 1; i <= entriesPerSegment; i++) {
+        RawEntry entry = log.getRaw(i);
+        assertEquals(entry.checksumType(), ChecksumType.CRC32C);
+        byte[] bytes = entry.bytes();
+        RawEntry legacy = new RawEntry(i, entry.term(), ChecksumType.CRC32.checksum(bytes, 0, bytes.length), bytes);
+        assertTrue(legacy.isValid());
+        assertEquals(copy.appendRaw(legacy), i);
+      }
+
+      for (long i = 1; i <= entriesPerSegment; i++) {
+        try (TestEntry entry = copy.get(i)) {
+          assertEquals(entry.getIndex(), i);
+        }
+        assertEquals(copy.getRaw(i), log.getRaw(i));
+      }
+    } finally {
+      storage.deleteLog(copyId);
+    }
+  }
+
+  /**
+   * Tests reading entries sequentially with {@link Log#reader(long)} across segments.
+   */
+  public void testReader() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    try (LogReader reader = log.reader(1)) {
+      for (int i = 1; i <= entriesPerSegment * 3; i++) {
+        assertTrue(reader.hasNext());
+        assertEquals(reader.nextIndex(), i);
+        try (TestEntry entry = reader.next()) {
+          assertEquals(entry.getIndex(), i);
+          assertEquals(entry.getTerm(), 1);
+        }
+      }
+      assertFalse(reader.hasNext());
+    }
+  }
+
+  /**
+   * Tests that {@link Log#reader(long)} skips entries that have been compacted.
+   */
+  public void testReaderCompacted() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    log.commit(entriesPerSegment * 3).compactor().minorIndex(entriesPerSegment * 3).majorIndex(entriesPerSegment * 3);
+    cleanAndCompact(entriesPerSegment + 1, entriesPerSegment * 2);
+    try (LogReader reader = log.reader(1)) {
+      for (int i = 1; i <= entriesPerSegment * 3; i++) {
+        try (TestEntry entry = reader.next()) {
+          if (i > entriesPerSegment && i <= entriesPerSegment * 2) {
+            assertNull(entry);
+          } else {
+            assertEquals(entry.getIndex(), i);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests resetting a log reader.
+   */
+  public void testReaderReset() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    try (LogReader reader = log.reader(entriesPerSegment * 2)) {
+      try (TestEntry entry = reader.next()) {
+        assertEquals(entry.getIndex(), entriesPerSegment * 2);
+      }
+      reader.reset(1);
+      try (TestEntry entry = reader.next()) {
+        assertEquals(entry.getIndex(), 1);
+      }
+      reader.reset(entriesPerSegment * 3);
+      try (TestEntry entry = reader.next()) {
+        assertEquals(entry.getIndex(), entriesPerSegment * 3);
+      }
+    }
+  }
+
+  /**
+   * Tests that a log reader reads entries from disk after reading entries from the entry buffer.
+   */
+  public void testReaderBufferedEntries() throws Throwable {
+    appendEntries(entriesPerSegment * 3);
+    long lastIndex = log.lastIndex();
+    try (LogReader reader = log.reader(lastIndex)) {
+      try (TestEntry entry = reader.next()) {
+        assertEquals(entry.getIndex(), lastIndex);
+      }
+      reader.reset(1);
+      for (long i = 1; i <= lastIndex; i++) {
+        try (TestEntry entry = reader.next()) {
+          assertEquals(entry.getIndex(), i);
+        }
+      }
+    }
+  }
+
+  /**
+   * Tests reading entries sequentially from a segment with {@link Segment#reader(long)}.
+   */
+  public void testSegmentReader() throws Throwable {
+    appendEntries(entriesPerSegment * 2);
+    Segment segment = log.segments.segment(1);
+    try (SegmentReader reader = segment.reader(segment.firstIndex())) {
+      for (long i = segment.firstIndex(); i <= segment.lastIndex(); i++) {
+        try (TestEntry entry = reader.next()) {
+          assertEquals(entry.getIndex(), i);
+          assertEquals(entry.getTerm(), 1);
+        }
+      }
+      assertFalse(reader.hasNext());
+
+      reader.reset(segment.firstIndex());
+      RawEntry raw = reader.nextRaw();
+      assertEquals(raw.index(), segment.firstIndex());
+      assertEquals(raw, segment.getRaw(segment.firstIndex()));
+    }
+  }
+
+  /**
+   * Tests that a segment reader observes truncation of the segment.
+   */
+  public void testSegmentReaderTruncate() throws Throwable {
+    appendEntries(entriesPerSegment);
+    Segment segment = log.segments.segment(1);
+    try (SegmentReader reader = segment.reader(1)) {
+      try (TestEntry entry = reader.next()) {
+        assertEquals(entry.getTerm(), 1);
+      }
+
+      log.truncate(1);
+      try (TestEntry entry = log.create(TestEntry.class)) {
+        entry.setTerm(2);
+        log.append(entry);
+      }
+
+      try (TestEntry entry = reader.next()) {
+        assertEquals(entry.getIndex(), 2);
+        assertEquals(entry.getTerm(), 2);
+      }
+    }
+  }
+
+  /**
+   * Tests reading entries from segments concurrently with appends.
+   */
+  public void testConcurrentReads() throws Throwable {
+    AtomicLong lastIndex = new AtomicLong();
+    AtomicReference<Throwable> error = new AtomicReference<>();
+    CountDownLatch appended = new CountDownLatch(1);
+    int numEntries = entriesPerSegment * 100;
+
+    List<Thread> readers = new ArrayList<>();
+    for (int i = 0; i < 4; i++) {
+      Thread reader = new Thread(() -> {
+        try {
+          appended.await();
+          while (lastIndex.get() < numEntries) {
+            long last = lastIndex.get();
+            long index = ThreadLocalRandom.current().nextLong(1, last + 1);
+            Segment segment = log.segments.segment(index);
+            try (TestEntry entry = segment.get(index)) {
+              assertNotNull(entry);
+              assertEquals(entry.getIndex(), index);
+              assertEquals(entry.getTerm(), 1);
+            }
+            assertTrue(segment.contains(index));
+            assertEquals(segment.term(index), 1);
+          }
+        } catch (Throwable e) {
+          error.set(e);
+        }
+      });
+      reader.start();
+      readers.add(reader);
+    }
+
+    try {
+      for (int i = 0; i < numEntries; i++) {
+        lastIndex.set(appendEntries(1).get(0));
+        appended.countDown();
+      }
+    } finally {
+      lastIndex.set(numEntries);
+      appended.countDown();
+      for (Thread reader : readers) {
+        reader.join();
+      }
+    }
+
+    if (error.get() != null) {
+      throw error.get();
+    }
+  }
 }
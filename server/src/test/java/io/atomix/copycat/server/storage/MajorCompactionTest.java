@@ -16,8 +16,14 @@
 package io.atomix.copycat.server.storage;
 
 import io.atomix.copycat.server.storage.compaction.Compaction;
+import io.atomix.copycat.server.storage.entry.RawEntry;
 import org.testng.annotations.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 import static org.testng.Assert.*;
@@ -65,6 +71,242 @@ public class MajorCompactionTest extends AbstractLogTest {
     }
   }
 
+  /**
+   * Tests that compaction modes are recorded in record headers and retained by compaction.
+   */
+  public void testRecordCompactionModes() throws Throwable {
+    writeEntries(31);
+    for (long index = 1; index <= 31; index++) {
+      assertEquals(log.segments.segment(index).getRaw(index).compactionMode(), expectedMode(index));
+    }
+
+    try (SegmentReader reader = log.segments.segment(1).reader(1)) {
+      assertEquals(reader.nextMode(), Compaction.Mode.QUORUM);
+      assertEquals(reader.nextIndex(), 1);
+      assertEquals(reader.nextRaw().index(), 1);
+      assertEquals(reader.nextMode(), Compaction.Mode.SEQUENTIAL);
+    }
+
+    for (long index = 21; index < 28; index++) {
+      log.release(index);
+    }
+    log.commit(31).compactor().minorIndex(31).majorIndex(31);
+    log.compactor().compact(Compaction.MAJOR).join();
+
+    for (long index = 1; index <= 31; index++) {
+      if (index < 21 || index >= 28) {
+        assertEquals(log.segments.segment(index).getRaw(index).compactionMode(), expectedMode(index));
+      }
+    }
+  }
+
+  /**
+   * Tests reading compaction modes from segments that don't record them in record headers.
+   */
+  public void testReadUnrecordedCompactionModes() throws Throwable {
+    Segment segment = log.segments.createSegment(SegmentDescriptor.builder()
+      .withId(100)
+      .withIndex(1000)
+      .withVersion(1)
+      .withMaxSegmentSize(storage.maxSegmentSize())
+      .withMaxEntries(storage.maxEntriesPerSegment())
+      .withFormat(SegmentDescriptor.FORMAT_V2)
+      .build());
+    try {
+      try (TestEntry entry = log.create(TestEntry.class)) {
+        entry.setIndex(1000).setTerm(1);
+        entry.setCompactionMode(Compaction.Mode.TOMBSTONE);
+        segment.append(entry);
+      }
+
+      assertNull(segment.getRaw(1000).compactionMode());
+      try (SegmentReader reader = segment.reader(1000)) {
+        assertEquals(reader.nextMode(), Compaction.Mode.TOMBSTONE);
+        assertNull(reader.nextRaw().compactionMode());
+      }
+    } finally {
+      segment.close();
+      segment.delete();
+    }
+  }
+
+  /**
+   * Tests that compaction modes are not read from record flags corrupted by a single bit flip.
+   */
+  public void testCorruptRecordFlags() throws Throwable {
+    for (Compaction.Mode mode : Compaction.Mode.values()) {
+      for (boolean hasTerm : new boolean[]{false, true}) {
+        int flags = Segment.flags(hasTerm, mode);
+        assertEquals(Segment.compactionMode(flags), mode);
+        assertEquals(Segment.hasTerm(flags), hasTerm);
+        for (int bit = 0; bit < Byte.SIZE; bit++) {
+          assertNull(Segment.compactionMode(flags ^ (1 << bit)));
+        }
+      }
+    }
+  }
+
+  /**
+   * Returns the compaction mode of the entry written at the given index.
+   */
+  private static Compaction.Mode expectedMode(long index) {
+    return index % 2 == 0 ? Compaction.Mode.SEQUENTIAL : Compaction.Mode.QUORUM;
+  }
+
+  /**
+   * Tests that compaction copies the records of retained entries without modifying them.
+   */
+  public void testMajorCompactionCopiesRawRecords() throws Throwable {
+    writeEntries(31);
+    for (long index = 21; index < 28; index++) {
+      log.release(index);
+    }
+    log.commit(31).compactor().minorIndex(31).majorIndex(31);
+
+    List<RawEntry> entries = new ArrayList<>();
+    for (long index = 1; index <= 31; index++) {
+      if (index < 21 || index >= 28) {
+        entries.add(log.segments.segment(index).getRaw(index));
+      }
+    }
+
+    log.compactor().compact(Compaction.MAJOR).join();
+
+    for (RawEntry entry : entries) {
+      RawEntry compactEntry = log.segments.segment(entry.index()).getRaw(entry.index());
+      assertEquals(compactEntry, entry);
+      assertTrue(compactEntry.isValid());
+      try (TestEntry testEntry = log.get(entry.index())) {
+        assertNotNull(testEntry);
+        assertEquals(testEntry.getTerm(), 1);
+      }
+    }
+  }
+
+  /**
+   * Tests rewriting groups in parallel and reporting progress in log order.
+   */
+  public void testParallelMajorCompaction() throws Throwable {
+    List<Integer> progress = Collections.synchronizedList(new ArrayList<>());
+    List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(10)
+      .withCompactionThreads(4)
+      .withMetrics(new StorageMetrics() {
+        @Override
+        public void segmentGroupCompacted(String name, int group, int groups, int segments, Duration time) {
+          assertEquals(groups, 4);
+          assertEquals(segments, 1);
+          progress.add(group);
+        }
+
+        @Override
+        public void majorCompactionCompleted(String name, int groups, Duration time) {
+          completed.add(groups);
+        }
+      })
+      .build();
+    log = createLog();
+
+    writeEntries(51);
+    for (long segment = 1; segment < 41; segment += 10) {
+      for (long index = segment + 2; index < segment + 8; index++) {
+        log.release(index);
+      }
+    }
+    log.commit(51).compactor().minorIndex(51).majorIndex(51);
+    log.compactor().compact(Compaction.MAJOR).join();
+
+    assertEquals(progress, Arrays.asList(1, 2, 3, 4));
+    assertEquals(completed, Collections.singletonList(4));
+    assertEquals(log.length(), 51L);
+    for (long segment = 1; segment < 41; segment += 10) {
+      assertEquals(log.segments.segment(segment).descriptor().version(), 2);
+      assertTrue(log.contains(segment + 1));
+      for (long index = segment + 2; index < segment + 8; index++) {
+        assertFalse(log.contains(index));
+      }
+      assertTrue(log.contains(segment + 8));
+    }
+  }
+
+  /**
+   * Tests that incremental major compaction skips single segments with no released entries.
+   */
+  public void testIncrementalMajorCompactionSkipsSegments() throws Throwable {
+    List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(10)
+      .withIncrementalCompaction()
+      .withMetrics(new StorageMetrics() {
+        @Override
+        public void majorCompactionCompleted(String name, int groups, Duration time) {
+          completed.add(groups);
+        }
+      })
+      .build();
+    log = createLog();
+
+    writeEntries(51);
+    for (long index = 13; index < 18; index++) {
+      log.release(index);
+    }
+    for (long index = 33; index < 38; index++) {
+      log.release(index);
+    }
+    log.commit(51).compactor().minorIndex(51).majorIndex(51);
+    log.compactor().compact(Compaction.MAJOR).join();
+
+    // Only the segments with released entries are rewritten.
+    assertEquals(completed, Collections.singletonList(2));
+    assertEquals(log.segments.segment(1).descriptor().version(), 1);
+    assertEquals(log.segments.segment(11).descriptor().version(), 2);
+    assertEquals(log.segments.segment(21).descriptor().version(), 1);
+    assertEquals(log.segments.segment(31).descriptor().version(), 2);
+    assertFalse(log.contains(13));
+    assertFalse(log.contains(33));
+    assertTrue(log.contains(18));
+    assertTrue(log.contains(21));
+  }
+
+  /**
+   * Tests that incremental major compaction stops once the compaction budget has been exhausted.
+   */
+  public void testIncrementalMajorCompactionBudget() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(10)
+      .withIncrementalCompaction()
+      .withCompactionBudget(1)
+      .build();
+    log = createLog();
+
+    writeEntries(51);
+    for (long segment = 1; segment < 41; segment += 10) {
+      for (long index = segment + 2; index < segment + 8; index++) {
+        log.release(index);
+      }
+    }
+    log.commit(51).compactor().minorIndex(51).majorIndex(51);
+
+    // The first group is always compacted, but no following group fits in the budget.
+    log.compactor().compact(Compaction.MAJOR).join();
+    assertEquals(log.segments.segment(1).descriptor().version(), 2);
+    assertEquals(log.segments.segment(11).descriptor().version(), 1);
+    assertFalse(log.contains(3));
+    assertTrue(log.contains(13));
+
+    // The compacted segment has no released entries, so the next compaction skips it and compacts the next group.
+    log.compactor().compact(Compaction.MAJOR).join();
+    assertEquals(log.segments.segment(1).descriptor().version(), 2);
+    assertEquals(log.segments.segment(11).descriptor().version(), 2);
+    assertEquals(log.segments.segment(21).descriptor().version(), 1);
+    assertFalse(log.contains(13));
+    assertTrue(log.contains(23));
+  }
+
   /**
    * Writes a set of session entries to the log.
    */
@@ -18,7 +18,9 @@ package io.atomix.copycat.server.storage;
 import io.atomix.copycat.server.storage.compaction.Compaction;
 import org.testng.annotations.Test;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static org.testng.Assert.*;
 
@@ -72,6 +74,130 @@ public class MinorCompactionTest extends AbstractLogTest {
     }
   }
 
+  /**
+   * Tests that incremental minor compaction compacts the segments that reclaim the most space first.
+   */
+  public void testIncrementalMinorCompaction() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(10)
+      .withIncrementalCompaction()
+      .withCompactionBudget(1)
+      .withCompactionThreshold(0.05)
+      .build();
+    log = createLog();
+
+    writeEntries(31);
+    log.release(1);
+    for (long index = 11; index < 20; index += 2) {
+      log.release(index);
+    }
+    log.commit(31).compactor().minorIndex(31);
+
+    Segment first = log.segments.segment(1);
+    Segment second = log.segments.segment(11);
+    assertTrue(first.releaseSize() > 0);
+    assertTrue(second.releaseSize() > first.releaseSize());
+    assertTrue(second.liveSize() > 0);
+
+    // Only the segment with the most released bytes fits in the budget.
+    log.compactor().compact(Compaction.MINOR).join();
+    assertEquals(log.segments.segment(1).descriptor().version(), 1);
+    assertEquals(log.segments.segment(11).descriptor().version(), 2);
+    assertTrue(log.contains(1));
+    assertFalse(log.contains(13));
+
+    // The compacted segment has nothing left to reclaim, so the next compaction rewrites the first segment.
+    assertEquals(log.segments.segment(11).releaseSize(), 0);
+    log.compactor().compact(Compaction.MINOR).join();
+    assertEquals(log.segments.segment(1).descriptor().version(), 2);
+    assertEquals(log.segments.segment(11).descriptor().version(), 2);
+    assertFalse(log.contains(1));
+  }
+
+  /**
+   * Tests that compaction is limited to the configured entry rate.
+   */
+  public void testThrottledMinorCompaction() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(10)
+      .withCompactionEntryRate(4)
+      .build();
+    log = createLog();
+
+    writeEntries(31);
+    for (long index = 21; index < 28; index++) {
+      log.release(index);
+    }
+    log.commit(31).compactor().minorIndex(31);
+
+    // Reading the 10 entries in the compacted segment exceeds the burst of 4 entries by 6 entries.
+    long startTime = System.currentTimeMillis();
+    log.compactor().compact(Compaction.MINOR).join();
+    assertTrue(System.currentTimeMillis() - startTime >= 1000);
+    assertEquals(log.segments.segment(21).descriptor().version(), 2);
+    assertFalse(log.contains(21));
+    assertTrue(log.contains(22));
+  }
+
+  /**
+   * Tests that closing the compactor aborts a throttled compaction.
+   */
+  public void testCloseAbortsThrottledCompaction() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(10)
+      .withCompactionEntryRate(1)
+      .build();
+    log = createLog();
+
+    writeEntries(31);
+    for (long index = 21; index < 28; index++) {
+      log.release(index);
+    }
+    log.commit(31).compactor().minorIndex(31);
+
+    // Reading the 10 entries in the compacted segment would take 9 seconds at the configured rate.
+    CompletableFuture<Void> future = log.compactor().compact(Compaction.MINOR);
+    Thread.sleep(500);
+    long startTime = System.currentTimeMillis();
+    log.compactor().close();
+    assertTrue(System.currentTimeMillis() - startTime < 5000);
+    future.get(5, TimeUnit.SECONDS);
+    assertEquals(log.segments.segment(21).descriptor().version(), 1);
+  }
+
+  /**
+   * Tests that the compaction rate is reduced when write latency rises.
+   */
+  public void testCompactionThrottleAdaptsToWriteLatency() throws Throwable {
+    log.close();
+    storage = tempStorageBuilder()
+      .withMaxEntriesPerSegment(10)
+      .withCompactionRate(1024 * 1024)
+      .build();
+    log = createLog();
+
+    writeEntries(31);
+    for (long index = 21; index < 28; index++) {
+      log.release(index);
+    }
+    log.commit(31).compactor().minorIndex(31);
+
+    for (int i = 0; i < 10; i++) {
+      log.compactor().throttle().recordWrite(1000);
+    }
+    for (int i = 0; i < 10; i++) {
+      log.compactor().throttle().recordWrite(100000000);
+    }
+    assertEquals(log.compactor().throttle().factor(), 1.0);
+
+    log.compactor().compact(Compaction.MINOR).join();
+    assertTrue(log.compactor().throttle().factor() < 1.0);
+    assertFalse(log.contains(21));
+  }
+
   /**
    * Writes a set of session entries to the log.
    */
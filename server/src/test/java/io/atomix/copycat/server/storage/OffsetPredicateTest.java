@@ -44,4 +44,66 @@ public class OffsetPredicateTest {
     assertFalse(cleaner.test(2048L));
   }
 
+  /**
+   * Tests releasing enough offsets to convert a container to a bitmap.
+   */
+  public void testDenseOffsets() {
+    OffsetPredicate predicate = new OffsetPredicate();
+    for (long i = 0; i < 1024 * 64; i += 2) {
+      assertTrue(predicate.release(i));
+      assertFalse(predicate.release(i));
+    }
+    assertEquals(predicate.count(), 1024 * 32);
+    for (long i = 0; i < 1024 * 64; i++) {
+      assertEquals(predicate.test(i), i % 2 == 1);
+    }
+    assertTrue(predicate.test(1024 * 64L));
+  }
+
+  /**
+   * Tests ranking and selecting released offsets.
+   */
+  public void testRankAndSelect() {
+    OffsetPredicate predicate = new OffsetPredicate();
+    assertEquals(predicate.rank(10), 0);
+    assertEquals(predicate.select(0), -1);
+
+    long[] offsets = {1, 5, 70000, 70001, 200000};
+    for (long offset : offsets) {
+      predicate.release(offset);
+    }
+
+    for (int i = 0; i < offsets.length; i++) {
+      assertEquals(predicate.select(i), offsets[i]);
+      assertEquals(predicate.rank(offsets[i]), i);
+      assertEquals(predicate.rank(offsets[i] + 1), i + 1);
+    }
+    assertEquals(predicate.select(offsets.length), -1);
+    assertEquals(predicate.rank(Long.MAX_VALUE), offsets.length);
+  }
+
+  /**
+   * Tests that copies are unaffected by changes to the original predicate and vice versa.
+   */
+  public void testCopy() {
+    OffsetPredicate predicate = new OffsetPredicate();
+    predicate.release(1);
+    predicate.release(70000);
+
+    OffsetPredicate copy = predicate.copy();
+    assertEquals(copy.count(), 2);
+    predicate.release(2);
+    predicate.release(140000);
+    copy.release(3);
+
+    assertEquals(predicate.count(), 4);
+    assertEquals(copy.count(), 3);
+    assertFalse(predicate.test(2L));
+    assertTrue(predicate.test(3L));
+    assertTrue(copy.test(2L));
+    assertFalse(copy.test(3L));
+    assertTrue(copy.test(140000L));
+    assertFalse(copy.test(70000L));
+  }
+
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.index.PositionIndex;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.*;
+
+/**
+ * Position index test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class PositionIndexTest {
+
+  /**
+   * Tests looking up sequentially indexed records.
+   */
+  public void testSequentialLookup() {
+    PositionIndex index = new PositionIndex(4);
+    assertEquals(index.lookup(0), -1);
+    for (int i = 0; i < 100; i++) {
+      index.index(i, i * 100, 96);
+    }
+    assertEquals(index.size(), 100);
+    for (int i = 0; i < 100; i++) {
+      long record = index.lookup(i);
+      assertEquals(PositionIndex.position(record), i * 100);
+      assertEquals(PositionIndex.length(record), 96);
+    }
+    assertEquals(index.lookup(100), -1);
+  }
+
+  /**
+   * Tests looking up records with missing offsets.
+   */
+  public void testSparseLookup() {
+    PositionIndex index = new PositionIndex(4);
+    index.index(2, 0, 10);
+    index.index(3, 14, 10);
+    index.index(7, 28, 20);
+    index.index(9, 52, 10);
+    assertFalse(index.contains(0));
+    assertTrue(index.contains(2));
+    assertTrue(index.contains(3));
+    assertFalse(index.contains(4));
+    assertTrue(index.contains(7));
+    assertEquals(PositionIndex.position(index.lookup(7)), 28);
+    assertEquals(PositionIndex.length(index.lookup(7)), 20);
+    assertEquals(PositionIndex.position(index.lookup(9)), 52);
+    assertFalse(index.contains(10));
+  }
+
+  /**
+   * Tests that large positions are packed without loss.
+   */
+  public void testLargePosition() {
+    PositionIndex index = new PositionIndex();
+    index.index(0, 0xFFFFFFF0L, Integer.MAX_VALUE);
+    assertEquals(PositionIndex.position(index.lookup(0)), 0xFFFFFFF0L);
+    assertEquals(PositionIndex.length(index.lookup(0)), Integer.MAX_VALUE);
+  }
+
+  /**
+   * Tests truncating the index.
+   */
+  public void testTruncate() {
+    PositionIndex index = new PositionIndex(4);
+    for (int i = 0; i < 10; i++) {
+      index.index(i, i * 10, 6);
+    }
+    index.truncate(4);
+    assertEquals(index.size(), 5);
+    assertTrue(index.contains(4));
+    assertFalse(index.contains(5));
+    index.index(5, 100, 20);
+    assertEquals(PositionIndex.position(index.lookup(5)), 100);
+    index.truncate(-1);
+    assertEquals(index.size(), 0);
+    assertFalse(index.contains(0));
+  }
+
+  /**
+   * Tests ceiling and last lookups with gaps in offsets.
+   */
+  public void testCeilingAndLast() {
+    PositionIndex index = new PositionIndex();
+    assertEquals(index.ceiling(0), -1);
+    assertEquals(index.last(), -1);
+    index.index(1, 0, 10);
+    index.index(5, 14, 20);
+    assertEquals(PositionIndex.position(index.ceiling(0)), 0);
+    assertEquals(PositionIndex.position(index.ceiling(2)), 14);
+    assertEquals(PositionIndex.position(index.ceiling(5)), 14);
+    assertEquals(index.ceiling(6), -1);
+    assertEquals(PositionIndex.position(index.last()), 14);
+    assertEquals(PositionIndex.length(index.last()), 20);
+  }
+
+  /**
+   * Tests that offsets must be increasing.
+   */
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testIndexNonIncreasingOffset() {
+    PositionIndex index = new PositionIndex();
+    index.index(1, 0, 10);
+    index.index(1, 14, 10);
+  }
+
+}
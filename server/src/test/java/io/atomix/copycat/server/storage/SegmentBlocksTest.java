@@ -0,0 +1,154 @@
+/*
+ * Copyright 2017 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.catalyst.buffer.Buffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.copycat.server.storage.util.ChecksumType;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+/**
+ * Segment blocks test.
+ *
+ * @author <a href="http://github.com/kuujo">Jordan Halterman</a>
+ */
+@Test
+public class SegmentBlocksTest {
+  private static final int RECORD_LENGTH = 1000;
+
+  /**
+   * Creates segment blocks reading from the given buffer.
+   */
+  private static SegmentBlocks createBlocks(Buffer buffer) {
+    return new SegmentBlocks(buffer, (position, bytes, length) -> buffer.read(position, bytes, 0, length), ChecksumType.CRC32C);
+  }
+
+  /**
+   * Returns the bytes of the given record.
+   */
+  private static byte[] record(int i) {
+    byte[] bytes = new byte[RECORD_LENGTH];
+    Arrays.fill(bytes, (byte) i);
+    return bytes;
+  }
+
+  /**
+   * Writes records spanning a number of blocks.
+   */
+  private static List<Long> writeRecords(SegmentBlocks blocks, int count) {
+    List<Long> positions = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      positions.add(blocks.write(RECORD_LENGTH, HeapBuffer.wrap(record(i))));
+    }
+    return positions;
+  }
+
+  /**
+   * Asserts that the given records can be read from the blocks.
+   */
+  private static void assertRecords(SegmentBlocks blocks, List<Long> positions) {
+    byte[] bytes = new byte[RECORD_LENGTH];
+    for (int i = positions.size() - 1; i >= 0; i--) {
+      blocks.read(positions.get(i) + Integer.BYTES, bytes, RECORD_LENGTH);
+      assertTrue(Arrays.equals(bytes, record(i)));
+    }
+  }
+
+  /**
+   * Tests reading records by uncompressed position before and after blocks are written.
+   */
+  public void testReadRecords() {
+    Buffer buffer = HeapBuffer.allocate(1024 * 1024);
+    SegmentBlocks blocks = createBlocks(buffer);
+    List<Long> positions = writeRecords(blocks, 200);
+    assertEquals(blocks.position(), 200L * (Integer.BYTES + RECORD_LENGTH));
+    assertRecords(blocks, positions);
+
+    blocks.flush();
+    assertEquals(blocks.pending(), 0);
+    assertTrue(buffer.position() < blocks.position() / 10);
+    assertRecords(blocks, positions);
+
+    // Reads may span multiple blocks.
+    byte[] bytes = new byte[(int) blocks.position()];
+    blocks.read(0, bytes, bytes.length);
+    for (int i = 0; i < positions.size(); i++) {
+      assertEquals(bytes[positions.get(i).intValue() + Integer.BYTES], (byte) i);
+    }
+    blocks.close();
+  }
+
+  /**
+   * Tests loading the block index from the buffer.
+   */
+  public void testLoadBlocks() {
+    Buffer buffer = HeapBuffer.allocate(1024 * 1024);
+    SegmentBlocks blocks = createBlocks(buffer);
+    List<Long> positions = writeRecords(blocks, 200);
+    blocks.flush();
+    long position = blocks.position();
+    long end = buffer.position();
+    blocks.close();
+
+    blocks = createBlocks(buffer.position(0));
+    blocks.load();
+    assertEquals(blocks.position(), position);
+    assertEquals(buffer.position(), end);
+    assertRecords(blocks, positions);
+
+    // Records written after loading are appended to a new block.
+    positions.addAll(writeRecords(blocks, 10));
+    blocks.flush();
+    blocks.close();
+
+    blocks = createBlocks(buffer.position(0));
+    blocks.load();
+    assertEquals(blocks.position(), position + 10L * (Integer.BYTES + RECORD_LENGTH));
+    blocks.close();
+  }
+
+  /**
+   * Tests that loading stops at a corrupt block.
+   */
+  public void testLoadCorruptBlock() {
+    Buffer buffer = HeapBuffer.allocate(1024 * 1024);
+    SegmentBlocks blocks = createBlocks(buffer);
+    writeRecords(blocks, 10);
+    blocks.flush();
+    long position = blocks.position();
+    long end = buffer.position();
+    writeRecords(blocks, 10);
+    blocks.flush();
+    blocks.close();
+
+    // Corrupt the last byte of the second block.
+    buffer.writeByte(buffer.position() - 1, buffer.readByte(buffer.position() - 1) + 1);
+
+    blocks = createBlocks(buffer.position(0));
+    blocks.load();
+    assertEquals(blocks.position(), position);
+    assertEquals(buffer.position(), end);
+    blocks.close();
+  }
+
+}
@@ -17,6 +17,8 @@ package io.atomix.copycat.server.storage;
 
 import io.atomix.catalyst.buffer.Buffer;
 import io.atomix.catalyst.buffer.FileBuffer;
+import io.atomix.catalyst.buffer.HeapBuffer;
+import io.atomix.copycat.server.storage.util.ChecksumType;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.Test;
 
@@ -61,6 +63,110 @@ public class SegmentDescriptorTest {
     assertFalse(descriptor.locked());
     descriptor.lock();
     assertTrue(descriptor.locked());
+
+    assertEquals(descriptor.format(), SegmentDescriptor.CURRENT_FORMAT);
+    assertEquals(descriptor.checksumType(), ChecksumType.CRC32C);
+  }
+
+  /**
+   * Tests persisting the segment format.
+   */
+  public void testDescriptorFormat() {
+    Buffer buffer = FileBuffer.allocate(file, SegmentDescriptor.BYTES);
+    SegmentDescriptor descriptor = SegmentDescriptor.builder(buffer)
+      .withId(2)
+      .withVersion(3)
+      .withIndex(1025)
+      .withMaxSegmentSize(1024 * 1024)
+      .withMaxEntries(2048)
+      .withFormat(SegmentDescriptor.FORMAT_V1)
+      .build();
+
+    assertEquals(descriptor.format(), SegmentDescriptor.FORMAT_V1);
+    assertEquals(descriptor.checksumType(), ChecksumType.CRC32);
+
+    buffer.close();
+
+    descriptor = new SegmentDescriptor(FileBuffer.allocate(file, SegmentDescriptor.BYTES));
+    assertEquals(descriptor.format(), SegmentDescriptor.FORMAT_V1);
+    assertEquals(descriptor.checksumType(), ChecksumType.CRC32);
+  }
+
+  /**
+   * Tests reading a descriptor written before format versions were introduced.
+   */
+  public void testLegacyDescriptorFormat() {
+    Buffer buffer = HeapBuffer.allocate(SegmentDescriptor.BYTES)
+      .writeLong(2)
+      .writeLong(1)
+      .writeLong(1025)
+      .writeUnsignedInt(1024 * 1024)
+      .writeInt(2048)
+      .writeLong(0)
+      .writeBoolean(false)
+      .rewind();
+
+    SegmentDescriptor descriptor = new SegmentDescriptor(buffer);
+    assertEquals(descriptor.id(), 2);
+    assertEquals(descriptor.format(), SegmentDescriptor.FORMAT_V1);
+    assertEquals(descriptor.checksumType(), ChecksumType.CRC32);
+  }
+
+  /**
+   * Tests persisting and copying the segment compression.
+   */
+  public void testDescriptorCompression() {
+    Buffer buffer = FileBuffer.allocate(file, SegmentDescriptor.BYTES);
+    SegmentDescriptor descriptor = SegmentDescriptor.builder(buffer)
+      .withId(2)
+      .withVersion(3)
+      .withIndex(1025)
+      .withMaxSegmentSize(1024 * 1024)
+      .withMaxEntries(2048)
+      .withCompression(SegmentDescriptor.COMPRESSION_DEFLATE)
+      .build();
+
+    assertEquals(descriptor.compression(), SegmentDescriptor.COMPRESSION_DEFLATE);
+    assertTrue(descriptor.isCompressed());
+
+    buffer.close();
+
+    descriptor = new SegmentDescriptor(FileBuffer.allocate(file, SegmentDescriptor.BYTES));
+    assertEquals(descriptor.compression(), SegmentDescriptor.COMPRESSION_DEFLATE);
+    assertEquals(descriptor.format(), SegmentDescriptor.CURRENT_FORMAT);
+
+    descriptor = descriptor.copyTo(HeapBuffer.allocate(SegmentDescriptor.BYTES));
+    assertTrue(descriptor.isCompressed());
+    assertFalse(SegmentDescriptor.builder().build().isCompressed());
+  }
+
+  /**
+   * Tests that unknown segment formats are rejected.
+   */
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnknownDescriptorFormat() {
+    SegmentDescriptor.builder().withFormat(SegmentDescriptor.CURRENT_FORMAT + 1);
+  }
+
+  /**
+   * Tests that unknown segment compressions are rejected by the builder.
+   */
+  @Test(expectedExceptions = IllegalArgumentException.class)
+  public void testUnknownDescriptorCompression() {
+    SegmentDescriptor.builder().withCompression(SegmentDescriptor.COMPRESSION_DEFLATE + 1);
+  }
+
+  /**
+   * Tests that descriptors with unknown segment compressions are rejected when read.
+   */
+  @Test(expectedExceptions = DescriptorException.class)
+  public void testReadUnknownDescriptorCompression() {
+    Buffer buffer = HeapBuffer.allocate(SegmentDescriptor.BYTES);
+    SegmentDescriptor.builder().withId(2).withVersion(3).withIndex(1025).build().copyTo(buffer);
+
+    // The compression is stored in the byte following the format.
+    buffer.writeByte(42, SegmentDescriptor.COMPRESSION_DEFLATE + 1);
+    new SegmentDescriptor(buffer.rewind());
   }
 
   /**
@@ -131,6 +237,7 @@ public class SegmentDescriptorTest {
     assertEquals(descriptor.maxEntries(), 2048);
     assertEquals(descriptor.updated(), time);
     assertTrue(descriptor.locked());
+    assertEquals(descriptor.format(), SegmentDescriptor.CURRENT_FORMAT);
   }
 
   /**
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2016 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License
+ */
+package io.atomix.copycat.server.storage;
+
+import io.atomix.copycat.server.storage.util.TermIndex;
+import org.testng.annotations.Test;
+
+import static org.testng.Assert.assertEquals;
+
+/**
+ * Term index test.
+ *
+ * @author <a href="http://github.com/kuujo>Jordan Halterman</a>
+ */
+@Test
+public class TermIndexTest {
+
+  /**
+   * Tests looking up terms in the index.
+   */
+  public void testLookup() {
+    TermIndex index = new TermIndex();
+    assertEquals(index.term(), 0);
+    assertEquals(index.lookup(0), 0);
+    index.index(0, 1);
+    index.index(1, 1);
+    index.index(2, 1);
+    index.index(3, 2);
+    index.index(10, 3);
+    assertEquals(index.term(), 3);
+    assertEquals(index.lookup(0), 1);
+    assertEquals(index.lookup(2), 1);
+    assertEquals(index.lookup(3), 2);
+    assertEquals(index.lookup(9), 2);
+    assertEquals(index.lookup(10), 3);
+    assertEquals(index.lookup(100), 3);
+  }
+
+  /**
+   * Tests indexing more terms than the initial index capacity.
+   */
+  public void testGrow() {
+    TermIndex index = new TermIndex();
+    for (int i = 0; i < 100; i++) {
+      index.index(i * 10, i + 1);
+    }
+    for (int i = 0; i < 100; i++) {
+      assertEquals(index.lookup(i * 10), i + 1);
+      assertEquals(index.lookup(i * 10 + 9), i + 1);
+    }
+    assertEquals(index.term(), 100);
+  }
+
+  /**
+   * Tests truncating the index.
+   */
+  public void testTruncate() {
+    TermIndex index = new TermIndex();
+    index.index(0, 1);
+    index.index(5, 2);
+    index.index(10, 3);
+    index.truncate(7);
+    assertEquals(index.term(), 2);
+    assertEquals(index.lookup(10), 2);
+    index.index(8, 4);
+    assertEquals(index.lookup(7), 2);
+    assertEquals(index.lookup(8), 4);
+    index.truncate(-1);
+    assertEquals(index.term(), 0);
+    assertEquals(index.lookup(8), 0);
+  }
+
+}